@@ -0,0 +1,483 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of autoconf test results shared by all {@code configure} runs so
+ * that identical probes (headers, type sizes, functions) aren't repeated for
+ * every package.
+ *
+ * The cache is stored in a subdirectory of the root directory named after a
+ * fingerprint of the host (compiler, system headers, installation prefix), so
+ * that a changed compiler or changed system headers invalidate all results
+ * while wrappers with different installation prefixes can share the root
+ * directory. The subdirectory is held by a shared lock on a lock file from
+ * {@link #init(List) } until {@link #release() } is invoked or the JVM exits.
+ * Subdirectories of other fingerprints which haven't been used for longer
+ * than the maximum age are evicted unless they're held.
+ *
+ * Every {@code configure} run copies the shared cache into a private
+ * {@code config.cache} in its working directory through a {@code config.site}
+ * file referenced by {@code CONFIG_SITE}, so that results of one package
+ * never leak into the {@code configure} run of another one. The private copy
+ * is merged back into the shared cache after the run succeeded. Only results
+ * which are invariant for the host are merged (type sizes, compiler
+ * characteristics and system headers), so that results which depend on the
+ * {@code LIBS} and {@code CPPFLAGS} of a package or which are specific to a
+ * package are never replayed into the run of another one. The paths of
+ * the private copies are appended to a list file if one is specified, so
+ * that the copies of {@code configure} runs started by jhbuild can be found.
+ * {@code configure} scripts which aren't generated by autoconf ignore
+ * {@code CONFIG_SITE}.
+ *
+ * @author richter
+ */
+public class AutoconfCache {
+    private final static Logger LOGGER = LoggerFactory.getLogger(AutoconfCache.class);
+    /*
+    internal implementation notes:
+    - configure runs don't share the cache file directly because prerequisites
+    are configured concurrently and autoconf overwrites the cache file
+    non-atomically at the end of the run
+    - the autoconf manual warns against sharing a cache between packages
+    because results depend on the environment of a package; therefore shareable
+    results are selected by an allowlist of host-invariant families rather than
+    by a denylist; results of programs, libraries, functions and headers which
+    might be installed into the installation prefix aren't shared
+    - the cache file is selected in config.site because passing --cache-file
+    makes configure scripts which aren't generated by autoconf (e.g. zlib's)
+    fail
+    - the modification time of the lock file records the last use of a cache
+    directory
+    - FileChannel.lock throws OverlappingFileLockException if the JVM already
+    holds a lock on the file, therefore the locks of all instances are managed
+    in HELD_CACHE_DIRS
+    */
+    /**
+     * The environment variable pointing to the shared cache file which
+     * {@code config.site} copies into the private cache file of a
+     * {@code configure} run.
+     */
+    public final static String CONFIG_CACHE_ENV = "JHBUILD_JAVA_WRAPPER_CONFIG_CACHE";
+    /**
+     * The environment variable pointing to the file which {@code config.site}
+     * appends the path of the private cache file to.
+     */
+    public final static String CONFIG_CACHE_LIST_ENV = "JHBUILD_JAVA_WRAPPER_CONFIG_CACHE_LIST";
+    public final static String CONFIG_SITE = "CONFIG_SITE";
+    private final static String CONFIG_SITE_FILE_NAME = "config.site";
+    private final static String CACHE_FILE_NAME = "config.cache";
+    private final static String LOCK_FILE_NAME = "lock";
+    public final static long MAX_AGE_MILLIS_DEFAULT = 30L*24*60*60*1000;
+    /**
+     * The locks and holder counts of cache directories held by instances in
+     * this JVM.
+     */
+    private final static Map<File, HeldCacheDir> HELD_CACHE_DIRS = new HashMap<>();
+    private final static String CONFIG_SITE_TEMPLATE = "# generated by JHBuild Java wrapper\n"
+            + "if test -n \"$%1$s\" && test \"x$cache_file\" = x/dev/null; then\n"
+            + "    cache_file=`pwd`/%3$s\n"
+            + "    if test -f \"$%1$s\"; then\n"
+            + "        cp \"$%1$s\" \"$cache_file\"\n"
+            + "    else\n"
+            + "        rm -f \"$cache_file\"\n"
+            + "    fi\n"
+            + "    if test -n \"$%2$s\"; then\n"
+            + "        echo \"$cache_file\" >> \"$%2$s\"\n"
+            + "    fi\n"
+            + "fi\n";
+    /**
+     * Matches both forms of cache entries written by autoconf, i.e.
+     * {@code name=${name=value}} and
+     * {@code test "${name+set}" = set || name='value'}.
+     */
+    private final static Pattern ENTRY_PATTERN = Pattern.compile("^(?:test \"\\$\\{(\\w+)\\+set\\}\" = set \\|\\| )?(\\w+)=");
+    /**
+     * Matches the names of cache entries which are invariant for the host,
+     * i.e. type sizes and alignments, compiler characteristics and headers of
+     * the C library and the kernel.
+     */
+    private final static Pattern SHAREABLE_NAME_PATTERN = Pattern.compile("^ac_cv_(?:(?:sizeof|alignof|type|c)_\\w+"
+            + "|objext|exeext|header_stdc"
+            + "|header_(?:sys_\\w+|arpa_inet|assert|ctype|dirent|dlfcn|errno|fcntl|float|grp|inttypes|langinfo|limits"
+            + "|locale|malloc|math|memory|netdb|netinet_in|poll|pthread|pwd|setjmp|signal|stdarg|stdbool|stddef|stdint"
+            + "|stdio|stdlib|string|strings|termios|time|unistd|utime|wchar|wctype)_h)$");
+    private final File rootDir;
+    private final long maxAgeMillis;
+    /**
+     * The directory of the current fingerprint. {@code null} until
+     * {@link #init(List) } has been invoked.
+     */
+    private File cacheDir;
+
+    /**
+     * Creates a new autoconf cache which evicts directories after
+     * {@link #MAX_AGE_MILLIS_DEFAULT}.
+     *
+     * @param rootDir the directory containing one subdirectory per host
+     *     fingerprint
+     */
+    public AutoconfCache(File rootDir) {
+        this(rootDir,
+                MAX_AGE_MILLIS_DEFAULT);
+    }
+
+    /**
+     * Creates a new autoconf cache.
+     *
+     * @param rootDir the directory containing one subdirectory per host
+     *     fingerprint
+     * @param maxAgeMillis the time after its last use after which the
+     *     directory of a fingerprint is evicted unless it's held
+     */
+    public AutoconfCache(File rootDir,
+            long maxAgeMillis) {
+        if(rootDir == null) {
+            throw new IllegalArgumentException("rootDir mustn't be null");
+        }
+        if(maxAgeMillis < 0) {
+            throw new IllegalArgumentException("maxAgeMillis mustn't be negative");
+        }
+        //the held directories are identified by their absolute path
+        this.rootDir = rootDir.getAbsoluteFile();
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public File getRootDir() {
+        return rootDir;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * Selects and holds the cache directory for the specified fingerprint,
+     * evicts expired directories of other fingerprints which aren't held and
+     * writes {@code config.site}.
+     *
+     * @param fingerprintComponents the components of the host fingerprint
+     * @throws IOException if an I/O exception occurs
+     */
+    public synchronized void init(List<String> fingerprintComponents) throws IOException {
+        String fingerprint = DigestUtils.sha256Hex(String.join("\n", fingerprintComponents).getBytes(StandardCharsets.UTF_8));
+        File newCacheDir = new File(rootDir,
+                fingerprint);
+        hold(newCacheDir);
+        if(cacheDir != null) {
+            unhold(cacheDir);
+        }
+        cacheDir = newCacheDir;
+        evictExpired();
+        File configSiteTmpFile = Files.createTempFile(cacheDir.toPath(),
+                CONFIG_SITE_FILE_NAME, //prefix
+                null //suffix
+        ).toFile();
+        Files.write(configSiteTmpFile.toPath(),
+                String.format(CONFIG_SITE_TEMPLATE,
+                        CONFIG_CACHE_ENV,
+                        CONFIG_CACHE_LIST_ENV,
+                        CACHE_FILE_NAME).getBytes(StandardCharsets.UTF_8));
+        Files.move(configSiteTmpFile.toPath(),
+                getConfigSite().toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Releases the lock on the cache directory so that it can be evicted
+     * after it expired. The instance needs to be initialized again before
+     * it can be used afterwards.
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    public synchronized void release() throws IOException {
+        if(cacheDir == null) {
+            return;
+        }
+        unhold(cacheDir);
+        cacheDir = null;
+    }
+
+    /**
+     * Deletes the directories of other fingerprints which haven't been used
+     * for longer than {@link #maxAgeMillis} and aren't held by any process.
+     */
+    private void evictExpired() throws IOException {
+        File[] otherCacheDirs = rootDir.listFiles(file -> file.isDirectory()
+                && !file.equals(cacheDir));
+        if(otherCacheDirs == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for(File otherCacheDir : otherCacheDirs) {
+            File lockFile = new File(otherCacheDir,
+                    LOCK_FILE_NAME);
+            long lastUse = lockFile.exists()
+                    ? lockFile.lastModified()
+                    : otherCacheDir.lastModified();
+            if(now-lastUse <= maxAgeMillis) {
+                continue;
+            }
+            synchronized(HELD_CACHE_DIRS) {
+                if(HELD_CACHE_DIRS.containsKey(otherCacheDir)) {
+                    continue;
+                }
+                try (FileChannel lockChannel = FileChannel.open(lockFile.toPath(),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                        FileLock lock = lockChannel.tryLock()) {
+                    if(lock == null) {
+                        //held by another process
+                        continue;
+                    }
+                    LOGGER.info(String.format("evicting autoconf cache %s which hasn't been used for %d ms",
+                            otherCacheDir.getAbsolutePath(),
+                            now-lastUse));
+                    FileUtils.deleteQuietly(otherCacheDir);
+                }
+            }
+        }
+    }
+
+    private static void hold(File cacheDir) throws IOException {
+        synchronized(HELD_CACHE_DIRS) {
+            HeldCacheDir heldCacheDir = HELD_CACHE_DIRS.get(cacheDir);
+            if(heldCacheDir == null) {
+                Files.createDirectories(cacheDir.toPath());
+                File lockFile = new File(cacheDir,
+                        LOCK_FILE_NAME);
+                FileChannel lockChannel = FileChannel.open(lockFile.toPath(),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                FileLock lock;
+                try {
+                    //blocks while another process evicts the directory
+                    lock = lockChannel.lock(0L,
+                            Long.MAX_VALUE,
+                            true //shared
+                    );
+                    if(!lockFile.exists()) {
+                        //evicted while waiting for the lock
+                        lock.release();
+                        lockChannel.close();
+                        hold(cacheDir);
+                        return;
+                    }
+                }catch(IOException ex) {
+                    lockChannel.close();
+                    throw ex;
+                }
+                heldCacheDir = new HeldCacheDir(lock);
+                HELD_CACHE_DIRS.put(cacheDir,
+                        heldCacheDir);
+            }
+            heldCacheDir.holderCount++;
+            Files.setLastModifiedTime(new File(cacheDir,
+                            LOCK_FILE_NAME).toPath(),
+                    FileTime.fromMillis(System.currentTimeMillis()));
+        }
+    }
+
+    private static void unhold(File cacheDir) throws IOException {
+        synchronized(HELD_CACHE_DIRS) {
+            HeldCacheDir heldCacheDir = HELD_CACHE_DIRS.get(cacheDir);
+            if(heldCacheDir == null) {
+                return;
+            }
+            heldCacheDir.holderCount--;
+            if(heldCacheDir.holderCount == 0) {
+                HELD_CACHE_DIRS.remove(cacheDir);
+                heldCacheDir.lock.release();
+                heldCacheDir.lock.channel().close();
+            }
+        }
+    }
+
+    public synchronized boolean isInited() {
+        return cacheDir != null;
+    }
+
+    public synchronized File getConfigSite() {
+        checkInited();
+        return new File(cacheDir,
+                CONFIG_SITE_FILE_NAME);
+    }
+
+    /**
+     * Points {@code env} to {@code config.site} which seeds the private cache
+     * file {@code config.cache} in the working directory of every
+     * {@code configure} run with the shared cache.
+     *
+     * @param env the environment of the {@code configure} process
+     * @param cacheListFile the file the paths of the private cache files are
+     *     appended to or {@code null} if the caller knows them
+     */
+    public synchronized void prepare(Map<String, String> env,
+            File cacheListFile) {
+        checkInited();
+        env.put(CONFIG_SITE,
+                getConfigSite().getAbsolutePath());
+        env.put(CONFIG_CACHE_ENV,
+                new File(cacheDir,
+                        CACHE_FILE_NAME).getAbsolutePath());
+        if(cacheListFile != null) {
+            env.put(CONFIG_CACHE_LIST_ENV,
+                    cacheListFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Merges the results of a successful {@code configure} run into the
+     * shared cache.
+     *
+     * @param privateCacheFile the private cache file in the working directory
+     *     of the run
+     * @return the number of entries of the shared cache after merging
+     * @throws IOException if an I/O exception occurs
+     */
+    public int merge(File privateCacheFile) throws IOException {
+        return merge(Collections.singletonList(privateCacheFile));
+    }
+
+    /**
+     * Merges the results of the successful {@code configure} runs listed in a
+     * list file passed to {@link #prepare(Map, File) }.
+     *
+     * @param cacheListFile the list file
+     * @return the number of entries of the shared cache after merging
+     * @throws IOException if an I/O exception occurs
+     */
+    public int mergeListed(File cacheListFile) throws IOException {
+        List<File> privateCacheFiles = new LinkedList<>();
+        if(cacheListFile.exists()) {
+            for(String line : Files.readAllLines(cacheListFile.toPath(),
+                    StandardCharsets.UTF_8)) {
+                if(!line.isEmpty()) {
+                    privateCacheFiles.add(new File(line));
+                }
+            }
+        }
+        return merge(privateCacheFiles);
+    }
+
+    private synchronized int merge(List<File> privateCacheFiles) throws IOException {
+        checkInited();
+        File sharedCacheFile = new File(cacheDir,
+                CACHE_FILE_NAME);
+        Map<String, String> entries = new TreeMap<>();
+        if(sharedCacheFile.exists()) {
+            readEntries(sharedCacheFile,
+                    entries);
+        }
+        for(File privateCacheFile : privateCacheFiles) {
+            if(privateCacheFile.exists()) {
+                readEntries(privateCacheFile,
+                        entries);
+            }
+        }
+        //wrappers in other processes might merge into the same directory
+        File sharedCacheTmpFile = Files.createTempFile(cacheDir.toPath(),
+                CACHE_FILE_NAME, //prefix
+                null //suffix
+        ).toFile();
+        Files.write(sharedCacheTmpFile.toPath(),
+                entries.values(),
+                StandardCharsets.UTF_8);
+        Files.move(sharedCacheTmpFile.toPath(),
+                sharedCacheFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.debug(String.format("merged %s into autoconf cache %s which has %d entries now",
+                privateCacheFiles,
+                sharedCacheFile.getAbsolutePath(),
+                entries.size()));
+        return entries.size();
+    }
+
+    private static void readEntries(File cacheFile,
+            Map<String, String> entries) throws IOException {
+        for(String line : Files.readAllLines(cacheFile.toPath(),
+                StandardCharsets.UTF_8)) {
+            Matcher matcher = ENTRY_PATTERN.matcher(line);
+            if(!matcher.find()) {
+                //comments and continuation lines of multi-line values which
+                //can't be merged line by line
+                continue;
+            }
+            String name = matcher.group(2);
+            if(!isShareable(name,
+                    line)) {
+                continue;
+            }
+            entries.put(name,
+                    line);
+        }
+    }
+
+    /**
+     * Whether a cache entry is invariant for the host and therefore
+     * independent from the package and the content of the installation
+     * prefix.
+     */
+    private static boolean isShareable(String name,
+            String line) {
+        if(!SHAREABLE_NAME_PATTERN.matcher(name).matches()) {
+            return false;
+        }
+        //values spanning multiple lines are only partially contained in the
+        //line
+        return line.endsWith("}") || line.endsWith("'");
+    }
+
+    private void checkInited() {
+        if(cacheDir == null) {
+            throw new IllegalStateException("autoconf cache hasn't been initialized");
+        }
+    }
+
+    private static class HeldCacheDir {
+        private final FileLock lock;
+        private int holderCount;
+
+        HeldCacheDir(FileLock lock) {
+            this.lock = lock;
+        }
+    }
+}
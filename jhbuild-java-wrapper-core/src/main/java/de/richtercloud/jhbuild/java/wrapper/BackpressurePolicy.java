@@ -0,0 +1,39 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+/**
+ * What happens to output lines if the buffer of a
+ * {@link BuildOutputSubscription} is full because the subscriber doesn't
+ * keep up.
+ *
+ * @author richter
+ */
+public enum BackpressurePolicy {
+    /**
+     * Discards the line and counts it (see
+     * {@link BuildOutputSubscription#getDroppedCount() }), so that the build
+     * isn't slowed down.
+     */
+    DROP,
+    /**
+     * Waits until the subscriber took a line from the buffer. Since the
+     * output of all processes is read by one thread this stops reading the
+     * output of all build steps and eventually blocks them when their pipes
+     * are full. Stalled build steps aren't detected while the output isn't
+     * read. Only suitable for subscribers which mustn't lose lines.
+     */
+    BLOCK
+}
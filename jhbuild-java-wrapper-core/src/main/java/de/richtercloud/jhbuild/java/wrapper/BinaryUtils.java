@@ -15,12 +15,24 @@
 package de.richtercloud.jhbuild.java.wrapper;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 /**
  *
  * @author richter
  */
 public final class BinaryUtils {
+    /**
+     * Shared by all lookups, so that the directories of the search path are
+     * only read again if they change.
+     */
+    private final static PathResolver PATH_RESOLVER = new PathResolver();
 
     /**
      * Does what
@@ -43,7 +55,8 @@ public final class BinaryUtils {
      * binary name which can be found in the specified path. Valid means that it
      * is a file and can be executed. The check is performed for the binary
      * specification first, then it's tried as name with every element of
-     * {@code path} which is split with {@link File#pathSeparator}.
+     * {@code path} which is split with {@link File#pathSeparator} (see
+     * {@link PathResolver}).
      * @param binary the binary specification (path or name)
      * @param name the name of the binary (used to provide comprehensive error
      *     messages)
@@ -52,7 +65,6 @@ public final class BinaryUtils {
      * @throws BinaryValidationException if the binary can't be found or is
      *     invalid
      */
-    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
     public static void validateBinary(String binary,
             String name,
             String path) throws BinaryValidationException {
@@ -77,14 +89,9 @@ public final class BinaryUtils {
             }
             return;
         }
-        String[] pathSplits = path.split(File.pathSeparator);
-        for(String pathSplit : pathSplits) {
-            binaryFile = new File(pathSplit, binary);
-            if(binaryFile.exists()
-                    && binaryFile.isFile()
-                    && binaryFile.canExecute()) {
-                return;
-            }
+        if(PATH_RESOLVER.resolve(binary,
+                path) != null) {
+            return;
         }
         throw new BinaryValidationException(String.format("%s binary path '%s' points to an inexisting location or to a location which is not a file or can't be executed (directly or in path '%s')",
                 name,
@@ -92,6 +99,64 @@ public final class BinaryUtils {
                 path));
     }
 
+    /**
+     * Resolves a binary the same way
+     * {@link #validateBinary(java.lang.String, java.lang.String, java.lang.String) }
+     * looks it up.
+     *
+     * @param binary the binary specification (path or name)
+     * @param path the search path in the OS format
+     * @return the executable file or {@code null} if the binary can't be found
+     *     or is invalid
+     */
+    public static File resolveBinary(String binary,
+            String path) {
+        return resolveBinaries(Collections.singletonList(binary),
+                path).get(binary);
+    }
+
+    /**
+     * Resolves all {@code binaries} like
+     * {@link #resolveBinary(java.lang.String, java.lang.String) } with one
+     * pass over {@code path}. The returned absolute files can be used to
+     * start the binaries without another lookup.
+     *
+     * @param binaries the binary specifications (pathes or names)
+     * @param path the search path in the OS format
+     * @return a map containing the absolute executable file of every binary
+     *     which has been found in the order of {@code binaries}
+     */
+    public static Map<String, File> resolveBinaries(Collection<String> binaries,
+            String path) {
+        Map<String, File> resolved = new HashMap<>();
+        List<String> names = new LinkedList<>();
+        for(String binary : binaries) {
+            if(binary == null || binary.isEmpty()) {
+                throw new IllegalArgumentException("binary mustn't be null or empty");
+            }
+            File binaryFile = new File(binary);
+            if(binaryFile.exists()) {
+                if(binaryFile.isFile() && binaryFile.canExecute()) {
+                    resolved.put(binary,
+                            binaryFile.getAbsoluteFile());
+                }
+            }else {
+                names.add(binary);
+            }
+        }
+        resolved.putAll(PATH_RESOLVER.resolveAll(names,
+                path));
+        Map<String, File> retValue = new LinkedHashMap<>();
+        for(String binary : binaries) {
+            File binaryFile = resolved.get(binary);
+            if(binaryFile != null) {
+                retValue.put(binary,
+                        binaryFile);
+            }
+        }
+        return retValue;
+    }
+
     private BinaryUtils() {
     }
 }
@@ -14,6 +14,8 @@
  */
 package de.richtercloud.jhbuild.java.wrapper;
 
+import java.io.File;
+
 /**
  * An exception occuring in a build outside the automated steps of jhbuild.
  *
@@ -21,12 +23,70 @@ package de.richtercloud.jhbuild.java.wrapper;
  */
 public class BuildFailureException extends Exception {
     private static final long serialVersionUID = 1L;
+    private final String moduleName;
+    private final BuildStep buildFailureStep;
+    private final String stdout;
+    private final String stderr;
+    private final File logFile;
 
     public BuildFailureException(String moduleName,
             BuildStep buildFailureStep,
             String stdout,
             String stderr) {
-        super(String.format("build failure in module '%s' in step %s%s%s",
+        this(moduleName,
+                buildFailureStep,
+                stdout,
+                stderr,
+                null //logFile
+        );
+    }
+
+    /**
+     * Creates a new exception.
+     *
+     * @param moduleName the module which failed to build
+     * @param buildFailureStep the failed step
+     * @param stdout the tail of {@code stdout} of the failed step or
+     *     {@code null} if it hasn't been captured
+     * @param stderr the tail of {@code stderr} of the failed step or
+     *     {@code null} if it hasn't been captured
+     * @param logFile the file containing the complete output of the failed
+     *     step or {@code null} if it hasn't been logged
+     */
+    public BuildFailureException(String moduleName,
+            BuildStep buildFailureStep,
+            String stdout,
+            String stderr,
+            File logFile) {
+        this("build failure",
+                moduleName,
+                buildFailureStep,
+                stdout,
+                stderr,
+                logFile);
+    }
+
+    /**
+     * Creates a new exception whose message starts with {@code reason}.
+     *
+     * @param reason the short description of the failure
+     * @param moduleName the module which failed to build
+     * @param buildFailureStep the failed step
+     * @param stdout the tail of {@code stdout} of the failed step or
+     *     {@code null} if it hasn't been captured
+     * @param stderr the tail of {@code stderr} of the failed step or
+     *     {@code null} if it hasn't been captured
+     * @param logFile the file containing the complete output of the failed
+     *     step or {@code null} if it hasn't been logged
+     */
+    protected BuildFailureException(String reason,
+            String moduleName,
+            BuildStep buildFailureStep,
+            String stdout,
+            String stderr,
+            File logFile) {
+        super(String.format("%s in module '%s' in step %s%s%s%s",
+                reason,
                 moduleName,
                 buildFailureStep.name(),
                 stdout != null
@@ -36,6 +96,35 @@ public class BuildFailureException extends Exception {
                 stderr != null
                         ? String.format(". Stderr was: '%s'",
                                 stderr)
+                        : "",
+                logFile != null
+                        ? String.format(". Full log is in %s",
+                                logFile.getAbsolutePath())
                         : ""));
+        this.moduleName = moduleName;
+        this.buildFailureStep = buildFailureStep;
+        this.stdout = stdout;
+        this.stderr = stderr;
+        this.logFile = logFile;
+    }
+
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    public BuildStep getBuildFailureStep() {
+        return buildFailureStep;
+    }
+
+    public String getStdout() {
+        return stdout;
+    }
+
+    public String getStderr() {
+        return stderr;
+    }
+
+    public File getLogFile() {
+        return logFile;
     }
 }
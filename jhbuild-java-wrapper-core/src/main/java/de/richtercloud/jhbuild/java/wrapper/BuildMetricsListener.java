@@ -0,0 +1,32 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+/**
+ * Gets notified about the resource usage of every build step.
+ *
+ * @author richter
+ */
+@FunctionalInterface
+public interface BuildMetricsListener {
+
+    /**
+     * Invoked after a build step finished, successfully or not. Might be
+     * invoked concurrently since prerequisites are built concurrently.
+     *
+     * @param metrics the metrics of the step
+     */
+    void onBuildStepFinished(BuildStepMetrics metrics);
+}
@@ -0,0 +1,122 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the {@link BuildStepMetrics} of a run and writes them as JSON
+ * report. The report contains all steps in the order they finished and the
+ * summed wall time per module so that the dominating prerequisites and steps
+ * can be identified.
+ *
+ * @author richter
+ */
+public class BuildMetricsReport implements BuildMetricsListener {
+    private final List<BuildStepMetrics> steps = new ArrayList<>();
+
+    @Override
+    public synchronized void onBuildStepFinished(BuildStepMetrics metrics) {
+        steps.add(metrics);
+    }
+
+    public synchronized List<BuildStepMetrics> getSteps() {
+        return new ArrayList<>(steps);
+    }
+
+    public synchronized void clear() {
+        steps.clear();
+    }
+
+    /**
+     * Creates the JSON representation of the report.
+     *
+     * @return the JSON string
+     */
+    public synchronized String toJson() {
+        Map<String, Long> moduleWallTimes = new LinkedHashMap<>();
+        StringBuilder retValue = new StringBuilder(256).append("{\n  \"steps\": [");
+        boolean first = true;
+        for(BuildStepMetrics step : steps) {
+            moduleWallTimes.merge(step.getModuleName(),
+                    step.getWallTimeMillis(),
+                    Long::sum);
+            retValue.append(first ? "\n" : ",\n")
+                    .append(String.format("    {\"module\": %s, \"step\": %s, "
+                            + "\"wallTimeMillis\": %d, \"userTimeMillis\": %d, "
+                            + "\"systemTimeMillis\": %d, \"peakRssBytes\": %d, "
+                            + "\"bytesRead\": %d, \"bytesWritten\": %d}",
+                            quote(step.getModuleName()),
+                            quote(step.getBuildStep().name()),
+                            step.getWallTimeMillis(),
+                            step.getUserTimeMillis(),
+                            step.getSystemTimeMillis(),
+                            step.getPeakRssBytes(),
+                            step.getBytesRead(),
+                            step.getBytesWritten()));
+            first = false;
+        }
+        retValue.append("\n  ],\n  \"moduleWallTimeMillis\": {");
+        first = true;
+        for(Map.Entry<String, Long> moduleWallTime : moduleWallTimes.entrySet()) {
+            retValue.append(first ? "\n" : ",\n")
+                    .append(String.format("    %s: %d",
+                            quote(moduleWallTime.getKey()),
+                            moduleWallTime.getValue()));
+            first = false;
+        }
+        retValue.append("\n  }\n}\n");
+        return retValue.toString();
+    }
+
+    /**
+     * Writes the JSON representation of the report to {@code file}.
+     *
+     * @param file the file to write
+     * @throws IOException if an I/O exception occurs
+     */
+    public void write(File file) throws IOException {
+        Files.write(file.toPath(),
+                toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String quote(String value) {
+        StringBuilder retValue = new StringBuilder(value.length()+2).append('"');
+        for(char character : value.toCharArray()) {
+            switch(character) {
+                case '"':
+                    retValue.append("\\\"");
+                    break;
+                case '\\':
+                    retValue.append("\\\\");
+                    break;
+                default:
+                    if(character < 0x20) {
+                        retValue.append(String.format("\\u%04x", (int) character));
+                    }else {
+                        retValue.append(character);
+                    }
+            }
+        }
+        return retValue.append('"').toString();
+    }
+}
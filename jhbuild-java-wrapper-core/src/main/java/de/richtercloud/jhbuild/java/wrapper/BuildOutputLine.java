@@ -0,0 +1,88 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+/**
+ * A line of the output of a build step.
+ *
+ * @author richter
+ */
+public class BuildOutputLine {
+
+    /**
+     * The stream a line has been written to.
+     */
+    public enum Stream {
+        STDOUT,
+        STDERR
+    }
+    private final String moduleName;
+    private final BuildStep buildStep;
+    private final Stream stream;
+    private final long timestampMillis;
+    private final String text;
+
+    /**
+     * Creates a new line.
+     *
+     * @param moduleName the name of the prerequisite or module
+     * @param buildStep the build step which wrote the line
+     * @param stream the stream the line has been written to
+     * @param timestampMillis the time the line has been read in milliseconds
+     *     since the epoch
+     * @param text the line without line terminator
+     */
+    public BuildOutputLine(String moduleName,
+            BuildStep buildStep,
+            Stream stream,
+            long timestampMillis,
+            String text) {
+        this.moduleName = moduleName;
+        this.buildStep = buildStep;
+        this.stream = stream;
+        this.timestampMillis = timestampMillis;
+        this.text = text;
+    }
+
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    public BuildStep getBuildStep() {
+        return buildStep;
+    }
+
+    public Stream getStream() {
+        return stream;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s %s %d: %s",
+                moduleName,
+                buildStep,
+                stream,
+                timestampMillis,
+                text);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Distributes build output lines to all open
+ * {@link BuildOutputSubscription}s.
+ *
+ * @author richter
+ */
+final class BuildOutputPublisher {
+    private final List<BuildOutputSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    /**
+     * The number of {@link #publish(BuildOutputLine) } invokations which are
+     * currently waiting for a subscription with
+     * {@link BackpressurePolicy#BLOCK}.
+     */
+    private final AtomicInteger blockedCount = new AtomicInteger();
+    /**
+     * The number of times publishing started to block.
+     */
+    private final AtomicLong blockingCount = new AtomicLong();
+
+    /**
+     * Creates a new subscription which receives all lines published after
+     * this invokation.
+     *
+     * @param subscriber the subscriber
+     * @param bufferSize the maximum number of lines buffered for the
+     *     subscriber
+     * @param backpressurePolicy what happens if the buffer is full
+     * @return the new subscription
+     */
+    BuildOutputSubscription subscribe(BuildOutputSubscriber subscriber,
+            int bufferSize,
+            BackpressurePolicy backpressurePolicy) {
+        BuildOutputSubscription retValue = new BuildOutputSubscription(subscriber,
+                bufferSize,
+                backpressurePolicy,
+                this);
+        subscriptions.add(retValue);
+        return retValue;
+    }
+
+    void remove(BuildOutputSubscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    boolean hasSubscriptions() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Passes {@code line} to all subscriptions.
+     *
+     * @param line the line
+     * @throws InterruptedException if the thread is interrupted while
+     *     waiting for a subscription with {@link BackpressurePolicy#BLOCK}
+     */
+    void publish(BuildOutputLine line) throws InterruptedException {
+        for(BuildOutputSubscription subscription : subscriptions) {
+            subscription.publish(line);
+        }
+    }
+
+    void blockingStarted() {
+        blockingCount.incrementAndGet();
+        blockedCount.incrementAndGet();
+    }
+
+    void blockingEnded() {
+        blockedCount.decrementAndGet();
+    }
+
+    /**
+     * Whether publishing currently waits for a subscriber, i.e. the output of
+     * processes isn't read because of a subscriber rather than because the
+     * processes stalled.
+     *
+     * @return {@code true} if publishing blocks, {@code false} otherwise
+     */
+    boolean isBlocked() {
+        return blockedCount.get() > 0;
+    }
+
+    /**
+     * The number of times publishing started to block. Allows to notice
+     * blocking which ended between two invokations of {@link #isBlocked() }.
+     *
+     * @return the number of times publishing started to block
+     */
+    long getBlockingCount() {
+        return blockingCount.get();
+    }
+}
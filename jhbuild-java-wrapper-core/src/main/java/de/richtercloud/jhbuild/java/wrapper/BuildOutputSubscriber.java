@@ -0,0 +1,33 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+/**
+ * Receives the output of build steps line by line (see
+ * {@link JHBuildJavaWrapper#subscribeBuildOutput(BuildOutputSubscriber, int, BackpressurePolicy) }).
+ *
+ * @author richter
+ */
+@FunctionalInterface
+public interface BuildOutputSubscriber {
+
+    /**
+     * Invoked for every line on the delivery thread of the subscription, so
+     * that lines are delivered in the order they've been read.
+     *
+     * @param line the line
+     */
+    void onLine(BuildOutputLine line);
+}
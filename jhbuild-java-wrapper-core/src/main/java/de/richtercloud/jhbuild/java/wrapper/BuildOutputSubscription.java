@@ -0,0 +1,163 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers build output lines to one {@link BuildOutputSubscriber} from a
+ * bounded buffer on a dedicated thread, so that the subscriber neither runs
+ * on the thread reading the process output nor lets the heap grow if it's
+ * slow. What happens if the buffer is full is determined by a
+ * {@link BackpressurePolicy}.
+ *
+ * @author richter
+ */
+public final class BuildOutputSubscription implements Closeable {
+    private final static Logger LOGGER = LoggerFactory.getLogger(BuildOutputSubscription.class);
+    private final static long OFFER_TIMEOUT_MILLIS = 100;
+    private final static AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private final BuildOutputSubscriber subscriber;
+    private final BlockingQueue<BuildOutputLine> buffer;
+    private final BackpressurePolicy backpressurePolicy;
+    private final BuildOutputPublisher publisher;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Thread deliveryThread;
+    private volatile boolean closed;
+
+    BuildOutputSubscription(BuildOutputSubscriber subscriber,
+            int bufferSize,
+            BackpressurePolicy backpressurePolicy,
+            BuildOutputPublisher publisher) {
+        if(subscriber == null) {
+            throw new IllegalArgumentException("subscriber mustn't be null");
+        }
+        if(bufferSize < 1) {
+            throw new IllegalArgumentException(String.format("bufferSize value of less than 1 doesn't make sense (was %d)",
+                    bufferSize));
+        }
+        if(backpressurePolicy == null) {
+            throw new IllegalArgumentException("backpressurePolicy mustn't be null");
+        }
+        this.subscriber = subscriber;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.backpressurePolicy = backpressurePolicy;
+        this.publisher = publisher;
+        this.deliveryThread = new Thread(this::deliver,
+                String.format("build-output-subscriber-%d",
+                        THREAD_COUNTER.incrementAndGet()));
+        deliveryThread.setDaemon(true);
+        deliveryThread.start();
+    }
+
+    /**
+     * Adds {@code line} to the buffer or handles a full buffer according to
+     * the backpressure policy.
+     *
+     * @param line the line to deliver
+     * @throws InterruptedException if the thread is interrupted while
+     *     waiting for space in the buffer
+     */
+    void publish(BuildOutputLine line) throws InterruptedException {
+        if(closed) {
+            return;
+        }
+        switch(backpressurePolicy) {
+            case DROP:
+                if(!buffer.offer(line)) {
+                    droppedCount.incrementAndGet();
+                }
+                break;
+            case BLOCK:
+                if(buffer.offer(line)) {
+                    break;
+                }
+                //the watchdog mustn't consider processes stalled because
+                //their output isn't read while waiting
+                publisher.blockingStarted();
+                try {
+                    //checks regularly whether the subscription has been
+                    //closed since nobody takes lines after that
+                    while(!buffer.offer(line,
+                            OFFER_TIMEOUT_MILLIS,
+                            TimeUnit.MILLISECONDS)) {
+                        if(closed) {
+                            return;
+                        }
+                    }
+                }finally {
+                    publisher.blockingEnded();
+                }
+                break;
+            default:
+                throw new IllegalStateException(String.format("backpressure policy %s not supported",
+                        backpressurePolicy));
+        }
+    }
+
+    private void deliver() {
+        try {
+            while(!closed) {
+                BuildOutputLine line = buffer.take();
+                try {
+                    subscriber.onLine(line);
+                }catch(RuntimeException ex) {
+                    LOGGER.warn("build output subscriber failed",
+                            ex);
+                }
+            }
+        }catch(InterruptedException ex) {
+            LOGGER.trace("build output delivery interrupted",
+                    ex);
+        }
+    }
+
+    /**
+     * The number of lines which have been discarded because the buffer was
+     * full.
+     *
+     * @return the number of dropped lines
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * The number of lines waiting for delivery.
+     *
+     * @return the number of buffered lines
+     */
+    public int getBufferedCount() {
+        return buffer.size();
+    }
+
+    /**
+     * Stops the delivery. Lines which haven't been delivered yet are
+     * discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        publisher.remove(this);
+        deliveryThread.interrupt();
+    }
+}
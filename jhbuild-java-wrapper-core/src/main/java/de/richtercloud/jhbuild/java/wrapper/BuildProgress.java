@@ -0,0 +1,103 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+/**
+ * The estimated progress of a running build step. Values which can't be
+ * estimated (yet) are {@link #UNKNOWN}.
+ *
+ * @author richter
+ */
+public class BuildProgress {
+    public final static long UNKNOWN = -1;
+    private final String moduleName;
+    private final BuildStep buildStep;
+    private final long completedUnits;
+    private final long expectedUnits;
+    private final int percentDone;
+    private final long elapsedMillis;
+    private final long etaMillis;
+
+    /**
+     * Creates a new progress.
+     *
+     * @param moduleName the name of the prerequisite or module
+     * @param buildStep the build step
+     * @param completedUnits the number of compile, link and similar lines
+     *     the step printed so far
+     * @param expectedUnits the number of units the step printed when it
+     *     succeeded last time or {@link #UNKNOWN}
+     * @param percentDone the estimated percentage of completion between
+     *     {@code 0} and {@code 100} or {@link #UNKNOWN}
+     * @param elapsedMillis the time since the start of the step
+     * @param etaMillis the estimated time until the step completes or
+     *     {@link #UNKNOWN}
+     */
+    public BuildProgress(String moduleName,
+            BuildStep buildStep,
+            long completedUnits,
+            long expectedUnits,
+            int percentDone,
+            long elapsedMillis,
+            long etaMillis) {
+        this.moduleName = moduleName;
+        this.buildStep = buildStep;
+        this.completedUnits = completedUnits;
+        this.expectedUnits = expectedUnits;
+        this.percentDone = percentDone;
+        this.elapsedMillis = elapsedMillis;
+        this.etaMillis = etaMillis;
+    }
+
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    public BuildStep getBuildStep() {
+        return buildStep;
+    }
+
+    public long getCompletedUnits() {
+        return completedUnits;
+    }
+
+    public long getExpectedUnits() {
+        return expectedUnits;
+    }
+
+    public int getPercentDone() {
+        return percentDone;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getEtaMillis() {
+        return etaMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s: %d of %d units, %d %%, elapsed %d ms, ETA %d ms",
+                moduleName,
+                buildStep,
+                completedUnits,
+                expectedUnits,
+                percentDone,
+                elapsedMillis,
+                etaMillis);
+    }
+}
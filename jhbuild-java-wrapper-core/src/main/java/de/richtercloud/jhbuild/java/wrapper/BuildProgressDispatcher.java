@@ -0,0 +1,112 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Passes progress notifications to {@link BuildProgressListener}s on a
+ * delivery thread, so that slow listeners don't delay reading the output of
+ * build processes on the thread which parses it.
+ *
+ * @author richter
+ */
+final class BuildProgressDispatcher implements BuildProgressListener {
+    private final static Logger LOGGER = LoggerFactory.getLogger(BuildProgressDispatcher.class);
+    /*
+    internal implementation notes:
+    - only the latest progress of every build step is kept until it's
+    delivered, so that notifications don't pile up if listeners are slower than
+    the build
+    */
+    private final List<BuildProgressListener> listeners;
+    /**
+     * The progress which hasn't been delivered yet by module name and build
+     * step.
+     */
+    private final Map<String, BuildProgress> pending = new LinkedHashMap<>();
+    /**
+     * Started with the first notification.
+     */
+    private Thread deliveryThread;
+
+    /**
+     * Creates a new dispatcher.
+     *
+     * @param listeners the listeners to notify which can be modified
+     *     concurrently
+     */
+    BuildProgressDispatcher(List<BuildProgressListener> listeners) {
+        if(listeners == null) {
+            throw new IllegalArgumentException("listeners mustn't be null");
+        }
+        this.listeners = listeners;
+    }
+
+    /**
+     * Queues {@code progress} for delivery and returns immediately.
+     *
+     * @param progress the progress
+     */
+    @Override
+    public synchronized void onProgress(BuildProgress progress) {
+        pending.put(String.format("%s %s",
+                        progress.getModuleName(),
+                        progress.getBuildStep()),
+                progress);
+        if(deliveryThread == null) {
+            deliveryThread = new Thread(this::deliver,
+                    "build-progress-dispatcher");
+            deliveryThread.setDaemon(true);
+            deliveryThread.start();
+        }
+        notifyAll();
+    }
+
+    private void deliver() {
+        try {
+            while(true) {
+                List<BuildProgress> progresses;
+                synchronized(this) {
+                    while(pending.isEmpty()) {
+                        wait();
+                    }
+                    progresses = new ArrayList<>(pending.values());
+                    pending.clear();
+                }
+                for(BuildProgress progress : progresses) {
+                    LOGGER.debug(String.format("build progress: %s",
+                            progress));
+                    for(BuildProgressListener listener : listeners) {
+                        try {
+                            listener.onProgress(progress);
+                        }catch(RuntimeException ex) {
+                            LOGGER.warn("build progress listener failed",
+                                    ex);
+                        }
+                    }
+                }
+            }
+        }catch(InterruptedException ex) {
+            LOGGER.trace("build progress delivery interrupted",
+                    ex);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+/**
+ * Gets notified about the estimated progress of running build steps.
+ *
+ * @author richter
+ */
+@FunctionalInterface
+public interface BuildProgressListener {
+
+    /**
+     * Invoked while a build step is running, at most every few hundred
+     * milliseconds per step. Might be invoked concurrently since
+     * prerequisites are built concurrently. Implementations have to return
+     * quickly because the output of all processes is read by the invoking
+     * thread.
+     *
+     * @param progress the progress of the step
+     */
+    void onProgress(BuildProgress progress);
+}
@@ -0,0 +1,217 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the directory builds are performed in. Builds are performed in a
+ * RAM-backed directory (e.g. {@code /dev/shm}) if one is configured and it
+ * has enough space left for the estimated size of the build tree, otherwise
+ * they're performed on disk. The estimated sizes of running builds are
+ * reserved so that concurrent builds don't overcommit the RAM-backed
+ * directory.
+ *
+ * Every selector creates its own private subdirectory of the RAM-backed
+ * directory when it's needed first, so that wrappers of the same or of
+ * different users never delete or access each other's build trees.
+ *
+ * @author richter
+ */
+public class BuildRootSelector {
+    private final static Logger LOGGER = LoggerFactory.getLogger(BuildRootSelector.class);
+    /**
+     * The RAM-backed directory available on most Linux systems.
+     */
+    public final static File TMPFS_DIR_DEFAULT = new File("/dev/shm");
+    /**
+     * The default ratio between the size of a build tree (sources, objects
+     * and staged installation) and the size of its source tree.
+     */
+    public final static double SIZE_FACTOR_DEFAULT = 4.0;
+    private final static String TMPFS_SUBDIR_PREFIX = "jhbuild-java-wrapper-build-";
+    private final File diskBuildRootDir;
+    private final File tmpfsDir;
+    private final double sizeFactor;
+    /**
+     * The sum of the estimated sizes of all builds in progress in
+     * {@link #tmpfsDir}.
+     */
+    private long reserved;
+    /**
+     * The private subdirectory of {@link #tmpfsDir}. {@code null} until it's
+     * needed first.
+     */
+    private File tmpfsBuildRootDir;
+
+    /**
+     * Creates a new selector.
+     *
+     * @param diskBuildRootDir the build root on persistent storage
+     * @param tmpfsDir the RAM-backed directory or {@code null} in order to
+     *     always build on disk
+     * @param sizeFactor the ratio between the size of a build tree and the
+     *     size of its source tree used to estimate the required space
+     */
+    public BuildRootSelector(File diskBuildRootDir,
+            File tmpfsDir,
+            double sizeFactor) {
+        if(diskBuildRootDir == null) {
+            throw new IllegalArgumentException("diskBuildRootDir mustn't be null");
+        }
+        if(sizeFactor < 1) {
+            throw new IllegalArgumentException(String.format("sizeFactor value of less than 1 doesn't make sense (was %f)",
+                    sizeFactor));
+        }
+        this.diskBuildRootDir = diskBuildRootDir;
+        this.tmpfsDir = tmpfsDir;
+        this.sizeFactor = sizeFactor;
+    }
+
+    public File getDiskBuildRootDir() {
+        return diskBuildRootDir;
+    }
+
+    public File getTmpfsDir() {
+        return tmpfsDir;
+    }
+
+    /**
+     * Selects the build root for a build of {@code sourceDir}. The returned
+     * reservation has to be closed when the build finished.
+     *
+     * @param sourceDir the source tree to build
+     * @return the reservation containing the selected build root
+     * @throws IOException if an I/O exception occurs while determining the
+     *     size of {@code sourceDir} or creating the build root
+     */
+    public Reservation select(File sourceDir) throws IOException {
+        if(tmpfsDir == null) {
+            return new Reservation(diskBuildRootDir,
+                    0);
+        }
+        if(!tmpfsDir.isDirectory() || !tmpfsDir.canWrite()) {
+            LOGGER.debug(String.format("RAM-backed directory %s doesn't exist or isn't writable, building on disk",
+                    tmpfsDir.getAbsolutePath()));
+            return new Reservation(diskBuildRootDir,
+                    0);
+        }
+        long estimatedSize = (long) (sizeOf(sourceDir.toPath())*sizeFactor);
+        synchronized(this) {
+            long available = tmpfsDir.getUsableSpace()-reserved;
+            if(estimatedSize > available) {
+                LOGGER.info(String.format("estimated build size of %s (%d bytes) exceeds available space in %s (%d bytes), building on disk",
+                        sourceDir.getAbsolutePath(),
+                        estimatedSize,
+                        tmpfsDir.getAbsolutePath(),
+                        available));
+                return new Reservation(diskBuildRootDir,
+                        0);
+            }
+            reserved += estimatedSize;
+        }
+        try {
+            return new Reservation(getTmpfsBuildRootDir(),
+                    estimatedSize);
+        }catch(IOException ex) {
+            release(estimatedSize);
+            throw ex;
+        }
+    }
+
+    /**
+     * Gets the private subdirectory of the RAM-backed directory and creates it
+     * if that didn't happen yet. The subdirectory is only accessible by the
+     * current user and is deleted when the JVM exits if it's empty.
+     *
+     * @return the private subdirectory
+     * @throws IOException if an I/O exception occurs during creation
+     * @throws IllegalStateException if no RAM-backed directory is configured
+     */
+    public synchronized File getTmpfsBuildRootDir() throws IOException {
+        if(tmpfsDir == null) {
+            throw new IllegalStateException("no RAM-backed directory configured");
+        }
+        if(tmpfsBuildRootDir == null) {
+            //createTempDirectory creates the directory with permissions 0700
+            tmpfsBuildRootDir = Files.createTempDirectory(tmpfsDir.toPath(),
+                    TMPFS_SUBDIR_PREFIX).toFile();
+            tmpfsBuildRootDir.deleteOnExit();
+        }
+        return tmpfsBuildRootDir;
+    }
+
+    private synchronized void release(long size) {
+        reserved -= size;
+    }
+
+    private static long sizeOf(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            return paths.filter(Files::isRegularFile)
+                    .mapToLong(file -> file.toFile().length())
+                    .sum();
+        }
+    }
+
+    /**
+     * A build root selected for one build.
+     */
+    public final class Reservation implements Closeable {
+        private final File buildRootDir;
+        private final long size;
+        private boolean closed;
+
+        private Reservation(File buildRootDir,
+                long size) {
+            this.buildRootDir = buildRootDir;
+            this.size = size;
+        }
+
+        public File getBuildRootDir() {
+            return buildRootDir;
+        }
+
+        /**
+         * Whether the build root is RAM-backed.
+         *
+         * @return {@code true} if the build root is in the RAM-backed
+         *     directory, {@code false} if it's on disk
+         */
+        public boolean isTmpfs() {
+            return !buildRootDir.equals(diskBuildRootDir);
+        }
+
+        /**
+         * Releases the reserved space.
+         */
+        @Override
+        public void close() {
+            synchronized(BuildRootSelector.this) {
+                if(closed) {
+                    return;
+                }
+                closed = true;
+                release(size);
+            }
+        }
+    }
+}
@@ -29,6 +29,10 @@ public enum BuildStep {
     SCM
     */
     CLONE,
+    /**
+     * Application of a patch to a source root.
+     */
+    PATCH,
     /**
      * Indicates a build failure in the bootstrapping script (formerly called
      * {@code autogen.sh} which is deprecated). Note that some bootstrapping
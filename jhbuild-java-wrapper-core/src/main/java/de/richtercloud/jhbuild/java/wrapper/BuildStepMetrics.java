@@ -0,0 +1,113 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+/**
+ * Resource usage of one build step execution. Values which couldn't be
+ * determined are {@link #UNKNOWN}.
+ *
+ * @author richter
+ */
+public class BuildStepMetrics {
+    public final static long UNKNOWN = -1;
+    private final String moduleName;
+    private final BuildStep buildStep;
+    private final long wallTimeMillis;
+    private final long userTimeMillis;
+    private final long systemTimeMillis;
+    private final long peakRssBytes;
+    private final long bytesRead;
+    private final long bytesWritten;
+
+    /**
+     * Creates new metrics.
+     *
+     * @param moduleName the name of the prerequisite or module
+     * @param buildStep the build step
+     * @param wallTimeMillis the elapsed real time
+     * @param userTimeMillis the user CPU time of the step's process and all
+     *     its children
+     * @param systemTimeMillis the system CPU time of the step's process and
+     *     all its children
+     * @param peakRssBytes the maximum sampled sum of the resident set sizes of
+     *     the step's process tree
+     * @param bytesRead the number of bytes the step's process tree caused to
+     *     be read from storage
+     * @param bytesWritten the number of bytes the step's process tree caused to
+     *     be written to storage
+     */
+    public BuildStepMetrics(String moduleName,
+            BuildStep buildStep,
+            long wallTimeMillis,
+            long userTimeMillis,
+            long systemTimeMillis,
+            long peakRssBytes,
+            long bytesRead,
+            long bytesWritten) {
+        this.moduleName = moduleName;
+        this.buildStep = buildStep;
+        this.wallTimeMillis = wallTimeMillis;
+        this.userTimeMillis = userTimeMillis;
+        this.systemTimeMillis = systemTimeMillis;
+        this.peakRssBytes = peakRssBytes;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+    }
+
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    public BuildStep getBuildStep() {
+        return buildStep;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    public long getUserTimeMillis() {
+        return userTimeMillis;
+    }
+
+    public long getSystemTimeMillis() {
+        return systemTimeMillis;
+    }
+
+    public long getPeakRssBytes() {
+        return peakRssBytes;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s: wall %d ms, user %d ms, sys %d ms, peak RSS %d bytes, read %d bytes, written %d bytes",
+                moduleName,
+                buildStep,
+                wallTimeMillis,
+                userTimeMillis,
+                systemTimeMillis,
+                peakRssBytes,
+                bytesRead,
+                bytesWritten);
+    }
+}
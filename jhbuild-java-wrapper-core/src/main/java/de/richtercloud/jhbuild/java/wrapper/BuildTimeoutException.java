@@ -0,0 +1,88 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+
+/**
+ * Indicates that a build step has been terminated because it exceeded its
+ * deadline or stalled, i.e. neither produced output nor used CPU time for
+ * longer than the inactivity timeout.
+ *
+ * @author richter
+ */
+public class BuildTimeoutException extends BuildFailureException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Why a build step has been terminated.
+     */
+    public enum Reason {
+        /**
+         * The step took longer than the deadline of its {@link BuildStep}.
+         */
+        DEADLINE,
+        /**
+         * The step neither produced output nor used CPU time for longer than
+         * the inactivity timeout.
+         */
+        INACTIVITY
+    }
+    private final Reason reason;
+    private final long timeoutMillis;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param moduleName the module which failed to build
+     * @param buildFailureStep the terminated step
+     * @param reason why the step has been terminated
+     * @param timeoutMillis the exceeded deadline or inactivity timeout
+     * @param stdout the tail of {@code stdout} of the step or {@code null}
+     *     if it hasn't been captured
+     * @param stderr the tail of {@code stderr} of the step or {@code null}
+     *     if it hasn't been captured
+     * @param logFile the file containing the complete output of the step or
+     *     {@code null} if it hasn't been logged
+     */
+    public BuildTimeoutException(String moduleName,
+            BuildStep buildFailureStep,
+            Reason reason,
+            long timeoutMillis,
+            String stdout,
+            String stderr,
+            File logFile) {
+        super(String.format("%s of %d ms exceeded",
+                        reason == Reason.DEADLINE
+                                ? "deadline"
+                                : "inactivity timeout",
+                        timeoutMillis),
+                moduleName,
+                buildFailureStep,
+                stdout,
+                stderr,
+                logFile);
+        this.reason = reason;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+/**
+ * The ways a pristine source tree can be cloned into a build directory.
+ *
+ * @author richter
+ */
+public enum CloneMode {
+    /**
+     * Copy-on-write clone with {@code cp --reflink=always}. Only supported on
+     * file systems with reflink support (e.g. Btrfs and XFS).
+     */
+    REFLINK,
+    /**
+     * Directories are created and files are hard-linked to the pristine tree.
+     * Files which are known to be modified by the build (the targets of
+     * patches) are copied instead. Builds which modify other files in place
+     * change the pristine tree as well. Such changes are detected and repaired
+     * by the manifest validation of the next extraction, but this mode should
+     * only be used for packages known to not modify their sources.
+     */
+    HARD_LINK_FARM,
+    /**
+     * A complete copy using multiple threads.
+     */
+    COPY
+}
@@ -0,0 +1,248 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import com.google.common.base.Charsets;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wraps the C and C++ compiler of builds with {@code ccache} so that
+ * identical sources compiled with identical flags in repeated bootstraps are
+ * taken from the cache.
+ *
+ * @author richter
+ */
+public class CompilerCache {
+    private final static Logger LOGGER = LoggerFactory.getLogger(CompilerCache.class);
+    /*
+    internal implementation notes:
+    - a Java-side hashing cache isn't provided since it would have to reimplement
+    the preprocessor and dependency handling of ccache
+    - statistics are retrieved with `ccache --print-stats` which is available since
+    ccache 3.7, statistics aren't available with older versions
+    */
+    public final static String CCACHE_DEFAULT = "ccache";
+    public final static String CXX_DEFAULT = "c++";
+    /**
+     * The default maximum size of the cache.
+     */
+    public final static long MAX_SIZE_DEFAULT = 5L*1024*1024*1024;
+    private final static String CCACHE_DIR = "CCACHE_DIR";
+    private final static String CCACHE_MAXSIZE = "CCACHE_MAXSIZE";
+    private final String ccache;
+    private final File cacheDir;
+    private final long maxSize;
+
+    /**
+     * Creates a compiler cache using {@code ccache} from {@code PATH} and
+     * storing {@link #MAX_SIZE_DEFAULT} bytes at most in the
+     * {@code ccache} directory in {@link JHBuildJavaWrapper#CONFIG_DIR}.
+     */
+    public CompilerCache() {
+        this(CCACHE_DEFAULT,
+                new File(JHBuildJavaWrapper.CONFIG_DIR,
+                        "ccache"),
+                MAX_SIZE_DEFAULT);
+    }
+
+    /**
+     * Creates a new compiler cache.
+     *
+     * @param ccache the {@code ccache} binary
+     * @param cacheDir the cache directory
+     * @param maxSize the maximum size of the cache in bytes
+     */
+    public CompilerCache(String ccache,
+            File cacheDir,
+            long maxSize) {
+        if(ccache == null || ccache.isEmpty()) {
+            throw new IllegalArgumentException("ccache mustn't be null or empty");
+        }
+        if(cacheDir == null) {
+            throw new IllegalArgumentException("cacheDir mustn't be null");
+        }
+        if(maxSize < 1) {
+            throw new IllegalArgumentException(String.format("maxSize has to be positive (was %d)",
+                    maxSize));
+        }
+        this.ccache = ccache;
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+    }
+
+    public String getCcache() {
+        return ccache;
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Checks whether {@code ccache} can be found.
+     *
+     * @param path the {@code PATH} to search in
+     * @return {@code true} if {@code ccache} can be found, {@code false}
+     *     otherwise
+     */
+    public boolean isAvailable(String path) {
+        return BinaryUtils.resolveBinary(ccache,
+                path) != null;
+    }
+
+    /**
+     * Wraps the compilers in {@code env} with {@code ccache}. {@code CXX} is
+     * only set if {@code cxx} can be found.
+     *
+     * @param env the environment to modify
+     * @param cc the C compiler
+     * @param cxx the C++ compiler
+     * @param path the {@code PATH} to search {@code cxx} in
+     */
+    public void configureEnvironment(Map<String, String> env,
+            String cc,
+            String cxx,
+            String path) {
+        env.put("CC", String.format("%s %s",
+                ccache,
+                cc));
+        if(BinaryUtils.resolveBinary(cxx,
+                path) != null) {
+            env.put("CXX", String.format("%s %s",
+                    ccache,
+                    cxx));
+        }
+        env.put(CCACHE_DIR,
+                cacheDir.getAbsolutePath());
+        //ccache interpretes numbers without suffix as GiB
+        env.put(CCACHE_MAXSIZE,
+                String.format("%dM",
+                        Math.max(1, maxSize/(1024*1024))));
+    }
+
+    /**
+     * Retrieves the current statistics of the cache.
+     *
+     * @param path the {@code PATH} to search {@code ccache} in
+     * @return the statistics or {@code null} if they can't be retrieved
+     * @throws IOException if an I/O exception occurs
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *     for {@code ccache}
+     */
+    public Statistics getStatistics(String path) throws IOException,
+            InterruptedException {
+        File ccacheFile = BinaryUtils.resolveBinary(ccache,
+                path);
+        if(ccacheFile == null) {
+            return null;
+        }
+        ProcessBuilder processBuilder = new ProcessBuilder(ccacheFile.getAbsolutePath(),
+                "--print-stats");
+        processBuilder.environment().put(CCACHE_DIR,
+                cacheDir.getAbsolutePath());
+        processBuilder.redirectErrorStream(true);
+        Process process = processBuilder.start();
+        String output = IOUtils.toString(process.getInputStream(),
+                Charsets.UTF_8);
+        process.waitFor();
+        if(process.exitValue() != 0) {
+            LOGGER.debug(String.format("retrieving ccache statistics failed with output %s",
+                    output));
+            return null;
+        }
+        return Statistics.parse(output);
+    }
+
+    /**
+     * Hit and miss counters of the cache.
+     */
+    public static final class Statistics {
+        private final long hits;
+        private final long misses;
+
+        /**
+         * Parses the output of {@code ccache --print-stats}. Counter names of
+         * ccache 3.7 and 4.x are supported.
+         *
+         * @param output the output
+         * @return the statistics
+         */
+        static Statistics parse(String output) {
+            long hits = 0;
+            long misses = 0;
+            for(String line : output.split("\n")) {
+                String[] fields = line.trim().split("\\s+");
+                if(fields.length != 2) {
+                    continue;
+                }
+                long value;
+                try {
+                    value = Long.parseLong(fields[1]);
+                }catch(NumberFormatException ex) {
+                    continue;
+                }
+                switch(fields[0]) {
+                    case "direct_cache_hit":
+                    case "preprocessed_cache_hit":
+                    case "cache_hit_direct":
+                    case "cache_hit_preprocessed":
+                        hits += value;
+                        break;
+                    case "cache_miss":
+                        misses += value;
+                        break;
+                    default:
+                        //other counters aren't interesting
+                }
+            }
+            return new Statistics(hits,
+                    misses);
+        }
+
+        public Statistics(long hits,
+                long misses) {
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * The counters accumulated since {@code previous}.
+         *
+         * @param previous earlier statistics of the same cache
+         * @return the difference
+         */
+        public Statistics since(Statistics previous) {
+            return new Statistics(hits-previous.hits,
+                    misses-previous.misses);
+        }
+    }
+}
@@ -28,4 +28,14 @@ public class ExtractionException extends Exception {
         super(String.format("extraction directory '%s' exists, but is not a directory",
                 extractionDir.getAbsolutePath()));
     }
+
+    public ExtractionException(String message) {
+        super(message);
+    }
+
+    public ExtractionException(String message,
+            Throwable cause) {
+        super(message,
+                cause);
+    }
 }
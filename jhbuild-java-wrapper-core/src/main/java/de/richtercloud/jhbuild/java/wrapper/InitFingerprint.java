@@ -0,0 +1,166 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The result of a successful initialization of {@link JHBuildJavaWrapper}
+ * which is persisted in the installation prefix so that new JVMs don't need
+ * to probe all prerequisites again. It consists of the wrapper configuration
+ * (binaries and {@code PATH}) and the resolved binaries and {@code .pc} files
+ * with their modification times and sizes. It's stale as soon as the
+ * configuration differs or any of the files changed or disappeared.
+ *
+ * @author richter
+ */
+final class InitFingerprint {
+    private final static Logger LOGGER = LoggerFactory.getLogger(InitFingerprint.class);
+    /**
+     * The name of the fingerprint file in the installation prefix.
+     */
+    static final String FILE_NAME = ".jhbuild-java-wrapper-init.properties";
+    private final static String CONFIGURATION_KEY = "configuration";
+    private final static String FILE_KEY_PREFIX = "file.";
+    private final Properties properties;
+
+    /**
+     * Creates a new fingerprint.
+     *
+     * @param configuration a description of the configuration which has to be
+     *     equal in order for the fingerprint to be valid
+     */
+    InitFingerprint(String configuration) {
+        this(new Properties());
+        properties.setProperty(CONFIGURATION_KEY,
+                configuration);
+    }
+
+    private InitFingerprint(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Adds a file whose modification time and size have to be unchanged in
+     * order for the fingerprint to be valid.
+     *
+     * @param name the name of the file (e.g. the binary name)
+     * @param file the file
+     * @throws IOException if the file doesn't exist
+     */
+    void addFile(String name,
+            File file) throws IOException {
+        if(!file.exists()) {
+            throw new IOException(String.format("file %s doesn't exist",
+                    file.getAbsolutePath()));
+        }
+        properties.setProperty(FILE_KEY_PREFIX+name,
+                describeFile(file));
+    }
+
+    /**
+     * Checks whether the fingerprint is still valid.
+     *
+     * @param configuration the current configuration
+     * @return {@code true} if {@code configuration} equals the configuration
+     *     of the fingerprint and all files are unchanged, {@code false}
+     *     otherwise
+     */
+    boolean isValid(String configuration) {
+        if(!configuration.equals(properties.getProperty(CONFIGURATION_KEY))) {
+            LOGGER.debug("init fingerprint is stale because the configuration changed");
+            return false;
+        }
+        for(String key : properties.stringPropertyNames()) {
+            if(!key.startsWith(FILE_KEY_PREFIX)) {
+                continue;
+            }
+            String description = properties.getProperty(key);
+            //the path is the part before the last two fields
+            int sizeIndex = description.lastIndexOf(' ');
+            int lastModifiedIndex = sizeIndex > 0
+                    ? description.lastIndexOf(' ', sizeIndex-1)
+                    : -1;
+            if(lastModifiedIndex <= 0) {
+                return false;
+            }
+            File file = new File(description.substring(0, lastModifiedIndex));
+            if(!file.exists()
+                    || !description.equals(describeFile(file))) {
+                LOGGER.debug(String.format("init fingerprint is stale because %s changed",
+                        file.getAbsolutePath()));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the fingerprint to {@code file} atomically.
+     *
+     * @param file the file to write to
+     * @throws IOException if an I/O exception occurs
+     */
+    void store(File file) throws IOException {
+        File tmpFile = new File(file.getParentFile(),
+                file.getName()+".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(tmpFile.toPath())) {
+            properties.store(outputStream,
+                    "init fingerprint of JHBuild Java wrapper");
+        }
+        Files.move(tmpFile.toPath(),
+                file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a fingerprint.
+     *
+     * @param file the file to read from
+     * @return the fingerprint or {@code null} if {@code file} doesn't exist
+     *     or can't be read
+     */
+    static InitFingerprint load(File file) {
+        if(!file.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+            properties.load(inputStream);
+        }catch(IOException | IllegalArgumentException ex) {
+            LOGGER.warn(String.format("init fingerprint %s can't be read, ignoring it",
+                    file.getAbsolutePath()),
+                    ex);
+            return null;
+        }
+        return new InitFingerprint(properties);
+    }
+
+    private static String describeFile(File file) {
+        return String.format("%s %d %d",
+                file.getAbsolutePath(),
+                file.lastModified(),
+                file.length());
+    }
+}
@@ -16,13 +16,13 @@ package de.richtercloud.jhbuild.java.wrapper;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
-import de.richtercloud.execution.tools.ExecutionUtils;
-import de.richtercloud.execution.tools.OutputReaderThread;
 import de.richtercloud.jhbuild.java.wrapper.download.DownloadCombi;
 import de.richtercloud.jhbuild.java.wrapper.download.DownloadEmptyCallback;
 import de.richtercloud.jhbuild.java.wrapper.download.DownloadException;
 import de.richtercloud.jhbuild.java.wrapper.download.DownloadFailureCallback;
 import de.richtercloud.jhbuild.java.wrapper.download.Downloader;
+import de.richtercloud.jhbuild.java.wrapper.download.ExtractionFilter;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,17 +31,25 @@ import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.SystemUtils;
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
-import org.apache.commons.lang3.tuple.Triple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -87,7 +95,8 @@ class because it uses almost all properties of JHBuildJavaWrapper
  * {@code make}. The initialization routine then builds and installs {@code git}
  * and all of its prerequisites and then uses it to clone the {@code jhbuild}
  * repository and build and install it. A tarball of {@code jhbuild} could be
- * used, but that's a TODO.
+ * used, but that's a TODO. Prerequisites which don't depend on each other are
+ * built concurrently and share the specified parallelism.
  *
  * @author richter
  */
@@ -109,13 +118,102 @@ public class JHBuildJavaWrapper {
             "installation-prefix");
     public final static File DOWNLOAD_DIR_DEFAULT = new File(CONFIG_DIR,
             "downloads");
+    /**
+     * The name of the directory in the download directory which contains the
+     * build directories and clones of pristine source trees which need to be
+     * patched or don't support out-of-tree builds.
+     */
+    public final static String BUILD_DIR_NAME = "build";
+    private final static String DESTDIR_SUFFIX = ".destdir";
+    private final static String SOURCE_DIR_SUFFIX = ".src";
+    public final static File ARTIFACT_CACHE_DIR_DEFAULT = new File(CONFIG_DIR,
+            "artifacts");
+    public final static File AUTOCONF_CACHE_DIR_DEFAULT = new File(CONFIG_DIR,
+            "autoconf-cache");
+    /**
+     * The name of the private autoconf cache file of a {@code configure} run
+     * in the build directory.
+     */
+    private final static String CONFIG_CACHE_FILE_NAME = "config.cache";
+    /**
+     * The prefix of the file in {@link #buildRootDir} which lists the private
+     * autoconf cache files of the {@code configure} runs of a module build.
+     */
+    private final static String MODULES_CONFIG_CACHE_LIST_PREFIX = "modules-config-caches";
+    private final static String MODULES_BUILD_DIR_NAME = "jhbuild-java-wrapper-modules";
+    private final static String SYSTEM_INCLUDE_DIR = "/usr/include";
+    /**
+     * The space which has to be available in the RAM-backed build directory
+     * in order to use it for module builds whose size can't be estimated.
+     */
+    public final static long MODULE_BUILD_TMPFS_SPACE_MIN = 4L*1024*1024*1024;
+    /**
+     * The name of the build metrics report written into the download
+     * directory by default.
+     */
+    public final static String BUILD_METRICS_REPORT_FILE_NAME = "build-metrics.json";
+    /**
+     * The name of the directory in the download directory which contains the
+     * logs of all build steps by default.
+     */
+    public final static String BUILD_LOG_DIR_NAME = "logs";
+    /**
+     * The number of bytes of {@code stdout} and {@code stderr} of every
+     * process which are kept in memory for error messages.
+     */
+    public final static int OUTPUT_TAIL_SIZE = 64*1024;
+    /**
+     * The default time build processes get to terminate after
+     * {@code SIGTERM} on cancelation before they receive {@code SIGKILL}.
+     */
+    public final static long CANCELATION_GRACE_PERIOD_MILLIS_DEFAULT = 10000;
+    /**
+     * The default time after which a build step which neither produces
+     * output nor uses CPU time is terminated.
+     */
+    public final static long INACTIVITY_TIMEOUT_MILLIS_DEFAULT = 30*60*1000;
     private final static String PATH = "PATH";
+    /*
+    internal implementation notes:
+    - extraction filters are only specified for prerequisites whose build and
+    install targets are known to not reference the excluded entries; Perl's
+    Configure and MANIFEST check, OpenSSL's test/ (referenced by the default
+    build target) and gettext's tests (required by automake-generated
+    Makefiles) can't be skipped
+    - test helper programs of git in t/helper are built by the default target
+    and thus only the test scripts and their data are excluded
+    - Python's libinstall target skips library subdirectories which don't
+    exist
+    */
+    private final static ExtractionFilter GIT_EXTRACTION_FILTER = ExtractionFilter.exclude("t/t[0-9]*");
+    private final static ExtractionFilter PYTHON_EXTRACTION_FILTER = ExtractionFilter.exclude("Lib/test/**",
+            "Doc/**");
     private final static String CONFIGURE = "configure";
+    private final static String ZLIB_PC_FILE_NAME = "zlib.pc";
     private final static String GIT_TEMPLATE = "git";
     private final static String JHBUILD_TEMPLATE = "jhbuild";
     private final static String PYTHON_TEMPLATE = "python";
     private final static String CPAN_TEMPLATE = "cpan";
     private final static String OPENSSL_TEMPLATE = "openssl";
+    private final static String PERL_PREREQUISITE = "perl";
+    private final static String GETTEXT_PREREQUISITE = "gettext";
+    private final static String ZLIB_PREREQUISITE = "zlib";
+    /**
+     * The name of the marker file in the installation prefix which exists
+     * while a prerequisite has been installed and its checks haven't
+     * succeeded yet.
+     */
+    private final static String CHECKS_PENDING_MARKER_TEMPLATE = ".%s.checks-pending";
+    /**
+     * The prerequisites (by description) whose libraries a prerequisite links
+     * against, so that its artifact is rebuilt if one of them changes.
+     */
+    private final static Map<String, List<String>> ARTIFACT_LINK_DEPENDENCIES = ImmutableMap.of(GIT_TEMPLATE,
+            Arrays.asList(ZLIB_PREREQUISITE,
+                    GETTEXT_PREREQUISITE),
+            PYTHON_TEMPLATE,
+            Arrays.asList(ZLIB_PREREQUISITE,
+                    OPENSSL_TEMPLATE));
     private final static String REDIRECTED_TEMPLATE = "[redirected]";
     private static final String ACTION_TEMPLATE = "action %s not supported";
     /**
@@ -179,21 +277,205 @@ public class JHBuildJavaWrapper {
     private final OutputStream stderrOutputStream;
     private boolean canceled;
     /**
-     * A pointer to the currently active process which allows to destroy it in
-     * {@link #cancelInstallModuleset() } and thus minimize the time before
-     * returning after cancelation has been requested.
+     * Whether the prerequisite installations have been stopped because one of
+     * them failed or has been canceled. Unlike {@link #canceled} this isn't
+     * caused by the caller.
+     */
+    private boolean aborted;
+    /**
+     * The processes which have been started and are possibly still running
+     * which allows to destroy them in {@link #cancelInstallModuleset() } and
+     * thus minimize the time before returning after cancelation has been
+     * requested. Prerequisites are installed concurrently, so that there can
+     * be more than one.
+     */
+    private final Set<Process> activeProcesses = new HashSet<>();
+    /**
+     * Reads the output of all created processes with one thread and keeps
+     * the output of recently finished processes available for error messages.
+     */
+    private final ProcessSupervisor processSupervisor = new ProcessSupervisor();
+    /**
+     * The directory the complete output of every build step is written to or
+     * {@code null} if only the tail of the output is kept.
+     */
+    private File buildLogDir;
+    /**
+     * Whether build logs are compressed with gzip.
+     */
+    private boolean compressBuildLogs;
+    /**
+     * How the output of build steps is handled.
+     */
+    private OutputMode outputMode = OutputMode.CAPTURE;
+    /**
+     * Starts build steps in their own process group and terminates the
+     * groups on cancelation.
+     */
+    private final ProcessGroupTerminator processGroupTerminator;
+    /**
+     * The time processes get to terminate after {@code SIGTERM} before they
+     * receive {@code SIGKILL}.
+     */
+    private long cancelationGracePeriodMillis = CANCELATION_GRACE_PERIOD_MILLIS_DEFAULT;
+    /**
+     * The time in milliseconds between the last cancelation request and the
+     * termination of all process groups or {@code -1} if there hasn't been a
+     * cancelation.
+     */
+    private volatile long timeToQuiescenceMillis = -1;
+    /**
+     * Terminates build steps which exceed their deadline or stall.
+     */
+    private final ProcessWatchdog processWatchdog;
+    /**
+     * The maximum run time of build steps. Steps without an entry have no
+     * deadline.
+     */
+    private final Map<BuildStep, Long> buildStepDeadlines = new EnumMap<>(BuildStep.class);
+    /**
+     * The time after which a build step which neither produces output nor
+     * uses CPU time is terminated or {@code 0} if stalled steps aren't
+     * terminated.
+     */
+    private long inactivityTimeoutMillis = INACTIVITY_TIMEOUT_MILLIS_DEFAULT;
+    /**
+     * The processes terminated by {@link #processWatchdog} whose failure
+     * hasn't been reported yet.
+     */
+    private final Map<Process, BuildTimeoutException.Reason> timedOutProcesses = new ConcurrentHashMap<>();
+    private final Map<Process, ProcessMeasurement> processMeasurementMap = new ConcurrentHashMap<>();
+    private final List<BuildMetricsListener> buildMetricsListeners = new CopyOnWriteArrayList<>();
+    private final List<BuildProgressListener> buildProgressListeners = new CopyOnWriteArrayList<>();
+    /**
+     * Notifies {@link #buildProgressListeners} off the thread which reads the
+     * output of build processes.
+     */
+    private final BuildProgressDispatcher buildProgressDispatcher = new BuildProgressDispatcher(buildProgressListeners);
+    private final BuildOutputPublisher buildOutputPublisher = new BuildOutputPublisher();
+    /**
+     * The progress parsers of running measured processes.
+     */
+    private final Map<Process, ProgressParser> progressParserMap = new ConcurrentHashMap<>();
+    /**
+     * The number of units of work of previous builds used to estimate the
+     * progress of build steps.
+     */
+    private final ProgressStatistics progressStatistics = new ProgressStatistics(ProgressStatistics.STATISTICS_FILE_DEFAULT);
+    /**
+     * Collects the metrics of all build steps of the current
+     * {@link #installModuleset(InputStream, String) } invokation.
+     */
+    private final BuildMetricsReport buildMetricsReport = new BuildMetricsReport();
+    /**
+     * The file the build metrics report is written to after every
+     * {@link #installModuleset(InputStream, String) } invokation or
+     * {@code null} if no report is written.
      */
-    private Process activeProcess;
-    private final Map<Process, Pair<OutputReaderThread, OutputReaderThread>> processOutputReaderThreadMap = new HashMap<>();
+    private File buildMetricsReportFile;
     private final Downloader downloader;
+    /**
+     * Serializes downloads of concurrently installed prerequisites since
+     * {@link Downloader}s (e.g. the dialog based
+     * {@link de.richtercloud.jhbuild.java.wrapper.download.GUIDownloader})
+     * aren't necessarily thread-safe.
+     */
+    private final Object downloadLock = new Object();
+    /**
+     * The number of prerequisite installations running at the same time which
+     * share {@link #parallelism}.
+     */
+    private final AtomicInteger runningPrerequisites = new AtomicInteger();
+    /**
+     * The jobserver shared by all {@code make} processes of the current
+     * {@link #installModuleset(InputStream, String) } invokation or
+     * {@code null} if none could be created in which case {@code make} is run
+     * with a share of {@link #parallelism} (see {@link #getMakeJobs(int) }).
+     */
+    private MakeJobserver makeJobserver;
+    /**
+     * Adjusts the tokens of {@link #makeJobserver} to the load and available
+     * memory of the host during the current
+     * {@link #installModuleset(InputStream, String) } invokation or
+     * {@code null} if there's no jobserver or adaptive parallelism is
+     * disabled.
+     */
+    private ParallelismGovernor parallelismGovernor;
+    /**
+     * Whether a {@link ParallelismGovernor} is used.
+     */
+    private boolean adaptiveParallelism = true;
+    /**
+     * The scheduler of the running prerequisite installations which checks
+     * are submitted to or {@code null} if no prerequisites are installed.
+     */
+    private PrerequisiteScheduler prerequisiteScheduler;
+    /**
+     * Whether the test suites of prerequisites are run after their
+     * installation.
+     */
+    private boolean prerequisiteChecks;
     /**
      * The value passed to the {@code -j} option of all invokations of
      * {@code make}, except {@code make install}.
      */
     private final int parallelism;
+    /**
+     * The directory containing one build directory per build. Out-of-tree
+     * builds use the pristine extracted source tree directly, other builds run
+     * in a clone of it. Extracted source trees are never modified by builds,
+     * so that a build can be repeated in a clean tree without extracting the
+     * archive again.
+     */
+    private final File buildRootDir;
+    private SourceTreeCloner sourceTreeCloner;
+    /**
+     * Chooses between {@link #buildRootDir} and a RAM-backed directory for
+     * every prerequisite build.
+     */
+    private BuildRootSelector buildRootSelector;
+    /**
+     * Whether build trees in the RAM-backed directory are deleted after a
+     * failed or canceled build. Build trees on disk are always kept after
+     * failures in order to allow inspection.
+     */
+    private boolean deleteFailedTmpfsBuildTrees = true;
+    /**
+     * The cache of installed prerequisites or {@code null} if prerequisites
+     * are always built. {@code null} by default because the cache can grow to
+     * {@link PrerequisiteArtifactCache#MAX_SIZE_DEFAULT}.
+     */
+    private PrerequisiteArtifactCache artifactCache;
+    /**
+     * The output of {@code cc --version} which is part of the artifact cache
+     * key. Determined when it's needed first since it's not needed if all
+     * prerequisites are present.
+     */
+    private String compilerVersion;
+    /**
+     * The artifact cache keys of the prerequisites installed by
+     * {@link #init(String) } by description.
+     */
+    private final Map<String, String> artifactKeys = new ConcurrentHashMap<>();
+    /**
+     * The compiler cache used for prerequisite and module builds or
+     * {@code null} if compilers are invoked directly.
+     */
+    private CompilerCache compilerCache;
+    /**
+     * The autoconf cache shared by all {@code configure} runs or {@code null}
+     * if every {@code configure} run starts from scratch (the default).
+     */
+    private AutoconfCache autoconfCache;
 
+    /**
+     * The number of processors available to the JVM limited by the CPU quota
+     * of the cgroup the wrapper runs in.
+     *
+     * @return the default parallelism
+     */
     public static int calculateParallelism() {
-        return Runtime.getRuntime().availableProcessors();
+        return ParallelismGovernor.readCpuLimit();
     }
 
     public JHBuildJavaWrapper(ActionOnMissingBinary actionOnMissingGit,
@@ -299,7 +581,18 @@ public class JHBuildJavaWrapper {
         }
         this.git = git;
         this.jhbuild = jhbuild;
-        this.sh = sh;
+        //resolved once since ProcessBuilder searches the PATH of the JVM for
+        //every started process
+        String jvmPath = System.getenv(PATH);
+        File shFile = sh != null && !sh.isEmpty() && jvmPath != null
+                ? BinaryUtils.resolveBinary(sh,
+                        jvmPath)
+                : null;
+        this.sh = shFile != null ? shFile.getAbsolutePath() : sh;
+        this.processGroupTerminator = new ProcessGroupTerminator(this.sh,
+                jvmPath);
+        this.processWatchdog = new ProcessWatchdog(processGroupTerminator,
+                buildOutputPublisher);
         this.make = make;
         this.python = python;
         this.cc = cc;
@@ -326,16 +619,397 @@ public class JHBuildJavaWrapper {
                     parallelism));
         }
         this.parallelism = parallelism;
+        this.buildRootDir = new File(downloadDir,
+                BUILD_DIR_NAME);
+        this.sourceTreeCloner = new SourceTreeCloner(CloneMode.REFLINK,
+                parallelism);
+        this.buildRootSelector = new BuildRootSelector(buildRootDir,
+                null, //tmpfsDir
+                BuildRootSelector.SIZE_FACTOR_DEFAULT);
+        this.buildMetricsReportFile = new File(downloadDir,
+                BUILD_METRICS_REPORT_FILE_NAME);
+        this.buildLogDir = new File(downloadDir,
+                BUILD_LOG_DIR_NAME);
     }
 
     public File getDownloadDir() {
         return downloadDir;
     }
 
+    public File getBuildRootDir() {
+        return buildRootDir;
+    }
+
+    public File getTmpfsBuildDir() {
+        return buildRootSelector.getTmpfsDir();
+    }
+
+    /**
+     * Sets a RAM-backed directory (e.g.
+     * {@link BuildRootSelector#TMPFS_DIR_DEFAULT}) in a private subdirectory
+     * of which prerequisites are built if it has enough space left for the
+     * estimated size of the build, otherwise they're built in
+     * {@link #getBuildRootDir() }. Module builds use the private subdirectory
+     * as jhbuild's {@code buildroot} if it has at least
+     * {@link #MODULE_BUILD_TMPFS_SPACE_MIN} bytes available. Has to be invoked
+     * before {@link #installModuleset(String) } in order to have an effect.
+     *
+     * @param tmpfsBuildDir the RAM-backed directory or {@code null} in order
+     *     to always build on disk
+     */
+    public void setTmpfsBuildDir(File tmpfsBuildDir) {
+        this.buildRootSelector = new BuildRootSelector(buildRootDir,
+                tmpfsBuildDir,
+                BuildRootSelector.SIZE_FACTOR_DEFAULT);
+    }
+
+    public boolean isDeleteFailedTmpfsBuildTrees() {
+        return deleteFailedTmpfsBuildTrees;
+    }
+
+    /**
+     * Sets whether build trees in the RAM-backed directory are deleted after
+     * a failed or canceled build, so that they don't keep occupying memory.
+     * Enabled by default.
+     *
+     * @param deleteFailedTmpfsBuildTrees {@code false} in order to keep them
+     *     for inspection
+     */
+    public void setDeleteFailedTmpfsBuildTrees(boolean deleteFailedTmpfsBuildTrees) {
+        this.deleteFailedTmpfsBuildTrees = deleteFailedTmpfsBuildTrees;
+    }
+
+    public CloneMode getCloneMode() {
+        return sourceTreeCloner.getCloneMode();
+    }
+
+    /**
+     * Sets the preferred way of cloning pristine source trees into build
+     * directories. {@link CloneMode#COPY} is used if the preferred mode isn't
+     * supported. Has to be invoked before {@link #installModuleset(String) }
+     * in order to have an effect.
+     *
+     * @param cloneMode the clone mode to use
+     */
+    public void setCloneMode(CloneMode cloneMode) {
+        this.sourceTreeCloner = new SourceTreeCloner(cloneMode,
+                parallelism);
+    }
+
+    public PrerequisiteArtifactCache getArtifactCache() {
+        return artifactCache;
+    }
+
+    /**
+     * Sets the cache of installed prerequisites, e.g. one in
+     * {@link #ARTIFACT_CACHE_DIR_DEFAULT}. Prerequisites are always built by
+     * default. Has to be invoked before {@link #installModuleset(String) } in
+     * order to have an effect.
+     *
+     * @param artifactCache the cache to use or {@code null} in order to always
+     *     build prerequisites
+     */
+    public void setArtifactCache(PrerequisiteArtifactCache artifactCache) {
+        this.artifactCache = artifactCache;
+    }
+
+    public CompilerCache getCompilerCache() {
+        return compilerCache;
+    }
+
+    /**
+     * Sets the compiler cache used for prerequisite and module builds. The
+     * cache is ignored if its {@code ccache} binary can't be found. Has to be
+     * invoked before {@link #installModuleset(String) } in order to have an
+     * effect.
+     *
+     * @param compilerCache the compiler cache or {@code null} in order to
+     *     invoke compilers directly
+     */
+    public void setCompilerCache(CompilerCache compilerCache) {
+        this.compilerCache = compilerCache;
+    }
+
+    public AutoconfCache getAutoconfCache() {
+        return autoconfCache;
+    }
+
+    /**
+     * Sets the autoconf cache shared by all {@code configure} runs of
+     * prerequisite and module builds, e.g. one in
+     * {@link #AUTOCONF_CACHE_DIR_DEFAULT}. Every {@code configure} run starts
+     * from scratch by default. Has to be invoked before
+     * {@link #installModuleset(String) } in order to have an effect.
+     *
+     * @param autoconfCache the autoconf cache or {@code null} in order to run
+     *     every {@code configure} from scratch
+     */
+    public void setAutoconfCache(AutoconfCache autoconfCache) {
+        this.autoconfCache = autoconfCache;
+    }
+
     public File getInstallationPrefixDir() {
         return installationPrefixDir;
     }
 
+    public boolean isAdaptiveParallelism() {
+        return adaptiveParallelism;
+    }
+
+    /**
+     * Sets whether the number of jobs of concurrent {@code make} processes is
+     * adjusted to the CPU quota, load and available memory of the host while
+     * builds are running (by a {@link ParallelismGovernor}) or is fixed to
+     * the parallelism passed to the constructor. Has to be invoked before
+     * {@link #installModuleset(String) } in order to have an effect.
+     *
+     * @param adaptiveParallelism whether to adjust the parallelism
+     */
+    public void setAdaptiveParallelism(boolean adaptiveParallelism) {
+        this.adaptiveParallelism = adaptiveParallelism;
+    }
+
+    public boolean isPrerequisiteChecks() {
+        return prerequisiteChecks;
+    }
+
+    /**
+     * Sets whether the test suite of a prerequisite (e.g.
+     * {@code make check}) is run after it has been installed. Checks run in
+     * the background while the prerequisites depending on it are already
+     * built. A failing check fails the installation with a
+     * {@link BuildFailureException} for {@link BuildStep#MAKE_CHECK}.
+     * Prerequisites restored from the artifact cache and prerequisites whose
+     * test suite is excluded from extraction aren't checked. Has to be
+     * invoked before {@link #installModuleset(String) } in order to have an
+     * effect.
+     *
+     * @param prerequisiteChecks whether to run the test suites
+     */
+    public void setPrerequisiteChecks(boolean prerequisiteChecks) {
+        this.prerequisiteChecks = prerequisiteChecks;
+    }
+
+    public File getBuildLogDir() {
+        return buildLogDir;
+    }
+
+    /**
+     * Sets the directory the complete output of every build step is written
+     * to if {@code stdout} or {@code stderr} of processes is captured, i.e.
+     * not redirected to the JVM. Only the last {@link #OUTPUT_TAIL_SIZE} bytes
+     * of the output are kept in memory and included in exceptions together
+     * with the log file.
+     *
+     * @param buildLogDir the log directory or {@code null} in order to only
+     *     keep the tail of the output
+     */
+    public void setBuildLogDir(File buildLogDir) {
+        this.buildLogDir = buildLogDir;
+    }
+
+    public boolean isCompressBuildLogs() {
+        return compressBuildLogs;
+    }
+
+    /**
+     * Sets whether build logs are compressed with gzip.
+     *
+     * @param compressBuildLogs whether to compress build logs
+     */
+    public void setCompressBuildLogs(boolean compressBuildLogs) {
+        this.compressBuildLogs = compressBuildLogs;
+    }
+
+    public OutputMode getOutputMode() {
+        return outputMode;
+    }
+
+    /**
+     * Sets how the output of build steps is handled. Processes which aren't
+     * build steps (e.g. version checks) and all processes in case
+     * {@link #getBuildLogDir() } is {@code null} always use
+     * {@link OutputMode#CAPTURE}.
+     *
+     * @param outputMode the output mode
+     * @throws IllegalArgumentException if {@code outputMode} is {@code null}
+     */
+    public void setOutputMode(OutputMode outputMode) {
+        if(outputMode == null) {
+            throw new IllegalArgumentException("outputMode mustn't be null");
+        }
+        this.outputMode = outputMode;
+    }
+
+    public long getCancelationGracePeriodMillis() {
+        return cancelationGracePeriodMillis;
+    }
+
+    /**
+     * Sets the time processes get to terminate after {@code SIGTERM} on
+     * cancelation before they receive {@code SIGKILL}.
+     *
+     * @param cancelationGracePeriodMillis the grace period in milliseconds
+     * @throws IllegalArgumentException if
+     *     {@code cancelationGracePeriodMillis} is negative
+     */
+    public void setCancelationGracePeriodMillis(long cancelationGracePeriodMillis) {
+        if(cancelationGracePeriodMillis < 0) {
+            throw new IllegalArgumentException("cancelationGracePeriodMillis mustn't be negative");
+        }
+        this.cancelationGracePeriodMillis = cancelationGracePeriodMillis;
+    }
+
+    /**
+     * The time between the last invokation of
+     * {@link #cancelInstallModuleset() } and the termination of all processes
+     * started by the build including their descendants.
+     *
+     * @return the time in milliseconds or {@code -1} if there hasn't been a
+     *     cancelation
+     */
+    public long getTimeToQuiescenceMillis() {
+        return timeToQuiescenceMillis;
+    }
+
+    /**
+     * The maximum run time of {@code buildStep}.
+     *
+     * @param buildStep the build step
+     * @return the deadline in milliseconds or {@code 0} if there's none
+     */
+    public synchronized long getBuildStepDeadlineMillis(BuildStep buildStep) {
+        return buildStepDeadlines.getOrDefault(buildStep,
+                0L);
+    }
+
+    /**
+     * Sets the maximum run time of {@code buildStep} after which the step is
+     * terminated and fails with a {@link BuildTimeoutException}.
+     *
+     * @param buildStep the build step
+     * @param deadlineMillis the deadline in milliseconds or {@code 0} to
+     *     remove the deadline
+     * @throws IllegalArgumentException if {@code buildStep} is {@code null}
+     *     or {@code deadlineMillis} is negative
+     */
+    public synchronized void setBuildStepDeadlineMillis(BuildStep buildStep,
+            long deadlineMillis) {
+        if(buildStep == null) {
+            throw new IllegalArgumentException("buildStep mustn't be null");
+        }
+        if(deadlineMillis < 0) {
+            throw new IllegalArgumentException("deadlineMillis mustn't be negative");
+        }
+        if(deadlineMillis == 0) {
+            buildStepDeadlines.remove(buildStep);
+        }else {
+            buildStepDeadlines.put(buildStep,
+                    deadlineMillis);
+        }
+    }
+
+    public long getInactivityTimeoutMillis() {
+        return inactivityTimeoutMillis;
+    }
+
+    /**
+     * Sets the time after which a build step which neither produces output
+     * nor uses CPU time is terminated and fails with a
+     * {@link BuildTimeoutException}.
+     *
+     * @param inactivityTimeoutMillis the timeout in milliseconds or {@code 0}
+     *     to never terminate stalled steps
+     * @throws IllegalArgumentException if {@code inactivityTimeoutMillis} is
+     *     negative
+     */
+    public void setInactivityTimeoutMillis(long inactivityTimeoutMillis) {
+        if(inactivityTimeoutMillis < 0) {
+            throw new IllegalArgumentException("inactivityTimeoutMillis mustn't be negative");
+        }
+        this.inactivityTimeoutMillis = inactivityTimeoutMillis;
+    }
+
+    public File getBuildMetricsReportFile() {
+        return buildMetricsReportFile;
+    }
+
+    /**
+     * Sets the file the JSON report of the resource usage of all build steps
+     * is written to after {@link #installModuleset(String) } returned or
+     * failed.
+     *
+     * @param buildMetricsReportFile the report file or {@code null} in order
+     *     to not write a report
+     */
+    public void setBuildMetricsReportFile(File buildMetricsReportFile) {
+        this.buildMetricsReportFile = buildMetricsReportFile;
+    }
+
+    /**
+     * Registers a listener which is notified about the resource usage of
+     * every build step.
+     *
+     * @param listener the listener to add
+     */
+    public void addBuildMetricsListener(BuildMetricsListener listener) {
+        buildMetricsListeners.add(listener);
+    }
+
+    public void removeBuildMetricsListener(BuildMetricsListener listener) {
+        buildMetricsListeners.remove(listener);
+    }
+
+    /**
+     * Registers a listener which is notified about the estimated progress of
+     * running build steps. The progress can only be estimated if the output
+     * of build steps is passed through the JVM, i.e. if a stream for
+     * {@code stdout} has been passed to the constructor and the output mode is
+     * {@link OutputMode#CAPTURE}. Listeners are notified on a separate thread
+     * and only about the latest progress of a build step if they're slower
+     * than the build.
+     *
+     * @param listener the listener to add
+     */
+    public void addBuildProgressListener(BuildProgressListener listener) {
+        buildProgressListeners.add(listener);
+    }
+
+    public void removeBuildProgressListener(BuildProgressListener listener) {
+        buildProgressListeners.remove(listener);
+    }
+
+    /**
+     * Subscribes to the output of all build steps started after this
+     * invokation. Lines are delivered with their module, build step, stream
+     * and timestamp on a thread of the subscription from a buffer of
+     * {@code bufferSize} lines, so that a slow subscriber can neither stall
+     * the build (unless {@code backpressurePolicy} is
+     * {@link BackpressurePolicy#BLOCK}) nor grow the heap.
+     *
+     * Streams for which {@code null} has been passed to the constructor are
+     * delivered to subscribers instead of being redirected to the JVM while
+     * there're subscriptions. Output of build steps isn't delivered in
+     * {@link OutputMode#LOG_FILE}.
+     *
+     * @param subscriber the subscriber
+     * @param bufferSize the maximum number of lines buffered for the
+     *     subscriber
+     * @param backpressurePolicy what happens if the buffer is full
+     * @return the subscription which needs to be closed in order to stop the
+     *     delivery
+     * @throws IllegalArgumentException if {@code subscriber} or
+     *     {@code backpressurePolicy} is {@code null} or {@code bufferSize} is
+     *     less than 1
+     */
+    public BuildOutputSubscription subscribeBuildOutput(BuildOutputSubscriber subscriber,
+            int bufferSize,
+            BackpressurePolicy backpressurePolicy) {
+        return buildOutputPublisher.subscribe(subscriber,
+                bufferSize,
+                backpressurePolicy);
+    }
+
     private Process createProcess(String path,
             String... commands) throws IOException {
         return createProcess(null,
@@ -372,26 +1046,377 @@ public class JHBuildJavaWrapper {
     private Process createProcess(File directory,
             Map<String, String> env,
             String... commands) throws IOException {
+        return startProcess(directory,
+                env,
+                null, //logName
+                null, //stdoutObserver
+                null, //stderrObserver
+                commands);
+    }
+
+    /**
+     * Starts {@code commands} with {@code sh -c}. Output is captured into
+     * tails of {@link #OUTPUT_TAIL_SIZE} bytes and forwarded to
+     * {@link #stdoutOutputStream} and {@link #stderrOutputStream} and the
+     * observers if they're not {@code null}, otherwise it's redirected to the
+     * JVM.
+     *
+     * @param directory the working directory
+     * @param env the environment
+     * @param logName the prefix of the log file in {@link #buildLogDir} or
+     *     {@code null} if the output isn't logged
+     * @param stdoutObserver a stream {@code stdout} is written to in addition
+     *     or {@code null}
+     * @param stderrObserver a stream {@code stderr} is written to in addition
+     *     or {@code null}
+     * @param commands the command string(s)
+     * @return the created process
+     * @throws IOException if an I/O exception occurs during creation
+     */
+    private Process startProcess(File directory,
+            Map<String, String> env,
+            String logName,
+            OutputStream stdoutObserver,
+            OutputStream stderrObserver,
+            String... commands) throws IOException {
         LOGGER.trace(String.format("building process with commands '%s' with environment '%s' running in %s",
                 Arrays.asList(commands),
                 env,
                 directory != null ? String.format("directory '%s'",
                         directory.getAbsolutePath())
                         : "current directory"));
-        Triple<Process, OutputReaderThread, OutputReaderThread> process = ExecutionUtils.createProcess(directory,
-                env,
-                sh,
-                stdoutOutputStream,
-                stderrOutputStream,
-                commands);
-        processOutputReaderThreadMap.put(process.getLeft(),
-                new ImmutablePair<>(process.getMiddle(),
-                        process.getRight()));
-        synchronized(this) {
-            this.activeProcess = process.getLeft();
+        ProcessBuilder processBuilder = new ProcessBuilder(processGroupTerminator.wrap(sh,
+                "-c",
+                String.join(" ", commands)))
+                .directory(directory);
+        processBuilder.environment().putAll(env);
+        if(logName != null
+                && buildLogDir != null
+                && outputMode == OutputMode.LOG_FILE) {
+            Files.createDirectories(buildLogDir.toPath());
+            File logFile = Files.createTempFile(buildLogDir.toPath(),
+                    String.format("%s-", logName),
+                    ".log").toFile();
+            //both streams are opened with O_APPEND, so that their writes
+            //don't overwrite each other
+            processBuilder.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile));
+            processBuilder.redirectError(ProcessBuilder.Redirect.appendTo(logFile));
+            Process process = processBuilder.start();
+            processSupervisor.supervise(process,
+                    null, //stdoutCapture
+                    null, //stderrCapture
+                    null, //logOutputStream
+                    logFile);
+            registerActiveProcess(process);
+            return process;
         }
-        return process.getLeft();
-    }
+        OutputStream stdoutTarget = combine(stdoutOutputStream,
+                stdoutObserver);
+        OutputStream stderrTarget = combine(stderrOutputStream,
+                stderrObserver);
+        if(stdoutTarget == null) {
+            processBuilder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        }
+        if(stderrTarget == null) {
+            processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        }
+        File logFile = null;
+        OutputStream logOutputStream = null;
+        if(logName != null
+                && buildLogDir != null
+                && (stdoutTarget != null || stderrTarget != null)) {
+            Files.createDirectories(buildLogDir.toPath());
+            logFile = Files.createTempFile(buildLogDir.toPath(),
+                    String.format("%s-", logName),
+                    compressBuildLogs ? ".log.gz" : ".log").toFile();
+            logOutputStream = new BufferedOutputStream(Files.newOutputStream(logFile.toPath()));
+            if(compressBuildLogs) {
+                logOutputStream = new GZIPOutputStream(logOutputStream);
+            }
+        }
+        Process process;
+        try {
+            process = processBuilder.start();
+        }catch(IOException ex) {
+            if(logOutputStream != null) {
+                logOutputStream.close();
+            }
+            throw ex;
+        }
+        processSupervisor.supervise(process,
+                stdoutTarget != null
+                        ? new OutputCapture(stdoutTarget,
+                                logOutputStream,
+                                OUTPUT_TAIL_SIZE)
+                        : null,
+                stderrTarget != null
+                        ? new OutputCapture(stderrTarget,
+                                logOutputStream,
+                                OUTPUT_TAIL_SIZE)
+                        : null,
+                logOutputStream,
+                logFile);
+        registerActiveProcess(process);
+        return process;
+    }
+
+    /**
+     * Combines the streams which aren't {@code null}.
+     *
+     * @return the combined stream or {@code null} if both streams are
+     *     {@code null}
+     */
+    private static OutputStream combine(OutputStream outputStream1,
+            OutputStream outputStream2) {
+        if(outputStream1 == null) {
+            return outputStream2;
+        }
+        if(outputStream2 == null) {
+            return outputStream1;
+        }
+        return new TeeOutputStream(outputStream1,
+                outputStream2);
+    }
+
+    /**
+     * Quotes {@code value} as a Python string literal so that it can be
+     * written into the jhbuildrc file, which is Python code, without breaking
+     * it or injecting code.
+     *
+     * @param value the value to quote
+     * @return the double-quoted and escaped literal
+     */
+    static String toPythonStringLiteral(String value) {
+        StringBuilder retValue = new StringBuilder(value.length()+2).append('"');
+        for(char character : value.toCharArray()) {
+            switch(character) {
+                case '\\':
+                    retValue.append("\\\\");
+                    break;
+                case '"':
+                    retValue.append("\\\"");
+                    break;
+                case '\n':
+                    retValue.append("\\n");
+                    break;
+                case '\r':
+                    retValue.append("\\r");
+                    break;
+                case '\t':
+                    retValue.append("\\t");
+                    break;
+                default:
+                    if(character < ' ' || character == 0x7f) {
+                        retValue.append(String.format("\\x%02x",
+                                (int)character));
+                    }else {
+                        retValue.append(character);
+                    }
+            }
+        }
+        return retValue.append('"').toString();
+    }
+
+    private void registerActiveProcess(Process process) {
+        synchronized(this) {
+            activeProcesses.removeIf(activeProcess -> !activeProcess.isAlive());
+            activeProcesses.add(process);
+            if(!canceled && !aborted) {
+                return;
+            }
+        }
+        //started after cancelation or abort had been requested
+        terminateProcesses(Arrays.asList(process));
+    }
+
+    /**
+     * Terminates the process groups of {@code processes}.
+     *
+     * @return the time until all groups were empty in milliseconds
+     */
+    private long terminateProcesses(Collection<Process> processes) {
+        try {
+            return processGroupTerminator.terminate(processes,
+                    cancelationGracePeriodMillis);
+        }catch(InterruptedException ex) {
+            LOGGER.warn("interrupted while waiting for process groups to terminate",
+                    ex);
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /**
+     * Waits until the output of the terminated {@code process} has been read
+     * completely.
+     *
+     * @param process the terminated process
+     * @return the output of the process
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private ProcessOutput awaitProcessOutput(Process process) throws InterruptedException {
+        ProcessOutput retValue = processSupervisor.getOutput(process);
+        if(retValue == null) {
+            throw new IllegalStateException(String.format("output of process %s isn't available anymore",
+                    process));
+        }
+        retValue.awaitOutput();
+        return retValue;
+    }
+
+    private static String tailOrRedirected(String tail) {
+        return tail != null ? tail : REDIRECTED_TEMPLATE;
+    }
+
+    private Process createMeasuredProcess(String moduleName,
+            BuildStep buildStep,
+            File directory,
+            String path,
+            String... commands) throws IOException {
+        return createMeasuredProcess(moduleName,
+                buildStep,
+                directory,
+                ImmutableMap.<String, String>builder()
+                        .put("PATH", path)
+                        .build(),
+                commands);
+    }
+
+    /**
+     * Creates a process whose resource usage is measured. The measurement has
+     * to be completed with {@link #finishMeasurement(String, Process) } after
+     * the process terminated.
+     *
+     * @param moduleName the name of the prerequisite or module
+     * @param buildStep the build step the process performs
+     * @param directory the working directory
+     * @param env the environment
+     * @param commands the command string(s)
+     * @return the created process
+     * @throws IOException if an I/O exception occurs during creation
+     */
+    private Process createMeasuredProcess(String moduleName,
+            BuildStep buildStep,
+            File directory,
+            Map<String, String> env,
+            String... commands) throws IOException {
+        ProcessMeasurement measurement = new ProcessMeasurement(buildStep);
+        ProgressParser progressParser = new ProgressParser(moduleName,
+                buildStep,
+                progressStatistics.getExpectedUnits(moduleName,
+                        buildStep),
+                buildProgressDispatcher);
+        OutputStream stdoutObserver = null;
+        OutputStream stderrObserver = null;
+        if(buildOutputPublisher.hasSubscriptions()) {
+            stdoutObserver = new LineFramer(moduleName,
+                    buildStep,
+                    BuildOutputLine.Stream.STDOUT,
+                    buildOutputPublisher);
+            stderrObserver = new LineFramer(moduleName,
+                    buildStep,
+                    BuildOutputLine.Stream.STDERR,
+                    buildOutputPublisher);
+        }
+        //the progress is only parsed if stdout is captured anyway, so that
+        //it's still redirected to the JVM if there's no stream for it
+        if(stdoutOutputStream != null || stdoutObserver != null) {
+            stdoutObserver = combine(progressParser,
+                    stdoutObserver);
+        }
+        Process process = startProcess(directory,
+                env,
+                String.format("%s-%s",
+                        directory != null ? directory.getName() : JHBUILD_TEMPLATE,
+                        buildStep.name().toLowerCase(Locale.ROOT)),
+                stdoutObserver,
+                stderrObserver,
+                measurement.wrap(commands));
+        measurement.start(process);
+        processMeasurementMap.put(process,
+                measurement);
+        progressParserMap.put(process,
+                progressParser);
+        return process;
+    }
+
+    /**
+     * Collects the metrics of a terminated process created with
+     * {@link #createMeasuredProcess(String, BuildStep, File, Map, String...) },
+     * notifies the build metrics listeners and completes the log of the
+     * process. Does nothing if {@code process} isn't measured.
+     *
+     * @param moduleName the name of the prerequisite or module
+     * @param process the terminated process
+     * @throws InterruptedException if the thread is interrupted while
+     *     waiting for the output of the process to be read
+     */
+    private void finishMeasurement(String moduleName,
+            Process process) throws InterruptedException,
+            BuildTimeoutException {
+        ProcessMeasurement measurement = processMeasurementMap.remove(process);
+        if(measurement == null) {
+            return;
+        }
+        notifyBuildMetricsListeners(measurement.finish(moduleName));
+        ProcessOutput output = awaitProcessOutput(process);
+        BuildTimeoutException.Reason reason = timedOutProcesses.remove(process);
+        ProgressParser progressParser = progressParserMap.remove(process);
+        if(progressParser != null
+                && reason == null
+                && process.exitValue() == 0) {
+            progressStatistics.record(moduleName,
+                    measurement.getBuildStep(),
+                    progressParser.getCompletedUnits());
+        }
+        if(reason != null) {
+            BuildStep buildStep = measurement.getBuildStep();
+            throw new BuildTimeoutException(moduleName,
+                    buildStep,
+                    reason,
+                    reason == BuildTimeoutException.Reason.DEADLINE
+                            ? getBuildStepDeadlineMillis(buildStep)
+                            : inactivityTimeoutMillis,
+                    output.getStdoutTail(),
+                    output.getStderrTail(),
+                    output.getLogFile());
+        }
+    }
+
+    /**
+     * Waits for a process created with
+     * {@link #createMeasuredProcess(String, BuildStep, File, Map, String...) }
+     * and terminates its process group if it exceeds the deadline of its
+     * build step or stalls. The failure is reported by
+     * {@link #finishMeasurement(String, Process) }.
+     *
+     * @param process the process to wait for
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private void awaitProcess(Process process) throws InterruptedException {
+        ProcessMeasurement measurement = processMeasurementMap.get(process);
+        long deadlineMillis = measurement != null
+                ? getBuildStepDeadlineMillis(measurement.getBuildStep())
+                : 0;
+        BuildTimeoutException.Reason reason = processWatchdog.await(process,
+                processSupervisor.getOutput(process),
+                deadlineMillis,
+                inactivityTimeoutMillis,
+                cancelationGracePeriodMillis);
+        if(reason != null) {
+            timedOutProcesses.put(process,
+                    reason);
+        }
+    }
+
+    private void notifyBuildMetricsListeners(BuildStepMetrics metrics) {
+        LOGGER.info(String.format("build step metrics: %s",
+                metrics));
+        buildMetricsReport.onBuildStepFinished(metrics);
+        for(BuildMetricsListener buildMetricsListener : buildMetricsListeners) {
+            buildMetricsListener.onBuildStepFinished(metrics);
+        }
+    }
 
     /**
      * Initialization routines.
@@ -406,7 +1431,8 @@ public class JHBuildJavaWrapper {
      * @throws BuildFailureException if such an exception occurs
      */
     @SuppressWarnings({"PMD.TooFewBranchesForASwitchStatement",
-        "PMD.PreserveStackTrace"})
+        "PMD.PreserveStackTrace",
+        "PMD.AvoidCatchingGenericException"})
     private boolean init(String installationPrefixPath) throws IOException,
             ExtractionException,
             InterruptedException,
@@ -417,6 +1443,19 @@ public class JHBuildJavaWrapper {
             LOGGER.debug("already inited");
             return true;
         }
+        //the configuration is determined before any prerequisite installation
+        //changes binary fields
+        String fingerprintConfiguration = getInitFingerprintConfiguration(installationPrefixPath);
+        File fingerprintFile = new File(installationPrefixDir,
+                InitFingerprint.FILE_NAME);
+        InitFingerprint storedFingerprint = InitFingerprint.load(fingerprintFile);
+        if(storedFingerprint != null
+                && storedFingerprint.isValid(fingerprintConfiguration)) {
+            LOGGER.debug(String.format("init fingerprint %s is up to date, skipping prerequisite probing",
+                    fingerprintFile.getAbsolutePath()));
+            this.inited = true;
+            return true;
+        }
         assert downloadDir.exists() && downloadDir.isDirectory();
         LOGGER.trace(String.format("silenceStdout: %s",
                 stdoutOutputStream));
@@ -433,297 +1472,542 @@ public class JHBuildJavaWrapper {
             throw new MissingSystemBinaryException("cc",
                     gccBinaryValidationException);
         }
+        //the prerequisites which are missing are determined upfront so that
+        //missing prerequisites with action FAIL are reported before anything
+        //is built
+        synchronized(this) {
+            aborted = false;
+        }
+        PrerequisiteScheduler scheduler = new PrerequisiteScheduler(parallelism,
+                this::abortPrerequisites);
         //git needs `Module::Build` which needs to be installed with `cpan`
         //which is provided by a complete Perl installation only
-        try {
-            BinaryUtils.validateBinary(cpan,
-                    CPAN_TEMPLATE,
-                    installationPrefixPath);
-        }catch(BinaryValidationException ex) {
-            switch(actionOnMissingCpan) {
-                case FAIL:
-                    throw new IllegalStateException(String.format("cpan binary '%s' doesn't exist and can't be found in PATH",
-                            cpan),
-                            ex);
-                case DOWNLOAD:
-                    DownloadCombi perlDownloadCombi = new DownloadCombi("http://www.cpan.org/src/5.0/perl-5.26.1.tar.gz",
-                            new File(downloadDir,
-                                    "perl-5.26.1.tar.gz").getAbsolutePath(),
-                            ExtractionMode.EXTRACTION_MODE_TAR_GZ,
-                            new File(downloadDir,
-                                    "perl-5.26.1").getAbsolutePath(),
-                            "a7e5c531ee1719c53ec086656582ea86");
-                    List<BuildStepProcess> buildStepProcesses = generateBuildStepProcessesAutotools(installationPrefixPath,
-                            parallelism,
-                            "configure.gnu");
-                    cpan = installPrerequisiteAutotools(installationPrefixPath,
-                            CPAN_TEMPLATE,
-                            CPAN_TEMPLATE,
-                            perlDownloadCombi,
-                            null, //patchDownloadCombis
-                            buildStepProcesses
-                    );
-                    if(cpan == null) {
-                        //interactive download has been canceled
-                        return false;
-                    }
-                    try {
-                        BinaryUtils.validateBinary(cpan,
-                                CPAN_TEMPLATE,
-                                installationPrefixPath);
-                    } catch (BinaryValidationException ex2) {
-                        throw new IllegalStateException("cpan exisistence check or installation failed when cpan " +
-                                "installation is expected to have been successful",
-                                ex2);
-                    }
-                default:
-                    throw new IllegalArgumentException(String.format(ACTION_TEMPLATE,
-                            actionOnMissingCpan),
-                            ex);
-            }
+        if(isDownloadNeeded(cpan,
+                CPAN_TEMPLATE,
+                installationPrefixPath,
+                actionOnMissingCpan)
+                || isReinstallNeeded(CPAN_TEMPLATE,
+                        actionOnMissingCpan)) {
+            addPrerequisite(scheduler,
+                    PERL_PREREQUISITE,
+                    () -> installPerl(installationPrefixPath));
         }
         //gettext is a prerequisite of git (needs `msgfmt` command which is in
         //`gettext-tools`)
-        try {
-            BinaryUtils.validateBinary(msgfmt,
-                    "gettext",
-                    installationPrefixPath);
-        }catch(BinaryValidationException ex) {
-            switch(actionOnMissingMsgfmt) {
-                case FAIL:
-                    throw new IllegalStateException(String.format("msgfmt binary '%s' doesn't exist and can't be found in PATH",
-                            msgfmt),
-                            ex);
-                case DOWNLOAD:
-                    DownloadCombi gettextDownloadCombi = new DownloadCombi("https://ftp.gnu.org/pub/gnu/gettext/gettext-0.19.8.1.tar.xz",
-                            new File(downloadDir,
-                                    "gettext-0.19.8.1.tar.gz").getAbsolutePath(),
-                            ExtractionMode.EXTRACTION_MODE_TAR_XZ,
-                            new File(downloadDir,
-                                    "gettext-0.19.8.1").getAbsolutePath(),
-                            "df3f5690eaa30fd228537b00cb7b7590");
-                    DownloadCombi gettextPatchDownloadCombi = new DownloadCombi(JHBuildJavaWrapper.class.getResource("/patches/gettext/texi2html.patch").toExternalForm(),
-                            "texi2html.patch",
-                            ExtractionMode.EXTRACTION_MODE_NONE,
-                            "texi2html.patch",
-                            "77c7ac38a7cacab88753da0f0d8936fb");
-                    msgfmt = installPrerequisiteAutotools(installationPrefixPath,
-                            "msgfmt",
-                            "gettext",
-                            gettextDownloadCombi,
-                            new LinkedList<>(Arrays.asList(gettextPatchDownloadCombi)), //patchDownloadCombis
-                            parallelism);
-                    if(msgfmt == null) {
-                        //interactive download has been canceled
-                        return false;
-                    }
-                    try {
-                        BinaryUtils.validateBinary(msgfmt,
-                                "msgfmt",
-                                installationPrefixPath);
-                    } catch (BinaryValidationException ex1) {
-                        throw new IllegalArgumentException("msgfmt exisistence check or installation failed when " +
-                                "gettext installation is expected to have been successful",
-                                ex1);
-                    }
-                default:
-                    throw new IllegalArgumentException(String.format(ACTION_TEMPLATE,
-                            actionOnMissingMsgfmt),
-                            ex);
-            }
+        if(isDownloadNeeded(msgfmt,
+                "msgfmt",
+                installationPrefixPath,
+                actionOnMissingMsgfmt)
+                || isReinstallNeeded(GETTEXT_PREREQUISITE,
+                        actionOnMissingMsgfmt)) {
+            addPrerequisite(scheduler,
+                    GETTEXT_PREREQUISITE,
+                    () -> installGettext(installationPrefixPath));
         }
         //zlib is a prerequisite of git and python build
-        boolean zlibPresent = checkLibPresence(installationPrefixDir,
-                "zlib.pc");
-        if(zlibPresent) {
+        Optional<Path> zlibPcFile = checkLibPresence(installationPrefixDir,
+                ZLIB_PC_FILE_NAME);
+        if(zlibPcFile.isPresent()
+                && !isReinstallNeeded(ZLIB_PREREQUISITE,
+                        actionOnMissingZlib)) {
             LOGGER.debug("using existing version of zlib in installation prefix");
         }else {
             switch(actionOnMissingZlib) {
                 case FAIL:
                     throw new IllegalStateException("library zlib doesn't exist in installation prefix");
                 case DOWNLOAD:
-                    DownloadCombi zlibDownloadCombi = new DownloadCombi("https://www.zlib.net/zlib-1.2.11.tar.gz", //downloadURL
-                            new File(downloadDir,
-                                    "zlib-1.2.11.tar.gz").getAbsolutePath(), //downloadTarget
-                            ExtractionMode.EXTRACTION_MODE_TAR_GZ,
-                            new File(downloadDir,
-                                    "zlib-1.2.11").getAbsolutePath(), //extractionLocation
-                            "1c9f62f0778697a09d36121ead88e08e" //md5sum
-                    );
-                    String zlib = installPrerequisiteAutotools(installationPrefixPath,
-                            "", //binary (library doesn't provide binary, see
-                                //installPrerequisiteAutotools for details)
-                            "zlib",
-                            zlibDownloadCombi,
-                            null, //patchDownloadCombi,
-                            parallelism);
-                    if(zlib == null) {
-                        //interactive download has been canceled
-                        return false;
-                    }
-                    assert "".equals(zlib);
+                    addPrerequisite(scheduler,
+                            ZLIB_PREREQUISITE,
+                            () -> installZlib(installationPrefixPath));
                     break;
                 default:
                     throw new IllegalArgumentException(String.format(ACTION_TEMPLATE,
                             actionOnMissingZlib));
             }
         }
-        try {
-            BinaryUtils.validateBinary(git,
+        if(isDownloadNeeded(git,
+                GIT_TEMPLATE,
+                installationPrefixPath,
+                actionOnMissingGit)) {
+            addPrerequisite(scheduler,
                     GIT_TEMPLATE,
-                    installationPrefixPath);
-        }catch(BinaryValidationException ex) {
-            switch(actionOnMissingGit) {
-                case FAIL:
-                    throw new IllegalStateException(String.format("git binary '%s' doesn't exist and can't be found in PATH",
-                            git),
-                            ex);
-                case DOWNLOAD:
-                    DownloadCombi gitDownloadCombi = new DownloadCombi("https://www.kernel.org/pub/software/scm/git/git-2.13.3.tar.gz",
-                            new File(downloadDir,
-                                    "git-2.13.3.tar.gz").getAbsolutePath(),
-                            ExtractionMode.EXTRACTION_MODE_TAR_GZ,
-                            new File(downloadDir,
-                                    "git-2.13.3").getAbsolutePath(),
-                            "d2dc550f6693ba7e5b16212b2714f59f");
-                    git = installPrerequisiteAutotools(installationPrefixPath,
-                            GIT_TEMPLATE,
-                            GIT_TEMPLATE,
-                            gitDownloadCombi,
-                            null, //patchDownloadCombi,
-                            parallelism);
-                    if(git == null) {
-                        //interactive download has been canceled
-                        return false;
-                    }
-                    try {
-                        BinaryUtils.validateBinary(git,
-                                GIT_TEMPLATE,
-                                installationPrefixPath);
-                    } catch (BinaryValidationException ex1) {
-                        throw new IllegalArgumentException("git exisistence check or installation failed when git " +
-                                "installation is expected to have been successful",
-                                ex1);
-                    }
-                    break;
-                default:
-                    throw new IllegalArgumentException(String.format(ACTION_TEMPLATE,
-                            actionOnMissingGit),
-                            ex);
-            }
+                    () -> installGit(installationPrefixPath),
+                    PERL_PREREQUISITE,
+                    GETTEXT_PREREQUISITE,
+                    ZLIB_PREREQUISITE);
         }
-        try {
-            BinaryUtils.validateBinary(openssl,
+        if(isDownloadNeeded(openssl,
+                OPENSSL_TEMPLATE,
+                installationPrefixPath,
+                actionOnMissingOpenssl)
+                || isReinstallNeeded(OPENSSL_TEMPLATE,
+                        actionOnMissingOpenssl)) {
+            //OpenSSL's Configure is a Perl script
+            addPrerequisite(scheduler,
                     OPENSSL_TEMPLATE,
-                    installationPrefixPath);
-        }catch(BinaryValidationException ex1) {
-            switch(actionOnMissingOpenssl) {
-                case FAIL:
-                    throw new IllegalStateException(String.format("openssl binary '%s' doesn't exist and can't be found in PATH",
-                            openssl),
-                            ex1);
-                case DOWNLOAD:
-                    DownloadCombi opensslDownloadCombi = new DownloadCombi("https://www.openssl.org/source/openssl-1.1.1-pre1.tar.gz",
-                            new File(downloadDir,
-                                    "openssl-1.1.1-pre1.tar.gz").getAbsolutePath(),
-                            ExtractionMode.EXTRACTION_MODE_TAR_GZ,
-                            new File(downloadDir,
-                                    "openssl-1.1.1-pre1").getAbsolutePath(),
-                            "4ccfcaeeeb14730597aad0bc049a46b4");
-                    openssl = installPrerequisiteAutotools(installationPrefixPath,
-                            OPENSSL_TEMPLATE,
-                            OPENSSL_TEMPLATE,
-                            opensslDownloadCombi,
-                            null, //patchDownloadCombi,
-                            parallelism);
-                    if(openssl == null) {
-                        //interactive download has been canceled
-                        return false;
-                    }
-                    try {
-                        BinaryUtils.validateBinary(openssl,
-                                OPENSSL_TEMPLATE,
-                                installationPrefixPath);
-                    } catch (BinaryValidationException ex2) {
-                        throw new IllegalArgumentException("openssl exisistence check or installation failed when " +
-                                "openssl installation is expected to have been successful",
-                                ex2);
-                    }
-                    break;
-                default:
-                    throw new IllegalArgumentException(String.format(ACTION_TEMPLATE,
-                            actionOnMissingOpenssl),
-                            ex1);
-            }
+                    () -> installOpenssl(installationPrefixPath),
+                    PERL_PREREQUISITE);
         }
         //unclear why git version of Python has been used before (only increases
         //download time and might include instabilities from master)
-        try {
-            BinaryUtils.validateBinary(python,
+        if(isDownloadNeeded(python,
+                PYTHON_TEMPLATE,
+                installationPrefixPath,
+                actionOnMissingPython)) {
+            addPrerequisite(scheduler,
                     PYTHON_TEMPLATE,
-                    installationPrefixPath);
-        }catch(BinaryValidationException ex1) {
-            switch(actionOnMissingPython) {
-                case FAIL:
-                    throw new IllegalStateException(String.format("python binary '%s' doesn't exist and can't be found in PATH",
-                            python),
-                            ex1);
-                case DOWNLOAD:
-                    DownloadCombi pythonDownloadCombi = new DownloadCombi("https://www.python.org/ftp/python/3.6.4/Python-3.6.4.tgz",
-                            new File(downloadDir,
-                                    "Python-3.6.4.tgz").getAbsolutePath(),
-                            ExtractionMode.EXTRACTION_MODE_TAR_GZ,
-                            new File(downloadDir,
-                                    "Python-3.6.4").getAbsolutePath(),
-                            "9de6494314ea199e3633211696735f65");
-                    python = installPrerequisiteAutotools(installationPrefixPath,
-                            PYTHON_TEMPLATE,
-                            PYTHON_TEMPLATE,
-                            pythonDownloadCombi,
-                            null, //patchDownloadCombi,
-                            parallelism);
-                    if(python == null) {
-                        //interactive download has been canceled
-                        return false;
-                    }
-                    try {
-                        BinaryUtils.validateBinary(python,
-                                PYTHON_TEMPLATE,
-                                installationPrefixPath);
-                    } catch (BinaryValidationException ex2) {
-                        throw new IllegalArgumentException("python exisistence check or installation failed when " +
-                                "python installation is expected to have been successful",
-                                ex2);
-                    }
-                    break;
-                default:
-                    throw new IllegalArgumentException(String.format(ACTION_TEMPLATE,
-                            actionOnMissingPython),
-                            ex1);
+                    () -> installPython(installationPrefixPath),
+                    ZLIB_PREREQUISITE,
+                    OPENSSL_TEMPLATE);
+        }
+        if(isDownloadNeeded(jhbuild,
+                JHBUILD_TEMPLATE,
+                installationPrefixPath,
+                actionOnMissingJHBuild)) {
+            addPrerequisite(scheduler,
+                    JHBUILD_TEMPLATE,
+                    () -> jhbuildDownload(installationPrefixPath),
+                    GIT_TEMPLATE,
+                    PYTHON_TEMPLATE);
+        }
+        boolean notCanceled;
+        prerequisiteScheduler = scheduler;
+        try {
+            notCanceled = scheduler.run();
+        }catch(IOException
+                | ExtractionException
+                | InterruptedException
+                | MissingSystemBinaryException
+                | BuildFailureException
+                | DownloadException
+                | RuntimeException ex) {
+            throw ex;
+        }catch(Exception ex) {
+            throw new IllegalStateException(ex);
+        }finally {
+            prerequisiteScheduler = null;
+        }
+        if(!notCanceled) {
+            return false;
+        }
+        this.inited = true;
+        storeInitFingerprint(fingerprintConfiguration,
+                installationPrefixPath,
+                zlibPcFile,
+                fingerprintFile);
+        return true;
+    }
+
+    /**
+     * Describes the wrapper configuration which influences the result of
+     * {@link #init(String) }.
+     */
+    private String getInitFingerprintConfiguration(String installationPrefixPath) {
+        return String.format("PATH=%s cc=%s cpan=%s msgfmt=%s git=%s openssl=%s python=%s jhbuild=%s",
+                installationPrefixPath,
+                cc,
+                cpan,
+                msgfmt,
+                git,
+                openssl,
+                python,
+                jhbuild);
+    }
+
+    /**
+     * Persists the resolved prerequisites after a successful
+     * {@link #init(String) } so that the next JVM can skip probing them. No
+     * fingerprint is stored if any prerequisite can't be resolved.
+     */
+    private void storeInitFingerprint(String fingerprintConfiguration,
+            String installationPrefixPath,
+            Optional<Path> zlibPcFile,
+            File fingerprintFile) throws IOException {
+        InitFingerprint fingerprint = new InitFingerprint(fingerprintConfiguration);
+        Map<String, String> binaries = new LinkedHashMap<>();
+        binaries.put("cc", cc);
+        binaries.put(CPAN_TEMPLATE, cpan);
+        binaries.put("msgfmt", msgfmt);
+        binaries.put(GIT_TEMPLATE, git);
+        binaries.put(OPENSSL_TEMPLATE, openssl);
+        binaries.put(PYTHON_TEMPLATE, python);
+        binaries.put(JHBUILD_TEMPLATE, jhbuild);
+        //resolved in one pass over the path
+        Map<String, File> binaryFiles = BinaryUtils.resolveBinaries(binaries.values(),
+                installationPrefixPath);
+        for(Map.Entry<String, String> binary : binaries.entrySet()) {
+            File binaryFile = binaryFiles.get(binary.getValue());
+            if(binaryFile == null) {
+                LOGGER.debug(String.format("not storing init fingerprint because %s binary '%s' can't be resolved",
+                        binary.getKey(),
+                        binary.getValue()));
+                return;
+            }
+            fingerprint.addFile(binary.getKey(),
+                    binaryFile);
+        }
+        Optional<Path> installedZlibPcFile = zlibPcFile;
+        if(!installedZlibPcFile.isPresent()) {
+            //has been installed during init
+            installedZlibPcFile = checkLibPresence(installationPrefixDir,
+                    ZLIB_PC_FILE_NAME);
+            if(!installedZlibPcFile.isPresent()) {
+                LOGGER.debug("not storing init fingerprint because zlib can't be found");
+                return;
             }
         }
+        fingerprint.addFile(ZLIB_PC_FILE_NAME,
+                installedZlibPcFile.get().toFile());
+        fingerprint.store(fingerprintFile);
+        LOGGER.debug(String.format("stored init fingerprint %s",
+                fingerprintFile.getAbsolutePath()));
+    }
+
+    /**
+     * Checks whether a binary is missing and ought to be downloaded.
+     *
+     * @param binary the binary to check
+     * @param name the name of the binary
+     * @param installationPrefixPath the {@code PATH} to search in
+     * @param actionOnMissingBinary the action to perform if the binary is
+     *     missing
+     * @return {@code true} if the binary is missing and ought to be
+     *     downloaded, {@code false} if it's present
+     * @throws IllegalStateException if the binary is missing and
+     *     {@code actionOnMissingBinary} is {@link ActionOnMissingBinary#FAIL}
+     */
+    private boolean isDownloadNeeded(String binary,
+            String name,
+            String installationPrefixPath,
+            ActionOnMissingBinary actionOnMissingBinary) {
         try {
-            BinaryUtils.validateBinary(jhbuild,
-                    JHBUILD_TEMPLATE,
+            BinaryUtils.validateBinary(binary,
+                    name,
                     installationPrefixPath);
+            return false;
         }catch(BinaryValidationException ex) {
-            switch(actionOnMissingJHBuild) {
+            switch(actionOnMissingBinary) {
                 case FAIL:
-                    throw new IllegalStateException(String.format("jhbuild binary '%s' doesn't exist and can't be found in PATH",
-                            jhbuild),
+                    throw new IllegalStateException(String.format("%s binary '%s' doesn't exist and can't be found in PATH",
+                            name,
+                            binary),
                             ex);
                 case DOWNLOAD:
-                    if(!jhbuildDownload(installationPrefixPath)) {
-                        return false;
-                    }
-                    break;
+                    return true;
                 default:
                     throw new IllegalArgumentException(String.format(ACTION_TEMPLATE,
-                            actionOnMissingJHBuild),
+                            actionOnMissingBinary),
                             ex);
             }
         }
-        this.inited = true;
+    }
+
+    /**
+     * Checks whether a prerequisite which is present needs to be installed
+     * again because its checks failed or have been interrupted after it had
+     * been installed.
+     *
+     * @param binaryDescription the description of the prerequisite
+     * @param actionOnMissingBinary the action to perform if the binary is
+     *     missing, prerequisites are only installed again if it is
+     *     {@link ActionOnMissingBinary#DOWNLOAD}
+     * @return {@code true} if the prerequisite ought to be installed again
+     */
+    private boolean isReinstallNeeded(String binaryDescription,
+            ActionOnMissingBinary actionOnMissingBinary) {
+        if(!getChecksPendingMarker(binaryDescription).exists()) {
+            return false;
+        }
+        if(actionOnMissingBinary != ActionOnMissingBinary.DOWNLOAD) {
+            LOGGER.warn(String.format("checks of %s failed or have been "
+                    + "interrupted after installation, but it isn't "
+                    + "installed again because action on missing binary is %s",
+                    binaryDescription,
+                    actionOnMissingBinary));
+            return false;
+        }
+        LOGGER.info(String.format("installing %s again because its checks failed or have been interrupted",
+                binaryDescription));
+        return true;
+    }
+
+    private File getChecksPendingMarker(String binaryDescription) {
+        return new File(installationPrefixDir,
+                String.format(CHECKS_PENDING_MARKER_TEMPLATE,
+                        binaryDescription));
+    }
+
+    /**
+     * Adds a prerequisite installation to {@code scheduler} and keeps track
+     * of the number of running installations which share
+     * {@link #parallelism}.
+     */
+    private void addPrerequisite(PrerequisiteScheduler scheduler,
+            String name,
+            PrerequisiteScheduler.Task task,
+            String... dependencyNames) {
+        scheduler.add(name,
+                () -> {
+                    runningPrerequisites.incrementAndGet();
+                    try {
+                        return task.run();
+                    }finally {
+                        runningPrerequisites.decrementAndGet();
+                    }
+                },
+                dependencyNames);
+    }
+
+    /**
+     * Stops all running prerequisite installations after one failed or has
+     * been canceled.
+     */
+    private void abortPrerequisites() {
+        List<Process> processes;
+        synchronized(this) {
+            this.aborted = true;
+            processes = new LinkedList<>(activeProcesses);
+        }
+        terminateProcesses(processes);
+    }
+
+    /**
+     * The number of jobs passed to {@code make} with {@code -j} which is
+     * {@code parallelism} divided by the number of prerequisite installations
+     * running at the same time.
+     *
+     * @param parallelism the parallelism for a single build
+     * @return the number of jobs
+     */
+    private int getMakeJobs(int parallelism) {
+        return Math.max(1,
+                parallelism / Math.max(1, runningPrerequisites.get()));
+    }
+
+    private void validateInstalledBinary(String binary,
+            String name,
+            String installationPrefixPath) {
+        try {
+            BinaryUtils.validateBinary(binary,
+                    name,
+                    installationPrefixPath);
+        } catch (BinaryValidationException ex) {
+            throw new IllegalStateException(String.format("%s exisistence check or installation failed when %s " +
+                    "installation is expected to have been successful",
+                    name,
+                    name),
+                    ex);
+        }
+    }
+
+    private boolean installPerl(String installationPrefixPath) throws IOException,
+            ExtractionException,
+            MissingSystemBinaryException,
+            InterruptedException,
+            BuildFailureException,
+            DownloadException {
+        DownloadCombi perlDownloadCombi = new DownloadCombi("http://www.cpan.org/src/5.0/perl-5.26.1.tar.gz",
+                new File(downloadDir,
+                        "perl-5.26.1.tar.gz").getAbsolutePath(),
+                ExtractionMode.EXTRACTION_MODE_TAR_GZ,
+                new File(downloadDir,
+                        "perl-5.26.1").getAbsolutePath(),
+                "a7e5c531ee1719c53ec086656582ea86");
+        List<BuildStepProcess> buildStepProcesses = generateBuildStepProcessesAutotools(installationPrefixPath,
+                parallelism,
+                "test", //checkTarget
+                "configure.gnu");
+        String cpan = installPrerequisiteAutotools(installationPrefixPath,
+                CPAN_TEMPLATE,
+                CPAN_TEMPLATE,
+                perlDownloadCombi,
+                null, //patchDownloadCombis
+                buildStepProcesses,
+                false //outOfTree (Configure only supports in-tree builds)
+        );
+        if(cpan == null) {
+            //interactive download has been canceled
+            return false;
+        }
+        validateInstalledBinary(cpan,
+                CPAN_TEMPLATE,
+                installationPrefixPath);
+        this.cpan = cpan;
+        return true;
+    }
+
+    private boolean installGettext(String installationPrefixPath) throws IOException,
+            ExtractionException,
+            MissingSystemBinaryException,
+            InterruptedException,
+            BuildFailureException,
+            DownloadException {
+        DownloadCombi gettextDownloadCombi = new DownloadCombi("https://ftp.gnu.org/pub/gnu/gettext/gettext-0.19.8.1.tar.xz",
+                new File(downloadDir,
+                        "gettext-0.19.8.1.tar.gz").getAbsolutePath(),
+                ExtractionMode.EXTRACTION_MODE_TAR_XZ,
+                new File(downloadDir,
+                        "gettext-0.19.8.1").getAbsolutePath(),
+                "df3f5690eaa30fd228537b00cb7b7590");
+        DownloadCombi gettextPatchDownloadCombi = new DownloadCombi(JHBuildJavaWrapper.class.getResource("/patches/gettext/texi2html.patch").toExternalForm(),
+                "texi2html.patch",
+                ExtractionMode.EXTRACTION_MODE_NONE,
+                "texi2html.patch",
+                "77c7ac38a7cacab88753da0f0d8936fb");
+        String msgfmt = installPrerequisiteAutotools(installationPrefixPath,
+                "msgfmt",
+                "gettext",
+                gettextDownloadCombi,
+                new LinkedList<>(Arrays.asList(gettextPatchDownloadCombi)), //patchDownloadCombis
+                parallelism,
+                true, //outOfTree
+                "check" //checkTarget
+        );
+        if(msgfmt == null) {
+            //interactive download has been canceled
+            return false;
+        }
+        validateInstalledBinary(msgfmt,
+                "msgfmt",
+                installationPrefixPath);
+        this.msgfmt = msgfmt;
+        return true;
+    }
+
+    private boolean installZlib(String installationPrefixPath) throws IOException,
+            ExtractionException,
+            MissingSystemBinaryException,
+            InterruptedException,
+            BuildFailureException,
+            DownloadException {
+        DownloadCombi zlibDownloadCombi = new DownloadCombi("https://www.zlib.net/zlib-1.2.11.tar.gz", //downloadURL
+                new File(downloadDir,
+                        "zlib-1.2.11.tar.gz").getAbsolutePath(), //downloadTarget
+                ExtractionMode.EXTRACTION_MODE_TAR_GZ,
+                new File(downloadDir,
+                        "zlib-1.2.11").getAbsolutePath(), //extractionLocation
+                "1c9f62f0778697a09d36121ead88e08e" //md5sum
+        );
+        String zlib = installPrerequisiteAutotools(installationPrefixPath,
+                "", //binary (library doesn't provide binary, see
+                    //installPrerequisiteAutotools for details)
+                "zlib",
+                zlibDownloadCombi,
+                null, //patchDownloadCombi,
+                parallelism,
+                true, //outOfTree
+                "check" //checkTarget
+        );
+        if(zlib == null) {
+            //interactive download has been canceled
+            return false;
+        }
+        assert "".equals(zlib);
+        return true;
+    }
+
+    private boolean installGit(String installationPrefixPath) throws IOException,
+            ExtractionException,
+            MissingSystemBinaryException,
+            InterruptedException,
+            BuildFailureException,
+            DownloadException {
+        DownloadCombi gitDownloadCombi = new DownloadCombi("https://www.kernel.org/pub/software/scm/git/git-2.13.3.tar.gz",
+                new File(downloadDir,
+                        "git-2.13.3.tar.gz").getAbsolutePath(),
+                ExtractionMode.EXTRACTION_MODE_TAR_GZ,
+                new File(downloadDir,
+                        "git-2.13.3").getAbsolutePath(),
+                "d2dc550f6693ba7e5b16212b2714f59f",
+                GIT_EXTRACTION_FILTER);
+        String git = installPrerequisiteAutotools(installationPrefixPath,
+                GIT_TEMPLATE,
+                GIT_TEMPLATE,
+                gitDownloadCombi,
+                null, //patchDownloadCombi,
+                parallelism,
+                false, //outOfTree (git's Makefile only supports in-tree
+                    //builds)
+                null //checkTarget (the test scripts are excluded from
+                    //extraction)
+        );
+        if(git == null) {
+            //interactive download has been canceled
+            return false;
+        }
+        validateInstalledBinary(git,
+                GIT_TEMPLATE,
+                installationPrefixPath);
+        this.git = git;
+        return true;
+    }
+
+    private boolean installOpenssl(String installationPrefixPath) throws IOException,
+            ExtractionException,
+            MissingSystemBinaryException,
+            InterruptedException,
+            BuildFailureException,
+            DownloadException {
+        DownloadCombi opensslDownloadCombi = new DownloadCombi("https://www.openssl.org/source/openssl-1.1.1-pre1.tar.gz",
+                new File(downloadDir,
+                        "openssl-1.1.1-pre1.tar.gz").getAbsolutePath(),
+                ExtractionMode.EXTRACTION_MODE_TAR_GZ,
+                new File(downloadDir,
+                        "openssl-1.1.1-pre1").getAbsolutePath(),
+                "4ccfcaeeeb14730597aad0bc049a46b4");
+        String openssl = installPrerequisiteAutotools(installationPrefixPath,
+                OPENSSL_TEMPLATE,
+                OPENSSL_TEMPLATE,
+                opensslDownloadCombi,
+                null, //patchDownloadCombi,
+                parallelism,
+                false, //outOfTree (only supported by OpenSSL's config script
+                    //which isn't used)
+                "test" //checkTarget
+        );
+        if(openssl == null) {
+            //interactive download has been canceled
+            return false;
+        }
+        validateInstalledBinary(openssl,
+                OPENSSL_TEMPLATE,
+                installationPrefixPath);
+        this.openssl = openssl;
+        return true;
+    }
+
+    private boolean installPython(String installationPrefixPath) throws IOException,
+            ExtractionException,
+            MissingSystemBinaryException,
+            InterruptedException,
+            BuildFailureException,
+            DownloadException {
+        DownloadCombi pythonDownloadCombi = new DownloadCombi("https://www.python.org/ftp/python/3.6.4/Python-3.6.4.tgz",
+                new File(downloadDir,
+                        "Python-3.6.4.tgz").getAbsolutePath(),
+                ExtractionMode.EXTRACTION_MODE_TAR_GZ,
+                new File(downloadDir,
+                        "Python-3.6.4").getAbsolutePath(),
+                "9de6494314ea199e3633211696735f65",
+                PYTHON_EXTRACTION_FILTER);
+        String python = installPrerequisiteAutotools(installationPrefixPath,
+                PYTHON_TEMPLATE,
+                PYTHON_TEMPLATE,
+                pythonDownloadCombi,
+                null, //patchDownloadCombi,
+                parallelism,
+                true, //outOfTree
+                null //checkTarget (the test suite is excluded from
+                    //extraction)
+        );
+        if(python == null) {
+            //interactive download has been canceled
+            return false;
+        }
+        validateInstalledBinary(python,
+                PYTHON_TEMPLATE,
+                installationPrefixPath);
+        this.python = python;
         return true;
     }
 
@@ -737,29 +2021,27 @@ public class JHBuildJavaWrapper {
             //check whether the existing non-empty directory is a
             //valid source root
             synchronized(this) {
-                if(canceled) {
+                if(canceled || aborted) {
                     return false;
                 }
             }
-            Process jhbuildSourceRootCheckProcess = createProcess(jhbuildCloneDir,
+            //git might hang like during the clone, e.g. on a lock held by a
+            //process which has been killed
+            Process jhbuildSourceRootCheckProcess = createMeasuredProcess(JHBUILD_TEMPLATE,
+                    BuildStep.CLONE,
+                    jhbuildCloneDir,
                     installationPrefixPath,
-                    git,
+                    resolveCommand(git,
+                            installationPrefixPath),
                     "status");
             LOGGER.debug("waiting for jhbuild source root check");
-            jhbuildSourceRootCheckProcess.waitFor();
+            awaitProcess(jhbuildSourceRootCheckProcess);
+            finishMeasurement(JHBUILD_TEMPLATE,
+                    jhbuildSourceRootCheckProcess);
             if(jhbuildSourceRootCheckProcess.exitValue() != 0) {
-                OutputReaderThread stdoutReaderThread = processOutputReaderThreadMap.get(jhbuildSourceRootCheckProcess).getKey();
-                OutputReaderThread stderrReaderThread = processOutputReaderThreadMap.get(jhbuildSourceRootCheckProcess).getValue();
-                String stdout = REDIRECTED_TEMPLATE;
-                String stderr = REDIRECTED_TEMPLATE;
-                if(stdoutReaderThread != null) {
-                    stdoutReaderThread.join();
-                    stdout = IOUtils.toString(stdoutReaderThread.getProcessOutputStream());
-                }
-                if(stderrReaderThread != null) {
-                    stderrReaderThread.join();
-                    stderr = IOUtils.toString(stderrReaderThread.getProcessOutputStream());
-                }
+                ProcessOutput output = awaitProcessOutput(jhbuildSourceRootCheckProcess);
+                String stdout = tailOrRedirected(output.getStdoutTail());
+                String stderr = tailOrRedirected(output.getStderrTail());
                 throw new IllegalStateException(String.format("The "
                                 + "jhbuild clone directory '%s' already "
                                 + "exist, is not empty and is not a valid "
@@ -778,19 +2060,25 @@ public class JHBuildJavaWrapper {
         }
         if(needClone) {
             synchronized(this) {
-                if(canceled) {
+                if(canceled || aborted) {
                     return false;
                 }
             }
-            Process jhbuildCloneProcess = createProcess(installationPrefixPath,
-                    git,
+            Process jhbuildCloneProcess = createMeasuredProcess(JHBUILD_TEMPLATE,
+                    BuildStep.CLONE,
+                    null, //directory
+                    installationPrefixPath,
+                    resolveCommand(git,
+                            installationPrefixPath),
                     "clone",
                     "https://gitlab.gnome.org/GNOME/jhbuild.git",
                     jhbuildCloneDir.getAbsolutePath());
             //directory doesn't matter because target path is
             //absolute
             LOGGER.debug("waiting for jhbuild download");
-            jhbuildCloneProcess.waitFor();
+            awaitProcess(jhbuildCloneProcess);
+            finishMeasurement(JHBUILD_TEMPLATE,
+                    jhbuildCloneProcess);
             if(jhbuildCloneProcess.exitValue() != 0) {
                 handleBuilderFailure(JHBUILD_TEMPLATE,
                         BuildStep.CLONE,
@@ -799,17 +2087,21 @@ public class JHBuildJavaWrapper {
             LOGGER.debug("jhbuild download finished");
         }
         synchronized(this) {
-            if(canceled) {
+            if(canceled || aborted) {
                 return false;
             }
         }
-        Process jhbuildAutogenProcess = createProcess(jhbuildCloneDir,
+        Process jhbuildAutogenProcess = createMeasuredProcess(JHBUILD_TEMPLATE,
+                BuildStep.BOOTSTRAP,
+                jhbuildCloneDir,
                 installationPrefixPath,
                 sh, "autogen.sh",
                 String.format("--prefix=%s", installationPrefixDir.getAbsolutePath()));
         //autogen.sh runs configure
         LOGGER.debug("waiting for jhbuild build bootstrap process");
-        jhbuildAutogenProcess.waitFor();
+        awaitProcess(jhbuildAutogenProcess);
+        finishMeasurement(JHBUILD_TEMPLATE,
+                jhbuildAutogenProcess);
         if(jhbuildAutogenProcess.exitValue() != 0) {
             handleBuilderFailure(JHBUILD_TEMPLATE,
                     BuildStep.BOOTSTRAP,
@@ -817,15 +2109,17 @@ public class JHBuildJavaWrapper {
         }
         LOGGER.debug("jhbuild build bootstrap process finished");
         synchronized(this) {
-            if(canceled) {
+            if(canceled || aborted) {
                 return false;
             }
         }
-        Process jhbuildMakeProcess = createProcess(jhbuildCloneDir,
-                installationPrefixPath,
-                make, String.format("-j%d", parallelism));
         LOGGER.debug("waiting for jhbuild build process");
-        jhbuildMakeProcess.waitFor();
+        Process jhbuildMakeProcess = runMake(JHBUILD_TEMPLATE,
+                jhbuildCloneDir,
+                installationPrefixPath,
+                parallelism);
+        finishMeasurement(JHBUILD_TEMPLATE,
+                jhbuildMakeProcess);
         if(jhbuildMakeProcess.exitValue() != 0) {
             handleBuilderFailure(JHBUILD_TEMPLATE,
                     BuildStep.MAKE,
@@ -833,15 +2127,21 @@ public class JHBuildJavaWrapper {
         }
         LOGGER.debug("jhbuild build process finished");
         synchronized(this) {
-            if(canceled) {
+            if(canceled || aborted) {
                 return false;
             }
         }
-        Process jhbuildMakeInstallProcess = createProcess(jhbuildCloneDir,
+        Process jhbuildMakeInstallProcess = createMeasuredProcess(JHBUILD_TEMPLATE,
+                BuildStep.MAKE_INSTALL,
+                jhbuildCloneDir,
                 installationPrefixPath,
-                make, "install");
+                resolveCommand(make,
+                        installationPrefixPath),
+                "install");
         LOGGER.debug("waiting for jhbuild installation process");
-        jhbuildMakeInstallProcess.waitFor();
+        awaitProcess(jhbuildMakeInstallProcess);
+        finishMeasurement(JHBUILD_TEMPLATE,
+                jhbuildMakeInstallProcess);
         if(jhbuildMakeInstallProcess.exitValue() != 0) {
             handleBuilderFailure(JHBUILD_TEMPLATE,
                     BuildStep.MAKE_INSTALL,
@@ -861,34 +2161,31 @@ public class JHBuildJavaWrapper {
             Process failedBuildProcess) throws BuildFailureException,
             IOException,
             InterruptedException {
-        String stdout = null;
-        String stderr = null;
-        if(stdoutOutputStream != null) {
-            OutputReaderThread stdoutReaderThread = processOutputReaderThreadMap.get(failedBuildProcess).getKey();
-            stdoutReaderThread.join();
-            stdout = IOUtils.toString(stdoutReaderThread.getProcessOutputStream());
-        }
-        if(stderrOutputStream != null) {
-            OutputReaderThread stderrReaderThread = processOutputReaderThreadMap.get(failedBuildProcess).getValue();
-            stderrReaderThread.join();
-            stderr = IOUtils.toString(stderrReaderThread.getProcessOutputStream());
-        }
+        ProcessOutput output = awaitProcessOutput(failedBuildProcess);
         throw new BuildFailureException(moduleName,
                 buildFailureStep,
-                stdout,
-                stderr);
+                output.getStdoutTail(),
+                output.getStderrTail(),
+                output.getLogFile());
     }
 
     /**
-     * Allows cancelation (with minimal delay) from another thread.
+     * Allows cancelation (with minimal delay) from another thread. Sends
+     * {@code SIGTERM} to the process groups of all running build steps and
+     * {@code SIGKILL} after {@link #getCancelationGracePeriodMillis() } and
+     * returns after all processes of the groups terminated. The time this
+     * took is available with {@link #getTimeToQuiescenceMillis() }.
      */
     public void cancelInstallModuleset() {
-        this.canceled = true;
+        List<Process> processes;
         synchronized(this) {
-            if(activeProcess != null) {
-                activeProcess.destroy();
-            }
+            this.canceled = true;
+            processes = new LinkedList<>(activeProcesses);
         }
+        long timeToQuiescence = terminateProcesses(processes);
+        this.timeToQuiescenceMillis = timeToQuiescence;
+        LOGGER.info(String.format("all processes terminated %d ms after cancelation",
+                timeToQuiescence));
     }
 
     /**
@@ -953,31 +2250,147 @@ public class JHBuildJavaWrapper {
      * @throws ModuleBuildFailureException if such an exception occurs
      * @throws DownloadException if such an exception occurs
      */
-    /*
-    internal implementation notes:
-    - throwing IllegalArgumentException if modulesetInputStream is null improves
-    handling of InputStream which have been acquired through
-    Class.getResourceAsStream since those might be null
-    */
-    public boolean installModuleset(InputStream modulesetInputStream,
-            String moduleName) throws IOException,
+    /*
+    internal implementation notes:
+    - throwing IllegalArgumentException if modulesetInputStream is null improves
+    handling of InputStream which have been acquired through
+    Class.getResourceAsStream since those might be null
+    */
+    public boolean installModuleset(InputStream modulesetInputStream,
+            String moduleName) throws IOException,
+            ExtractionException,
+            InterruptedException,
+            MissingSystemBinaryException,
+            BuildFailureException,
+            ModuleBuildFailureException,
+            DownloadException,
+            IllegalArgumentException {
+        canceled = false;
+        if(modulesetInputStream == null) {
+            throw new IllegalArgumentException("modulesetInputStream mustn't be null");
+        }
+        if(moduleName == null || moduleName.isEmpty()) {
+            throw new IllegalArgumentException("moduleName mustn't be null or empty");
+        }
+        //a new jobserver for every invokation since tokens of destroyed make
+        //processes are lost
+        makeJobserver = MakeJobserver.create(make,
+                parallelism);
+        if(makeJobserver != null && adaptiveParallelism) {
+            parallelismGovernor = new ParallelismGovernor(makeJobserver,
+                    ParallelismGovernor.STATISTICS_FILE_DEFAULT,
+                    ParallelismGovernor.INTERVAL_MILLIS_DEFAULT);
+            //learns the memory per job from the make steps
+            buildMetricsListeners.add(parallelismGovernor);
+        }
+        buildMetricsReport.clear();
+        //ccache only has global counters and prerequisites are built
+        //concurrently, so hits and misses can only be reported for the whole
+        //run
+        String installationPrefixPath = getInstallationPrefixPath();
+        CompilerCache usedCompilerCache = this.compilerCache;
+        CompilerCache.Statistics compilerCacheStatistics = null;
+        try {
+            if(usedCompilerCache != null) {
+                compilerCacheStatistics = usedCompilerCache.getStatistics(installationPrefixPath);
+            }
+            return installModuleset0(modulesetInputStream,
+                    moduleName,
+                    installationPrefixPath);
+        }finally {
+            if(compilerCacheStatistics != null) {
+                logCompilerCacheStatistics(usedCompilerCache,
+                        compilerCacheStatistics,
+                        installationPrefixPath);
+            }
+            if(parallelismGovernor != null) {
+                buildMetricsListeners.remove(parallelismGovernor);
+                try {
+                    parallelismGovernor.close();
+                }catch(IOException ex) {
+                    LOGGER.warn("storing parallelism statistics failed",
+                            ex);
+                }
+                parallelismGovernor = null;
+            }
+            if(makeJobserver != null) {
+                makeJobserver.close();
+                makeJobserver = null;
+            }
+            writeBuildMetricsReport();
+            try {
+                progressStatistics.store();
+            }catch(IOException ex) {
+                LOGGER.warn("storing progress statistics failed",
+                        ex);
+            }
+        }
+    }
+
+    /**
+     * Logs the hits and misses of {@code compilerCache} since
+     * {@code before}. Builds of other processes using the same cache
+     * directory at the same time are included. Failures are only logged since
+     * they mustn't hide the result of the build.
+     */
+    private void logCompilerCacheStatistics(CompilerCache compilerCache,
+            CompilerCache.Statistics before,
+            String installationPrefixPath) {
+        CompilerCache.Statistics after;
+        try {
+            after = compilerCache.getStatistics(installationPrefixPath);
+        }catch(IOException ex) {
+            LOGGER.warn("retrieving compiler cache statistics failed",
+                    ex);
+            return;
+        }catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if(after == null) {
+            return;
+        }
+        CompilerCache.Statistics difference = after.since(before);
+        LOGGER.info(String.format("compiler cache had %d hits and %d misses during installation",
+                difference.getHits(),
+                difference.getMisses()));
+    }
+
+    private String getInstallationPrefixPath() {
+        return String.join(File.pathSeparator,
+                String.join(File.separator, installationPrefixDir.getAbsolutePath(), "bin"),
+                System.getenv(PATH));
+    }
+
+    /**
+     * Writes {@link #buildMetricsReport} to {@link #buildMetricsReportFile}.
+     * Failures are only logged since they mustn't hide the result of the
+     * build.
+     */
+    private void writeBuildMetricsReport() {
+        if(buildMetricsReportFile == null) {
+            return;
+        }
+        try {
+            buildMetricsReport.write(buildMetricsReportFile);
+            LOGGER.info(String.format("wrote build metrics report to %s",
+                    buildMetricsReportFile.getAbsolutePath()));
+        }catch(IOException ex) {
+            LOGGER.warn(String.format("writing build metrics report to %s failed",
+                    buildMetricsReportFile.getAbsolutePath()),
+                    ex);
+        }
+    }
+
+    private boolean installModuleset0(InputStream modulesetInputStream,
+            String moduleName,
+            String installationPrefixPath) throws IOException,
             ExtractionException,
             InterruptedException,
             MissingSystemBinaryException,
             BuildFailureException,
             ModuleBuildFailureException,
-            DownloadException,
-            IllegalArgumentException {
-        canceled = false;
-        if(modulesetInputStream == null) {
-            throw new IllegalArgumentException("modulesetInputStream mustn't be null");
-        }
-        if(moduleName == null || moduleName.isEmpty()) {
-            throw new IllegalArgumentException("moduleName mustn't be null or empty");
-        }
-        String installationPrefixPath = String.join(File.pathSeparator,
-                String.join(File.separator, installationPrefixDir.getAbsolutePath(), "bin"),
-                System.getenv(PATH));
+            DownloadException {
         LOGGER.debug(String.format("using PATH %s for installation routines",
                 installationPrefixPath));
         boolean notCanceled = init(installationPrefixPath);
@@ -987,81 +2400,136 @@ public class JHBuildJavaWrapper {
         LOGGER.debug(String.format("building module %s with jhbuild command %s",
                 moduleName,
                 jhbuild));
-        Process jhbuildBootstrapProcess = createProcess(installationPrefixPath,
+        Process jhbuildBootstrapProcess = createMeasuredProcess(JHBUILD_TEMPLATE,
+                BuildStep.BOOTSTRAP,
+                null, //directory
+                moduleEnvironment(installationPrefixPath),
                 jhbuild, "bootstrap");
             //directory doesn't matter
         LOGGER.debug("waiting for jhbuild bootstrap process");
-        jhbuildBootstrapProcess.waitFor();
+        awaitProcess(jhbuildBootstrapProcess);
+        finishMeasurement(JHBUILD_TEMPLATE,
+                jhbuildBootstrapProcess);
         if(jhbuildBootstrapProcess.exitValue() != 0) {
-            OutputReaderThread stdoutReaderThread = processOutputReaderThreadMap.get(jhbuildBootstrapProcess).getKey();
-            OutputReaderThread stderrReaderThread = processOutputReaderThreadMap.get(jhbuildBootstrapProcess).getValue();
-            String stdout = REDIRECTED_TEMPLATE;
-            String stderr = REDIRECTED_TEMPLATE;
-            if(stdoutReaderThread != null) {
-                stdoutReaderThread.join();
-                stdout = IOUtils.toString(stdoutReaderThread.getProcessOutputStream());
-            }
-            if(stderrReaderThread != null) {
-                stderrReaderThread.join();
-                stderr = IOUtils.toString(stderrReaderThread.getProcessOutputStream());
-            }
+            ProcessOutput output = awaitProcessOutput(jhbuildBootstrapProcess);
+            String stdout = tailOrRedirected(output.getStdoutTail());
+            String stderr = tailOrRedirected(output.getStderrTail());
             throw new ModuleBuildFailureException(String.format("jhbuild "
                     + "bootstrap process returned with code %d (stdout was "
                     + "'%s' and stderr was '%s')",
                     jhbuildBootstrapProcess.exitValue(),
                     stdout,
-                    stderr));
+                    stderr),
+                    output.getLogFile());
         }
         LOGGER.debug("jhbuild bootstrap process finished");
         File modulesetFile = Files.createTempFile(JHBuildJavaWrapper.class.getSimpleName(), //prefix
                 "moduleset" //suffix
         ).toFile();
         IOUtils.copy(modulesetInputStream, Files.newOutputStream(modulesetFile.toPath()));
-        String jHBuildrcTemplate = String.format("prefix=\"%s\"\n"
-                + "checkoutroot = \"%s\"",
-                installationPrefixDir.getAbsolutePath(),
-                downloadDir.getAbsolutePath());
+        //jhbuild always passes -j to make which takes precedence over
+        //MAKEFLAGS, so it can't use the jobserver, but it only runs after all
+        //prerequisites have been installed and thus gets all jobs the
+        //governor currently allows
+        String jHBuildrcTemplate = String.format("prefix=%s\n"
+                + "checkoutroot = %s\n"
+                + "jobs = %d",
+                toPythonStringLiteral(installationPrefixDir.getAbsolutePath()),
+                toPythonStringLiteral(downloadDir.getAbsolutePath()),
+                parallelismGovernor != null
+                        ? parallelismGovernor.getActiveTokens()
+                        : parallelism);
+        File tmpfsBuildDir = buildRootSelector.getTmpfsDir();
+        File modulesTmpfsBuildDir = null;
+        if(tmpfsBuildDir != null
+                && tmpfsBuildDir.isDirectory()
+                && tmpfsBuildDir.getUsableSpace() >= MODULE_BUILD_TMPFS_SPACE_MIN) {
+            //jhbuild builds modules which support it out of the source tree
+            //in buildroot
+            modulesTmpfsBuildDir = new File(buildRootSelector.getTmpfsBuildRootDir(),
+                    MODULES_BUILD_DIR_NAME);
+            jHBuildrcTemplate = String.format("%s\nbuildroot = %s",
+                    jHBuildrcTemplate,
+                    toPythonStringLiteral(modulesTmpfsBuildDir.getAbsolutePath()));
+        }
+        //jhbuild passes its environment to the configure runs of all modules
+        File moduleConfigCacheListFile = null;
+        if(autoconfCache != null) {
+            initAutoconfCache(installationPrefixPath);
+            Files.createDirectories(buildRootDir.toPath());
+            //every configure run of the module copies the shared cache into
+            //its build directory and lists the copy in the list file
+            moduleConfigCacheListFile = Files.createTempFile(buildRootDir.toPath(),
+                    MODULES_CONFIG_CACHE_LIST_PREFIX, //prefix
+                    null //suffix
+            ).toFile();
+            Map<String, String> autoconfEnv = new HashMap<>();
+            autoconfCache.prepare(autoconfEnv,
+                    moduleConfigCacheListFile);
+            StringBuilder jHBuildrcBuilder = new StringBuilder(jHBuildrcTemplate)
+                    .append("\nimport os");
+            for(Map.Entry<String, String> autoconfEnvEntry : autoconfEnv.entrySet()) {
+                jHBuildrcBuilder.append(String.format("\nos.environ[%s] = %s",
+                        toPythonStringLiteral(autoconfEnvEntry.getKey()),
+                        toPythonStringLiteral(autoconfEnvEntry.getValue())));
+            }
+            jHBuildrcTemplate = jHBuildrcBuilder.toString();
+        }
         File jHBuildrcFile = Files.createTempFile(JHBuildJavaWrapper.class.getSimpleName(), //prefix
                 "jhbuildrc" //suffix
         ).toFile();
         IOUtils.write(jHBuildrcTemplate,
                 Files.newOutputStream(jHBuildrcFile.toPath()),
                 Charsets.UTF_8);
-        Process jhbuildProcess = createProcess(installationPrefixPath,
-                jhbuild,
-                String.format("--file=%s",
-                        jHBuildrcFile.getAbsolutePath()),
-                    //the .jhbuildrc file
-                String.format("--moduleset=%s",
-                        modulesetFile.getAbsolutePath()),
-                "--no-interact",
-                "build",
-                "--nodeps",
-                moduleName);
-            //directory doesn't matter
-        LOGGER.debug("waiting for jhbuild build process");
-        jhbuildProcess.waitFor();
-        if(jhbuildProcess.exitValue() != 0) {
-            OutputReaderThread stdoutReaderThread = processOutputReaderThreadMap.get(jhbuildProcess).getKey();
-            OutputReaderThread stderrReaderThread = processOutputReaderThreadMap.get(jhbuildProcess).getValue();
-            String stdout = REDIRECTED_TEMPLATE;
-            String stderr = REDIRECTED_TEMPLATE;
-            if(stdoutReaderThread != null) {
-                stdoutReaderThread.join();
-                stdout = IOUtils.toString(stdoutReaderThread.getProcessOutputStream());
+        boolean moduleBuilt = false;
+        try {
+            Process jhbuildProcess = createMeasuredProcess(moduleName,
+                    BuildStep.MAKE,
+                    null, //directory
+                    moduleEnvironment(installationPrefixPath),
+                    jhbuild,
+                    String.format("--file=%s",
+                            jHBuildrcFile.getAbsolutePath()),
+                        //the .jhbuildrc file
+                    String.format("--moduleset=%s",
+                            modulesetFile.getAbsolutePath()),
+                    "--no-interact",
+                    "build",
+                    "--nodeps",
+                    moduleName);
+                //directory doesn't matter
+            LOGGER.debug("waiting for jhbuild build process");
+            awaitProcess(jhbuildProcess);
+            finishMeasurement(moduleName,
+                    jhbuildProcess);
+            if(jhbuildProcess.exitValue() != 0) {
+                ProcessOutput output = awaitProcessOutput(jhbuildProcess);
+                String stdout = tailOrRedirected(output.getStdoutTail());
+                String stderr = tailOrRedirected(output.getStderrTail());
+                throw new ModuleBuildFailureException(String.format("jhbuild "
+                        + "returned with code %d during building of module (stdout "
+                        + "was '%s' and stderr was '%s')",
+                        jhbuildProcess.exitValue(),
+                        stdout,
+                        stderr),
+                        output.getLogFile());
             }
-            if(stderrReaderThread != null) {
-                stderrReaderThread.join();
-                stderr = IOUtils.toString(stderrReaderThread.getProcessOutputStream());
+            LOGGER.debug("jhbuild build process finished");
+            if(moduleConfigCacheListFile != null) {
+                autoconfCache.mergeListed(moduleConfigCacheListFile);
+            }
+            moduleBuilt = true;
+        }finally {
+            if(moduleConfigCacheListFile != null) {
+                Files.deleteIfExists(moduleConfigCacheListFile.toPath());
+            }
+            //dependencies are built with separate jhbuild invocations, so the
+            //build tree isn't needed after the module has been installed
+            if(modulesTmpfsBuildDir != null
+                    && (moduleBuilt || deleteFailedTmpfsBuildTrees)) {
+                FileUtils.deleteQuietly(modulesTmpfsBuildDir);
             }
-            throw new ModuleBuildFailureException(String.format("jhbuild "
-                    + "returned with code %d during building of module (stdout "
-                    + "was '%s' and stderr was '%s')",
-                    jhbuildProcess.exitValue(),
-                    stdout,
-                    stderr));
         }
-        LOGGER.debug("jhbuild build process finished");
         return true;
     }
 
@@ -1070,7 +2538,9 @@ public class JHBuildJavaWrapper {
             String binaryDescription,
             DownloadCombi downloadCombi,
             List<DownloadCombi> patchDownloadCombis,
-            int parallelism) throws IOException,
+            int parallelism,
+            boolean outOfTree,
+            String checkTarget) throws IOException,
             ExtractionException,
             MissingSystemBinaryException,
             InterruptedException,
@@ -1078,6 +2548,7 @@ public class JHBuildJavaWrapper {
             DownloadException {
         List<BuildStepProcess> buildStepProcesses = generateBuildStepProcessesAutotools(installationPrefixPath,
                 parallelism,
+                checkTarget,
                 CONFIGURE);
         return installPrerequisiteAutotools(
                 installationPrefixPath,
@@ -1085,7 +2556,8 @@ public class JHBuildJavaWrapper {
                 binaryDescription,
                 downloadCombi,
                 patchDownloadCombis,
-                buildStepProcesses);
+                buildStepProcesses,
+                outOfTree);
     }
 
     /**
@@ -1099,6 +2571,9 @@ public class JHBuildJavaWrapper {
      * @param binaryDescription a description of the binary to be installed used
      *     in logging messages (can be the name of the binary or a short
      *     description like "C compiler")
+     * @param outOfTree whether the package supports building in a directory
+     *     outside of the source tree (VPATH build) in which case the pristine
+     *     source tree is used directly if there're no patches
      * @return the path of the installed binary, the empty string in case no
      *     binary has been installed, but the installation hasn't been canceled
      *     or {@code null} if the installation or any part of it has been
@@ -1114,19 +2589,20 @@ public class JHBuildJavaWrapper {
             String binaryDescription,
             DownloadCombi downloadCombi,
             List<DownloadCombi> patchDownloadCombis,
-            List<BuildStepProcess> buildStepProcesses) throws IOException,
+            List<BuildStepProcess> buildStepProcesses,
+            boolean outOfTree) throws IOException,
             ExtractionException,
             MissingSystemBinaryException,
             InterruptedException,
             BuildFailureException,
             DownloadException {
-        String retValue = installPrerequisite0(installationPrefixPath,
+        return installPrerequisite0(installationPrefixPath,
                 binary,
                 binaryDescription,
                 downloadCombi,
                 patchDownloadCombis,
-                buildStepProcesses);
-        return retValue;
+                buildStepProcesses,
+                outOfTree);
     }
 
     private String installPrerequisite0(String installationPrefixPath,
@@ -1134,25 +2610,49 @@ public class JHBuildJavaWrapper {
             String binaryDescription,
             DownloadCombi downloadCombi,
             List<DownloadCombi> patchDownloadCombis,
-            List<BuildStepProcess> buildSteps) throws IOException,
+            List<BuildStepProcess> buildSteps,
+            boolean outOfTree) throws IOException,
             ExtractionException,
             MissingSystemBinaryException,
             InterruptedException,
             BuildFailureException,
             DownloadException {
-        boolean notDownloadCanceled = downloader.downloadFile(downloadCombi,
-                skipMD5SumCheck,
-                DownloadFailureCallback.RETRY_5_TIMES,
-                MD5SumCheckUnequalsCallback.RETRY_5_TIMES,
-                DownloadEmptyCallback.RETRY_5_TIMES);
+        String artifactKey = null;
+        if(artifactCache != null) {
+            artifactKey = createArtifactKey(installationPrefixPath,
+                    binaryDescription,
+                    downloadCombi,
+                    patchDownloadCombis,
+                    buildSteps);
+            if(getChecksPendingMarker(binaryDescription).exists()) {
+                //the artifact has been stored before the checks failed
+                artifactCache.remove(artifactKey);
+            }
+            if(artifactCache.restore(artifactKey,
+                    installationPrefixDir)) {
+                LOGGER.info(String.format("installed %s from artifact cache, skipping build",
+                        binaryDescription));
+                artifactKeys.put(binaryDescription,
+                        artifactKey);
+                return binary;
+            }
+        }
+        boolean notDownloadCanceled;
+        synchronized(downloadLock) {
+            notDownloadCanceled = downloader.downloadFile(downloadCombi,
+                    skipMD5SumCheck,
+                    DownloadFailureCallback.RETRY_5_TIMES,
+                    MD5SumCheckUnequalsCallback.RETRY_5_TIMES,
+                    DownloadEmptyCallback.RETRY_5_TIMES);
+        }
         if(!notDownloadCanceled) {
             LOGGER.debug(String.format("install prerequisiste download for %s canceled",
                     binaryDescription));
             return null;
         }
-        //patching
-        File extractionLocationDir = new File(downloadCombi.getExtractionLocation());
-        assert extractionLocationDir.exists();
+        File pristineDir = new File(downloadCombi.getExtractionLocation());
+        assert pristineDir.exists();
+        List<File> patchFiles = new LinkedList<>();
         if(patchDownloadCombis != null
                 && !patchDownloadCombis.isEmpty()) {
             try {
@@ -1164,11 +2664,14 @@ public class JHBuildJavaWrapper {
                         ex1);
             }
             for(DownloadCombi patchDownloadCombi : patchDownloadCombis) {
-                boolean notPatchDownloadCanceled = downloader.downloadFile(patchDownloadCombi,
-                        skipMD5SumCheck,
-                        DownloadFailureCallback.RETRY_5_TIMES,
-                        MD5SumCheckUnequalsCallback.RETRY_5_TIMES,
-                        DownloadEmptyCallback.RETRY_5_TIMES);
+                boolean notPatchDownloadCanceled;
+                synchronized(downloadLock) {
+                    notPatchDownloadCanceled = downloader.downloadFile(patchDownloadCombi,
+                            skipMD5SumCheck,
+                            DownloadFailureCallback.RETRY_5_TIMES,
+                            MD5SumCheckUnequalsCallback.RETRY_5_TIMES,
+                            DownloadEmptyCallback.RETRY_5_TIMES);
+                }
                 if(!notPatchDownloadCanceled) {
                     LOGGER.debug(String.format("install prerequisiste download for %s canceled",
                             binaryDescription));
@@ -1182,70 +2685,520 @@ public class JHBuildJavaWrapper {
                             + "extraction) of something which is not a file",
                             patchDownloadCombi));
                 }
+                patchFiles.add(patchFile);
+            }
+        }
+        //only the installation touches persistent storage if the build root
+        //is RAM-backed
+        BuildRootSelector.Reservation reservation = buildRootSelector.select(pristineDir);
+        return buildPrerequisite(installationPrefixPath,
+                binary,
+                binaryDescription,
+                pristineDir,
+                patchFiles,
+                buildSteps,
+                outOfTree,
+                artifactKey,
+                reservation);
+    }
+
+    /**
+     * Clones, patches, builds and installs a downloaded prerequisite.
+     *
+     * @param pristineDir the extracted source tree which is never modified
+     * @param patchFiles the patches to apply
+     * @param artifactKey the artifact cache key or {@code null} if the
+     *     artifact cache is disabled
+     * @param reservation the reservation of the directory to create the
+     *     build directory, source tree clones and the staging directory in
+     *     which is closed after the build or after the checks if they run in
+     *     the background
+     * @return the path of the installed binary or {@code null} if the build
+     *     has been canceled
+     */
+    @SuppressWarnings("PMD.ExcessiveParameterList")
+    private String buildPrerequisite(String installationPrefixPath,
+            String binary,
+            String binaryDescription,
+            File pristineDir,
+            List<File> patchFiles,
+            List<BuildStepProcess> buildSteps,
+            boolean outOfTree,
+            String artifactKey,
+            BuildRootSelector.Reservation reservation) throws IOException,
+            InterruptedException,
+            MissingSystemBinaryException,
+            BuildFailureException,
+            ExtractionException {
+        File selectedBuildRootDir = reservation.getBuildRootDir();
+        boolean checksSubmitted = false;
+        try {
+            //out-of-tree builds use the pristine source tree directly unless it
+            //needs to be patched, in-tree builds and patches need a clone of the
+            //pristine source tree
+            File buildDir = new File(selectedBuildRootDir,
+                    pristineDir.getName());
+            File sourceDir;
+            if(outOfTree && patchFiles.isEmpty()) {
+                sourceDir = pristineDir;
+            }else {
+                sourceDir = outOfTree
+                        ? new File(selectedBuildRootDir,
+                                pristineDir.getName()+SOURCE_DIR_SUFFIX)
+                        : buildDir;
+                Set<String> patchedPaths = new HashSet<>();
+                for(File patchFile : patchFiles) {
+                    patchedPaths.addAll(getPatchedPaths(patchFile,
+                            1 //strip
+                    ));
+                }
+                long cloneStart = System.nanoTime();
+                CloneMode usedCloneMode = sourceTreeCloner.clone(pristineDir,
+                        sourceDir,
+                        patchedPaths);
+                //cloning runs in the JVM, so that only the wall time is known
+                notifyBuildMetricsListeners(new BuildStepMetrics(binaryDescription,
+                        BuildStep.CLONE,
+                        (System.nanoTime()-cloneStart)/1000000,
+                        BuildStepMetrics.UNKNOWN, //userTimeMillis
+                        BuildStepMetrics.UNKNOWN, //systemTimeMillis
+                        BuildStepMetrics.UNKNOWN, //peakRssBytes
+                        BuildStepMetrics.UNKNOWN, //bytesRead
+                        BuildStepMetrics.UNKNOWN //bytesWritten
+                ));
+                LOGGER.info(String.format("cloned source tree of %s from %s into %s in mode %s",
+                        binaryDescription,
+                        pristineDir.getAbsolutePath(),
+                        sourceDir.getAbsolutePath(),
+                        usedCloneMode));
+            }
+            if(outOfTree) {
+                FileUtils.deleteDirectory(buildDir);
+                Files.createDirectories(buildDir.toPath());
+            }
+            LOGGER.info(String.format("building %s in %s (source tree %s)",
+                    binaryDescription,
+                    buildDir.getAbsolutePath(),
+                    sourceDir.getAbsolutePath()));
+            //patching
+            for(File patchFile : patchFiles) {
                 LOGGER.info(String.format("patching source root %s using patch "
                         + "file %s",
-                        extractionLocationDir.getAbsolutePath(),
+                        sourceDir.getAbsolutePath(),
                         patchFile.getAbsolutePath()));
-                Process patchProcess = createProcess(extractionLocationDir,
+                Process patchProcess = createMeasuredProcess(binaryDescription,
+                        BuildStep.PATCH,
+                        sourceDir,
                         installationPrefixPath,
-                        patch, "-p1", String.format("<%s",
+                        resolveCommand(patch,
+                                installationPrefixPath),
+                        "-p1", String.format("<%s",
                                 patchFile.getAbsolutePath()));
-                patchProcess.waitFor();
+                awaitProcess(patchProcess);
+                finishMeasurement(binaryDescription,
+                        patchProcess);
                 if(patchProcess.exitValue() != 0) {
                     throw new IllegalArgumentException(String.format("patching "
                             + "extraction direction %s with patch file %s "
                             + "failed",
-                            extractionLocationDir.getAbsolutePath(),
+                            sourceDir.getAbsolutePath(),
                             patchFile.getAbsolutePath()));
                 }
-                OutputReaderThread stdoutReaderThread = this.processOutputReaderThreadMap.get(patchProcess).getKey();
-                String patchProcessStdout = REDIRECTED_TEMPLATE;
-                if(stdoutReaderThread != null) {
-                    stdoutReaderThread.join();
-                    patchProcessStdout = IOUtils.toString(stdoutReaderThread.getProcessOutputStream());
-                }
+                String patchProcessStdout = tailOrRedirected(awaitProcessOutput(patchProcess).getStdoutTail());
                 LOGGER.debug(String.format("successful patch process' output was: %s",
                         patchProcessStdout));
             }
-        }
-        //need make for building and it's overly hard to bootstrap
-        //without it, so force installation out of JHBuild wrapper
-        try {
-            BinaryUtils.validateBinary(make,
-                    "make",
-                    installationPrefixPath);
-        }catch(BinaryValidationException ex1) {
-            throw new MissingSystemBinaryException("make",
-                    ex1);
-        }
-        //build
-        synchronized(this) {
-            if(canceled) {
-                LOGGER.debug(String.format("canceling prerequisiste installation of %s because the build wrapper has been canceled",
-                        binaryDescription));
-                return null;
-            }
-        }
-        for(BuildStepProcess buildProcessStep : buildSteps) {
-            Process process = buildProcessStep.getProcess(extractionLocationDir);
-            process.waitFor();
-            if(process.exitValue() != 0) {
-                BuildStep buildStep = buildProcessStep.getBuildStep();
-                handleBuilderFailure(binaryDescription,
-                        buildStep,
-                        process);
+            //need make for building and it's overly hard to bootstrap
+            //without it, so force installation out of JHBuild wrapper
+            try {
+                BinaryUtils.validateBinary(make,
+                        "make",
+                        installationPrefixPath);
+            }catch(BinaryValidationException ex1) {
+                throw new MissingSystemBinaryException("make",
+                        ex1);
             }
+            //build
             synchronized(this) {
-                if(canceled) {
+                if(canceled || aborted) {
                     LOGGER.debug(String.format("canceling prerequisiste installation of %s because the build wrapper has been canceled",
                             binaryDescription));
                     return null;
                 }
             }
+            //with an artifact cache the installation is staged in a DESTDIR,
+            //packed into an artifact and unpacked into the installation prefix
+            //which makes the result of cache hits and misses identical
+            File destDir = null;
+            if(artifactKey != null) {
+                destDir = new File(selectedBuildRootDir,
+                        pristineDir.getName()+DESTDIR_SUFFIX);
+                FileUtils.deleteDirectory(destDir);
+            }
+            if(buildSteps.stream().anyMatch(buildStep -> buildStep.getBuildStep() == BuildStep.MAKE_CHECK)) {
+                //the installation is repeated by the next init if the checks
+                //fail or are interrupted, so the marker needs to exist
+                //before anything is installed
+                Files.createDirectories(installationPrefixDir.toPath());
+                Files.write(getChecksPendingMarker(binaryDescription).toPath(),
+                        new byte[0]);
+                Files.deleteIfExists(new File(installationPrefixDir,
+                        InitFingerprint.FILE_NAME).toPath());
+            }
+            List<BuildStepProcess> checkSteps = new LinkedList<>();
+            for(BuildStepProcess buildProcessStep : buildSteps) {
+                if(buildProcessStep.getBuildStep() == BuildStep.MAKE_CHECK) {
+                    checkSteps.add(buildProcessStep);
+                    continue;
+                }
+                Process process = buildProcessStep.getProcess(binaryDescription,
+                        sourceDir,
+                        buildDir,
+                        destDir);
+                awaitProcess(process);
+                finishMeasurement(binaryDescription,
+                        process);
+                if(process.exitValue() != 0) {
+                    BuildStep buildStep = buildProcessStep.getBuildStep();
+                    handleBuilderFailure(binaryDescription,
+                            buildStep,
+                            process);
+                }
+                if(buildProcessStep.getBuildStep() == BuildStep.CONFIGURE
+                        && autoconfCache != null) {
+                    autoconfCache.merge(new File(buildDir,
+                            CONFIG_CACHE_FILE_NAME));
+                }
+                synchronized(this) {
+                    if(canceled || aborted) {
+                        LOGGER.debug(String.format("canceling prerequisiste installation of %s because the build wrapper has been canceled",
+                                binaryDescription));
+                        return null;
+                    }
+                }
+            }
+            if(destDir != null) {
+                File stagedInstallationPrefixDir = new File(destDir,
+                        installationPrefixDir.getAbsolutePath());
+                if(!artifactCache.storeAndRestore(artifactKey,
+                        stagedInstallationPrefixDir,
+                        installationPrefixDir)) {
+                    throw new IllegalStateException(String.format("artifact of %s "
+                            + "which has just been stored can't be restored",
+                            binaryDescription));
+                }
+                FileUtils.deleteQuietly(destDir);
+                artifactKeys.put(binaryDescription,
+                        artifactKey);
+            }
+            if(!checkSteps.isEmpty()) {
+                PrerequisiteScheduler prerequisiteScheduler = this.prerequisiteScheduler;
+                if(prerequisiteScheduler == null) {
+                    if(!runChecks(binaryDescription,
+                            checkSteps,
+                            pristineDir,
+                            sourceDir,
+                            buildDir)) {
+                        return null;
+                    }
+                }else {
+                    //the dependents can be built while the checks run, the
+                    //build tree and the reservation are kept until the checks
+                    //are done
+                    prerequisiteScheduler.submitCheck(String.format("%s check",
+                            binaryDescription),
+                            () -> {
+                                try {
+                                    return runChecks(binaryDescription,
+                                            checkSteps,
+                                            pristineDir,
+                                            sourceDir,
+                                            buildDir);
+                                }finally {
+                                    deleteFailedTmpfsBuildTree(reservation,
+                                            pristineDir);
+                                    reservation.close();
+                                }
+                            });
+                    checksSubmitted = true;
+                    return binary;
+                }
+            }
+            deleteBuildTree(pristineDir,
+                    sourceDir,
+                    buildDir);
+            return binary;
+                //is found in modified path of every process built with
+                //buildProcess
+        }finally {
+            if(!checksSubmitted) {
+                deleteFailedTmpfsBuildTree(reservation,
+                        pristineDir);
+                reservation.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the check steps of an installed prerequisite in its build tree and
+     * deletes the build tree and the marker of pending checks if they
+     * succeed.
+     *
+     * @return {@code false} if the checks have been canceled, {@code true}
+     *     otherwise
+     * @throws BuildFailureException if a check fails
+     */
+    private boolean runChecks(String binaryDescription,
+            List<BuildStepProcess> checkSteps,
+            File pristineDir,
+            File sourceDir,
+            File buildDir) throws IOException,
+            InterruptedException,
+            BuildFailureException {
+        for(BuildStepProcess checkStep : checkSteps) {
+            synchronized(this) {
+                if(canceled || aborted) {
+                    LOGGER.debug(String.format("canceling checks of %s because the build wrapper has been canceled",
+                            binaryDescription));
+                    return false;
+                }
+            }
+            LOGGER.info(String.format("running checks of %s in %s",
+                    binaryDescription,
+                    buildDir.getAbsolutePath()));
+            Process process = checkStep.getProcess(binaryDescription,
+                    sourceDir,
+                    buildDir,
+                    null //destDir
+            );
+            awaitProcess(process);
+            finishMeasurement(binaryDescription,
+                    process);
+            if(process.exitValue() != 0) {
+                handleBuilderFailure(binaryDescription,
+                        checkStep.getBuildStep(),
+                        process);
+            }
+        }
+        Files.deleteIfExists(getChecksPendingMarker(binaryDescription).toPath());
+        deleteBuildTree(pristineDir,
+                sourceDir,
+                buildDir);
+        return true;
+    }
+
+    /**
+     * Deletes the build directory and the clone of the source tree, if any.
+     * The build directory is only kept after failures in order to allow
+     * inspection, the next build starts from a fresh clone or an empty build
+     * directory anyway.
+     */
+    private void deleteBuildTree(File pristineDir,
+            File sourceDir,
+            File buildDir) {
+        FileUtils.deleteQuietly(buildDir);
+        if(!sourceDir.equals(pristineDir)) {
+            FileUtils.deleteQuietly(sourceDir);
+        }
+    }
+
+    /**
+     * Deletes the build directory, the clone of the source tree and the
+     * staging directory of a build of {@code pristineDir} if they're in the
+     * RAM-backed directory unless {@link #deleteFailedTmpfsBuildTrees} is
+     * disabled. Does nothing if they have already been deleted after a
+     * successful build.
+     */
+    private void deleteFailedTmpfsBuildTree(BuildRootSelector.Reservation reservation,
+            File pristineDir) {
+        if(!reservation.isTmpfs()
+                || !deleteFailedTmpfsBuildTrees) {
+            return;
+        }
+        File selectedBuildRootDir = reservation.getBuildRootDir();
+        FileUtils.deleteQuietly(new File(selectedBuildRootDir,
+                pristineDir.getName()));
+        FileUtils.deleteQuietly(new File(selectedBuildRootDir,
+                pristineDir.getName()+SOURCE_DIR_SUFFIX));
+        FileUtils.deleteQuietly(new File(selectedBuildRootDir,
+                pristineDir.getName()+DESTDIR_SUFFIX));
+    }
+
+    /**
+     * Creates the artifact cache key of a prerequisite from everything which
+     * influences the installed files: the source archive and patch checksums,
+     * the configuration of all build steps (which includes the installation
+     * prefix since installations aren't relocatable), the artifact keys of
+     * the prerequisites it links against, the compiler version and the OS and
+     * architecture.
+     *
+     * @return the key
+     * @throws IOException if determining the compiler version fails
+     * @throws InterruptedException if the thread is interrupted while
+     *     determining the compiler version
+     */
+    private String createArtifactKey(String installationPrefixPath,
+            String binaryDescription,
+            DownloadCombi downloadCombi,
+            List<DownloadCombi> patchDownloadCombis,
+            List<BuildStepProcess> buildSteps) throws IOException,
+            InterruptedException {
+        List<String> components = new LinkedList<>();
+        components.add(binaryDescription);
+        components.add(String.format("source %s %s",
+                downloadCombi.getDownloadURL(),
+                downloadCombi.getMd5Sum()));
+        if(downloadCombi.getExtractionFilter() != null) {
+            components.add(downloadCombi.getExtractionFilter().getSignature());
+        }
+        if(patchDownloadCombis != null) {
+            for(DownloadCombi patchDownloadCombi : patchDownloadCombis) {
+                components.add(String.format("patch %s %s",
+                        patchDownloadCombi.getDownloadURL(),
+                        patchDownloadCombi.getMd5Sum()));
+            }
+        }
+        for(BuildStepProcess buildStep : buildSteps) {
+            if(buildStep.getBuildStep() == BuildStep.MAKE_CHECK) {
+                //checks don't influence the installed files
+                continue;
+            }
+            components.add(buildStep.getConfiguration());
+        }
+        List<String> linkDependencies = ARTIFACT_LINK_DEPENDENCIES.get(binaryDescription);
+        if(linkDependencies != null) {
+            for(String linkDependency : linkDependencies) {
+                //the scheduler installs dependencies first; dependencies
+                //which haven't been installed in this run are provided by
+                //the system or the installation prefix and don't have a key
+                components.add(String.format("%s %s",
+                        linkDependency,
+                        artifactKeys.getOrDefault(linkDependency,
+                                "present")));
+            }
+        }
+        components.add(getCachedCompilerVersion(installationPrefixPath));
+        components.add(String.format("%s %s",
+                SystemUtils.OS_NAME,
+                SystemUtils.OS_ARCH));
+        return PrerequisiteArtifactCache.createKey(components);
+    }
+
+    private String getCachedCompilerVersion(String installationPrefixPath) throws IOException,
+            InterruptedException {
+        synchronized(this) {
+            if(compilerVersion == null) {
+                compilerVersion = getCompilerVersion(installationPrefixPath);
+            }
+            return compilerVersion;
+        }
+    }
+
+    /**
+     * Initializes {@link #autoconfCache} with a fingerprint of the compiler,
+     * the system headers and the installation prefix unless that already
+     * happened.
+     *
+     * @param installationPrefixPath the {@code PATH} to use
+     * @throws IOException if an I/O exception occurs
+     * @throws InterruptedException if the thread is interrupted while
+     *     determining the compiler version
+     */
+    private void initAutoconfCache(String installationPrefixPath) throws IOException,
+            InterruptedException {
+        synchronized(this) {
+            if(autoconfCache.isInited()) {
+                return;
+            }
+            List<String> fingerprintComponents = new LinkedList<>();
+            fingerprintComponents.add(getCachedCompilerVersion(installationPrefixPath));
+            File ccFile = BinaryUtils.resolveBinary(cc,
+                    installationPrefixPath);
+            if(ccFile != null) {
+                fingerprintComponents.add(String.format("%s %d %d",
+                        ccFile.getAbsolutePath(),
+                        ccFile.lastModified(),
+                        ccFile.length()));
+            }
+            //the modification time of the directory changes if a header is
+            //added, removed or replaced by a package manager
+            fingerprintComponents.add(String.format("%s %d",
+                    SYSTEM_INCLUDE_DIR,
+                    new File(SYSTEM_INCLUDE_DIR).lastModified()));
+            fingerprintComponents.add(String.format("%s %s",
+                    SystemUtils.OS_NAME,
+                    SystemUtils.OS_ARCH));
+            fingerprintComponents.add(installationPrefixDir.getAbsolutePath());
+            autoconfCache.init(fingerprintComponents);
+        }
+    }
+
+    /**
+     * Runs {@code cc --version}.
+     *
+     * @param installationPrefixPath the {@code PATH} to use
+     * @return the output of {@code cc --version}
+     * @throws IOException if an I/O exception occurs
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *     for the process
+     */
+    private String getCompilerVersion(String installationPrefixPath) throws IOException,
+            InterruptedException {
+        //not created with createProcess since the output isn't supposed to be
+        //redirected to stdoutOutputStream
+        ProcessBuilder processBuilder = new ProcessBuilder(sh,
+                "-c",
+                String.format("%s --version", cc))
+                .redirectErrorStream(true);
+        processBuilder.environment().put(PATH,
+                installationPrefixPath);
+        Process process = processBuilder.start();
+        String retValue = IOUtils.toString(process.getInputStream(),
+                Charsets.UTF_8);
+        process.waitFor();
+        if(process.exitValue() != 0) {
+            throw new IllegalStateException(String.format("%s --version failed with output %s",
+                    cc,
+                    retValue));
+        }
+        return retValue.trim();
+    }
+
+    /**
+     * Parses the names of the files a unified diff modifies.
+     *
+     * @param patchFile the patch file
+     * @param strip the number of leading path components to remove like
+     *     {@code patch -p} does
+     * @return the set of paths relative to the source root
+     * @throws IOException if an I/O exception occurs while reading
+     *     {@code patchFile}
+     */
+    private static Set<String> getPatchedPaths(File patchFile,
+            int strip) throws IOException {
+        Set<String> retValue = new HashSet<>();
+        for(String line : Files.readAllLines(patchFile.toPath(),
+                Charsets.ISO_8859_1)) {
+            if(!line.startsWith("+++ ") && !line.startsWith("--- ")) {
+                continue;
+            }
+            String path = line.substring(4);
+            int tabIndex = path.indexOf('\t');
+            if(tabIndex >= 0) {
+                path = path.substring(0, tabIndex);
+            }
+            path = path.trim();
+            if("/dev/null".equals(path)) {
+                continue;
+            }
+            String[] components = path.split("/");
+            if(components.length <= strip) {
+                continue;
+            }
+            retValue.add(String.join(File.separator,
+                    Arrays.copyOfRange(components, strip, components.length)));
         }
-        return binary;
-            //is found in modified path of every process built with
-            //buildProcess
+        return retValue;
     }
 
     /**
@@ -1254,17 +3207,18 @@ public class JHBuildJavaWrapper {
      * rudimentary way.
      *
      * @param pcFileName the name of the {@code .pc} file to search for
-     * @return {@code true} if the file has been found, {@code false} otherwise
+     * @return the {@code .pc} file if it has been found, an empty optional
+     *     otherwise
      * @throws IOException if {@link Files#walk(Path, FileVisitOption...)} throws such an exception
      */
-    private boolean checkLibPresence(File installationPrefixDir,
+    private Optional<Path> checkLibPresence(File installationPrefixDir,
             String pcFileName) throws IOException {
         Optional<Path> hit = Files.walk(installationPrefixDir.toPath())
                 .filter(file -> file.getFileName().toFile().getName().equals(pcFileName))
                 .findAny();
             //recursive search, from
             //https://stackoverflow.com/questions/10780747/recursively-search-for-a-directory-in-java
-        return hit.isPresent();
+        return hit;
     }
 
     /**
@@ -1282,75 +3236,337 @@ public class JHBuildJavaWrapper {
      */
     private List<BuildStepProcess> generateBuildStepProcessesAutotools(String installationPrefixPath,
             int parallelism,
+            String checkTarget,
             String configureName,
             String... additionalConfigureOptions) {
         assert parallelism >= 1: String.format("parallelism has to be >= 1 in "
                 + "order to make sense (was %s)",
                 parallelism);
-        return new LinkedList<>(Arrays.asList(new BuildStepProcess() {
+        List<BuildStepProcess> retValue = new LinkedList<>(Arrays.asList(new BuildStepProcess() {
             @Override
-            public Process getProcess(File extractionLocationDir) throws IOException {
-                List<String> commandList = new LinkedList<>(Arrays.asList(sh, configureName,
+            public Process getProcess(String moduleName,
+                    File sourceDir,
+                    File buildDir,
+                    File destDir) throws IOException,
+                    InterruptedException {
+                //out-of-tree builds run the configure script of the source tree
+                //in the build directory
+                String configurePath = sourceDir.equals(buildDir)
+                        ? configureName
+                        : new File(sourceDir, configureName).getAbsolutePath();
+                String[] commands = getCommands(configurePath).toArray(new String[0]);
+                Map<String, String> env = buildEnvironment(installationPrefixPath);
+                if(autoconfCache != null) {
+                    initAutoconfCache(installationPrefixPath);
+                    //config.site seeds CONFIG_CACHE_FILE_NAME in buildDir
+                    //which is merged after the run succeeded
+                    autoconfCache.prepare(env,
+                            null //cacheListFile
+                    );
+                }
+                Process configureProcess = createMeasuredProcess(moduleName,
+                        BuildStep.CONFIGURE,
+                        buildDir,
+                        env,
+                        commands);
+                return configureProcess;
+            }
+
+            private List<String> getCommands(String configurePath) {
+                List<String> commandList = new LinkedList<>(Arrays.asList(sh, configurePath,
                         String.format("--prefix=%s", installationPrefixDir.getAbsolutePath())));
                 for(String additionalConfigureOption : additionalConfigureOptions) {
                     commandList.add(additionalConfigureOption);
                 }
-                String[] commands = commandList.toArray(new String[0]);
-                Process configureProcess = createProcess(extractionLocationDir,
-                        ImmutableMap.<String, String>builder()
-                                .put(PATH, installationPrefixPath)
-                                .put("CFLAGS", String.format("-I%s -L%s",
-                                        new File(installationPrefixDir, "include").getAbsolutePath(),
-                                        new File(installationPrefixDir, "lib").getAbsolutePath()))
-        //                        .put("LDFLAGS", String.format("-L%s", new File(installationPrefixDir, "lib").getAbsolutePath()))
-                                .build(),
-                        commands);
-                return configureProcess;
+                return commandList;
             }
 
             @Override
             public BuildStep getBuildStep() {
                 return BuildStep.CONFIGURE;
             }
+
+            @Override
+            public String getConfiguration() {
+                return String.format("%s %s",
+                        String.join(" ", getCommands(configureName)),
+                        buildEnvironment(installationPrefixPath).get("CFLAGS"));
+            }
         },
                 new BuildStepProcess() {
                     @Override
-                    public Process getProcess(File extractionLocationDir) throws IOException {
-                        return createProcess(extractionLocationDir,
-                                ImmutableMap.<String, String>builder()
-                                        .put(PATH, installationPrefixPath)
-                                        .put("CFLAGS", String.format("-I%s -L%s", new File(installationPrefixDir, "include").getAbsolutePath(),
-                                                new File(installationPrefixDir, "lib").getAbsolutePath()))
-                //                        .put("LDFLAGS", String.format("-L%s", new File(installationPrefixDir, "lib").getAbsolutePath()))
-                                        .build(),
-                                make, String.format("-j%d", parallelism));
+                    public Process getProcess(String moduleName,
+                            File sourceDir,
+                            File buildDir,
+                            File destDir) throws IOException,
+                            InterruptedException {
+                        return runMake(moduleName,
+                                buildDir,
+                                installationPrefixPath,
+                                parallelism);
                     }
 
                     @Override
                     public BuildStep getBuildStep() {
                         return BuildStep.MAKE;
                     }
+
+                    @Override
+                    public String getConfiguration() {
+                        return make;
+                    }
                 },
                 new BuildStepProcess() {
                     @Override
-                    public Process getProcess(File extractionLocationDir) throws IOException {
-                        return createProcess(extractionLocationDir,
+                    public Process getProcess(String moduleName,
+                            File sourceDir,
+                            File buildDir,
+                            File destDir) throws IOException {
+                        if(destDir == null) {
+                            return createMeasuredProcess(moduleName,
+                                    BuildStep.MAKE_INSTALL,
+                                    buildDir,
+                                    installationPrefixPath,
+                                    resolveCommand(make,
+                                            installationPrefixPath),
+                                    "install");
+                        }
+                        return createMeasuredProcess(moduleName,
+                                BuildStep.MAKE_INSTALL,
+                                buildDir,
                                 installationPrefixPath,
-                                make,
-                                "install");
+                                resolveCommand(make,
+                                        installationPrefixPath),
+                                "install",
+                                String.format("DESTDIR=%s",
+                                        destDir.getAbsolutePath()));
                     }
 
                     @Override
                     public BuildStep getBuildStep() {
                         return BuildStep.MAKE_INSTALL;
                     }
+
+                    @Override
+                    public String getConfiguration() {
+                        return String.format("%s install",
+                                make);
+                    }
                 }));
+        if(prerequisiteChecks && checkTarget != null) {
+            retValue.add(new BuildStepProcess() {
+                @Override
+                public Process getProcess(String moduleName,
+                        File sourceDir,
+                        File buildDir,
+                        File destDir) throws IOException,
+                        InterruptedException {
+                    return runMake(moduleName,
+                            buildDir,
+                            installationPrefixPath,
+                            parallelism,
+                            BuildStep.MAKE_CHECK,
+                            checkTarget);
+                }
+
+                @Override
+                public BuildStep getBuildStep() {
+                    return BuildStep.MAKE_CHECK;
+                }
+
+                @Override
+                public String getConfiguration() {
+                    return String.format("%s %s",
+                            make,
+                            checkTarget);
+                }
+            });
+        }
+        return retValue;
+    }
+
+    /**
+     * The environment of {@code configure} and {@code make} processes.
+     *
+     * @param installationPrefixPath the {@code PATH} to use
+     * @return a modifiable map containing the environment
+     */
+    private Map<String, String> buildEnvironment(String installationPrefixPath) {
+        Map<String, String> retValue = new HashMap<>();
+        retValue.put(PATH, installationPrefixPath);
+        retValue.put("CFLAGS", String.format("-I%s -L%s",
+                new File(installationPrefixDir, "include").getAbsolutePath(),
+                new File(installationPrefixDir, "lib").getAbsolutePath()));
+//        retValue.put("LDFLAGS", String.format("-L%s", new File(installationPrefixDir, "lib").getAbsolutePath()));
+        configureCompilerCache(retValue,
+                installationPrefixPath);
+        return retValue;
+    }
+
+    /**
+     * The environment of {@code jhbuild} processes which pass it to the module
+     * builds.
+     *
+     * @param installationPrefixPath the {@code PATH} to use
+     * @return a modifiable map containing the environment
+     */
+    private Map<String, String> moduleEnvironment(String installationPrefixPath) {
+        Map<String, String> retValue = new HashMap<>();
+        retValue.put(PATH, installationPrefixPath);
+        configureCompilerCache(retValue,
+                installationPrefixPath);
+        return retValue;
+    }
+
+    private void configureCompilerCache(Map<String, String> env,
+            String installationPrefixPath) {
+        if(compilerCache == null) {
+            return;
+        }
+        if(!compilerCache.isAvailable(installationPrefixPath)) {
+            LOGGER.debug(String.format("compiler cache binary %s not found, invoking compilers directly",
+                    compilerCache.getCcache()));
+            return;
+        }
+        compilerCache.configureEnvironment(env,
+                cc,
+                CompilerCache.CXX_DEFAULT,
+                installationPrefixPath);
+    }
+
+    /**
+     * Runs {@code make} in {@code directory} and waits for it to terminate.
+     * If there's a jobserver {@code make} becomes its client and the
+     * jobserver token of the implicit job of {@code make} is held while it
+     * runs, otherwise {@code make} gets a share of {@code parallelism} passed
+     * with {@code -j}.
+     *
+     * @param directory the working directory
+     * @param installationPrefixPath the {@code PATH} to use
+     * @param parallelism the number of jobs if there's no jobserver
+     * @return the terminated process
+     * @throws IOException if an I/O exception occurs
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *     for the process
+     */
+    private Process runMake(String moduleName,
+            File directory,
+            String installationPrefixPath,
+            int parallelism) throws IOException,
+            InterruptedException {
+        return runMake(moduleName,
+                directory,
+                installationPrefixPath,
+                parallelism,
+                BuildStep.MAKE);
+    }
+
+    /**
+     * Runs {@code make} with {@code targets} like
+     * {@link #runMake(String, File, String, int) }.
+     *
+     * @param moduleName the name of the prerequisite or module
+     * @param directory the working directory
+     * @param installationPrefixPath the {@code PATH} to use
+     * @param parallelism the number of jobs if there's no jobserver
+     * @param buildStep the build step the invokation is measured as
+     * @param targets the targets to build, none for the default target
+     * @return the terminated process
+     * @throws IOException if an I/O exception occurs
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *     for the process
+     */
+    private Process runMake(String moduleName,
+            File directory,
+            String installationPrefixPath,
+            int parallelism,
+            BuildStep buildStep,
+            String... targets) throws IOException,
+            InterruptedException {
+        Map<String, String> env = buildEnvironment(installationPrefixPath);
+        String makeCommand = resolveCommand(make,
+                installationPrefixPath);
+        MakeJobserver makeJobserver = this.makeJobserver;
+        if(makeJobserver == null) {
+            List<String> commands = new LinkedList<>(Arrays.asList(makeCommand,
+                    String.format("-j%d", getMakeJobs(parallelism))));
+            commands.addAll(Arrays.asList(targets));
+            Process process = createMeasuredProcess(moduleName,
+                    buildStep,
+                    directory,
+                    env,
+                    commands.toArray(new String[commands.size()]));
+            awaitProcess(process);
+            return process;
+        }
+        List<String> commands = new LinkedList<>();
+        if(!makeJobserver.getShellPrefix().isEmpty()) {
+            commands.add(makeJobserver.getShellPrefix());
+        }
+        commands.add(makeCommand);
+        commands.addAll(Arrays.asList(targets));
+        env.put(MakeJobserver.MAKEFLAGS,
+                makeJobserver.getMakeflags());
+        makeJobserver.acquire();
+        try {
+            Process process = createMeasuredProcess(moduleName,
+                    buildStep,
+                    directory,
+                    env,
+                    commands.toArray(new String[commands.size()]));
+            awaitProcess(process);
+            return process;
+        }finally {
+            makeJobserver.release();
+        }
+    }
+
+    /**
+     * Resolves {@code binary} to an absolute path, so that the shell started
+     * for a build step doesn't search it in {@code PATH} again and it's
+     * unambiguous which binary runs.
+     *
+     * @param binary the binary specification (path or name)
+     * @param installationPrefixPath the {@code PATH} to search in
+     * @return the absolute path or {@code binary} if it can't be resolved
+     */
+    private static String resolveCommand(String binary,
+            String installationPrefixPath) {
+        File binaryFile = BinaryUtils.resolveBinary(binary,
+                installationPrefixPath);
+        return binaryFile != null ? binaryFile.getAbsolutePath() : binary;
     }
 
     private interface BuildStepProcess {
 
-        Process getProcess(File extractionLocationDir) throws IOException;
+        /**
+         * Starts the build step.
+         *
+         * @param moduleName the name of the prerequisite
+         * @param sourceDir the source tree
+         * @param buildDir the build directory which is equal to
+         *     {@code sourceDir} for in-tree builds
+         * @param destDir the staging directory passed as {@code DESTDIR} to
+         *     installation steps or {@code null} if the installation is
+         *     performed into the installation prefix directly
+         * @return the started process
+         * @throws IOException if an I/O exception occurs
+         * @throws InterruptedException if the thread is interrupted
+         */
+        Process getProcess(String moduleName,
+                File sourceDir,
+                File buildDir,
+                File destDir) throws IOException,
+                InterruptedException;
 
         BuildStep getBuildStep();
+
+        /**
+         * Describes everything which influences the result of the build step
+         * and thus is part of the artifact cache key.
+         *
+         * @return the description
+         */
+        String getConfiguration();
     }
 }
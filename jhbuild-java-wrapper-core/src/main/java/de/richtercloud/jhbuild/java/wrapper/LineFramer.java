@@ -0,0 +1,108 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Splits one output stream of a build step into lines and publishes them with
+ * their metadata. Lines longer than {@link #MAX_LINE_LENGTH} bytes are
+ * published in parts, so that the memory use is bounded.
+ *
+ * @author richter
+ */
+class LineFramer extends OutputStream {
+    private final static Logger LOGGER = LoggerFactory.getLogger(LineFramer.class);
+    public final static int MAX_LINE_LENGTH = 8192;
+    private final String moduleName;
+    private final BuildStep buildStep;
+    private final BuildOutputLine.Stream stream;
+    private final BuildOutputPublisher publisher;
+    private final byte[] line = new byte[MAX_LINE_LENGTH];
+    private int lineLength;
+
+    LineFramer(String moduleName,
+            BuildStep buildStep,
+            BuildOutputLine.Stream stream,
+            BuildOutputPublisher publisher) {
+        if(publisher == null) {
+            throw new IllegalArgumentException("publisher mustn't be null");
+        }
+        this.moduleName = moduleName;
+        this.buildStep = buildStep;
+        this.stream = stream;
+        this.publisher = publisher;
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[] {(byte) b},
+                0,
+                1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b,
+            int off,
+            int len) {
+        for(int i=off; i<off+len; i++) {
+            if(b[i] == '\n') {
+                publishLine();
+                continue;
+            }
+            if(lineLength == line.length) {
+                publishLine();
+            }
+            line[lineLength++] = b[i];
+        }
+    }
+
+    /**
+     * Publishes the last line if it isn't terminated. Only invoked after the
+     * complete output has been read.
+     */
+    @Override
+    public synchronized void flush() {
+        if(lineLength > 0) {
+            publishLine();
+        }
+    }
+
+    private void publishLine() {
+        int length = lineLength;
+        if(length > 0 && line[length-1] == '\r') {
+            length--;
+        }
+        lineLength = 0;
+        try {
+            publisher.publish(new BuildOutputLine(moduleName,
+                    buildStep,
+                    stream,
+                    System.currentTimeMillis(),
+                    new String(line,
+                            0,
+                            length,
+                            StandardCharsets.UTF_8)));
+        }catch(InterruptedException ex) {
+            //failing the write would stop reading the output of the process
+            LOGGER.debug("interrupted while publishing build output line, line dropped",
+                    ex);
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A GNU make jobserver shared by all {@code make} processes the wrapper
+ * starts, so that the total number of jobs of concurrent builds doesn't exceed
+ * the number of tokens.
+ *
+ * The jobserver is a named pipe which initially contains one token per job.
+ * Every {@code make} process can run one job without a token (its implicit
+ * token), so {@link #acquire() } needs to be invoked before a {@code make}
+ * process is started and {@link #release() } after it terminated. GNU make
+ * 4.4 and newer open the named pipe themselves (see {@link #isFifoSupported()
+ * }), older versions expect the pipe to be open as file descriptor
+ * {@value #FD} which is done by prefixing the command with
+ * {@link #getShellPrefix() }.
+ *
+ * A jobserver is supposed to be used for one run only since tokens of
+ * destroyed {@code make} processes are lost.
+ *
+ * @author richter
+ */
+public final class MakeJobserver implements Closeable {
+    private final static Logger LOGGER = LoggerFactory.getLogger(MakeJobserver.class);
+    public final static String MAKEFLAGS = "MAKEFLAGS";
+    private final static int FD = 3;
+    private final static byte TOKEN = '+';
+    private final static Pattern VERSION_PATTERN = Pattern.compile("GNU Make (\\d+)\\.(\\d+)");
+    private final File fifoDir;
+    private final File fifo;
+    private final RandomAccessFile pipe;
+    private final int tokens;
+    private final int majorVersion;
+    private final int minorVersion;
+
+    /**
+     * Creates a jobserver if {@code make} is GNU make and {@code mkfifo} is
+     * available.
+     *
+     * @param make the {@code make} binary
+     * @param tokens the number of jobs which can run at the same time
+     * @return the created jobserver or {@code null} if no jobserver can be
+     *     created
+     * @throws InterruptedException if the thread is interrupted while
+     *     waiting for {@code make --version} or {@code mkfifo}
+     */
+    public static MakeJobserver create(String make,
+            int tokens) throws InterruptedException {
+        if(tokens < 1) {
+            throw new IllegalArgumentException(String.format("tokens value of less than 1 doesn't make sense (was %d)",
+                    tokens));
+        }
+        File fifoDir = null;
+        try {
+            Process versionProcess = new ProcessBuilder(make, "--version")
+                    .redirectErrorStream(true)
+                    .start();
+            String versionOutput = IOUtils.toString(versionProcess.getInputStream(),
+                    StandardCharsets.UTF_8);
+            versionProcess.waitFor();
+            Matcher versionMatcher = VERSION_PATTERN.matcher(versionOutput);
+            if(!versionMatcher.find()) {
+                LOGGER.info(String.format("%s isn't GNU make, not using a jobserver",
+                        make));
+                return null;
+            }
+            fifoDir = Files.createTempDirectory(MakeJobserver.class.getSimpleName()).toFile();
+            File fifo = new File(fifoDir, "jobserver");
+            Process mkfifoProcess = new ProcessBuilder("mkfifo", "-m", "600", fifo.getAbsolutePath())
+                    .redirectErrorStream(true)
+                    .start();
+            String mkfifoOutput = IOUtils.toString(mkfifoProcess.getInputStream(),
+                    StandardCharsets.UTF_8);
+            if(mkfifoProcess.waitFor() != 0) {
+                LOGGER.info(String.format("creating named pipe for jobserver failed (output was '%s'), not using a jobserver",
+                        mkfifoOutput.trim()));
+                FileUtils.deleteQuietly(fifoDir);
+                return null;
+            }
+            return new MakeJobserver(fifoDir,
+                    fifo,
+                    tokens,
+                    Integer.parseInt(versionMatcher.group(1)),
+                    Integer.parseInt(versionMatcher.group(2)));
+        }catch(IOException ex) {
+            LOGGER.info("creating jobserver failed, not using a jobserver",
+                    ex);
+            FileUtils.deleteQuietly(fifoDir);
+            return null;
+        }
+    }
+
+    private MakeJobserver(File fifoDir,
+            File fifo,
+            int tokens,
+            int majorVersion,
+            int minorVersion) throws IOException {
+        this.fifoDir = fifoDir;
+        this.fifo = fifo;
+        this.tokens = tokens;
+        this.majorVersion = majorVersion;
+        this.minorVersion = minorVersion;
+        //opening a named pipe for reading and writing doesn't block
+        this.pipe = new RandomAccessFile(fifo, "rw");
+        byte[] initialTokens = new byte[tokens];
+        for(int i=0; i<tokens; i++) {
+            initialTokens[i] = TOKEN;
+        }
+        pipe.write(initialTokens);
+        LOGGER.debug(String.format("created jobserver '%s' with %d tokens for GNU make %d.%d",
+                fifo.getAbsolutePath(),
+                tokens,
+                majorVersion,
+                minorVersion));
+    }
+
+    public int getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Whether {@code make} opens the named pipe itself
+     * ({@code --jobserver-auth=fifo:PATH} which is supported since GNU make
+     * 4.4).
+     *
+     * @return {@code true} if the named pipe is passed by path,
+     *     {@code false} if it's passed as file descriptor
+     */
+    public boolean isFifoSupported() {
+        return majorVersion > 4
+                || majorVersion == 4 && minorVersion >= 4;
+    }
+
+    /**
+     * The value of {@code MAKEFLAGS} which makes {@code make} a client of
+     * this jobserver.
+     *
+     * @return the {@code MAKEFLAGS} value
+     */
+    public String getMakeflags() {
+        if(isFifoSupported()) {
+            return String.format(" -j --jobserver-auth=fifo:%s",
+                    fifo.getAbsolutePath());
+        }
+        if(majorVersion == 4 && minorVersion >= 2) {
+            return String.format(" -j --jobserver-auth=%d,%d",
+                    FD,
+                    FD);
+        }
+        return String.format(" -j --jobserver-fds=%d,%d",
+                FD,
+                FD);
+    }
+
+    /**
+     * The shell command which needs to precede the {@code make} invokation
+     * in order to make the named pipe available to it.
+     *
+     * @return the shell command including the command separator or the empty
+     *     string if none is necessary
+     */
+    public String getShellPrefix() {
+        if(isFifoSupported()) {
+            return "";
+        }
+        return String.format("exec %d<>%s;",
+                FD,
+                fifo.getAbsolutePath());
+    }
+
+    /**
+     * Takes a token on behalf of a {@code make} process which is about to be
+     * started. Blocks until a token is available.
+     *
+     * @throws IOException if reading from the named pipe fails
+     */
+    public void acquire() throws IOException {
+        if(pipe.read() == -1) {
+            throw new IOException(String.format("jobserver '%s' has been closed",
+                    fifo.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * Returns the token of a {@code make} process which terminated.
+     *
+     * @throws IOException if writing to the named pipe fails
+     */
+    public void release() throws IOException {
+        pipe.write(TOKEN);
+    }
+
+    @Override
+    public void close() throws IOException {
+        pipe.close();
+        FileUtils.deleteDirectory(fifoDir);
+    }
+}
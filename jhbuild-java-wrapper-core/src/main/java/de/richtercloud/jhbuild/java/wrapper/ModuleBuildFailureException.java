@@ -14,6 +14,8 @@
  */
 package de.richtercloud.jhbuild.java.wrapper;
 
+import java.io.File;
+
 /**
  * An expection indicating a failure of JHBuild during the module build.
  *
@@ -21,16 +23,42 @@ package de.richtercloud.jhbuild.java.wrapper;
  */
 public class ModuleBuildFailureException extends Exception {
     private static final long serialVersionUID = 1L;
+    private final File logFile;
 
     public ModuleBuildFailureException(String message) {
         super(message);
+        this.logFile = null;
     }
 
     public ModuleBuildFailureException(String message, Throwable cause) {
         super(message, cause);
+        this.logFile = null;
     }
 
     public ModuleBuildFailureException(Throwable cause) {
         super(cause);
+        this.logFile = null;
+    }
+
+    /**
+     * Creates a new exception for a failed process whose output has been
+     * logged.
+     *
+     * @param message the message containing the tail of the output
+     * @param logFile the file containing the complete output or {@code null}
+     *     if it hasn't been logged
+     */
+    public ModuleBuildFailureException(String message,
+            File logFile) {
+        super(logFile != null
+                ? String.format("%s (full log is in %s)",
+                        message,
+                        logFile.getAbsolutePath())
+                : message);
+        this.logFile = logFile;
+    }
+
+    public File getLogFile() {
+        return logFile;
     }
 }
@@ -0,0 +1,125 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Captures the output of a process stream by forwarding it to a target
+ * stream and a shared log stream while keeping only the last bytes in a
+ * fixed-size ring buffer, so that the memory needed for error messages
+ * doesn't depend on the size of the output.
+ *
+ * @author richter
+ */
+class OutputCapture extends OutputStream {
+    final static String OMISSION_TEMPLATE = "[%d bytes omitted, see full log]";
+    private final OutputStream target;
+    private final OutputStream logOutputStream;
+    private final byte[] tail;
+    /**
+     * The number of bytes written so far. The next byte is written at
+     * {@code count % tail.length}.
+     */
+    private long count;
+
+    /**
+     * Creates a new capture.
+     *
+     * @param target the stream to forward output to or {@code null} if the
+     *     output is only captured
+     * @param logOutputStream the stream the full output is written to which
+     *     might be shared with the capture of another stream of the same
+     *     process (writes are synchronized on it) or {@code null} if there's
+     *     no log
+     * @param tailSize the number of bytes kept in memory
+     */
+    OutputCapture(OutputStream target,
+            OutputStream logOutputStream,
+            int tailSize) {
+        if(tailSize < 1) {
+            throw new IllegalArgumentException(String.format("tailSize value of less than 1 doesn't make sense (was %d)",
+                    tailSize));
+        }
+        this.target = target;
+        this.logOutputStream = logOutputStream;
+        this.tail = new byte[tailSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b},
+                0,
+                1);
+    }
+
+    @Override
+    public void write(byte[] b,
+            int off,
+            int len) throws IOException {
+        if(target != null) {
+            target.write(b, off, len);
+        }
+        if(logOutputStream != null) {
+            synchronized(logOutputStream) {
+                logOutputStream.write(b, off, len);
+            }
+        }
+        synchronized(this) {
+            //only the last tail.length bytes of b can end up in the tail
+            int skipped = Math.max(0, len-tail.length);
+            for(int i=off+skipped; i<off+len; i++) {
+                tail[(int) ((count+i-off) % tail.length)] = b[i];
+            }
+            count += len;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if(target != null) {
+            target.flush();
+        }
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * The last bytes of the output decoded as UTF-8 and prefixed with a note
+     * about the omitted bytes if the output didn't fit into the tail.
+     *
+     * @return the tail of the output
+     */
+    public synchronized String getTail() {
+        if(count <= tail.length) {
+            return new String(tail,
+                    0,
+                    (int) count,
+                    StandardCharsets.UTF_8);
+        }
+        int start = (int) (count % tail.length);
+        byte[] ordered = new byte[tail.length];
+        System.arraycopy(tail, start, ordered, 0, tail.length-start);
+        System.arraycopy(tail, 0, ordered, tail.length-start, start);
+        return String.format(OMISSION_TEMPLATE,
+                count-tail.length)
+                + new String(ordered,
+                        StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+/**
+ * How the output of build steps is handled.
+ *
+ * @author richter
+ */
+public enum OutputMode {
+    /**
+     * The output is read by the JVM, forwarded to the output streams of the
+     * wrapper, kept as tail in memory and written to the build log.
+     */
+    CAPTURE,
+    /**
+     * {@code stdout} and {@code stderr} of build steps are redirected to the
+     * build log by the kernel, so that no output passes through the JVM. The
+     * tail for error messages is read from the end of the log after a
+     * failure. Logs can't be compressed in this mode and the output streams
+     * of the wrapper don't receive the output of build steps.
+     */
+    LOG_FILE
+}
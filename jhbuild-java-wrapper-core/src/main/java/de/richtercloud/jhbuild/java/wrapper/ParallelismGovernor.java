@@ -0,0 +1,372 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adjusts the number of tokens of a {@link MakeJobserver} while builds are
+ * running by withholding tokens when the host is busy and returning them when
+ * capacity becomes idle.
+ *
+ * The number of jobs is limited by the CPU quota of the cgroup (or the number
+ * of processors), the load caused by other processes and the available
+ * memory divided by the memory a single job needs. The latter is learned
+ * from the peak resident set size of past {@code make} steps (see
+ * {@link #onBuildStepFinished(BuildStepMetrics) }) and stored in a
+ * statistics file, so that it's known at the start of the next run.
+ *
+ * @author richter
+ */
+public final class ParallelismGovernor implements BuildMetricsListener, Closeable {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ParallelismGovernor.class);
+    /*
+    internal implementation notes:
+    - withholding a token means taking it from the jobserver like a make
+    process would do, so that it blocks until a running job finishes
+    - close releases one token more than withheld in order to unblock the
+    governor thread which is fine since a jobserver is used for one run only
+    - only the cgroup of the container (the root of the cgroup file system) is
+    taken into account, nested cgroups of the JVM process aren't
+    - the load average includes the jobs of the wrapper's own builds which are
+    estimated to use all tokens which aren't withheld
+    */
+    public final static File STATISTICS_FILE_DEFAULT = new File(JHBuildJavaWrapper.CONFIG_DIR,
+            "parallelism.properties");
+    public final static long MEMORY_PER_JOB_DEFAULT = 512L*1024*1024;
+    public final static long INTERVAL_MILLIS_DEFAULT = 5000;
+    private final static String MEMORY_PER_JOB_KEY = "memoryPerJob";
+    /**
+     * The weight of a new sample in the moving average of the memory per job.
+     */
+    private final static double MEMORY_PER_JOB_WEIGHT = 0.3;
+    private final static Path CGROUP_V2_CPU_MAX = Paths.get("/sys/fs/cgroup/cpu.max");
+    private final static Path CGROUP_V1_CPU_QUOTA = Paths.get("/sys/fs/cgroup/cpu/cpu.cfs_quota_us");
+    private final static Path CGROUP_V1_CPU_PERIOD = Paths.get("/sys/fs/cgroup/cpu/cpu.cfs_period_us");
+    private final static Path CGROUP_V2_MEMORY_MAX = Paths.get("/sys/fs/cgroup/memory.max");
+    private final static Path CGROUP_V2_MEMORY_CURRENT = Paths.get("/sys/fs/cgroup/memory.current");
+    private final static Path CGROUP_V1_MEMORY_LIMIT = Paths.get("/sys/fs/cgroup/memory/memory.limit_in_bytes");
+    private final static Path CGROUP_V1_MEMORY_USAGE = Paths.get("/sys/fs/cgroup/memory/memory.usage_in_bytes");
+    private final static Path LOADAVG = Paths.get("/proc/loadavg");
+    private final static Path MEMINFO = Paths.get("/proc/meminfo");
+    private final static String MEM_AVAILABLE = "MemAvailable:";
+    private final MakeJobserver jobserver;
+    private final File statisticsFile;
+    private final long intervalMillis;
+    private final Thread governorThread;
+    private volatile long memoryPerJob;
+    private volatile boolean closed;
+    /**
+     * The number of tokens taken from the jobserver by the governor.
+     */
+    private volatile int withheldTokens;
+
+    /**
+     * Returns the number of processors available to the JVM limited by the
+     * CPU quota of the cgroup.
+     *
+     * @return the CPU limit, at least {@code 1}
+     */
+    public static int readCpuLimit() {
+        int retValue = Runtime.getRuntime().availableProcessors();
+        try {
+            double quota = -1;
+            if(Files.isReadable(CGROUP_V2_CPU_MAX)) {
+                //format: "$MAX $PERIOD" with $MAX being "max" if unlimited
+                String[] cpuMax = readFirstLine(CGROUP_V2_CPU_MAX).split(" ");
+                if(!"max".equals(cpuMax[0])) {
+                    quota = Double.parseDouble(cpuMax[0]) / Double.parseDouble(cpuMax[1]);
+                }
+            }else if(Files.isReadable(CGROUP_V1_CPU_QUOTA)) {
+                long quotaMicros = Long.parseLong(readFirstLine(CGROUP_V1_CPU_QUOTA));
+                if(quotaMicros > 0) {
+                    quota = (double) quotaMicros / Long.parseLong(readFirstLine(CGROUP_V1_CPU_PERIOD));
+                }
+            }
+            if(quota > 0) {
+                retValue = Math.min(retValue,
+                        (int) Math.max(1, Math.ceil(quota)));
+            }
+        }catch(IOException | RuntimeException ex) {
+            LOGGER.debug("reading cgroup CPU quota failed",
+                    ex);
+        }
+        return retValue;
+    }
+
+    /**
+     * Returns the memory available for new processes which is the minimum of
+     * {@code MemAvailable} of {@code /proc/meminfo} and the unused part of
+     * the memory limit of the cgroup.
+     *
+     * @return the available memory in bytes or {@link Long#MAX_VALUE} if it
+     *     can't be determined
+     */
+    public static long readAvailableMemory() {
+        long retValue = Long.MAX_VALUE;
+        try {
+            if(Files.isReadable(MEMINFO)) {
+                for(String line : Files.readAllLines(MEMINFO, StandardCharsets.UTF_8)) {
+                    if(line.startsWith(MEM_AVAILABLE)) {
+                        //format: "MemAvailable:    5625752 kB"
+                        retValue = Long.parseLong(line.substring(MEM_AVAILABLE.length())
+                                .replace("kB", "").trim())*1024;
+                        break;
+                    }
+                }
+            }
+            if(Files.isReadable(CGROUP_V2_MEMORY_MAX)) {
+                String memoryMax = readFirstLine(CGROUP_V2_MEMORY_MAX);
+                if(!"max".equals(memoryMax)) {
+                    retValue = Math.min(retValue,
+                            Long.parseLong(memoryMax)-Long.parseLong(readFirstLine(CGROUP_V2_MEMORY_CURRENT)));
+                }
+            }else if(Files.isReadable(CGROUP_V1_MEMORY_LIMIT)) {
+                //unlimited is represented by a value close to Long.MAX_VALUE
+                retValue = Math.min(retValue,
+                        Long.parseLong(readFirstLine(CGROUP_V1_MEMORY_LIMIT))-Long.parseLong(readFirstLine(CGROUP_V1_MEMORY_USAGE)));
+            }
+        }catch(IOException | RuntimeException ex) {
+            LOGGER.debug("reading available memory failed",
+                    ex);
+        }
+        return Math.max(0, retValue);
+    }
+
+    /**
+     * Returns the load average of the last minute.
+     *
+     * @return the load or {@code 0} if it can't be determined
+     */
+    public static double readLoad() {
+        try {
+            if(Files.isReadable(LOADAVG)) {
+                return Double.parseDouble(readFirstLine(LOADAVG).split(" ")[0]);
+            }
+        }catch(IOException | RuntimeException ex) {
+            LOGGER.debug("reading load average failed",
+                    ex);
+        }
+        return 0;
+    }
+
+    private static String readFirstLine(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path,
+                StandardCharsets.UTF_8);
+        if(lines.isEmpty()) {
+            throw new IOException(String.format("%s is empty",
+                    path));
+        }
+        return lines.get(0).trim();
+    }
+
+    /**
+     * Computes the number of jobs which can run at the same time.
+     *
+     * @param cpuLimit the number of usable processors
+     * @param load the load average which includes the wrapper's own jobs
+     * @param availableMemory the memory available for new processes
+     * @param memoryPerJob the memory a single job needs
+     * @param activeTokens the number of tokens which aren't withheld and
+     *     thus are possibly used by running jobs
+     * @param maxTokens the number of tokens of the jobserver
+     * @return the target number of tokens between {@code 1} and
+     *     {@code maxTokens}
+     */
+    public static int computeTarget(int cpuLimit,
+            double load,
+            long availableMemory,
+            long memoryPerJob,
+            int activeTokens,
+            int maxTokens) {
+        double foreignLoad = Math.max(0, load-activeTokens);
+        long cpuTarget = Math.round(cpuLimit-foreignLoad);
+        //running jobs already hold their memory, so that the memory of one
+        //more job is kept free as a reserve
+        long memoryTarget = activeTokens+Math.floorDiv(availableMemory-memoryPerJob,
+                memoryPerJob);
+        long retValue = Math.min(cpuTarget,
+                memoryTarget);
+        return (int) Math.max(1,
+                Math.min(maxTokens, retValue));
+    }
+
+    /**
+     * Creates a governor and starts adjusting the tokens of
+     * {@code jobserver}.
+     *
+     * @param jobserver the jobserver to govern
+     * @param statisticsFile the file the memory per job is loaded from and
+     *     stored in
+     * @param intervalMillis the time between two adjustments
+     * @throws IllegalArgumentException if {@code intervalMillis} is less than
+     *     {@code 1}
+     */
+    public ParallelismGovernor(MakeJobserver jobserver,
+            File statisticsFile,
+            long intervalMillis) {
+        if(intervalMillis < 1) {
+            throw new IllegalArgumentException(String.format("intervalMillis value of less than 1 doesn't make sense (was %d)",
+                    intervalMillis));
+        }
+        this.jobserver = jobserver;
+        this.statisticsFile = statisticsFile;
+        this.intervalMillis = intervalMillis;
+        this.memoryPerJob = loadMemoryPerJob(statisticsFile);
+        this.governorThread = new Thread(this::govern,
+                "parallelism-governor");
+        governorThread.setDaemon(true);
+        governorThread.start();
+    }
+
+    public long getMemoryPerJob() {
+        return memoryPerJob;
+    }
+
+    /**
+     * The number of tokens of the jobserver which aren't withheld.
+     *
+     * @return the number of active tokens
+     */
+    public int getActiveTokens() {
+        return jobserver.getTokens()-withheldTokens;
+    }
+
+    private static long loadMemoryPerJob(File statisticsFile) {
+        if(!statisticsFile.exists()) {
+            return MEMORY_PER_JOB_DEFAULT;
+        }
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(statisticsFile.toPath())) {
+            properties.load(inputStream);
+            return Long.parseLong(properties.getProperty(MEMORY_PER_JOB_KEY,
+                    String.valueOf(MEMORY_PER_JOB_DEFAULT)));
+        }catch(IOException | NumberFormatException ex) {
+            LOGGER.warn(String.format("reading parallelism statistics file %s failed, using default memory per job",
+                    statisticsFile.getAbsolutePath()),
+                    ex);
+            return MEMORY_PER_JOB_DEFAULT;
+        }
+    }
+
+    private void govern() {
+        try {
+            while(!closed) {
+                int activeTokens = getActiveTokens();
+                int target = computeTarget(readCpuLimit(),
+                        readLoad(),
+                        readAvailableMemory(),
+                        memoryPerJob,
+                        activeTokens,
+                        jobserver.getTokens());
+                if(target > activeTokens) {
+                    for(int i=activeTokens; i<target; i++) {
+                        jobserver.release();
+                        withheldTokens--;
+                    }
+                    LOGGER.debug(String.format("increased make jobs to %d",
+                            target));
+                }else if(target < activeTokens) {
+                    for(int i=target; i<activeTokens && !closed; i++) {
+                        //blocks until a running job returns its token
+                        jobserver.acquire();
+                        withheldTokens++;
+                    }
+                    LOGGER.debug(String.format("decreased make jobs to %d",
+                            getActiveTokens()));
+                }
+                Thread.sleep(intervalMillis);
+            }
+        }catch(InterruptedException ex) {
+            LOGGER.trace("parallelism governor interrupted",
+                    ex);
+        }catch(IOException ex) {
+            //the jobserver has been closed
+            LOGGER.debug("parallelism governor stopped because the jobserver is no longer available",
+                    ex);
+        }
+    }
+
+    /**
+     * Learns the memory per job from the peak resident set size of
+     * {@code make} steps divided by the number of jobs they could run.
+     *
+     * @param metrics the metrics of the finished step
+     */
+    @Override
+    public void onBuildStepFinished(BuildStepMetrics metrics) {
+        if(metrics.getBuildStep() != BuildStep.MAKE
+                || metrics.getPeakRssBytes() <= 0) {
+            return;
+        }
+        long sample = metrics.getPeakRssBytes() / Math.max(1, getActiveTokens());
+        synchronized(this) {
+            memoryPerJob = Math.round(memoryPerJob*(1-MEMORY_PER_JOB_WEIGHT)
+                    + sample*MEMORY_PER_JOB_WEIGHT);
+        }
+    }
+
+    /**
+     * Stops adjusting, returns the withheld tokens to the jobserver and
+     * stores the learned memory per job. Has to be invoked before the
+     * jobserver is closed.
+     *
+     * @throws IOException if storing the statistics fails
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        governorThread.interrupt();
+        //the governor thread might be blocked withholding a token which can't
+        //be interrupted
+        jobserver.release();
+        try {
+            governorThread.join(intervalMillis);
+        }catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        for(int i=0; i<withheldTokens; i++) {
+            jobserver.release();
+        }
+        withheldTokens = 0;
+        Files.createDirectories(statisticsFile.getAbsoluteFile().getParentFile().toPath());
+        Properties properties = new Properties();
+        properties.setProperty(MEMORY_PER_JOB_KEY,
+                String.valueOf(memoryPerJob));
+        File tmpFile = new File(statisticsFile.getAbsolutePath()+".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(tmpFile.toPath())) {
+            properties.store(outputStream,
+                    null //comments
+            );
+        }
+        Files.move(tmpFile.toPath(),
+                statisticsFile.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+}
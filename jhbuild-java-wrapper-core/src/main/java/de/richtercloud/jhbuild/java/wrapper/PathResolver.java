@@ -0,0 +1,245 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves binary names to absolute files in a search path like a shell
+ * does. The entries of every directory of the search path are read once and
+ * kept until the modification time of the directory changes, so that
+ * repeated lookups only cost one {@code stat} per directory instead of
+ * several per directory and binary. Binaries which aren't found in the
+ * indices are looked up directly in every directory before they're reported
+ * as missing, so that an outdated index never hides a binary.
+ *
+ * @author richter
+ */
+public final class PathResolver {
+    private final static Logger LOGGER = LoggerFactory.getLogger(PathResolver.class);
+    /*
+    internal implementation notes:
+    - adding, removing and renaming entries change the modification time of a
+    directory, changing the permissions of an entry doesn't; a binary can also be
+    added without a visible change on file systems with coarse timestamps;
+    therefore only positive executable checks are cached and misses are checked
+    directly (concurrent prerequisite builds might look up a binary between its
+    creation and the chmod of make install)
+    - a directory which doesn't exist is indexed as empty with a null
+    modification time, so that it's indexed again once it has been created
+    */
+    private final Map<Path, DirectoryIndex> indices = new ConcurrentHashMap<>();
+
+    /**
+     * Resolves {@code binary} in {@code path}.
+     *
+     * @param binary the binary name
+     * @param path the search path in the OS format (pathes separated with the
+     *     OS' path separator)
+     * @return the absolute executable file or {@code null} if {@code binary}
+     *     can't be found
+     */
+    public File resolve(String binary,
+            String path) {
+        return resolveAll(Collections.singleton(binary),
+                path).get(binary);
+    }
+
+    /**
+     * Resolves all {@code binaries} in one pass over the directories of
+     * {@code path}.
+     *
+     * @param binaries the binary names
+     * @param path the search path in the OS format
+     * @return a map containing the absolute executable file of every binary
+     *     which has been found in the order of {@code binaries}
+     */
+    public Map<String, File> resolveAll(Collection<String> binaries,
+            String path) {
+        if(binaries == null) {
+            throw new IllegalArgumentException("binaries mustn't be null");
+        }
+        if(path == null) {
+            throw new IllegalArgumentException("path mustn't be null");
+        }
+        Set<String> unresolved = new HashSet<>(binaries);
+        Map<String, File> resolved = new HashMap<>();
+        for(String pathSplit : path.split(File.pathSeparator)) {
+            if(unresolved.isEmpty()) {
+                break;
+            }
+            if(pathSplit.isEmpty()) {
+                continue;
+            }
+            Path directory = Paths.get(pathSplit).toAbsolutePath();
+            DirectoryIndex index = getIndex(directory);
+            for(String binary : new HashSet<>(unresolved)) {
+                if(index.isExecutable(binary)) {
+                    resolved.put(binary,
+                            directory.resolve(binary).toFile());
+                    unresolved.remove(binary);
+                }
+            }
+        }
+        if(!unresolved.isEmpty()) {
+            resolveDirectly(unresolved,
+                    path,
+                    resolved);
+        }
+        Map<String, File> retValue = new LinkedHashMap<>();
+        for(String binary : binaries) {
+            File binaryFile = resolved.get(binary);
+            if(binaryFile != null) {
+                retValue.put(binary,
+                        binaryFile);
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Looks up {@code unresolved} without the indices in case they're
+     * outdated and discards the indices of the directories they're found in.
+     */
+    private void resolveDirectly(Set<String> unresolved,
+            String path,
+            Map<String, File> resolved) {
+        for(String binary : unresolved) {
+            for(String pathSplit : path.split(File.pathSeparator)) {
+                if(pathSplit.isEmpty()) {
+                    continue;
+                }
+                Path directory = Paths.get(pathSplit).toAbsolutePath();
+                Path binaryPath = directory.resolve(binary);
+                if(Files.isRegularFile(binaryPath)
+                        && Files.isExecutable(binaryPath)) {
+                    LOGGER.trace(String.format("%s hasn't been found in the index of %s",
+                            binary,
+                            directory));
+                    //the index is outdated
+                    indices.remove(directory);
+                    resolved.put(binary,
+                            binaryPath.toFile());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards all indices.
+     */
+    public void invalidate() {
+        indices.clear();
+    }
+
+    private DirectoryIndex getIndex(Path directory) {
+        FileTime lastModified = getLastModifiedTime(directory);
+        DirectoryIndex index = indices.get(directory);
+        if(index != null
+                && (lastModified == null
+                        ? index.lastModified == null
+                        : lastModified.equals(index.lastModified))) {
+            return index;
+        }
+        index = new DirectoryIndex(directory,
+                lastModified);
+        indices.put(directory,
+                index);
+        return index;
+    }
+
+    private static FileTime getLastModifiedTime(Path directory) {
+        try {
+            return Files.getLastModifiedTime(directory);
+        }catch(IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * The entry names of a directory and the cached positive results of
+     * checking whether they're executable files.
+     */
+    private static final class DirectoryIndex {
+        private final Path directory;
+        private final FileTime lastModified;
+        private final Set<String> entries = new HashSet<>();
+        private final Set<String> executables = ConcurrentHashMap.newKeySet();
+
+        DirectoryIndex(Path directory,
+                FileTime lastModified) {
+            this.directory = directory;
+            this.lastModified = lastModified;
+            if(lastModified == null) {
+                return;
+            }
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+                for(Path entry : directoryStream) {
+                    entries.add(entry.getFileName().toString());
+                }
+            }catch(NoSuchFileException ex) {
+                LOGGER.trace(String.format("path directory %s has been removed while indexing",
+                        directory),
+                        ex);
+            }catch(IOException ex) {
+                LOGGER.debug(String.format("indexing path directory %s failed",
+                        directory),
+                        ex);
+            }
+        }
+
+        boolean isExecutable(String binary) {
+            if(binary.indexOf('/') != -1) {
+                //a relative path which isn't a direct entry
+                Path binaryPath = directory.resolve(binary);
+                return Files.isRegularFile(binaryPath)
+                        && Files.isExecutable(binaryPath);
+            }
+            if(!entries.contains(binary)) {
+                return false;
+            }
+            if(executables.contains(binary)) {
+                return true;
+            }
+            //negative results aren't cached because the entry might be made
+            //executable later without changing the directory
+            Path binaryPath = directory.resolve(binary);
+            if(Files.isRegularFile(binaryPath)
+                    && Files.isExecutable(binaryPath)) {
+                executables.add(binary);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,529 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import de.richtercloud.jhbuild.java.wrapper.download.DownloadCombi;
+import de.richtercloud.jhbuild.java.wrapper.download.JavaExtractor;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of installed prerequisites. An artifact is a {@code .tar.gz} archive
+ * of everything a prerequisite's {@code make install} installed into a
+ * staging {@code DESTDIR} and is stored under a key which is derived from
+ * everything which influences the build result (see
+ * {@link #createKey(List) }). If a key is present the build can be skipped
+ * and the artifact is unpacked into the installation prefix instead.
+ *
+ * Every artifact has a sidecar file containing its SHA-256 checksum which is
+ * verified before the artifact is used. Corrupt or incomplete artifacts are
+ * deleted and treated as missing. The least recently used artifacts are
+ * evicted once the total size of all artifacts exceeds the maximum size. The
+ * artifact which has just been stored is never evicted, so that the cache
+ * can temporarily exceed the maximum size by the size of one artifact.
+ *
+ * The cache directory can be shared by wrappers in different processes.
+ * Storing, restoring, removing and evicting artifacts is serialized by an
+ * exclusive lock on a lock file in the cache directory.
+ *
+ * @author richter
+ */
+public class PrerequisiteArtifactCache {
+    private final static Logger LOGGER = LoggerFactory.getLogger(PrerequisiteArtifactCache.class);
+    /*
+    internal implementation notes:
+    - all operations on the cache directory are serialized because prerequisites
+    are installed concurrently and eviction mustn't delete an artifact which is
+    being verified or unpacked; unpacking takes seconds while building takes
+    minutes, so this doesn't matter
+    - FileChannel.lock throws OverlappingFileLockException if the JVM already
+    holds a lock on the file, therefore instances in the same JVM synchronize on a
+    monitor per cache directory in CACHE_DIR_MONITORS before locking
+    - artifacts are packed into temporary files with unique names outside the
+    lock so that concurrent stores of the same key don't interfere and don't
+    block restores; the lock is only held while moving them into place
+    - directories are only stored if they're empty because unpacking an entry of
+    an existing directory of the installation prefix (e.g. bin or lib) would
+    reset its permissions and modification time
+    - hard links (e.g. git's builtin commands in libexec) are stored as tar hard
+    link entries so that they don't increase the artifact size
+    */
+    /**
+     * The default maximum size of all artifacts.
+     */
+    public final static long MAX_SIZE_DEFAULT = 2L*1024*1024*1024;
+    private final static String ARTIFACT_SUFFIX = ".tar.gz";
+    private final static String CHECKSUM_SUFFIX = ".sha256";
+    private final static String TMP_SUFFIX = ".tmp";
+    private final static String LOCK_FILE_NAME = "lock";
+    /**
+     * The age after which temporary files left behind by processes which
+     * terminated while storing an artifact are deleted.
+     */
+    private final static long STALE_TMP_FILE_AGE_MILLIS = 24L*60*60*1000;
+    /**
+     * The monitors which instances in this JVM synchronize on before locking
+     * the lock file of a cache directory.
+     */
+    private final static Map<File, Object> CACHE_DIR_MONITORS = new HashMap<>();
+    private final File cacheDir;
+    private final long maxSize;
+
+    /**
+     * Creates a new cache. {@code cacheDir} is created when it's used first.
+     *
+     * @param cacheDir the directory to store artifacts in
+     * @param maxSize the maximum size of all artifacts in bytes
+     */
+    public PrerequisiteArtifactCache(File cacheDir,
+            long maxSize) {
+        if(cacheDir == null) {
+            throw new IllegalArgumentException("cacheDir mustn't be null");
+        }
+        if(maxSize < 0) {
+            throw new IllegalArgumentException(String.format("maxSize mustn't be negative (was %d)",
+                    maxSize));
+        }
+        //the monitors are identified by the absolute path
+        this.cacheDir = cacheDir.getAbsoluteFile();
+        this.maxSize = maxSize;
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Creates a cache key from the specified components, e.g. the checksums
+     * of the source archive and patches, the configure options, the compiler
+     * version and the OS and architecture. The order of components matters.
+     *
+     * @param components the components
+     * @return the hex-encoded SHA-256 digest of the components
+     */
+    public static String createKey(List<String> components) {
+        return DigestUtils.sha256Hex(String.join("\n", components).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Unpacks the artifact stored under {@code key} into {@code targetDir} if
+     * it exists and passes the integrity check.
+     *
+     * @param key the key
+     * @param targetDir the directory to unpack into (usually the installation
+     *     prefix)
+     * @return {@code true} if the artifact has been unpacked, {@code false} if
+     *     there's no valid artifact for {@code key}
+     * @throws IOException if an I/O exception occurs
+     * @throws ExtractionException if unpacking fails
+     */
+    public boolean restore(String key,
+            File targetDir) throws IOException,
+            ExtractionException {
+        if(!getArtifactFile(key).exists()) {
+            LOGGER.debug(String.format("no artifact for key %s",
+                    key));
+            return false;
+        }
+        return runLocked(() -> restore0(key,
+                targetDir));
+    }
+
+    private boolean restore0(String key,
+            File targetDir) throws IOException,
+            ExtractionException {
+        File artifactFile = getArtifactFile(key);
+        File checksumFile = getChecksumFile(key);
+        if(!artifactFile.exists()) {
+            LOGGER.debug(String.format("no artifact for key %s",
+                    key));
+            return false;
+        }
+        if(!checksumFile.exists()) {
+            LOGGER.warn(String.format("artifact %s doesn't have a checksum file, deleting it",
+                    artifactFile.getAbsolutePath()));
+            delete(key);
+            return false;
+        }
+        String expectedChecksum = new String(Files.readAllBytes(checksumFile.toPath()),
+                StandardCharsets.US_ASCII).trim();
+        String checksum = sha256(artifactFile);
+        if(!expectedChecksum.equals(checksum)) {
+            LOGGER.warn(String.format("checksum %s of artifact %s doesn't match expected checksum %s, deleting it",
+                    checksum,
+                    artifactFile.getAbsolutePath(),
+                    expectedChecksum));
+            delete(key);
+            return false;
+        }
+        LOGGER.info(String.format("unpacking artifact %s into %s",
+                artifactFile.getAbsolutePath(),
+                targetDir.getAbsolutePath()));
+        DownloadCombi artifactDownloadCombi = new DownloadCombi(artifactFile.toURI().toURL().toExternalForm(),
+                artifactFile.getAbsolutePath(),
+                ExtractionMode.EXTRACTION_MODE_TAR_GZ,
+                targetDir.getAbsolutePath(),
+                expectedChecksum);
+        new JavaExtractor().extract(artifactDownloadCombi,
+                targetDir,
+                null, //entries
+                () -> false //canceled
+        );
+        //the modification time is used for least recently used eviction
+        Files.setLastModifiedTime(artifactFile.toPath(),
+                FileTime.fromMillis(System.currentTimeMillis()));
+        return true;
+    }
+
+    /**
+     * Packs the content of {@code stagedDir} into an artifact stored under
+     * {@code key} and unpacks it into {@code targetDir} without another
+     * artifact being stored in between which could evict it.
+     *
+     * @param key the key
+     * @param stagedDir the directory which corresponds to the installation
+     *     prefix in the staging {@code DESTDIR}
+     * @param targetDir the directory to unpack into (usually the installation
+     *     prefix)
+     * @return {@code true} if the artifact has been unpacked, {@code false} if
+     *     it didn't pass the integrity check
+     * @throws IOException if an I/O exception occurs
+     * @throws ExtractionException if unpacking fails
+     */
+    public boolean storeAndRestore(String key,
+            File stagedDir,
+            File targetDir) throws IOException,
+            ExtractionException {
+        File artifactTmpFile = packTmp(key,
+                stagedDir);
+        try {
+            return runLocked(() -> {
+                commit(key,
+                        artifactTmpFile);
+                evict(key);
+                return restore0(key,
+                        targetDir);
+            });
+        }finally {
+            Files.deleteIfExists(artifactTmpFile.toPath());
+        }
+    }
+
+    /**
+     * Packs the content of {@code stagedDir} into an artifact stored under
+     * {@code key} and evicts the least recently used other artifacts
+     * afterwards if necessary.
+     *
+     * @param key the key
+     * @param stagedDir the directory which corresponds to the installation
+     *     prefix in the staging {@code DESTDIR}
+     * @throws IOException if an I/O exception occurs
+     */
+    public void store(String key,
+            File stagedDir) throws IOException {
+        File artifactTmpFile = packTmp(key,
+                stagedDir);
+        try {
+            runLocked(() -> {
+                commit(key,
+                        artifactTmpFile);
+                evict(key);
+                return null;
+            });
+        }finally {
+            Files.deleteIfExists(artifactTmpFile.toPath());
+        }
+    }
+
+    /**
+     * Packs the content of {@code stagedDir} into a temporary file with a
+     * unique name in the cache directory.
+     *
+     * @return the temporary file
+     */
+    private File packTmp(String key,
+            File stagedDir) throws IOException {
+        if(!stagedDir.isDirectory()) {
+            throw new IllegalArgumentException(String.format("staged directory %s doesn't exist or isn't a directory",
+                    stagedDir.getAbsolutePath()));
+        }
+        Files.createDirectories(cacheDir.toPath());
+        File artifactTmpFile = Files.createTempFile(cacheDir.toPath(),
+                key, //prefix
+                ARTIFACT_SUFFIX+TMP_SUFFIX //suffix
+        ).toFile();
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(artifactTmpFile.toPath()));
+                TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(outputStream)) {
+            tarOutputStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tarOutputStream.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            pack(stagedDir.toPath(),
+                    tarOutputStream);
+        }catch(IOException ex) {
+            Files.deleteIfExists(artifactTmpFile.toPath());
+            throw ex;
+        }
+        return artifactTmpFile;
+    }
+
+    /**
+     * Moves a packed artifact and its checksum file into place. Has to be
+     * invoked while holding the lock.
+     */
+    private void commit(String key,
+            File artifactTmpFile) throws IOException {
+        File artifactFile = getArtifactFile(key);
+        File checksumFile = getChecksumFile(key);
+        File checksumTmpFile = Files.createTempFile(cacheDir.toPath(),
+                key, //prefix
+                ARTIFACT_SUFFIX+CHECKSUM_SUFFIX+TMP_SUFFIX //suffix
+        ).toFile();
+        try {
+            Files.write(checksumTmpFile.toPath(),
+                    sha256(artifactTmpFile).getBytes(StandardCharsets.US_ASCII));
+            //the artifact is moved last so that restore never sees an artifact
+            //without its checksum
+            Files.move(checksumTmpFile.toPath(),
+                    checksumFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(artifactTmpFile.toPath(),
+                    artifactFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }finally {
+            Files.deleteIfExists(checksumTmpFile.toPath());
+        }
+        LOGGER.info(String.format("stored artifact %s (%d bytes)",
+                artifactFile.getAbsolutePath(),
+                artifactFile.length()));
+    }
+
+    /**
+     * Deletes the least recently used artifacts except the one stored under
+     * {@code retainedKey} until the total size of all artifacts is less than
+     * or equal to the maximum size. Deletes stale temporary files as well.
+     * Has to be invoked while holding the lock.
+     *
+     * @param retainedKey the key of the artifact which has just been stored
+     * @throws IOException if an I/O exception occurs
+     */
+    private void evict(String retainedKey) throws IOException {
+        File[] tmpFiles = cacheDir.listFiles((dir, name) -> name.endsWith(TMP_SUFFIX));
+        if(tmpFiles != null) {
+            for(File tmpFile : tmpFiles) {
+                if(System.currentTimeMillis()-tmpFile.lastModified() > STALE_TMP_FILE_AGE_MILLIS) {
+                    LOGGER.debug(String.format("deleting stale temporary file %s",
+                            tmpFile.getAbsolutePath()));
+                    Files.deleteIfExists(tmpFile.toPath());
+                }
+            }
+        }
+        File[] artifactFiles = cacheDir.listFiles((dir, name) -> name.endsWith(ARTIFACT_SUFFIX));
+        if(artifactFiles == null) {
+            return;
+        }
+        long totalSize = 0;
+        for(File artifactFile : artifactFiles) {
+            totalSize += artifactFile.length();
+        }
+        //least recently used first
+        Arrays.sort(artifactFiles,
+                (file1, file2) -> Long.compare(file1.lastModified(), file2.lastModified()));
+        for(File artifactFile : artifactFiles) {
+            if(totalSize <= maxSize) {
+                break;
+            }
+            String key = artifactFile.getName().substring(0,
+                    artifactFile.getName().length()-ARTIFACT_SUFFIX.length());
+            if(key.equals(retainedKey)) {
+                continue;
+            }
+            totalSize -= artifactFile.length();
+            LOGGER.info(String.format("evicting artifact %s",
+                    artifactFile.getAbsolutePath()));
+            delete(key);
+        }
+    }
+
+    /**
+     * Removes the artifact stored under {@code key}, e.g. because the checks
+     * of the build it has been created from failed.
+     *
+     * @param key the key
+     * @throws IOException if an I/O exception occurs
+     */
+    public void remove(String key) throws IOException {
+        runLocked(() -> {
+            delete(key);
+            return null;
+        });
+    }
+
+    /**
+     * Runs {@code action} while holding the exclusive lock on the cache
+     * directory.
+     */
+    private <T, E extends Exception> T runLocked(LockedAction<T, E> action) throws IOException,
+            E {
+        Object monitor;
+        synchronized(CACHE_DIR_MONITORS) {
+            monitor = CACHE_DIR_MONITORS.computeIfAbsent(cacheDir,
+                    dir -> new Object());
+        }
+        synchronized(monitor) {
+            Files.createDirectories(cacheDir.toPath());
+            try (FileChannel lockChannel = FileChannel.open(new File(cacheDir,
+                            LOCK_FILE_NAME).toPath(),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+                    FileLock lock = lockChannel.lock()) {
+                return action.run();
+            }
+        }
+    }
+
+    private void delete(String key) throws IOException {
+        Files.deleteIfExists(getArtifactFile(key).toPath());
+        Files.deleteIfExists(getChecksumFile(key).toPath());
+    }
+
+    private File getArtifactFile(String key) {
+        return new File(cacheDir,
+                key+ARTIFACT_SUFFIX);
+    }
+
+    private File getChecksumFile(String key) {
+        return new File(cacheDir,
+                key+ARTIFACT_SUFFIX+CHECKSUM_SUFFIX);
+    }
+
+    private static String sha256(File file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+            return DigestUtils.sha256Hex(inputStream);
+        }
+    }
+
+    private static void pack(Path rootPath,
+            TarArchiveOutputStream tarOutputStream) throws IOException {
+        //maps device and inode of files with more than one link to the entry
+        //name they've been stored under first
+        Map<String, String> hardLinkTargets = new HashMap<>();
+        Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir,
+                    BasicFileAttributes attrs) throws IOException {
+                if(!dir.equals(rootPath)
+                        && isEmpty(dir)) {
+                    TarArchiveEntry entry = new TarArchiveEntry(rootPath.relativize(dir).toString()+"/");
+                    entry.setMode(getMode(dir));
+                    entry.setModTime(attrs.lastModifiedTime().toMillis());
+                    tarOutputStream.putArchiveEntry(entry);
+                    tarOutputStream.closeArchiveEntry();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file,
+                    BasicFileAttributes attrs) throws IOException {
+                String entryName = rootPath.relativize(file).toString();
+                if(attrs.isSymbolicLink()) {
+                    TarArchiveEntry entry = new TarArchiveEntry(entryName,
+                            TarConstants.LF_SYMLINK);
+                    entry.setLinkName(Files.readSymbolicLink(file).toString());
+                    entry.setModTime(attrs.lastModifiedTime().toMillis());
+                    tarOutputStream.putArchiveEntry(entry);
+                    tarOutputStream.closeArchiveEntry();
+                    return FileVisitResult.CONTINUE;
+                }
+                int linkCount = ((Number)Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS)).intValue();
+                if(linkCount > 1) {
+                    String inode = String.format("%s:%s",
+                            Files.getAttribute(file, "unix:dev", LinkOption.NOFOLLOW_LINKS),
+                            Files.getAttribute(file, "unix:ino", LinkOption.NOFOLLOW_LINKS));
+                    String linkTarget = hardLinkTargets.putIfAbsent(inode,
+                            entryName);
+                    if(linkTarget != null) {
+                        TarArchiveEntry entry = new TarArchiveEntry(entryName,
+                                TarConstants.LF_LINK);
+                        entry.setLinkName(linkTarget);
+                        entry.setMode(getMode(file));
+                        entry.setModTime(attrs.lastModifiedTime().toMillis());
+                        tarOutputStream.putArchiveEntry(entry);
+                        tarOutputStream.closeArchiveEntry();
+                        return FileVisitResult.CONTINUE;
+                    }
+                }
+                TarArchiveEntry entry = new TarArchiveEntry(entryName);
+                entry.setSize(attrs.size());
+                entry.setMode(getMode(file));
+                entry.setModTime(attrs.lastModifiedTime().toMillis());
+                tarOutputStream.putArchiveEntry(entry);
+                Files.copy(file,
+                        tarOutputStream);
+                tarOutputStream.closeArchiveEntry();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static int getMode(Path path) throws IOException {
+        return ((Number)Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS)).intValue();
+    }
+
+    private static boolean isEmpty(Path dir) throws IOException {
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(dir)) {
+            return !directoryStream.iterator().hasNext();
+        }
+    }
+
+    @FunctionalInterface
+    private interface LockedAction<T, E extends Exception> {
+
+        T run() throws IOException,
+                E;
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs prerequisite installations concurrently as far as the dependencies
+ * between them allow.
+ *
+ * Tasks are started as soon as all of their dependencies have completed
+ * successfully. Dependencies on names which haven't been added are considered
+ * satisfied (e.g. because the prerequisite is already installed). After the
+ * first failure or cancelation no further tasks are started, the abort
+ * callback is invoked so that running tasks can be stopped and
+ * {@link #run() } returns after all running tasks have finished.
+ *
+ * Tasks can submit checks (see {@link #submitCheck(String, Task) }) which
+ * run in the background while the dependents of the task are already
+ * started. A failing check is handled like a failing task, i.e. no further
+ * tasks are started and {@link #run() } throws its exception.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- tasks are executed on a thread pool and results are processed on the
+calling thread only, so that no synchronization of the graph state is
+necessary
+- checks are submitted from task threads and thus passed to the calling
+thread through a concurrent queue
+*/
+class PrerequisiteScheduler {
+    private final static Logger LOGGER = LoggerFactory.getLogger(PrerequisiteScheduler.class);
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+    private final Map<String, Set<String>> dependencies = new LinkedHashMap<>();
+    private final int maxConcurrentTasks;
+    private final Runnable abortCallback;
+    private final Queue<Map.Entry<String, Task>> submittedChecks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param maxConcurrentTasks the maximum number of tasks which run at the
+     *     same time
+     * @param abortCallback invoked on the calling thread of {@link #run() }
+     *     after the first task failed or has been canceled in order to stop
+     *     the running tasks
+     */
+    PrerequisiteScheduler(int maxConcurrentTasks,
+            Runnable abortCallback) {
+        if(maxConcurrentTasks < 1) {
+            throw new IllegalArgumentException(String.format("maxConcurrentTasks value of less than 1 doesn't make sense (was %d)",
+                    maxConcurrentTasks));
+        }
+        if(abortCallback == null) {
+            throw new IllegalArgumentException("abortCallback mustn't be null");
+        }
+        this.maxConcurrentTasks = maxConcurrentTasks;
+        this.abortCallback = abortCallback;
+    }
+
+    /**
+     * Adds a task.
+     *
+     * @param name the name of the task referenced by dependencies
+     * @param task the task
+     * @param dependencyNames the names of tasks which need to complete before
+     *     {@code task} can be started
+     */
+    public void add(String name,
+            Task task,
+            String... dependencyNames) {
+        if(tasks.containsKey(name)) {
+            throw new IllegalArgumentException(String.format("task with name '%s' has already been added",
+                    name));
+        }
+        tasks.put(name, task);
+        dependencies.put(name, new HashSet<>(Arrays.asList(dependencyNames)));
+    }
+
+    /**
+     * Submits a check of the result of a task which is started on the next
+     * completion of a task or check. Can be invoked from within running
+     * tasks. Checks don't delay the start of dependents and are started even
+     * after a failure or cancelation, so that they can release their
+     * resources.
+     *
+     * @param name the name of the check used in logging messages
+     * @param check the check
+     */
+    public void submitCheck(String name,
+            Task check) {
+        submittedChecks.add(new AbstractMap.SimpleImmutableEntry<>(name,
+                check));
+    }
+
+    /**
+     * Runs all tasks.
+     *
+     * @return {@code false} if a task has been canceled, {@code true}
+     *     otherwise
+     * @throws Exception the exception of the first failed task
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    public boolean run() throws Exception {
+        for(Map.Entry<String, Set<String>> dependency : dependencies.entrySet()) {
+            //dependencies on tasks which haven't been added are satisfied
+            dependency.getValue().retainAll(tasks.keySet());
+        }
+        List<String> pending = new LinkedList<>(tasks.keySet());
+        Set<String> completed = new HashSet<>();
+        Map<Future<Boolean>, String> running = new LinkedHashMap<>();
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1,
+                Math.min(maxConcurrentTasks, tasks.size())));
+        CompletionService<Boolean> completionService = new ExecutorCompletionService<>(executorService);
+        Exception failure = null;
+        boolean notCanceled = true;
+        try {
+            while(!pending.isEmpty() || !running.isEmpty()) {
+                if(failure == null && notCanceled) {
+                    for(String name : new LinkedList<>(pending)) {
+                        if(running.size() >= maxConcurrentTasks) {
+                            break;
+                        }
+                        if(completed.containsAll(dependencies.get(name))) {
+                            pending.remove(name);
+                            LOGGER.debug(String.format("starting prerequisite %s (%d running)",
+                                    name,
+                                    running.size()+1));
+                            Task task = tasks.get(name);
+                            running.put(completionService.submit(task::run),
+                                    name);
+                        }
+                    }
+                    if(running.isEmpty()) {
+                        throw new IllegalStateException(String.format("dependencies of prerequisites %s can't be satisfied",
+                                pending));
+                    }
+                }else if(running.isEmpty()) {
+                    break;
+                }
+                Future<Boolean> future = completionService.take();
+                String name = running.remove(future);
+                try {
+                    if(future.get()) {
+                        LOGGER.debug(String.format("prerequisite %s completed",
+                                name));
+                        completed.add(name);
+                    }else if(notCanceled && failure == null) {
+                        LOGGER.debug(String.format("prerequisite %s has been canceled, stopping remaining prerequisites",
+                                name));
+                        notCanceled = false;
+                        abortCallback.run();
+                    }
+                }catch(ExecutionException ex) {
+                    if(failure == null) {
+                        LOGGER.debug(String.format("prerequisite %s failed, stopping remaining prerequisites",
+                                name));
+                        if(ex.getCause() instanceof Error) {
+                            throw (Error)ex.getCause();
+                        }
+                        failure = (Exception)ex.getCause();
+                        abortCallback.run();
+                    }else {
+                        LOGGER.debug(String.format("prerequisite %s failed after abort",
+                                name),
+                                ex.getCause());
+                    }
+                }
+                Map.Entry<String, Task> check;
+                while((check = submittedChecks.poll()) != null) {
+                    LOGGER.debug(String.format("starting check %s in the background",
+                            check.getKey()));
+                    running.put(completionService.submit(check.getValue()::run),
+                            check.getKey());
+                }
+            }
+        }catch(InterruptedException ex) {
+            abortCallback.run();
+            throw ex;
+        }finally {
+            executorService.shutdownNow();
+        }
+        if(failure != null) {
+            throw failure;
+        }
+        return notCanceled;
+    }
+
+    /**
+     * A prerequisite installation.
+     */
+    @FunctionalInterface
+    interface Task {
+
+        /**
+         * Installs the prerequisite.
+         *
+         * @return {@code false} if the installation has been canceled,
+         *     {@code true} otherwise
+         * @throws Exception if the installation failed
+         */
+        @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+        boolean run() throws Exception;
+    }
+}
@@ -0,0 +1,335 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts build step processes in their own process group and terminates
+ * the whole group including {@code make} jobs and compilers instead of only
+ * the shell. Termination sends {@code SIGTERM} to the group first and
+ * escalates to {@code SIGKILL} if the group didn't terminate within a grace
+ * period.
+ *
+ * If {@code setsid} isn't available processes are started in the process
+ * group of the JVM and only the shell is destroyed.
+ *
+ * @author richter
+ */
+final class ProcessGroupTerminator {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ProcessGroupTerminator.class);
+    /*
+    internal implementation notes:
+    - setsid execs the command without forking if the calling process isn't a
+    process group leader which is always the case for processes started by the
+    JVM, so that the PID of the started process is the ID of the new process
+    group
+    - Java 8 doesn't provide a way to send signals other than destroy and
+    destroyForcibly which only reach the process itself, so that signals are
+    sent with the kill builtin of sh
+    - the group is checked for members in /proc and with kill -0 on systems
+    without /proc; zombies don't count since they don't use resources and are
+    reaped by their parent or init
+    */
+    private final static String SETSID = "setsid";
+    private final static long POLL_INTERVAL_MILLIS = 50;
+    private final static Path PROC = Paths.get("/proc");
+    private final String sh;
+    /**
+     * The resolved {@code setsid} binary or {@code null} if it isn't
+     * available.
+     */
+    private final File setsid;
+
+    /**
+     * Creates a new terminator.
+     *
+     * @param sh the shell used to send signals
+     * @param path the search path used to find {@code setsid}
+     */
+    ProcessGroupTerminator(String sh,
+            String path) {
+        if(sh == null || sh.isEmpty()) {
+            throw new IllegalArgumentException("sh mustn't be null or empty");
+        }
+        this.sh = sh;
+        this.setsid = path != null
+                ? BinaryUtils.resolveBinary(SETSID,
+                        path)
+                : null;
+        if(setsid == null) {
+            LOGGER.warn(String.format("%s not found, canceling will only terminate the shell of build steps, but not processes started by it",
+                    SETSID));
+        }
+    }
+
+    /**
+     * Whether processes are started in their own process group.
+     *
+     * @return {@code true} if {@code setsid} is available, {@code false}
+     *     otherwise
+     */
+    boolean isGrouping() {
+        return setsid != null;
+    }
+
+    /**
+     * Prefixes {@code command} with {@code setsid} if it's available.
+     *
+     * @param command the command to start
+     * @return the command which starts a new process group
+     */
+    List<String> wrap(String... command) {
+        List<String> retValue = new ArrayList<>(command.length+1);
+        if(setsid != null) {
+            retValue.add(setsid.getAbsolutePath());
+        }
+        for(String commandPart : command) {
+            retValue.add(commandPart);
+        }
+        return retValue;
+    }
+
+    /**
+     * Sends {@code signal} to the process group of {@code process}. Falls
+     * back to destroying {@code process} if it hasn't been started in its own
+     * group.
+     *
+     * @param process a process started with a command created by
+     *     {@link #wrap(java.lang.String...) }
+     * @param signal the signal name, e.g. {@code TERM}
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *     for {@code kill}
+     */
+    void signal(Process process,
+            String signal) throws InterruptedException {
+        long processGroupId = getProcessGroupId(process);
+        if(processGroupId < 0) {
+            if("KILL".equals(signal)) {
+                process.destroyForcibly();
+            }else {
+                process.destroy();
+            }
+            return;
+        }
+        try {
+            Process killProcess = new ProcessBuilder(sh,
+                    "-c",
+                    String.format("kill -s %s -- -%d",
+                            signal,
+                            processGroupId))
+                    .redirectErrorStream(true)
+                    .start();
+            killProcess.getInputStream().close();
+            killProcess.waitFor();
+            //a non-zero exit value means that the group is already empty
+        }catch(IOException ex) {
+            LOGGER.warn(String.format("sending SIG%s to process group %d failed, destroying the shell only",
+                    signal,
+                    processGroupId),
+                    ex);
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Terminates the process groups of {@code processes} and waits until
+     * they're empty. Sends {@code SIGTERM} and {@code SIGKILL} if the groups
+     * aren't empty after {@code gracePeriodMillis}.
+     *
+     * @param processes the processes whose groups to terminate
+     * @param gracePeriodMillis the time to wait after {@code SIGTERM}
+     * @return the time in milliseconds until all groups were empty
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    long terminate(Collection<Process> processes,
+            long gracePeriodMillis) throws InterruptedException {
+        if(gracePeriodMillis < 0) {
+            throw new IllegalArgumentException("gracePeriodMillis mustn't be negative");
+        }
+        long start = System.nanoTime();
+        for(Process process : processes) {
+            signal(process,
+                    "TERM");
+        }
+        if(!awaitQuiescence(processes,
+                gracePeriodMillis)) {
+            LOGGER.info(String.format("process groups didn't terminate within %d ms after SIGTERM, sending SIGKILL",
+                    gracePeriodMillis));
+            for(Process process : processes) {
+                signal(process,
+                        "KILL");
+            }
+            awaitQuiescence(processes,
+                    Long.MAX_VALUE);
+        }
+        return (System.nanoTime()-start)/1000000;
+    }
+
+    private boolean awaitQuiescence(Collection<Process> processes,
+            long timeoutMillis) throws InterruptedException {
+        long start = System.nanoTime();
+        while(true) {
+            boolean quiescent = true;
+            for(Process process : processes) {
+                if(isAlive(process)) {
+                    quiescent = false;
+                    break;
+                }
+            }
+            if(quiescent) {
+                return true;
+            }
+            if((System.nanoTime()-start)/1000000 >= timeoutMillis) {
+                return false;
+            }
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * Whether {@code process} or a member of its process group is alive.
+     *
+     * @param process the process to check
+     * @return {@code true} if the process or its group is alive,
+     *     {@code false} otherwise
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *     for {@code kill}
+     */
+    boolean isAlive(Process process) throws InterruptedException {
+        if(process.isAlive()) {
+            return true;
+        }
+        long processGroupId = getProcessGroupId(process);
+        if(processGroupId < 0) {
+            return false;
+        }
+        if(Files.isDirectory(PROC)) {
+            return !getGroupMembers(processGroupId).isEmpty();
+        }
+        try {
+            Process killProcess = new ProcessBuilder(sh,
+                    "-c",
+                    String.format("kill -s 0 -- -%d",
+                            processGroupId))
+                    .redirectErrorStream(true)
+                    .start();
+            killProcess.getInputStream().close();
+            return killProcess.waitFor() == 0;
+        }catch(IOException ex) {
+            LOGGER.debug(String.format("checking process group %d failed",
+                    processGroupId),
+                    ex);
+            return false;
+        }
+    }
+
+    /**
+     * The ID of the process group {@code process} has been started in.
+     *
+     * @param process a process started with a command created by
+     *     {@link #wrap(java.lang.String...) }
+     * @return the process group ID or {@code -1} if the process hasn't been
+     *     started in its own group or the ID can't be determined
+     */
+    long getProcessGroupId(Process process) {
+        if(setsid == null) {
+            return -1;
+        }
+        return ProcessMeasurement.getPid(process);
+    }
+
+    /**
+     * Lists the PIDs of the processes in process group
+     * {@code processGroupId} which aren't zombies.
+     *
+     * @param processGroupId the process group ID
+     * @return the PIDs of the members
+     */
+    static List<Long> getGroupMembers(long processGroupId) {
+        List<Long> retValue = new ArrayList<>();
+        for(String[] stat : readGroupStats(processGroupId)) {
+            retValue.add(Long.parseLong(stat[0]));
+        }
+        return retValue;
+    }
+
+    /**
+     * Sums the user and system time of the members of process group
+     * {@code processGroupId} including the time of their waited-for
+     * children.
+     *
+     * @param processGroupId the process group ID
+     * @return the CPU time in clock ticks or {@code -1} if it can't be
+     *     determined
+     */
+    static long getGroupCpuTicks(long processGroupId) {
+        if(!Files.isDirectory(PROC)) {
+            return -1;
+        }
+        long retValue = 0;
+        for(String[] stat : readGroupStats(processGroupId)) {
+            //utime, stime, cutime and cstime
+            for(int i=12; i<=15; i++) {
+                retValue += Long.parseLong(stat[i]);
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Reads {@code /proc/[pid]/stat} of all members of process group
+     * {@code processGroupId} which aren't zombies.
+     *
+     * @return the PID followed by the fields after the command name
+     */
+    private static List<String[]> readGroupStats(long processGroupId) {
+        List<String[]> retValue = new ArrayList<>();
+        try (DirectoryStream<Path> procEntries = Files.newDirectoryStream(PROC, "[0-9]*")) {
+            for(Path procEntry : procEntries) {
+                String stat;
+                try {
+                    stat = new String(Files.readAllBytes(procEntry.resolve("stat")),
+                            StandardCharsets.UTF_8);
+                }catch(IOException ex) {
+                    //process terminated in the meantime
+                    continue;
+                }
+                //the command name in parentheses might contain spaces
+                String[] fields = (procEntry.getFileName().toString()+" "
+                        +stat.substring(stat.lastIndexOf(')')+2).trim()).split(" ");
+                if(Long.parseLong(fields[3]) == processGroupId
+                        && !"Z".equals(fields[1])) {
+                    retValue.add(fields);
+                }
+            }
+        }catch(IOException | RuntimeException ex) {
+            LOGGER.debug("reading process group members failed",
+                    ex);
+        }
+        return retValue;
+    }
+}
@@ -0,0 +1,344 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the resource usage of a build step process started with
+ * {@code sh -c}.
+ *
+ * CPU times and storage I/O of the process tree are reported by the shell
+ * itself in an epilogue appended to the commands: the {@code times} builtin
+ * prints the user and system time of all waited-for children and
+ * {@code /proc/$$/io} contains the I/O of the shell including all its
+ * waited-for children. The peak resident set size of the process tree is
+ * sampled from {@code /proc} while the process is running since no shell
+ * builtin reports it. All measured processes are sampled by one shared
+ * thread with one walk over {@code /proc} per sample, so that the number of
+ * threads doesn't grow with the number of concurrent build steps. The thread
+ * is started when the first process is measured and terminates when no
+ * process is measured anymore.
+ *
+ * @author richter
+ */
+final class ProcessMeasurement {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ProcessMeasurement.class);
+    /*
+    internal implementation notes:
+    - getrusage(RUSAGE_CHILDREN) would provide exact values, but isn't accessible
+    from Java without native code and GNU time isn't installed everywhere
+    - the resident set size in /proc/[pid]/stat is in pages, a page size of 4 KiB
+    is assumed
+    - peakRss is only updated while holding the lock on SAMPLED, so that it
+    doesn't change after finish unregistered the measurement
+    */
+    private final static long SAMPLE_INTERVAL_MILLIS = 250;
+    private final static long PAGE_SIZE = 4096;
+    private final static Pattern TIME_PATTERN = Pattern.compile("(\\d+)m([\\d.]+)s");
+    private final static Path PROC = Paths.get("/proc");
+    /**
+     * The PIDs of the processes being sampled by measurement.
+     */
+    private final static Map<ProcessMeasurement, Long> SAMPLED = new LinkedHashMap<>();
+    /**
+     * The shared sampler thread. Guarded by {@link #SAMPLED}.
+     */
+    private static Thread samplerThread;
+    private final BuildStep buildStep;
+    private final File metricsFile;
+    private final long start = System.nanoTime();
+    private volatile long peakRss = BuildStepMetrics.UNKNOWN;
+
+    /**
+     * Creates a new measurement.
+     *
+     * @param buildStep the measured build step
+     * @throws IOException if the file the epilogue writes to can't be created
+     */
+    ProcessMeasurement(BuildStep buildStep) throws IOException {
+        this.buildStep = buildStep;
+        this.metricsFile = Files.createTempFile(ProcessMeasurement.class.getSimpleName(),
+                ".metrics").toFile();
+    }
+
+    BuildStep getBuildStep() {
+        return buildStep;
+    }
+
+    /**
+     * Wraps {@code commands} so that the shell writes the CPU times and I/O
+     * counters of the commands to the metrics file and exits with the status
+     * of the commands.
+     *
+     * @param commands the commands which are joined with spaces and passed to
+     *     {@code sh -c}
+     * @return the wrapped commands
+     */
+    String[] wrap(String... commands) {
+        List<String> retValue = new ArrayList<>(commands.length+12);
+        retValue.add("{");
+        for(String command : commands) {
+            retValue.add(command);
+        }
+        String metricsPath = metricsFile.getAbsolutePath();
+        retValue.add(";");
+        retValue.add("};");
+        retValue.add("__status=$?;");
+        retValue.add(String.format("times >'%s';", metricsPath));
+        retValue.add(String.format("cat /proc/$$/io >>'%s' 2>/dev/null;", metricsPath));
+        retValue.add("exit $__status");
+        return retValue.toArray(new String[retValue.size()]);
+    }
+
+    /**
+     * Starts sampling the resident set size of the process tree of
+     * {@code process}.
+     *
+     * @param process the process started with the wrapped commands
+     */
+    void start(Process process) {
+        long pid = getPid(process);
+        if(pid < 0 || !Files.isDirectory(PROC)) {
+            return;
+        }
+        synchronized(SAMPLED) {
+            SAMPLED.put(this,
+                    pid);
+            if(samplerThread == null) {
+                samplerThread = new Thread(ProcessMeasurement::sample,
+                        "rss-sampler");
+                samplerThread.setDaemon(true);
+                samplerThread.start();
+            }
+        }
+    }
+
+    private static void sample() {
+        while(true) {
+            Map<ProcessMeasurement, Long> sampled;
+            synchronized(SAMPLED) {
+                if(SAMPLED.isEmpty()) {
+                    samplerThread = null;
+                    return;
+                }
+                sampled = new HashMap<>(SAMPLED);
+            }
+            Map<Long, List<Long>> children = new HashMap<>();
+            Map<Long, Long> rssMap = new HashMap<>();
+            if(readProc(children,
+                    rssMap)) {
+                synchronized(SAMPLED) {
+                    for(Map.Entry<ProcessMeasurement, Long> sampledEntry : sampled.entrySet()) {
+                        ProcessMeasurement measurement = sampledEntry.getKey();
+                        if(!SAMPLED.containsKey(measurement)) {
+                            //finished in the meantime
+                            continue;
+                        }
+                        long rss = getTreeRss(sampledEntry.getValue(),
+                                children,
+                                rssMap);
+                        if(rss > measurement.peakRss) {
+                            measurement.peakRss = rss;
+                        }
+                    }
+                }
+            }
+            try {
+                Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+            }catch(InterruptedException ex) {
+                LOGGER.trace("resident set size sampling interrupted",
+                        ex);
+            }
+        }
+    }
+
+    /**
+     * Stops sampling and collects the metrics. Has to be invoked after the
+     * process terminated.
+     *
+     * @param moduleName the name of the module the step belongs to
+     * @return the metrics
+     */
+    BuildStepMetrics finish(String moduleName) {
+        long wallTimeMillis = (System.nanoTime()-start)/1000000;
+        synchronized(SAMPLED) {
+            SAMPLED.remove(this);
+        }
+        long userTimeMillis = BuildStepMetrics.UNKNOWN;
+        long systemTimeMillis = BuildStepMetrics.UNKNOWN;
+        long bytesRead = BuildStepMetrics.UNKNOWN;
+        long bytesWritten = BuildStepMetrics.UNKNOWN;
+        try {
+            List<String> lines = Files.readAllLines(metricsFile.toPath(),
+                    StandardCharsets.UTF_8);
+            //the second line of times contains the children's times
+            if(lines.size() >= 2) {
+                long[] childTimes = parseTimes(lines.get(1));
+                if(childTimes != null) {
+                    userTimeMillis = childTimes[0];
+                    systemTimeMillis = childTimes[1];
+                }
+            }
+            for(String line : lines) {
+                if(line.startsWith("read_bytes: ")) {
+                    bytesRead = Long.parseLong(line.substring("read_bytes: ".length()).trim());
+                }else if(line.startsWith("write_bytes: ")) {
+                    bytesWritten = Long.parseLong(line.substring("write_bytes: ".length()).trim());
+                }
+            }
+        }catch(IOException | NumberFormatException ex) {
+            LOGGER.debug(String.format("reading metrics file %s failed",
+                    metricsFile.getAbsolutePath()),
+                    ex);
+        }finally {
+            if(!metricsFile.delete()) {
+                LOGGER.debug(String.format("deleting metrics file %s failed",
+                        metricsFile.getAbsolutePath()));
+            }
+        }
+        return new BuildStepMetrics(moduleName,
+                buildStep,
+                wallTimeMillis,
+                userTimeMillis,
+                systemTimeMillis,
+                peakRss,
+                bytesRead,
+                bytesWritten);
+    }
+
+    /**
+     * Parses a line of the output of the {@code times} builtin.
+     *
+     * @param line the line, e.g. {@code 1m2.345s 0m0.120s}
+     * @return the user and system time in milliseconds or {@code null} if
+     *     {@code line} can't be parsed
+     */
+    static long[] parseTimes(String line) {
+        Matcher matcher = TIME_PATTERN.matcher(line);
+        long[] retValue = new long[2];
+        for(int i=0; i<retValue.length; i++) {
+            if(!matcher.find()) {
+                return null;
+            }
+            retValue[i] = Long.parseLong(matcher.group(1))*60*1000
+                    + Math.round(Double.parseDouble(matcher.group(2))*1000);
+        }
+        return retValue;
+    }
+
+    /**
+     * Reads the parent PID and the resident set size of all processes from
+     * {@code /proc}.
+     *
+     * @return {@code false} if {@code /proc} can't be read
+     */
+    private static boolean readProc(Map<Long, List<Long>> children,
+            Map<Long, Long> rssMap) {
+        try (DirectoryStream<Path> procEntries = Files.newDirectoryStream(PROC, "[0-9]*")) {
+            for(Path procEntry : procEntries) {
+                String stat;
+                try {
+                    stat = new String(Files.readAllBytes(procEntry.resolve("stat")),
+                            StandardCharsets.UTF_8);
+                }catch(IOException ex) {
+                    //process terminated in the meantime
+                    continue;
+                }
+                //the command name in parentheses might contain spaces
+                String[] fields = stat.substring(stat.lastIndexOf(')')+2).split(" ");
+                long pid = Long.parseLong(procEntry.getFileName().toString());
+                long ppid = Long.parseLong(fields[1]);
+                children.computeIfAbsent(ppid, key -> new LinkedList<>()).add(pid);
+                rssMap.put(pid,
+                        Long.parseLong(fields[21])*PAGE_SIZE);
+            }
+        }catch(IOException | RuntimeException ex) {
+            LOGGER.trace("sampling resident set size failed",
+                    ex);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sums the resident set sizes of {@code rootPid} and all its
+     * descendants.
+     */
+    private static long getTreeRss(long rootPid,
+            Map<Long, List<Long>> children,
+            Map<Long, Long> rssMap) {
+        long retValue = 0;
+        Set<Long> visited = new HashSet<>();
+        LinkedList<Long> queue = new LinkedList<>();
+        queue.add(rootPid);
+        while(!queue.isEmpty()) {
+            long pid = queue.poll();
+            if(!visited.add(pid)) {
+                continue;
+            }
+            retValue += rssMap.getOrDefault(pid, 0L);
+            queue.addAll(children.getOrDefault(pid, new LinkedList<>()));
+        }
+        return retValue;
+    }
+
+    /**
+     * Gets the PID of {@code process} with {@code Process.pid()} on Java 9
+     * and newer and from the {@code pid} field of the Unix implementation on
+     * Java 8.
+     *
+     * @return the PID or {@code -1} if it can't be determined
+     */
+    @SuppressWarnings("PMD.AvoidAccessibilityAlteration")
+    static long getPid(Process process) {
+        try {
+            Method pidMethod = Process.class.getMethod("pid");
+            return ((Number)pidMethod.invoke(process)).longValue();
+        }catch(ReflectiveOperationException | RuntimeException ex) {
+            LOGGER.trace("Process.pid() not available",
+                    ex);
+        }
+        try {
+            Field pidField = process.getClass().getDeclaredField("pid");
+            pidField.setAccessible(true);
+            return pidField.getLong(process);
+        }catch(ReflectiveOperationException | RuntimeException ex) {
+            LOGGER.debug("determining PID of process failed",
+                    ex);
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The captured output of a process, i.e. the tails of {@code stdout} and
+ * {@code stderr} and the log file containing both streams completely. The
+ * output is read by a {@link ProcessSupervisor}.
+ *
+ * If there're no captures and no log stream, but a log file, the process
+ * writes into the log file directly (see {@link OutputMode#LOG_FILE}) and the
+ * tail is read from the end of the log file.
+ *
+ * @author richter
+ */
+class ProcessOutput {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ProcessOutput.class);
+    private final OutputCapture stdoutCapture;
+    private final OutputCapture stderrCapture;
+    private final OutputStream logOutputStream;
+    private final File logFile;
+    private final CountDownLatch drained = new CountDownLatch(1);
+    private boolean logClosed;
+
+    /**
+     * Creates a new output.
+     *
+     * @param stdoutCapture the capture of {@code stdout} or {@code null} if
+     *     it's redirected
+     * @param stderrCapture the capture of {@code stderr} or {@code null} if
+     *     it's redirected
+     * @param logOutputStream the log stream shared by the captures which is
+     *     closed after both streams have been read or {@code null}
+     * @param logFile the file {@code logOutputStream} writes to or
+     *     {@code null}
+     */
+    ProcessOutput(OutputCapture stdoutCapture,
+            OutputCapture stderrCapture,
+            OutputStream logOutputStream,
+            File logFile) {
+        this.stdoutCapture = stdoutCapture;
+        this.stderrCapture = stderrCapture;
+        this.logOutputStream = logOutputStream;
+        this.logFile = logFile;
+    }
+
+    /**
+     * Signals that both streams have been read until EOF.
+     */
+    void markDrained() {
+        drained.countDown();
+    }
+
+    /**
+     * Waits until all output has been read and closes the log. Has to be
+     * invoked after the process terminated. Can be invoked more than once.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitOutput() throws InterruptedException {
+        drained.await();
+        if(logOutputStream != null) {
+            synchronized(logOutputStream) {
+                if(logClosed) {
+                    return;
+                }
+                logClosed = true;
+                try {
+                    logOutputStream.close();
+                }catch(IOException ex) {
+                    LOGGER.warn(String.format("closing log file %s failed",
+                            logFile.getAbsolutePath()),
+                            ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * The tail of {@code stdout} or of both streams if the process writes
+     * into the log file directly.
+     *
+     * @return the tail or {@code null} if {@code stdout} has been redirected
+     *     to the JVM
+     */
+    public String getStdoutTail() {
+        if(isWrittenByProcess()) {
+            //both streams are redirected into the log file, so that its tail
+            //contains both
+            return readTail(logFile);
+        }
+        return stdoutCapture != null ? stdoutCapture.getTail() : null;
+    }
+
+    /**
+     * The tail of {@code stderr}.
+     *
+     * @return the tail or {@code null} if {@code stderr} has been redirected
+     */
+    public String getStderrTail() {
+        return stderrCapture != null ? stderrCapture.getTail() : null;
+    }
+
+    /**
+     * The number of bytes the process wrote so far which allows to detect
+     * whether it's still producing output.
+     *
+     * @return the number of bytes or {@code -1} if the output is redirected
+     *     to the JVM and can't be observed
+     */
+    public long getByteCount() {
+        if(isWrittenByProcess()) {
+            return logFile.length();
+        }
+        if(stdoutCapture == null && stderrCapture == null) {
+            return -1;
+        }
+        long retValue = 0;
+        if(stdoutCapture != null) {
+            retValue += stdoutCapture.getCount();
+        }
+        if(stderrCapture != null) {
+            retValue += stderrCapture.getCount();
+        }
+        return retValue;
+    }
+
+    private boolean isWrittenByProcess() {
+        return stdoutCapture == null
+                && stderrCapture == null
+                && logOutputStream == null
+                && logFile != null;
+    }
+
+    private static String readTail(File file) {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            long length = randomAccessFile.length();
+            long start = Math.max(0,
+                    length-JHBuildJavaWrapper.OUTPUT_TAIL_SIZE);
+            byte[] tail = new byte[(int) (length-start)];
+            randomAccessFile.seek(start);
+            randomAccessFile.readFully(tail);
+            String retValue = new String(tail,
+                    StandardCharsets.UTF_8);
+            if(start > 0) {
+                retValue = String.format(OutputCapture.OMISSION_TEMPLATE,
+                        start)
+                        + retValue;
+            }
+            return retValue;
+        }catch(IOException ex) {
+            LOGGER.warn(String.format("reading tail of log file %s failed",
+                    file.getAbsolutePath()),
+                    ex);
+            return null;
+        }
+    }
+
+    /**
+     * The file containing the complete output.
+     *
+     * @return the log file or {@code null} if the output isn't logged
+     */
+    public File getLogFile() {
+        return logFile;
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pumps the output of all supervised processes with a single multiplexer
+ * thread instead of two reader threads per process.
+ *
+ * The multiplexer thread is started when the first process is supervised and
+ * terminates when the output of all supervised processes has been read.
+ * Processes are only referenced while they're running and afterwards in a
+ * registry of the last {@link #FINISHED_RETAINED} finished processes, so that
+ * their output can be looked up after termination (see
+ * {@link #getOutput(Process) }) without keeping every process reachable for
+ * the lifetime of the supervisor.
+ *
+ * @author richter
+ */
+final class ProcessSupervisor {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ProcessSupervisor.class);
+    /*
+    internal implementation notes:
+    - the pipes of processes aren't SelectableChannels, so that the
+    multiplexer polls InputStream.available which doesn't block and sleeps for
+    POLL_INTERVAL_MILLIS if no stream had output
+    - once a process has been reaped its streams have been drained by the JDK
+    and the underlying pipes closed, so that reading them until EOF doesn't
+    block even if a descendant still holds the pipe
+    */
+    public final static int FINISHED_RETAINED = 64;
+    private final static long POLL_INTERVAL_MILLIS = 10;
+    private final static int BUFFER_SIZE = 64*1024;
+    private final Map<Process, Supervised> running = new LinkedHashMap<>();
+    private final Map<Process, ProcessOutput> finished = new LinkedHashMap<Process, ProcessOutput>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Process, ProcessOutput> eldest) {
+            return size() > FINISHED_RETAINED;
+        }
+    };
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private Thread multiplexerThread;
+
+    /**
+     * Starts pumping the output of {@code process} into the captures. Streams
+     * whose capture is {@code null} have to be redirected when the process is
+     * started.
+     *
+     * @param process the process
+     * @param stdoutCapture the capture of {@code stdout} or {@code null}
+     * @param stderrCapture the capture of {@code stderr} or {@code null}
+     * @param logOutputStream the log stream shared by the captures which is
+     *     closed after both streams have been read or {@code null}
+     * @param logFile the file {@code logOutputStream} writes to or
+     *     {@code null}
+     * @return the output of the process
+     */
+    public synchronized ProcessOutput supervise(Process process,
+            OutputCapture stdoutCapture,
+            OutputCapture stderrCapture,
+            OutputStream logOutputStream,
+            File logFile) {
+        ProcessOutput output = new ProcessOutput(stdoutCapture,
+                stderrCapture,
+                logOutputStream,
+                logFile);
+        running.put(process,
+                new Supervised(process,
+                        output,
+                        new Pump(process.getInputStream(),
+                                stdoutCapture),
+                        new Pump(process.getErrorStream(),
+                                stderrCapture)));
+        if(multiplexerThread == null) {
+            multiplexerThread = new Thread(this::multiplex,
+                    "process-output-multiplexer");
+            multiplexerThread.setDaemon(true);
+            multiplexerThread.start();
+        }
+        return output;
+    }
+
+    /**
+     * Looks up the output of a running or recently finished process.
+     *
+     * @param process the process
+     * @return the output or {@code null} if {@code process} isn't supervised
+     *     or finished too long ago
+     */
+    public synchronized ProcessOutput getOutput(Process process) {
+        Supervised supervised = running.get(process);
+        if(supervised != null) {
+            return supervised.output;
+        }
+        return finished.get(process);
+    }
+
+    /**
+     * The number of processes whose output is still being read.
+     *
+     * @return the number of running processes
+     */
+    public synchronized int getRunningCount() {
+        return running.size();
+    }
+
+    public synchronized int getFinishedCount() {
+        return finished.size();
+    }
+
+    private void multiplex() {
+        while(true) {
+            List<Supervised> supervisedProcesses;
+            synchronized(this) {
+                if(running.isEmpty()) {
+                    multiplexerThread = null;
+                    return;
+                }
+                supervisedProcesses = new ArrayList<>(running.values());
+            }
+            boolean transferred = false;
+            for(Supervised supervised : supervisedProcesses) {
+                //checked before reading so that all output written before the
+                //termination is read before the streams are closed
+                boolean exited = !supervised.process.isAlive();
+                transferred |= supervised.stdoutPump.pump(exited);
+                transferred |= supervised.stderrPump.pump(exited);
+                if(supervised.stdoutPump.isDone()
+                        && supervised.stderrPump.isDone()) {
+                    synchronized(this) {
+                        running.remove(supervised.process);
+                        finished.put(supervised.process,
+                                supervised.output);
+                    }
+                    supervised.output.markDrained();
+                }
+            }
+            if(!transferred) {
+                try {
+                    Thread.sleep(POLL_INTERVAL_MILLIS);
+                }catch(InterruptedException ex) {
+                    LOGGER.trace("process output multiplexer interrupted",
+                            ex);
+                }
+            }
+        }
+    }
+
+    private final class Pump {
+        private final InputStream inputStream;
+        private final OutputCapture capture;
+        private boolean done;
+
+        Pump(InputStream inputStream,
+                OutputCapture capture) {
+            this.inputStream = inputStream;
+            this.capture = capture;
+            //the stream of a redirected output is always empty
+            this.done = capture == null;
+        }
+
+        boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Transfers the available output.
+         *
+         * @param exited whether the process terminated in which case the
+         *     stream is read until EOF
+         * @return {@code true} if output has been transferred
+         */
+        boolean pump(boolean exited) {
+            if(done) {
+                return false;
+            }
+            try {
+                if(exited) {
+                    int read;
+                    while((read = inputStream.read(buffer)) != -1) {
+                        capture.write(buffer, 0, read);
+                    }
+                    capture.flush();
+                    done = true;
+                    return false;
+                }
+                int available = inputStream.available();
+                if(available <= 0) {
+                    return false;
+                }
+                int read = inputStream.read(buffer,
+                        0,
+                        Math.min(available, buffer.length));
+                if(read == -1) {
+                    done = true;
+                    return false;
+                }
+                capture.write(buffer, 0, read);
+                return true;
+            }catch(IOException ex) {
+                LOGGER.warn("reading output of process failed",
+                        ex);
+                done = true;
+                return false;
+            }
+        }
+    }
+
+    private static final class Supervised {
+        private final Process process;
+        private final ProcessOutput output;
+        private final Pump stdoutPump;
+        private final Pump stderrPump;
+
+        Supervised(Process process,
+                ProcessOutput output,
+                Pump stdoutPump,
+                Pump stderrPump) {
+            this.process = process;
+            this.output = output;
+            this.stdoutPump = stdoutPump;
+            this.stderrPump = stderrPump;
+        }
+    }
+}
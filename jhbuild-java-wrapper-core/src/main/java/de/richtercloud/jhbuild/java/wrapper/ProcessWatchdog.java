@@ -0,0 +1,159 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Waits for a build step process and terminates its process group if it
+ * exceeds a deadline or stalls. A process stalls if it neither writes output
+ * nor uses CPU time for longer than the inactivity timeout, e.g. a
+ * {@code git clone} waiting for a dead server or a command waiting for
+ * interactive input.
+ *
+ * @author richter
+ */
+final class ProcessWatchdog {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ProcessWatchdog.class);
+    /*
+    internal implementation notes:
+    - CPU time is read from /proc for the process group, so that a long
+    running link step which doesn't produce output isn't considered stalled
+    - if neither the output nor the CPU time can be observed (output redirected
+    to the JVM and no /proc or setsid) the inactivity timeout is ignored
+    because every process would be considered stalled
+    - while publishing build output blocks on a subscriber with
+    BackpressurePolicy.BLOCK the output of all processes isn't read, so their
+    pipes fill up and they stop using CPU time; this counts as activity since
+    the subscriber rather than the process stalls
+    */
+    private final static long CHECK_INTERVAL_MILLIS = 1000;
+    private final static long MIN_CHECK_INTERVAL_MILLIS = 10;
+    private final ProcessGroupTerminator processGroupTerminator;
+    private final BuildOutputPublisher buildOutputPublisher;
+
+    ProcessWatchdog(ProcessGroupTerminator processGroupTerminator,
+            BuildOutputPublisher buildOutputPublisher) {
+        if(processGroupTerminator == null) {
+            throw new IllegalArgumentException("processGroupTerminator mustn't be null");
+        }
+        if(buildOutputPublisher == null) {
+            throw new IllegalArgumentException("buildOutputPublisher mustn't be null");
+        }
+        this.processGroupTerminator = processGroupTerminator;
+        this.buildOutputPublisher = buildOutputPublisher;
+    }
+
+    /**
+     * Waits until {@code process} terminated or has been terminated because
+     * it exceeded {@code deadlineMillis} or stalled for longer than
+     * {@code inactivityTimeoutMillis}.
+     *
+     * @param process the process to wait for
+     * @param output the output of the process used to detect activity or
+     *     {@code null} if it isn't available
+     * @param deadlineMillis the maximum run time or {@code 0} for no deadline
+     * @param inactivityTimeoutMillis the maximum time without output and CPU
+     *     usage or {@code 0} for no limit
+     * @param gracePeriodMillis the time the process group gets to terminate
+     *     after {@code SIGTERM}
+     * @return why the process has been terminated or {@code null} if it
+     *     terminated by itself
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    BuildTimeoutException.Reason await(Process process,
+            ProcessOutput output,
+            long deadlineMillis,
+            long inactivityTimeoutMillis,
+            long gracePeriodMillis) throws InterruptedException {
+        if(deadlineMillis < 0) {
+            throw new IllegalArgumentException("deadlineMillis mustn't be negative");
+        }
+        if(inactivityTimeoutMillis < 0) {
+            throw new IllegalArgumentException("inactivityTimeoutMillis mustn't be negative");
+        }
+        long processGroupId = processGroupTerminator.getProcessGroupId(process);
+        long byteCount = output != null ? output.getByteCount() : -1;
+        long cpuTicks = processGroupId >= 0
+                ? ProcessGroupTerminator.getGroupCpuTicks(processGroupId)
+                : -1;
+        long effectiveInactivityTimeoutMillis = inactivityTimeoutMillis;
+        if(inactivityTimeoutMillis > 0
+                && byteCount < 0
+                && cpuTicks < 0) {
+            LOGGER.debug("neither output nor CPU time of process can be observed, ignoring inactivity timeout");
+            effectiveInactivityTimeoutMillis = 0;
+        }
+        if(deadlineMillis == 0 && effectiveInactivityTimeoutMillis == 0) {
+            process.waitFor();
+            return null;
+        }
+        long checkIntervalMillis = CHECK_INTERVAL_MILLIS;
+        for(long timeoutMillis : new long[] {deadlineMillis, effectiveInactivityTimeoutMillis}) {
+            if(timeoutMillis > 0) {
+                checkIntervalMillis = Math.min(checkIntervalMillis,
+                        Math.max(MIN_CHECK_INTERVAL_MILLIS,
+                                timeoutMillis/10));
+            }
+        }
+        long start = System.nanoTime();
+        long lastActivity = start;
+        long blockingCount = buildOutputPublisher.getBlockingCount();
+        while(!process.waitFor(checkIntervalMillis,
+                TimeUnit.MILLISECONDS)) {
+            long now = System.nanoTime();
+            if(deadlineMillis > 0
+                    && (now-start)/1000000 >= deadlineMillis) {
+                return terminate(process,
+                        BuildTimeoutException.Reason.DEADLINE,
+                        gracePeriodMillis);
+            }
+            if(effectiveInactivityTimeoutMillis > 0) {
+                long newByteCount = output != null ? output.getByteCount() : -1;
+                long newCpuTicks = processGroupId >= 0
+                        ? ProcessGroupTerminator.getGroupCpuTicks(processGroupId)
+                        : -1;
+                long newBlockingCount = buildOutputPublisher.getBlockingCount();
+                if(newByteCount != byteCount
+                        || newCpuTicks != cpuTicks
+                        || newBlockingCount != blockingCount
+                        || buildOutputPublisher.isBlocked()) {
+                    byteCount = newByteCount;
+                    cpuTicks = newCpuTicks;
+                    blockingCount = newBlockingCount;
+                    lastActivity = now;
+                }else if((now-lastActivity)/1000000 >= effectiveInactivityTimeoutMillis) {
+                    return terminate(process,
+                            BuildTimeoutException.Reason.INACTIVITY,
+                            gracePeriodMillis);
+                }
+            }
+        }
+        return null;
+    }
+
+    private BuildTimeoutException.Reason terminate(Process process,
+            BuildTimeoutException.Reason reason,
+            long gracePeriodMillis) throws InterruptedException {
+        LOGGER.warn(String.format("terminating process group of stalled or overdue process (reason %s)",
+                reason));
+        processGroupTerminator.terminate(Arrays.asList(process),
+                gracePeriodMillis);
+        return reason;
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Estimates the progress of a build step from its output while it's written.
+ * Every line which indicates a unit of work, i.e. a compiler or linker
+ * invokation printed by {@code make}, an automake silent rule like
+ * {@code CC foo.lo} or a {@code checking ...} line of {@code configure}, is
+ * counted and compared with the number of units the step printed when it
+ * succeeded last time. Percentages printed by CMake generated Makefiles
+ * ({@code [ 42%]}) are used directly.
+ *
+ * Only the beginning of each line is kept, so that the memory use doesn't
+ * depend on the output size.
+ *
+ * @author richter
+ */
+class ProgressParser extends OutputStream {
+    /*
+    internal implementation notes:
+    - libtool prints compile and link commands a second time in verbose builds
+    and compiles some sources twice, so that units are counted more than once
+    which doesn't matter since the expected units are learned from the same
+    output
+    - the percentage is limited to 99 % unless CMake reports 100 % since the
+    output of the last run might have been shorter
+    */
+    private final static int LINE_PREFIX_SIZE = 256;
+    private final static long NOTIFICATION_INTERVAL_MILLIS = 500;
+    private final static int MAX_ESTIMATED_PERCENT = 99;
+    private final static Pattern CMAKE_PERCENT_PATTERN = Pattern.compile("^\\[\\s*(\\d{1,3})%\\]");
+    private final static Pattern AUTOMAKE_PATTERN = Pattern.compile("^\\s*(CC|CXX|CCLD|CXXLD|CPPAS|AS|AR|LD|F77|FC|OBJC|GEN|YACC|LEX)\\s+\\S");
+    private final static Pattern COMPILER_PATTERN = Pattern.compile("^(libtool: (compile|link): +)?(\\S*/)?(\\S+-)?(cc|gcc|c\\+\\+|g\\+\\+|clang|clang\\+\\+)(-[\\d.]+)?\\s");
+    private final static String CONFIGURE_CHECK_PREFIX = "checking ";
+    private final String moduleName;
+    private final BuildStep buildStep;
+    private final long expectedUnits;
+    private final BuildProgressListener listener;
+    private final byte[] linePrefix = new byte[LINE_PREFIX_SIZE];
+    private int linePrefixLength;
+    private long completedUnits;
+    private int reportedPercent = (int) BuildProgress.UNKNOWN;
+    private final long start = System.nanoTime();
+    private long lastNotification = start;
+
+    /**
+     * Creates a new parser.
+     *
+     * @param moduleName the name of the prerequisite or module
+     * @param buildStep the build step whose output is parsed
+     * @param expectedUnits the number of units the step printed when it
+     *     succeeded last time or {@link BuildProgress#UNKNOWN}
+     * @param listener the listener notified about the progress
+     */
+    ProgressParser(String moduleName,
+            BuildStep buildStep,
+            long expectedUnits,
+            BuildProgressListener listener) {
+        if(listener == null) {
+            throw new IllegalArgumentException("listener mustn't be null");
+        }
+        this.moduleName = moduleName;
+        this.buildStep = buildStep;
+        this.expectedUnits = expectedUnits;
+        this.listener = listener;
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[] {(byte) b},
+                0,
+                1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b,
+            int off,
+            int len) {
+        for(int i=off; i<off+len; i++) {
+            if(b[i] == '\n' || b[i] == '\r') {
+                if(linePrefixLength > 0) {
+                    parseLine(new String(linePrefix,
+                            0,
+                            linePrefixLength,
+                            StandardCharsets.UTF_8));
+                    linePrefixLength = 0;
+                }
+            }else if(linePrefixLength < linePrefix.length) {
+                linePrefix[linePrefixLength++] = b[i];
+            }
+        }
+    }
+
+    private void parseLine(String line) {
+        Matcher cmakeMatcher = CMAKE_PERCENT_PATTERN.matcher(line);
+        if(cmakeMatcher.find()) {
+            completedUnits++;
+            reportedPercent = Math.min(100,
+                    Integer.parseInt(cmakeMatcher.group(1)));
+        }else if(AUTOMAKE_PATTERN.matcher(line).find()
+                || COMPILER_PATTERN.matcher(line).find()
+                || line.startsWith(CONFIGURE_CHECK_PREFIX)) {
+            completedUnits++;
+        }else {
+            return;
+        }
+        long now = System.nanoTime();
+        if((now-lastNotification)/1000000 >= NOTIFICATION_INTERVAL_MILLIS) {
+            lastNotification = now;
+            listener.onProgress(getProgress());
+        }
+    }
+
+    public synchronized long getCompletedUnits() {
+        return completedUnits;
+    }
+
+    /**
+     * The current estimation.
+     *
+     * @return the progress
+     */
+    public synchronized BuildProgress getProgress() {
+        long elapsedMillis = (System.nanoTime()-start)/1000000;
+        int percentDone = reportedPercent;
+        if(percentDone == BuildProgress.UNKNOWN
+                && expectedUnits > 0) {
+            percentDone = (int) Math.min(MAX_ESTIMATED_PERCENT,
+                    completedUnits*100/expectedUnits);
+        }
+        long etaMillis = BuildProgress.UNKNOWN;
+        if(percentDone > 0) {
+            etaMillis = elapsedMillis*(100-percentDone)/percentDone;
+        }
+        return new BuildProgress(moduleName,
+                buildStep,
+                completedUnits,
+                expectedUnits,
+                percentDone,
+                elapsedMillis,
+                etaMillis);
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the number of units of work (see {@link ProgressParser}) every
+ * build step of every prerequisite and module printed when it succeeded last
+ * time, so that the progress of the next build can be estimated.
+ *
+ * @author richter
+ */
+final class ProgressStatistics {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ProgressStatistics.class);
+    public final static File STATISTICS_FILE_DEFAULT = new File(JHBuildJavaWrapper.CONFIG_DIR,
+            "progress.properties");
+    private final File statisticsFile;
+    private final Properties units = new Properties();
+
+    /**
+     * Creates new statistics and loads the units stored in
+     * {@code statisticsFile}. Failures to load are only logged.
+     *
+     * @param statisticsFile the file to load the units from and store them to
+     */
+    ProgressStatistics(File statisticsFile) {
+        if(statisticsFile == null) {
+            throw new IllegalArgumentException("statisticsFile mustn't be null");
+        }
+        this.statisticsFile = statisticsFile;
+        if(statisticsFile.exists()) {
+            try (InputStream inputStream = Files.newInputStream(statisticsFile.toPath())) {
+                units.load(inputStream);
+            }catch(IOException ex) {
+                LOGGER.warn(String.format("reading progress statistics file %s failed, progress can't be estimated",
+                        statisticsFile.getAbsolutePath()),
+                        ex);
+            }
+        }
+    }
+
+    private static String getKey(String moduleName,
+            BuildStep buildStep) {
+        return String.format("%s.%s",
+                moduleName,
+                buildStep.name());
+    }
+
+    /**
+     * The number of units {@code buildStep} of {@code moduleName} printed
+     * when it succeeded last time.
+     *
+     * @param moduleName the name of the prerequisite or module
+     * @param buildStep the build step
+     * @return the number of units or {@link BuildProgress#UNKNOWN}
+     */
+    public synchronized long getExpectedUnits(String moduleName,
+            BuildStep buildStep) {
+        String value = units.getProperty(getKey(moduleName,
+                buildStep));
+        if(value == null) {
+            return BuildProgress.UNKNOWN;
+        }
+        try {
+            return Long.parseLong(value);
+        }catch(NumberFormatException ex) {
+            LOGGER.debug(String.format("invalid progress statistics value '%s'",
+                    value),
+                    ex);
+            return BuildProgress.UNKNOWN;
+        }
+    }
+
+    /**
+     * Records the number of units a successful execution of
+     * {@code buildStep} printed.
+     *
+     * @param moduleName the name of the prerequisite or module
+     * @param buildStep the build step
+     * @param completedUnits the number of units
+     */
+    public synchronized void record(String moduleName,
+            BuildStep buildStep,
+            long completedUnits) {
+        if(completedUnits <= 0) {
+            return;
+        }
+        units.setProperty(getKey(moduleName,
+                        buildStep),
+                String.valueOf(completedUnits));
+    }
+
+    /**
+     * Stores the recorded units in the statistics file.
+     *
+     * @throws IOException if an I/O exception occurs during storing
+     */
+    public synchronized void store() throws IOException {
+        Files.createDirectories(statisticsFile.getAbsoluteFile().getParentFile().toPath());
+        File tmpFile = new File(statisticsFile.getAbsolutePath()+".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(tmpFile.toPath())) {
+            units.store(outputStream,
+                    null //comments
+            );
+        }
+        Files.move(tmpFile.toPath(),
+                statisticsFile.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates build directories as clones of pristine source trees so that builds
+ * never modify the extracted sources and can be repeated in a clean tree
+ * without extracting the archive again.
+ *
+ * @author richter
+ */
+public class SourceTreeCloner {
+    private final static Logger LOGGER = LoggerFactory.getLogger(SourceTreeCloner.class);
+    private final static String CP = "cp";
+    private final CloneMode cloneMode;
+    private final int parallelism;
+    /**
+     * Whether {@code cp --reflink=always} worked before per file store of the
+     * target directory. A file store is missing if it hasn't been tried yet.
+     * Build directories can be on different file systems (see
+     * {@link BuildRootSelector}) and reflinks never work across file systems.
+     * Accessed by concurrent clones and thus guarded by its own lock.
+     */
+    private final Map<FileStore, Boolean> reflinkSupported = new HashMap<>();
+
+    /**
+     * Creates a new cloner.
+     *
+     * @param cloneMode the preferred clone mode, {@link CloneMode#COPY} is
+     *     used if it fails
+     * @param parallelism the number of threads used for copying
+     */
+    public SourceTreeCloner(CloneMode cloneMode,
+            int parallelism) {
+        if(cloneMode == null) {
+            throw new IllegalArgumentException("cloneMode mustn't be null");
+        }
+        if(parallelism < 1) {
+            throw new IllegalArgumentException(String.format("parallelism value of less than 1 doesn't make sense (was %d)",
+                    parallelism));
+        }
+        this.cloneMode = cloneMode;
+        this.parallelism = parallelism;
+    }
+
+    public CloneMode getCloneMode() {
+        return cloneMode;
+    }
+
+    /**
+     * Clones {@code pristineDir} into {@code targetDir} which is deleted
+     * first if it exists.
+     *
+     * @param pristineDir the pristine source tree
+     * @param targetDir the clone to create
+     * @param copyUpPaths paths relative to {@code pristineDir} which are
+     *     going to be modified and thus need to be copied in
+     *     {@link CloneMode#HARD_LINK_FARM}
+     * @return the clone mode which has actually been used
+     * @throws IOException if an I/O exception occurs
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *     for {@code cp} or copy threads
+     */
+    public CloneMode clone(File pristineDir,
+            File targetDir,
+            Set<String> copyUpPaths) throws IOException,
+            InterruptedException {
+        if(targetDir.exists()) {
+            LOGGER.debug(String.format("deleting previous build directory '%s'",
+                    targetDir.getAbsolutePath()));
+            FileUtils.forceDelete(targetDir);
+        }
+        Files.createDirectories(targetDir.getAbsoluteFile().getParentFile().toPath());
+        long start = System.currentTimeMillis();
+        CloneMode usedCloneMode = CloneMode.COPY;
+        FileStore targetFileStore = Files.getFileStore(targetDir.getAbsoluteFile().getParentFile().toPath());
+        Boolean targetReflinkSupported;
+        synchronized(reflinkSupported) {
+            targetReflinkSupported = reflinkSupported.get(targetFileStore);
+        }
+        if(cloneMode == CloneMode.REFLINK
+                && !Boolean.FALSE.equals(targetReflinkSupported)) {
+            boolean reflinked = reflink(pristineDir,
+                    targetDir);
+            synchronized(reflinkSupported) {
+                reflinkSupported.put(targetFileStore,
+                        reflinked);
+            }
+            if(reflinked) {
+                usedCloneMode = CloneMode.REFLINK;
+            }else if(targetDir.exists()) {
+                FileUtils.forceDelete(targetDir);
+            }
+        }else if(cloneMode == CloneMode.HARD_LINK_FARM) {
+            try {
+                copyTree(pristineDir,
+                        targetDir,
+                        copyUpPaths != null ? copyUpPaths : Collections.<String>emptySet(),
+                        true //link
+                );
+                usedCloneMode = CloneMode.HARD_LINK_FARM;
+            }catch(UnsupportedOperationException | IOException ex) {
+                LOGGER.info(String.format("creating hard link farm of '%s' failed, falling back to copying",
+                        pristineDir.getAbsolutePath()),
+                        ex);
+                if(targetDir.exists()) {
+                    FileUtils.forceDelete(targetDir);
+                }
+            }
+        }
+        if(usedCloneMode == CloneMode.COPY) {
+            copyTree(pristineDir,
+                    targetDir,
+                    Collections.<String>emptySet(),
+                    false //link
+            );
+        }
+        LOGGER.debug(String.format("cloned '%s' into '%s' in mode %s in %d ms",
+                pristineDir.getAbsolutePath(),
+                targetDir.getAbsolutePath(),
+                usedCloneMode,
+                System.currentTimeMillis()-start));
+        return usedCloneMode;
+    }
+
+    private boolean reflink(File pristineDir,
+            File targetDir) throws IOException,
+            InterruptedException {
+        Process process;
+        try {
+            process = new ProcessBuilder(CP,
+                    "--reflink=always",
+                    "-a",
+                    pristineDir.getAbsolutePath(),
+                    targetDir.getAbsolutePath())
+                    .redirectErrorStream(true)
+                    .start();
+        }catch(IOException ex) {
+            LOGGER.debug(String.format("%s not available for reflink clones",
+                    CP),
+                    ex);
+            return false;
+        }
+        String output = IOUtils.toString(process.getInputStream(),
+                StandardCharsets.UTF_8);
+        int exitValue = process.waitFor();
+        if(exitValue != 0) {
+            LOGGER.info(String.format("reflink clone of '%s' not supported "
+                    + "(%s returned %d with output '%s'), falling back to "
+                    + "copying",
+                    pristineDir.getAbsolutePath(),
+                    CP,
+                    exitValue,
+                    output.trim()));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Recreates the directory structure and symbolic links of
+     * {@code pristineDir} in {@code targetDir} and hard links or copies files
+     * on multiple threads.
+     */
+    private void copyTree(File pristineDir,
+            File targetDir,
+            Set<String> copyUpPaths,
+            boolean link) throws IOException,
+            InterruptedException {
+        Path pristinePath = pristineDir.toPath();
+        Path targetPath = targetDir.toPath();
+        List<Path> files = new LinkedList<>();
+        List<Path> directories = new LinkedList<>();
+        Files.walkFileTree(pristinePath,
+                new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir,
+                    BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(targetPath.resolve(pristinePath.relativize(dir)));
+                directories.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file,
+                    BasicFileAttributes attrs) throws IOException {
+                Path target = targetPath.resolve(pristinePath.relativize(file));
+                if(attrs.isSymbolicLink()) {
+                    Files.createSymbolicLink(target,
+                            Files.readSymbolicLink(file));
+                }else {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<Void>> futures = new LinkedList<>();
+            for(Path file : files) {
+                futures.add(executorService.submit(() -> {
+                    Path relativePath = pristinePath.relativize(file);
+                    Path target = targetPath.resolve(relativePath);
+                    if(link && !copyUpPaths.contains(relativePath.toString())) {
+                        Files.createLink(target,
+                                file);
+                    }else {
+                        Files.copy(file,
+                                target,
+                                StandardCopyOption.COPY_ATTRIBUTES,
+                                LinkOption.NOFOLLOW_LINKS);
+                    }
+                    return null;
+                }));
+            }
+            for(Future<Void> future : futures) {
+                future.get();
+            }
+        }catch(ExecutionException ex) {
+            if(ex.getCause() instanceof IOException) {
+                throw (IOException)ex.getCause();
+            }
+            if(ex.getCause() instanceof UnsupportedOperationException) {
+                throw (UnsupportedOperationException)ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }finally {
+            executorService.shutdownNow();
+        }
+        //directory modification times changed while creating their content
+        for(Path directory : directories) {
+            Files.setLastModifiedTime(targetPath.resolve(pristinePath.relativize(directory)),
+                    Files.getLastModifiedTime(directory));
+        }
+    }
+}
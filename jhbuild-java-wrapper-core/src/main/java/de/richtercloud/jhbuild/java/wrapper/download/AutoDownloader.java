@@ -25,18 +25,13 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.attribute.FileTime;
-import java.nio.file.attribute.PosixFilePermissions;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.stream.Collectors;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
-import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.commons.compress.utils.Charsets;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +42,25 @@ import org.slf4j.LoggerFactory;
  */
 public class AutoDownloader implements Downloader {
     private final static Logger LOGGER = LoggerFactory.getLogger(AutoDownloader.class);
+    private final Extractor extractor;
+
+    /**
+     * Creates a downloader which extracts with an
+     * {@link AutoSelectingExtractor} storing its benchmark results in
+     * {@link AutoSelectingExtractor#CACHE_FILE_DEFAULT}.
+     */
+    public AutoDownloader() {
+        this(new AutoSelectingExtractor(new JavaExtractor(),
+                new NativeExtractor(),
+                AutoSelectingExtractor.CACHE_FILE_DEFAULT));
+    }
+
+    public AutoDownloader(Extractor extractor) {
+        if(extractor == null) {
+            throw new IllegalArgumentException("extractor mustn't be null");
+        }
+        this.extractor = extractor;
+    }
 
     /**
      * Downloads a file a file located at {@code donwloadURL}, compares its MD5
@@ -133,7 +147,6 @@ public class AutoDownloader implements Downloader {
         return true;
     }
 
-    @SuppressWarnings({"NestedAssignment", "PMD.AssignmentInOperand"})
     protected boolean download(DownloadCombi downloadCombi,
             boolean skipMD5SumCheck,
             DownloadFailureCallback downloadFailureCallback,
@@ -250,121 +263,182 @@ public class AutoDownloader implements Downloader {
                     + "to a directory",
                     extractionDir.getAbsolutePath()));
         }
-        if(!extractionDir.exists()
-                || extractionDir.exists() && extractionDir.list().length == 0) {
-            InputStream fileInputStream = Files.newInputStream(Paths.get(downloadCombi.getDownloadTarget()));
-            if(null == downloadCombi.getExtractionMode()) {
-                //if extractionMode was EXTRACTION_MODE_NONE the method
-                //would already have returned
-                throw new IllegalArgumentException(String.format(
-                        "extractionMode mustn't be null",
-                        downloadCombi.getExtractionMode().getLabel()));
-            }else {
-                if(downloadCombi.getExtractionMode() == ExtractionMode.EXTRACTION_MODE_TAR_GZ
-                        || downloadCombi.getExtractionMode() == ExtractionMode.EXTRACTION_MODE_TAR_XZ) {
-                    InputStream compressedInputStream;
-                    if(downloadCombi.getExtractionMode() == ExtractionMode.EXTRACTION_MODE_TAR_GZ) {
-                        compressedInputStream = new GZIPInputStream(fileInputStream);
-                    }else {
-                        compressedInputStream = new XZCompressorInputStream(fileInputStream);
-                    }
-                    try (TarArchiveInputStream tarArchiveInputStream = new TarArchiveInputStream(compressedInputStream)) {
-                        String extractionDirTar = extractionDir.getParent();
-                        LOGGER.debug(String.format("extracting .tar.gz archive into '%s'",
-                                extractionDirTar));
-                        TarArchiveEntry entry;
-                        while ((entry = (TarArchiveEntry)tarArchiveInputStream.getNextEntry()) != null) {
-                            final File outputFile = new File(extractionDirTar, entry.getName());
-                            if (entry.isDirectory()) {
-                                LOGGER.trace(String.format("Attempting to write output directory %s.",
-                                        outputFile.getAbsolutePath()));
-                                if (!outputFile.exists()) {
-                                    LOGGER.trace(String.format("Attempting to create output directory %s.",
-                                            outputFile.getAbsolutePath()));
-                                    Files.createDirectories(outputFile.toPath());
-                                }
-                            } else {
-                                LOGGER.trace(String.format("Creating output file %s.",
-                                        outputFile.getAbsolutePath()));
-                                final File outputFileParent = outputFile.getParentFile();
-                                if (!outputFileParent.exists()) {
-                                    Files.createDirectories(outputFileParent.toPath());
-                                }
-                                try (OutputStream outputFileStream = Files.newOutputStream(outputFile.toPath())) {
-                                    IOUtils.copy(tarArchiveInputStream, outputFileStream);
-                                }
-                            }
-                            //not the most efficient way, but certainly a
-                            //comprehensive one
-                            int modeOctal = Integer.parseInt(Integer.toOctalString(entry.getMode()));
-                            Path outputFilePath = Paths.get(outputFile.getAbsolutePath());
-                            StringBuilder permStringBuilder = new StringBuilder(9);
-                            int modeUser = modeOctal / 100;
-                            int modeGroup = (modeOctal % 100) / 10;
-                            int modeOthers = modeOctal % 10;
-                            //from http://stackoverflow.com/questions/34234598/how-to-convert-an-input-of-3-octal-numbers-into-chmod-permissions-into-binary
-                            permStringBuilder.append((modeUser & 4) == 0 ? '-' : 'r')
-                                    .append((modeUser & 2) == 0 ? '-' : 'w')
-                                    .append((modeUser & 1) == 0 ? '-' : 'x')
-                                    .append((modeGroup & 4) == 0 ? '-' : 'r')
-                                    .append((modeGroup & 2) == 0 ? '-' : 'w')
-                                    .append((modeGroup & 1) == 0 ? '-' : 'x')
-                                    .append((modeOthers & 4) == 0 ? '-' : 'r')
-                                    .append((modeOthers & 2) == 0 ? '-' : 'w')
-                                    .append((modeOthers & 1) == 0 ? '-' : 'x');
-                            String permString = permStringBuilder.toString();
-                            Files.setPosixFilePermissions(outputFilePath, PosixFilePermissions.fromString(permString));
-                            Files.setLastModifiedTime(outputFile.toPath(),
-                                    FileTime.fromMillis(entry.getLastModifiedDate().getTime()));
-                            LOGGER.trace(String.format("last modified time of file or directory '%s' is %s",
-                                    outputFile.getAbsolutePath(),
-                                    Files.getLastModifiedTime(outputFilePath)));
-                        }
-                    }
-                }else if(downloadCombi.getExtractionMode() == ExtractionMode.EXTRACTION_MODE_ZIP) {
-                    Files.createDirectories(extractionDir.toPath());
-                    LOGGER.debug(String.format("extracting .zip archive into '%s'",
-                            extractionDir));
-                    try (ZipInputStream zipIn = new ZipInputStream(Files.newInputStream(Paths.get(downloadCombi.getDownloadTarget())))) {
-                        ZipEntry entry = zipIn.getNextEntry();
-                        // iterates over entries in the zip file
-                        while (entry != null) {
-                            String filePath = extractionDir.getParent() + File.separator + entry.getName();
-                            File fileParent = new File(filePath).getParentFile();
-                            if(!fileParent.exists()) {
-                                Files.createDirectories(fileParent.toPath());
-                            }
-                            if (!entry.isDirectory()) {
-                                // if the entry is a file, extracts it
-                                DownloadUtils.extractFile(zipIn, filePath);
-                            } else {
-                                // if the entry is a directory, make the directory
-                                File dir = new File(filePath);
-                                Files.createDirectories(dir.toPath());
-                            }
-                            Files.setLastModifiedTime(Paths.get(filePath),
-                                    entry.getLastModifiedTime());
-                            LOGGER.trace(String.format("last modified time of file or directory '%s' is %s",
-                                    filePath,
-                                    Files.getLastModifiedTime(Paths.get(filePath))));
-                            zipIn.closeEntry();
-                            entry = zipIn.getNextEntry();
-                        }
+        File extractionParentDir = extractionDir.getAbsoluteFile().getParentFile();
+        File manifestFile = ExtractionManifest.getManifestFile(extractionDir);
+        String manifestSource = getManifestSource(downloadCombi);
+        ExtractionManifest manifest = null;
+        if(extractionDir.exists() && manifestFile.exists()) {
+            try {
+                manifest = ExtractionManifest.read(manifestFile);
+            }catch(IOException ex) {
+                //retrying can't fix a corrupt manifest, so it's treated like
+                //a missing one
+                LOGGER.warn(String.format("manifest '%s' can't be read, "
+                        + "extracting again",
+                        manifestFile.getAbsolutePath()),
+                        ex);
+            }
+            if(manifest != null
+                    && !manifestSource.equals(manifest.getSource())) {
+                LOGGER.info(String.format("manifest '%s' has been created "
+                        + "from '%s' and is outdated, extracting again",
+                        manifestFile.getAbsolutePath(),
+                        manifest.getSource()));
+                manifest = null;
+            }
+        }
+        if(manifest != null) {
+            Set<String> invalidEntries = manifest.validate(extractionParentDir);
+            if(invalidEntries.isEmpty()) {
+                LOGGER.debug(String.format("extraction directory '%s' matches manifest '%s', skipping extraction",
+                        extractionDir.getAbsolutePath(),
+                        manifestFile.getAbsolutePath()));
+                return true;
+            }
+            LOGGER.info(String.format("repairing %d missing or changed entries of extraction directory '%s'",
+                    invalidEntries.size(),
+                    extractionDir.getAbsolutePath()));
+            ExtractionManifest repaired = extractor.extract(downloadCombi,
+                    extractionParentDir,
+                    invalidEntries,
+                    this::isCanceled);
+            if(repaired == null) {
+                LOGGER.debug(String.format("canceling repair of %s because the downloader has been canceled",
+                        extractionDir.getAbsolutePath()));
+                return false;
+            }
+            invalidEntries.removeAll(repaired.getEntries().stream()
+                    .map(ExtractionManifest.Entry::getPath)
+                    .collect(Collectors.toSet()));
+            if(!invalidEntries.isEmpty()) {
+                throw new ExtractionException(String.format("entries %s "
+                        + "listed in manifest '%s' aren't contained in "
+                        + "archive '%s'",
+                        invalidEntries,
+                        manifestFile.getAbsolutePath(),
+                        downloadCombi.getDownloadTarget()));
+            }
+            manifest.addAll(repaired);
+            manifest.write(manifestFile);
+            return true;
+        }
+        return extractStaged(downloadCombi,
+                extractionDir,
+                manifestFile,
+                manifestSource);
+    }
+
+    /**
+     * Identifies the downloaded archive by size and modification time which
+     * changes if it's downloaded again as well as the extraction filter.
+     *
+     * @param downloadCombi the download combi
+     * @return the source identifier stored in the extraction manifest
+     * @throws IOException if an I/O exception occurs
+     */
+    private String getManifestSource(DownloadCombi downloadCombi) throws IOException {
+        File downloadTarget = new File(downloadCombi.getDownloadTarget());
+        String retValue = String.format("%s %d %d",
+                downloadTarget.getName(),
+                downloadTarget.length(),
+                Files.getLastModifiedTime(downloadTarget.toPath()).toMillis());
+        if(downloadCombi.getExtractionFilter() != null) {
+            //a changed filter requires a new extraction
+            retValue = String.format("%s %s",
+                    retValue,
+                    downloadCombi.getExtractionFilter().getSignature());
+        }
+        return retValue;
+    }
+
+    /**
+     * Extracts the archive into a staging directory next to
+     * {@code extractionDir} and moves the result into place with an atomic
+     * rename. The manifest is written after the move and thus marks the
+     * extraction as complete. An extraction which has been interrupted (e.g.
+     * by a killed JVM) leaves only a staging directory behind which is removed
+     * in the next run.
+     *
+     * @param downloadCombi the download combi
+     * @param extractionDir the extraction directory
+     * @param manifestFile the manifest file to write after successful
+     *     extraction
+     * @param manifestSource the source identifier to store in the manifest
+     * @return {@code false} if the extraction has been canceled, {@code true}
+     *     otherwise
+     * @throws IOException if an I/O exception occurs
+     * @throws ExtractionException if the extraction fails
+     */
+    private boolean extractStaged(DownloadCombi downloadCombi,
+            File extractionDir,
+            File manifestFile,
+            String manifestSource) throws IOException,
+            ExtractionException {
+        File extractionParentDir = extractionDir.getAbsoluteFile().getParentFile();
+        Files.createDirectories(extractionParentDir.toPath());
+        String stagingPrefix = String.format(".%s.staging",
+                extractionDir.getName());
+        File[] staleStagingDirs = extractionParentDir.listFiles((dir, name) -> name.startsWith(stagingPrefix));
+        if(staleStagingDirs != null) {
+            for(File staleStagingDir : staleStagingDirs) {
+                LOGGER.debug(String.format("removing stale staging directory '%s' of interrupted extraction",
+                        staleStagingDir.getAbsolutePath()));
+                FileUtils.deleteDirectory(staleStagingDir);
+            }
+        }
+        if(extractionDir.exists() && extractionDir.list().length > 0) {
+            LOGGER.info(String.format("extraction directory '%s' has no "
+                    + "valid manifest and is considered incomplete, "
+                    + "extracting again",
+                    extractionDir.getAbsolutePath()));
+        }
+        File stagingDir = Files.createTempDirectory(extractionParentDir.toPath(),
+                stagingPrefix).toFile();
+        try {
+            if(downloadCombi.getExtractionMode() == ExtractionMode.EXTRACTION_MODE_ZIP) {
+                //ZIP archives are expected to create the extraction directory
+                //even if they're empty
+                Files.createDirectories(new File(stagingDir,
+                        extractionDir.getName()).toPath());
+            }
+            ExtractionManifest manifest = extractor.extract(downloadCombi,
+                    stagingDir,
+                    null, //entries
+                    this::isCanceled);
+            if(manifest == null) {
+                LOGGER.debug(String.format("canceling extraction of %s because the downloader has been canceled",
+                        downloadCombi.getDownloadTarget()));
+                return false;
+            }
+            manifest.setSource(manifestSource);
+            File[] stagedFiles = stagingDir.listFiles();
+            assert stagedFiles != null;
+            for(File stagedFile : stagedFiles) {
+                File target = new File(extractionParentDir,
+                        stagedFile.getName());
+                if(target.exists()) {
+                    if(!target.getName().equals(extractionDir.getName())) {
+                        //the extraction parent directory is shared with other
+                        //downloads and extractions
+                        LOGGER.warn(String.format("not replacing '%s' which "
+                                + "exists next to extraction directory '%s' "
+                                + "with top-level archive entry of the same "
+                                + "name",
+                                target.getAbsolutePath(),
+                                extractionDir.getAbsolutePath()));
+                        continue;
                     }
-                }else {
-                    //if extractionMode was EXTRACTION_MODE_NONE the method
-                    //would already have returned
-                    throw new IllegalArgumentException(String.format(
-                            "extractionMode %s isn't supported",
-                            downloadCombi.getExtractionMode().getLabel()));
+                    FileUtils.forceDelete(target);
                 }
+                Files.move(stagedFile.toPath(),
+                        target.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
             }
-        }else {
-            if(!extractionDir.isDirectory()) {
-                throw new ExtractionException(extractionDir);
-            }
+            manifest.write(manifestFile);
+            return true;
+        }finally {
+            FileUtils.deleteDirectory(stagingDir);
         }
-        return true;
     }
 
     /**
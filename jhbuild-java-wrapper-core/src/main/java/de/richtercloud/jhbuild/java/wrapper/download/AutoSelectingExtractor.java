@@ -0,0 +1,238 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper.download;
+
+import de.richtercloud.jhbuild.java.wrapper.ExtractionException;
+import de.richtercloud.jhbuild.java.wrapper.ExtractionMode;
+import de.richtercloud.jhbuild.java.wrapper.JHBuildJavaWrapper;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link Extractor} which uses {@link NativeExtractor} if it supports the
+ * extraction and its decompressor is faster than the one of
+ * {@link JavaExtractor} and {@link JavaExtractor} otherwise.
+ *
+ * The decompressors are compared once per extraction mode and native
+ * decompressor by decompressing the beginning of the first archive which is
+ * extracted and large enough to provide 64 MiB of decompressed data. The results
+ * are kept in memory and in a cache file (by default
+ * {@link #CACHE_FILE_DEFAULT}) so that later runs don't need to repeat the
+ * comparison. Archives which are smaller are compared every time without
+ * recording the result because their timing is dominated by starting the
+ * native decompressor.
+ *
+ * Archives which are extracted with an {@link ExtractionFilter} (e.g. the
+ * git and Python sources) are always extracted with {@link JavaExtractor}
+ * because {@link NativeExtractor} doesn't support filters.
+ *
+ * @author richter
+ */
+public class AutoSelectingExtractor implements Extractor {
+    private final static Logger LOGGER = LoggerFactory.getLogger(AutoSelectingExtractor.class);
+    /**
+     * The number of decompressed bytes after which a benchmark is stopped.
+     */
+    private final static long BENCHMARK_BYTES = 64*1024*1024;
+    private final static int BUFFER_SIZE = 1024*1024;
+    private final static String NATIVE = "native";
+    private final static String JAVA = "java";
+    /**
+     * The file the benchmark results are stored in by default so that they're
+     * shared by all wrappers of the user.
+     */
+    public final static File CACHE_FILE_DEFAULT = new File(JHBuildJavaWrapper.CONFIG_DIR,
+            "extractors.properties");
+    private final JavaExtractor javaExtractor;
+    private final NativeExtractor nativeExtractor;
+    /**
+     * The file the benchmark results are stored in or {@code null} if they're
+     * only kept in memory.
+     */
+    private final File cacheFile;
+    private Properties choices;
+
+    /**
+     * Creates an extractor which stores benchmark results in
+     * {@link #CACHE_FILE_DEFAULT}.
+     */
+    public AutoSelectingExtractor() {
+        this(new JavaExtractor(),
+                new NativeExtractor(),
+                CACHE_FILE_DEFAULT);
+    }
+
+    /**
+     * Creates a new extractor.
+     *
+     * @param javaExtractor the Java extractor
+     * @param nativeExtractor the native extractor
+     * @param cacheFile the file to store benchmark results in or {@code null}
+     *     in order to keep them in memory only
+     */
+    public AutoSelectingExtractor(JavaExtractor javaExtractor,
+            NativeExtractor nativeExtractor,
+            File cacheFile) {
+        if(javaExtractor == null) {
+            throw new IllegalArgumentException("javaExtractor mustn't be null");
+        }
+        if(nativeExtractor == null) {
+            throw new IllegalArgumentException("nativeExtractor mustn't be null");
+        }
+        this.javaExtractor = javaExtractor;
+        this.nativeExtractor = nativeExtractor;
+        this.cacheFile = cacheFile;
+    }
+
+    @Override
+    public ExtractionManifest extract(DownloadCombi downloadCombi,
+            File targetDir,
+            Set<String> entries,
+            BooleanSupplier canceled) throws IOException,
+            ExtractionException {
+        if(nativeExtractor.isSupported(downloadCombi, entries)
+                && isNativeFaster(downloadCombi)) {
+            try {
+                return nativeExtractor.extract(downloadCombi,
+                        targetDir,
+                        entries,
+                        canceled);
+            }catch(IOException | ExtractionException ex) {
+                LOGGER.warn(String.format("native extraction of '%s' failed, "
+                        + "falling back to Java extraction",
+                        downloadCombi.getDownloadTarget()),
+                        ex);
+                //entries is null for native extractions, so targetDir only
+                //contains the partial extraction
+                FileUtils.cleanDirectory(targetDir);
+            }
+        }
+        return javaExtractor.extract(downloadCombi,
+                targetDir,
+                entries,
+                canceled);
+    }
+
+    private synchronized boolean isNativeFaster(DownloadCombi downloadCombi) throws IOException {
+        if(choices == null) {
+            choices = new Properties();
+            if(cacheFile != null && cacheFile.exists()) {
+                try (InputStream inputStream = Files.newInputStream(cacheFile.toPath())) {
+                    choices.load(inputStream);
+                }
+            }
+        }
+        String key = String.format("%s.%s",
+                downloadCombi.getExtractionMode().name(),
+                String.join(" ", nativeExtractor.getDecompressor(downloadCombi.getExtractionMode())));
+        String choice = choices.getProperty(key);
+        if(choice == null) {
+            //read the archive once so that both decompressors read it from
+            //the page cache
+            warm(downloadCombi);
+            long nativeNanos;
+            try {
+                nativeNanos = nativeExtractor.benchmarkDecompression(downloadCombi,
+                        BENCHMARK_BYTES);
+            }catch(IOException ex) {
+                LOGGER.info(String.format("benchmark of native decompressor "
+                        + "for '%s' failed, using Java extraction",
+                        key),
+                        ex);
+                nativeNanos = Long.MAX_VALUE;
+            }
+            long javaStart = System.nanoTime();
+            long decompressedBytes = benchmarkJavaDecompression(downloadCombi);
+            long javaNanos = System.nanoTime()-javaStart;
+            choice = nativeNanos < javaNanos ? NATIVE : JAVA;
+            LOGGER.info(String.format("decompression of %d MiB of '%s' took "
+                    + "%d ms with %s and %d ms with Java, using %s extraction",
+                    decompressedBytes/1024/1024,
+                    downloadCombi.getDownloadTarget(),
+                    nativeNanos == Long.MAX_VALUE ? -1 : nativeNanos/1000000,
+                    key,
+                    javaNanos/1000000,
+                    choice));
+            if(decompressedBytes < BENCHMARK_BYTES) {
+                LOGGER.debug(String.format("'%s' is too small for a representative "
+                        + "benchmark, not recording the result",
+                        downloadCombi.getDownloadTarget()));
+                return NATIVE.equals(choice);
+            }
+            choices.setProperty(key, choice);
+            if(cacheFile != null) {
+                Files.createDirectories(cacheFile.getAbsoluteFile().getParentFile().toPath());
+                //other wrappers might read the file at the same time
+                File tmpFile = Files.createTempFile(cacheFile.getAbsoluteFile().getParentFile().toPath(),
+                        cacheFile.getName(), //prefix
+                        null //suffix
+                ).toFile();
+                try (OutputStream outputStream = Files.newOutputStream(tmpFile.toPath())) {
+                    choices.store(outputStream,
+                            "extractor benchmark results");
+                }
+                Files.move(tmpFile.toPath(),
+                        cacheFile.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        return NATIVE.equals(choice);
+    }
+
+    private static void warm(DownloadCombi downloadCombi) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(new File(downloadCombi.getDownloadTarget()).toPath())) {
+            IOUtils.copy(inputStream,
+                    NullOutputStream.NULL_OUTPUT_STREAM);
+        }
+    }
+
+    /**
+     * Decompresses up to {@link #BENCHMARK_BYTES} of the archive with Java.
+     *
+     * @return the number of decompressed bytes which is less than
+     *     {@link #BENCHMARK_BYTES} if the archive is smaller
+     */
+    @SuppressWarnings({"NestedAssignment", "PMD.AssignmentInOperand"})
+    private static long benchmarkJavaDecompression(DownloadCombi downloadCombi) throws IOException {
+        InputStream fileInputStream = Files.newInputStream(new File(downloadCombi.getDownloadTarget()).toPath());
+        try (InputStream inputStream = downloadCombi.getExtractionMode() == ExtractionMode.EXTRACTION_MODE_TAR_GZ
+                ? new GZIPInputStream(fileInputStream)
+                : new XZCompressorInputStream(fileInputStream)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long read = 0;
+            int count;
+            while(read < BENCHMARK_BYTES
+                    && (count = inputStream.read(buffer)) != -1) {
+                read += count;
+            }
+            return read;
+        }
+    }
+}
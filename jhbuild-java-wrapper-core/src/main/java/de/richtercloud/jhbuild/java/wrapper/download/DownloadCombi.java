@@ -26,17 +26,38 @@ public class DownloadCombi {
     private final ExtractionMode extractionMode;
     private final String extractionLocation;
     private final String md5Sum;
+    /**
+     * The filter selecting the archive entries to extract or {@code null} if
+     * all entries ought to be extracted.
+     */
+    private final ExtractionFilter extractionFilter;
 
     public DownloadCombi(String downloadURL,
             String downloadTarget,
             ExtractionMode extractionMode,
             String extractionLocation,
             String md5Sum) {
+        this(downloadURL,
+                downloadTarget,
+                extractionMode,
+                extractionLocation,
+                md5Sum,
+                null //extractionFilter
+        );
+    }
+
+    public DownloadCombi(String downloadURL,
+            String downloadTarget,
+            ExtractionMode extractionMode,
+            String extractionLocation,
+            String md5Sum,
+            ExtractionFilter extractionFilter) {
         this.downloadURL = downloadURL;
         this.downloadTarget = downloadTarget;
         this.extractionMode = extractionMode;
         this.extractionLocation = extractionLocation;
         this.md5Sum = md5Sum;
+        this.extractionFilter = extractionFilter;
     }
 
     public String getDownloadURL() {
@@ -58,4 +79,8 @@ public class DownloadCombi {
     public String getMd5Sum() {
         return md5Sum;
     }
+
+    public ExtractionFilter getExtractionFilter() {
+        return extractionFilter;
+    }
 }
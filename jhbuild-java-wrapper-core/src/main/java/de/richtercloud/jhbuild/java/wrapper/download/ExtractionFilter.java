@@ -0,0 +1,139 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper.download;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Include and exclude glob patterns which select the archive entries to
+ * extract. Patterns use the syntax of
+ * {@link java.nio.file.FileSystem#getPathMatcher(java.lang.String) } and are
+ * matched against the entry path without its first component because source
+ * archives usually contain a single top-level directory named after the
+ * archive (e.g. {@code Lib/test/**} matches
+ * {@code Python-3.6.4/Lib/test/test_os.py}).
+ *
+ * An entry is excluded if it or one of its parent directories matches an
+ * exclude pattern. If include patterns are specified a file is only extracted
+ * if it or one of its parent directories matches an include pattern, whereas
+ * directories are always extracted unless excluded.
+ *
+ * @author richter
+ */
+public class ExtractionFilter {
+    private static final String GLOB = "glob:";
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final List<PathMatcher> includeMatchers = new LinkedList<>();
+    private final List<PathMatcher> excludeMatchers = new LinkedList<>();
+
+    /**
+     * Creates a filter which only excludes entries.
+     *
+     * @param excludes the exclude patterns
+     * @return the created filter
+     */
+    public static ExtractionFilter exclude(String... excludes) {
+        return new ExtractionFilter(Collections.<String>emptyList(),
+                Arrays.asList(excludes));
+    }
+
+    public ExtractionFilter(List<String> includes,
+            List<String> excludes) {
+        if(includes == null) {
+            throw new IllegalArgumentException("includes mustn't be null");
+        }
+        if(excludes == null) {
+            throw new IllegalArgumentException("excludes mustn't be null");
+        }
+        this.includes = Collections.unmodifiableList(new LinkedList<>(includes));
+        this.excludes = Collections.unmodifiableList(new LinkedList<>(excludes));
+        for(String include : includes) {
+            includeMatchers.add(FileSystems.getDefault().getPathMatcher(GLOB+include));
+        }
+        for(String exclude : excludes) {
+            excludeMatchers.add(FileSystems.getDefault().getPathMatcher(GLOB+exclude));
+        }
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * Checks whether an entry ought to be extracted.
+     *
+     * @param entryPath the normalized entry path including the top-level
+     *     directory
+     * @param directory whether the entry is a directory
+     * @return {@code true} if the entry ought to be extracted, {@code false}
+     *     otherwise
+     */
+    public boolean accept(String entryPath,
+            boolean directory) {
+        Path path = Paths.get(entryPath);
+        if(path.getNameCount() < 2) {
+            //top-level entries aren't filtered
+            return true;
+        }
+        Path relativePath = path.subpath(1, path.getNameCount());
+        if(matches(relativePath, excludeMatchers)) {
+            return false;
+        }
+        return directory
+                || includeMatchers.isEmpty()
+                || matches(relativePath, includeMatchers);
+    }
+
+    private static boolean matches(Path relativePath,
+            List<PathMatcher> matchers) {
+        for(Path current = relativePath; current != null; current = current.getParent()) {
+            for(PathMatcher matcher : matchers) {
+                if(matcher.matches(current)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A representation of the patterns which allows to detect that an
+     * extraction has been performed with a different filter.
+     *
+     * @return the signature
+     */
+    public String getSignature() {
+        return String.format("include=%s exclude=%s",
+                includes,
+                excludes);
+    }
+
+    @Override
+    public String toString() {
+        return getSignature();
+    }
+}
@@ -0,0 +1,445 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper.download;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A record of all entries which have been written during an extraction (path
+ * relative to the extraction root, type, size, last modification time and
+ * permissions). The manifest is written after an extraction completed
+ * successfully and thus serves as completion marker. It allows later runs to
+ * validate an existing extraction and to re-extract only missing or changed
+ * entries instead of the complete archive.
+ *
+ * @author richter
+ */
+public final class ExtractionManifest {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ExtractionManifest.class);
+    private final static String HEADER = "# jhbuild-java-wrapper extraction manifest 1";
+    private final static String MANIFEST_SUFFIX = ".manifest";
+    private final static String SOURCE_PREFIX = "# source ";
+    private final static char SEPARATOR = '\t';
+    /**
+     * Indicates that the mode of an entry is unknown (e.g. for ZIP entries
+     * without UNIX extra fields) and shouldn't be validated.
+     */
+    public final static int MODE_UNKNOWN = -1;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    /**
+     * An identifier of the archive and the extraction settings the manifest
+     * has been created from which allows to detect that an existing
+     * extraction is outdated.
+     */
+    private String source = "";
+
+    /**
+     * The location of the manifest file for {@code extractionDir}. The
+     * manifest is stored next to the extraction directory rather than inside
+     * it in order to keep the source root free of files which aren't part of
+     * the archive.
+     *
+     * @param extractionDir the extraction directory
+     * @return the manifest file location
+     */
+    public static File getManifestFile(File extractionDir) {
+        return new File(extractionDir.getAbsoluteFile().getParentFile(),
+                extractionDir.getName() + MANIFEST_SUFFIX);
+    }
+
+    /**
+     * Reads a manifest previously written with {@link #write(java.io.File) }.
+     *
+     * @param manifestFile the manifest file
+     * @return the read manifest
+     * @throws IOException if an I/O exception occurs or the file doesn't
+     *     contain a valid manifest
+     */
+    public static ExtractionManifest read(File manifestFile) throws IOException {
+        ExtractionManifest retValue = new ExtractionManifest();
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile.toPath(),
+                StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if(!HEADER.equals(line)) {
+                throw new IOException(String.format("manifest file '%s' "
+                        + "doesn't start with expected header '%s'",
+                        manifestFile.getAbsolutePath(),
+                        HEADER));
+            }
+            line = reader.readLine();
+            while(line != null) {
+                if(line.startsWith(SOURCE_PREFIX)) {
+                    retValue.setSource(unescape(line.substring(SOURCE_PREFIX.length())));
+                }else if(!line.isEmpty()) {
+                    retValue.add(Entry.parse(line));
+                }
+                line = reader.readLine();
+            }
+        }
+        return retValue;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        if(source == null) {
+            throw new IllegalArgumentException("source mustn't be null");
+        }
+        this.source = source;
+    }
+
+    public void add(Entry entry) {
+        entries.put(entry.getPath(),
+                entry);
+    }
+
+    public void addAll(ExtractionManifest other) {
+        entries.putAll(other.entries);
+    }
+
+    public Entry getEntry(String path) {
+        return entries.get(path);
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(new LinkedList<>(entries.values()));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the manifest to a temporary file next to {@code manifestFile} and
+     * moves it atomically to its final location so that a partially written
+     * manifest is never observed.
+     *
+     * @param manifestFile the target file
+     * @throws IOException if an I/O exception occurs
+     */
+    public void write(File manifestFile) throws IOException {
+        Path manifestPath = manifestFile.getAbsoluteFile().toPath();
+        Path tmpPath = Files.createTempFile(manifestPath.getParent(),
+                "." + manifestFile.getName(),
+                ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpPath,
+                    StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                writer.write(SOURCE_PREFIX);
+                writer.write(escape(source));
+                writer.newLine();
+                for(Entry entry : entries.values()) {
+                    writer.write(entry.format());
+                    writer.newLine();
+                }
+            }
+            Files.move(tmpPath,
+                    manifestPath,
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    /**
+     * Compares all entries with the file system state below {@code rootDir}.
+     * Directories are only checked for existence since their modification
+     * time changes as soon as files are created in them.
+     *
+     * @param rootDir the directory the entry paths are relative to
+     * @return the paths of all entries which are missing or have been changed,
+     *     an empty set if the extraction is intact
+     * @throws IOException if an I/O exception occurs
+     */
+    public Set<String> validate(File rootDir) throws IOException {
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        Set<String> retValue = new LinkedHashSet<>();
+        for(Entry entry : entries.values()) {
+            Path entryPath = rootDir.toPath().resolve(entry.getPath());
+            if(!entry.matches(entryPath,
+                    posix)) {
+                retValue.add(entry.getPath());
+            }
+        }
+        if(!retValue.isEmpty()) {
+            LOGGER.debug(String.format("%d of %d manifest entries below '%s' are missing or changed",
+                    retValue.size(),
+                    entries.size(),
+                    rootDir.getAbsolutePath()));
+        }
+        return retValue;
+    }
+
+    public enum EntryType {
+        FILE('F'),
+        DIRECTORY('D'),
+        SYMLINK('L');
+
+        private final char code;
+
+        EntryType(char code) {
+            this.code = code;
+        }
+
+        public char getCode() {
+            return code;
+        }
+
+        public static EntryType valueOf(char code) {
+            for(EntryType type : values()) {
+                if(type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException(String.format("unknown entry type code '%c'",
+                    code));
+        }
+    }
+
+    /**
+     * An extracted file, directory or symbolic link. Hard links are recorded
+     * as files.
+     */
+    public static final class Entry {
+        private final String path;
+        private final EntryType type;
+        private final long size;
+        private final long lastModified;
+        private final int mode;
+        /**
+         * The target of a symbolic link, {@code null} for other entry types.
+         */
+        private final String linkTarget;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param path the path relative to the extraction root using
+         *     {@code /} as separator
+         * @param type the entry type
+         * @param size the size in bytes ({@code 0} for directories)
+         * @param lastModified the last modification time in milliseconds
+         *     since the epoch
+         * @param mode the permission bits or {@link #MODE_UNKNOWN}
+         */
+        public Entry(String path,
+                EntryType type,
+                long size,
+                long lastModified,
+                int mode) {
+            this(path,
+                    type,
+                    size,
+                    lastModified,
+                    mode,
+                    null);
+        }
+
+        /**
+         * Creates a new entry.
+         *
+         * @param path the path relative to the extraction root using
+         *     {@code /} as separator
+         * @param type the entry type
+         * @param size the size in bytes ({@code 0} for directories and
+         *     symbolic links)
+         * @param lastModified the last modification time in milliseconds
+         *     since the epoch (ignored for symbolic links)
+         * @param mode the permission bits or {@link #MODE_UNKNOWN}
+         * @param linkTarget the target of a symbolic link
+         * @throws IllegalArgumentException if {@code linkTarget} is
+         *     {@code null} for a symbolic link or not {@code null} for other
+         *     types
+         */
+        public Entry(String path,
+                EntryType type,
+                long size,
+                long lastModified,
+                int mode,
+                String linkTarget) {
+            if(path == null || path.isEmpty()) {
+                throw new IllegalArgumentException("path mustn't be null or empty");
+            }
+            if(type == null) {
+                throw new IllegalArgumentException("type mustn't be null");
+            }
+            this.path = path;
+            this.type = type;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.mode = mode == MODE_UNKNOWN ? MODE_UNKNOWN : mode & 0777;
+            if((type == EntryType.SYMLINK) != (linkTarget != null)) {
+                throw new IllegalArgumentException("linkTarget has to be "
+                        + "specified for symbolic links and only for them");
+            }
+            this.linkTarget = linkTarget;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public EntryType getType() {
+            return type;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public int getMode() {
+            return mode;
+        }
+
+        public String getLinkTarget() {
+            return linkTarget;
+        }
+
+        boolean matches(Path entryPath,
+                boolean posix) throws IOException {
+            if(!Files.exists(entryPath,
+                    LinkOption.NOFOLLOW_LINKS)) {
+                return false;
+            }
+            BasicFileAttributes attributes = Files.readAttributes(entryPath,
+                    BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            switch(type) {
+                case DIRECTORY:
+                    return attributes.isDirectory();
+                case FILE:
+                    if(!attributes.isRegularFile()
+                            || attributes.size() != size
+                            || attributes.lastModifiedTime().toMillis() != lastModified) {
+                        return false;
+                    }
+                    break;
+                case SYMLINK:
+                    return attributes.isSymbolicLink()
+                            && linkTarget.equals(Files.readSymbolicLink(entryPath).toString());
+                        //permissions of symbolic links aren't meaningful
+                default:
+                    throw new IllegalStateException(String.format("entry type %s not supported",
+                            type));
+            }
+            if(posix && mode != MODE_UNKNOWN) {
+                Set<PosixFilePermission> permissions = Files.readAttributes(entryPath,
+                        PosixFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS).permissions();
+                return toMode(permissions) == mode;
+            }
+            return true;
+        }
+
+        String format() {
+            StringBuilder retValue = new StringBuilder(path.length()+32);
+            retValue.append(type.getCode())
+                    .append(SEPARATOR)
+                    .append(mode == MODE_UNKNOWN ? "-" : Integer.toOctalString(mode))
+                    .append(SEPARATOR)
+                    .append(size)
+                    .append(SEPARATOR)
+                    .append(lastModified)
+                    .append(SEPARATOR)
+                    .append(escape(path));
+            if(linkTarget != null) {
+                retValue.append(SEPARATOR)
+                        .append(escape(linkTarget));
+            }
+            return retValue.toString();
+        }
+
+        static Entry parse(String line) throws IOException {
+            String[] splits = line.split(String.valueOf(SEPARATOR), -1);
+            if(splits.length < 5 || splits.length > 6 || splits[0].length() != 1) {
+                throw new IOException(String.format("invalid manifest line '%s'",
+                        line));
+            }
+            try {
+                return new Entry(unescape(splits[4]),
+                        EntryType.valueOf(splits[0].charAt(0)),
+                        Long.parseLong(splits[2]),
+                        Long.parseLong(splits[3]),
+                        "-".equals(splits[1]) ? MODE_UNKNOWN : Integer.parseInt(splits[1], 8),
+                        splits.length == 6 ? unescape(splits[5]) : null);
+            }catch(IllegalArgumentException ex) {
+                throw new IOException(String.format("invalid manifest line '%s'",
+                        line),
+                        ex);
+            }
+        }
+    }
+
+    static int toMode(Set<PosixFilePermission> permissions) {
+        int retValue = 0;
+        for(PosixFilePermission permission : permissions) {
+            retValue |= 1 << (8 - permission.ordinal());
+                //PosixFilePermission is ordered OWNER_READ, OWNER_WRITE, ...,
+                //OTHERS_EXECUTE
+        }
+        return retValue;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("\t", "\\t")
+                .replace("\n", "\\n");
+    }
+
+    private static String unescape(String value) {
+        StringBuilder retValue = new StringBuilder(value.length());
+        for(int i=0; i<value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '\\' && i+1 < value.length()) {
+                i++;
+                char next = value.charAt(i);
+                retValue.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            }else {
+                retValue.append(c);
+            }
+        }
+        return retValue.toString();
+    }
+}
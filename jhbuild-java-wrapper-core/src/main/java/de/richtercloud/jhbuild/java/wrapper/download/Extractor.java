@@ -0,0 +1,55 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper.download;
+
+import de.richtercloud.jhbuild.java.wrapper.ExtractionException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Extracts archives described by {@link DownloadCombi}s.
+ *
+ * @author richter
+ */
+public interface Extractor {
+
+    /**
+     * Extracts the archive {@code downloadCombi} points to into
+     * {@code targetDir}. Entry names are resolved against {@code targetDir}
+     * which means that the top-level directory contained in most source
+     * archives is created below it.
+     *
+     * @param downloadCombi the download combi providing the downloaded archive
+     *     and its extraction mode
+     * @param targetDir the directory to extract into
+     * @param entries the entry paths to extract or {@code null} to extract all
+     *     entries (allows to repair a previous extraction)
+     * @param canceled polled during the extraction in order to abort it as
+     *     soon as possible after it returned {@code true}
+     * @return the manifest of extracted entries or {@code null} if the
+     *     extraction has been canceled in which case {@code targetDir} might
+     *     contain a partial extraction
+     * @throws IOException if an I/O exception occurs
+     * @throws ExtractionException if the archive contains invalid entries or
+     *     the extraction mode isn't supported
+     */
+    ExtractionManifest extract(DownloadCombi downloadCombi,
+            File targetDir,
+            Set<String> entries,
+            BooleanSupplier canceled) throws IOException,
+            ExtractionException;
+}
@@ -0,0 +1,407 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper.download;
+
+import de.richtercloud.jhbuild.java.wrapper.ExtractionException;
+import de.richtercloud.jhbuild.java.wrapper.ExtractionMode;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link Extractor} using pure Java implementations of the supported
+ * archive and compression formats.
+ *
+ * @author richter
+ */
+public class JavaExtractor implements Extractor {
+    private final static Logger LOGGER = LoggerFactory.getLogger(JavaExtractor.class);
+    private final ParallelZipExtractor zipExtractor;
+
+    public JavaExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new Java extractor.
+     *
+     * @param parallelism the number of threads used to extract ZIP archives
+     */
+    public JavaExtractor(int parallelism) {
+        this.zipExtractor = new ParallelZipExtractor(parallelism);
+    }
+
+    @Override
+    @SuppressWarnings({"NestedAssignment", "PMD.AssignmentInOperand"})
+    public ExtractionManifest extract(DownloadCombi downloadCombi,
+            File targetDir,
+            Set<String> entries,
+            BooleanSupplier canceled) throws IOException,
+            ExtractionException {
+        ExtractionManifest retValue = new ExtractionManifest();
+        if(downloadCombi.getExtractionMode() == ExtractionMode.EXTRACTION_MODE_TAR_GZ
+                || downloadCombi.getExtractionMode() == ExtractionMode.EXTRACTION_MODE_TAR_XZ) {
+            InputStream fileInputStream = Files.newInputStream(Paths.get(downloadCombi.getDownloadTarget()));
+            InputStream compressedInputStream;
+            if(downloadCombi.getExtractionMode() == ExtractionMode.EXTRACTION_MODE_TAR_GZ) {
+                compressedInputStream = new GZIPInputStream(fileInputStream);
+            }else {
+                compressedInputStream = new XZCompressorInputStream(fileInputStream);
+            }
+            try (TarArchiveInputStream tarArchiveInputStream = new TarArchiveInputStream(compressedInputStream)) {
+                LOGGER.debug(String.format("extracting %s archive into '%s'",
+                        downloadCombi.getExtractionMode().getLabel(),
+                        targetDir.getAbsolutePath()));
+                TarArchiveEntry entry;
+                List<DeferredLink> deferredLinks = new LinkedList<>();
+                List<TarArchiveEntry> directoryEntries = new LinkedList<>();
+                while ((entry = tarArchiveInputStream.getNextTarEntry()) != null) {
+                    if(canceled.getAsBoolean()) {
+                        LOGGER.debug(String.format("extraction into '%s' canceled",
+                                targetDir.getAbsolutePath()));
+                        return null;
+                    }
+                    String entryPath = normalizeEntryName(entry.getName());
+                    if(entries != null && !entries.contains(entryPath)) {
+                        continue;
+                    }
+                    if(downloadCombi.getExtractionFilter() != null
+                            && !downloadCombi.getExtractionFilter().accept(entryPath,
+                                    entry.isDirectory())) {
+                        LOGGER.trace(String.format("skipping entry %s excluded by filter",
+                                entryPath));
+                        continue;
+                    }
+                    final File outputFile = resolveEntry(targetDir,
+                            entryPath);
+                    if(entry.isSymbolicLink() || entry.isLink()) {
+                        //created after all regular files have been written
+                        //so that link targets exist
+                        deferredLinks.add(new DeferredLink(entryPath,
+                                entry.isSymbolicLink()
+                                        ? entry.getLinkName()
+                                        : normalizeEntryName(entry.getLinkName()),
+                                entry.isSymbolicLink(),
+                                entry.getMode(),
+                                entry.getLastModifiedDate().getTime()));
+                        continue;
+                    }
+                    if (entry.isDirectory()) {
+                        directoryEntries.add(entry);
+                        LOGGER.trace(String.format("Attempting to write output directory %s.",
+                                outputFile.getAbsolutePath()));
+                        if (!outputFile.exists()) {
+                            LOGGER.trace(String.format("Attempting to create output directory %s.",
+                                    outputFile.getAbsolutePath()));
+                            Files.createDirectories(outputFile.toPath());
+                        }
+                    } else {
+                        LOGGER.trace(String.format("Creating output file %s.",
+                                outputFile.getAbsolutePath()));
+                        final File outputFileParent = outputFile.getParentFile();
+                        if (!outputFileParent.exists()) {
+                            Files.createDirectories(outputFileParent.toPath());
+                        }
+                        //a file which is repaired might be read-only or a
+                        //hard link which mustn't be written through
+                        Files.deleteIfExists(outputFile.toPath());
+                        try (OutputStream outputFileStream = Files.newOutputStream(outputFile.toPath())) {
+                            IOUtils.copy(tarArchiveInputStream, outputFileStream);
+                        }
+                    }
+                    Path outputFilePath = Paths.get(outputFile.getAbsolutePath());
+                    setPermissions(outputFilePath,
+                            entry.getMode());
+                    Files.setLastModifiedTime(outputFile.toPath(),
+                            FileTime.fromMillis(entry.getLastModifiedDate().getTime()));
+                    LOGGER.trace(String.format("last modified time of file or directory '%s' is %s",
+                            outputFile.getAbsolutePath(),
+                            Files.getLastModifiedTime(outputFilePath)));
+                    retValue.add(createManifestEntry(entryPath,
+                            outputFilePath,
+                            entry.getMode()));
+                }
+                createLinks(targetDir,
+                        deferredLinks,
+                        downloadCombi.getExtractionFilter(),
+                        retValue);
+                //modification times of directories changed while their
+                //content has been extracted, set them again deepest first
+                directoryEntries.sort((entry1, entry2) -> entry2.getName().length()-entry1.getName().length());
+                for(TarArchiveEntry directoryEntry : directoryEntries) {
+                    Files.setLastModifiedTime(resolveEntry(targetDir,
+                                    normalizeEntryName(directoryEntry.getName())).toPath(),
+                            FileTime.fromMillis(directoryEntry.getLastModifiedDate().getTime()));
+                }
+            }
+        }else if(downloadCombi.getExtractionMode() == ExtractionMode.EXTRACTION_MODE_ZIP) {
+            if(canceled.getAsBoolean()) {
+                return null;
+            }
+            LOGGER.debug(String.format("extracting .zip archive into '%s'",
+                    targetDir.getAbsolutePath()));
+            retValue = zipExtractor.extract(new File(downloadCombi.getDownloadTarget()),
+                    targetDir,
+                    entries,
+                    downloadCombi.getExtractionFilter());
+        }else {
+            //if extractionMode was EXTRACTION_MODE_NONE the method
+            //would already have returned
+            throw new ExtractionException(String.format(
+                    "extractionMode %s isn't supported",
+                    downloadCombi.getExtractionMode().getLabel()));
+        }
+        return retValue;
+    }
+
+    /**
+     * Creates hard links and then symbolic links. Hard links reference the
+     * already extracted target entry which avoids writing the same content
+     * multiple times. If a hard link can't be created (e.g. because the file
+     * system doesn't support it) the target is copied. Hard links whose target
+     * has been excluded by {@code extractionFilter} are skipped.
+     *
+     * @param targetDir the extraction target directory
+     * @param deferredLinks the links in archive order
+     * @param extractionFilter the filter applied to the extraction or
+     *     {@code null}
+     * @param manifest the manifest to add the created links to
+     * @throws IOException if an I/O exception occurs
+     * @throws ExtractionException if a hard link points outside
+     *     {@code targetDir} or to an entry which hasn't been extracted
+     *     although it hasn't been excluded
+     */
+    static void createLinks(File targetDir,
+            List<DeferredLink> deferredLinks,
+            ExtractionFilter extractionFilter,
+            ExtractionManifest manifest) throws IOException,
+            ExtractionException {
+        for(DeferredLink deferredLink : deferredLinks) {
+            if(deferredLink.isSymbolic()) {
+                continue;
+            }
+            Path linkPath = resolveEntry(targetDir,
+                    deferredLink.getEntryPath()).toPath();
+            Path existingPath = resolveEntry(targetDir,
+                    deferredLink.getLinkName()).toPath();
+            if(!Files.isRegularFile(existingPath, LinkOption.NOFOLLOW_LINKS)) {
+                if(extractionFilter != null
+                        && !extractionFilter.accept(deferredLink.getLinkName(),
+                                false //directory
+                        )) {
+                    LOGGER.debug(String.format("skipping hard link '%s' "
+                            + "because its target '%s' is excluded by filter",
+                            deferredLink.getEntryPath(),
+                            deferredLink.getLinkName()));
+                    continue;
+                }
+                throw new ExtractionException(String.format("target '%s' "
+                        + "of hard link '%s' hasn't been extracted",
+                        deferredLink.getLinkName(),
+                        deferredLink.getEntryPath()));
+            }
+            Files.createDirectories(linkPath.getParent());
+            Files.deleteIfExists(linkPath);
+            LOGGER.trace(String.format("Creating hard link %s to %s.",
+                    linkPath,
+                    existingPath));
+            try {
+                Files.createLink(linkPath,
+                        existingPath);
+            }catch(UnsupportedOperationException | IOException ex) {
+                LOGGER.debug(String.format("creating hard link '%s' failed, copying '%s' instead",
+                        linkPath,
+                        existingPath),
+                        ex);
+                Files.copy(existingPath,
+                        linkPath,
+                        StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            setPermissions(linkPath,
+                    deferredLink.getMode());
+            Files.setLastModifiedTime(linkPath,
+                    FileTime.fromMillis(deferredLink.getLastModified()));
+            manifest.add(createManifestEntry(deferredLink.getEntryPath(),
+                    linkPath,
+                    deferredLink.getMode()));
+        }
+        for(DeferredLink deferredLink : deferredLinks) {
+            if(!deferredLink.isSymbolic()) {
+                continue;
+            }
+            Path linkPath = resolveEntry(targetDir,
+                    deferredLink.getEntryPath()).toPath();
+            Files.createDirectories(linkPath.getParent());
+            Files.deleteIfExists(linkPath);
+            LOGGER.trace(String.format("Creating symbolic link %s to %s.",
+                    linkPath,
+                    deferredLink.getLinkName()));
+            Files.createSymbolicLink(linkPath,
+                    Paths.get(deferredLink.getLinkName()));
+            //permissions and modification time aren't set because they'd be
+            //applied to the link target
+            manifest.add(new ExtractionManifest.Entry(deferredLink.getEntryPath(),
+                    ExtractionManifest.EntryType.SYMLINK,
+                    0,
+                    0,
+                    ExtractionManifest.MODE_UNKNOWN,
+                    deferredLink.getLinkName()));
+        }
+    }
+
+    /**
+     * Removes leading {@code ./} and trailing {@code /} from archive entry
+     * names so that they can be used as manifest keys.
+     *
+     * @param entryName the entry name as stored in the archive
+     * @return the normalized entry name
+     */
+    static String normalizeEntryName(String entryName) {
+        String retValue = entryName;
+        while(retValue.startsWith("./")) {
+            retValue = retValue.substring(2);
+        }
+        while(retValue.endsWith("/")) {
+            retValue = retValue.substring(0, retValue.length()-1);
+        }
+        return retValue;
+    }
+
+    /**
+     * Resolves {@code entryPath} against {@code targetDir} and makes sure that
+     * the result doesn't lie outside {@code targetDir} (e.g. because of
+     * {@code ..} segments in a malicious archive).
+     *
+     * @param targetDir the extraction target directory
+     * @param entryPath the normalized entry path
+     * @return the resolved file
+     * @throws ExtractionException if the entry would be written outside
+     *     {@code targetDir}
+     */
+    static File resolveEntry(File targetDir,
+            String entryPath) throws ExtractionException {
+        Path targetPath = targetDir.getAbsoluteFile().toPath().normalize();
+        Path retValue = targetPath.resolve(entryPath).normalize();
+        if(!retValue.startsWith(targetPath) || retValue.equals(targetPath)) {
+            throw new ExtractionException(String.format("archive entry '%s' "
+                    + "points outside of extraction directory '%s'",
+                    entryPath,
+                    targetDir.getAbsolutePath()));
+        }
+        return retValue.toFile();
+    }
+
+    static ExtractionManifest.Entry createManifestEntry(String entryPath,
+            Path outputFilePath,
+            int mode) throws IOException {
+        boolean directory = Files.isDirectory(outputFilePath,
+                LinkOption.NOFOLLOW_LINKS);
+        return new ExtractionManifest.Entry(entryPath,
+                directory ? ExtractionManifest.EntryType.DIRECTORY : ExtractionManifest.EntryType.FILE,
+                directory ? 0 : Files.size(outputFilePath),
+                Files.getLastModifiedTime(outputFilePath).toMillis(),
+                mode);
+    }
+
+    static void setPermissions(Path outputFilePath,
+            int mode) throws IOException {
+        //not the most efficient way, but certainly a
+        //comprehensive one
+        int modeOctal = Integer.parseInt(Integer.toOctalString(mode));
+        StringBuilder permStringBuilder = new StringBuilder(9);
+        int modeUser = modeOctal / 100;
+        int modeGroup = (modeOctal % 100) / 10;
+        int modeOthers = modeOctal % 10;
+        //from http://stackoverflow.com/questions/34234598/how-to-convert-an-input-of-3-octal-numbers-into-chmod-permissions-into-binary
+        permStringBuilder.append((modeUser & 4) == 0 ? '-' : 'r')
+                .append((modeUser & 2) == 0 ? '-' : 'w')
+                .append((modeUser & 1) == 0 ? '-' : 'x')
+                .append((modeGroup & 4) == 0 ? '-' : 'r')
+                .append((modeGroup & 2) == 0 ? '-' : 'w')
+                .append((modeGroup & 1) == 0 ? '-' : 'x')
+                .append((modeOthers & 4) == 0 ? '-' : 'r')
+                .append((modeOthers & 2) == 0 ? '-' : 'w')
+                .append((modeOthers & 1) == 0 ? '-' : 'x');
+        String permString = permStringBuilder.toString();
+        Files.setPosixFilePermissions(outputFilePath, PosixFilePermissions.fromString(permString));
+    }
+
+    /**
+     * A hard or symbolic link entry whose creation is deferred until all
+     * regular files have been extracted.
+     */
+    static final class DeferredLink {
+        private final String entryPath;
+        /**
+         * The normalized entry path of the target for hard links or the
+         * unmodified target for symbolic links.
+         */
+        private final String linkName;
+        private final boolean symbolic;
+        private final int mode;
+        private final long lastModified;
+
+        DeferredLink(String entryPath,
+                String linkName,
+                boolean symbolic,
+                int mode,
+                long lastModified) {
+            this.entryPath = entryPath;
+            this.linkName = linkName;
+            this.symbolic = symbolic;
+            this.mode = mode;
+            this.lastModified = lastModified;
+        }
+
+        public String getEntryPath() {
+            return entryPath;
+        }
+
+        public String getLinkName() {
+            return linkName;
+        }
+
+        public boolean isSymbolic() {
+            return symbolic;
+        }
+
+        public int getMode() {
+            return mode;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
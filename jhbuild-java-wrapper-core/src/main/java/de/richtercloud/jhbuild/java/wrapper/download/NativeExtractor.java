@@ -0,0 +1,319 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper.download;
+
+import de.richtercloud.jhbuild.java.wrapper.BinaryUtils;
+import de.richtercloud.jhbuild.java.wrapper.BinaryValidationException;
+import de.richtercloud.jhbuild.java.wrapper.ExtractionException;
+import de.richtercloud.jhbuild.java.wrapper.ExtractionMode;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link Extractor} which runs the host's {@code tar} with the
+ * multi-threaded decompressors {@code pigz} and {@code xz -T0} if they're
+ * available.
+ *
+ * Only complete extractions of tar archives without an
+ * {@link ExtractionFilter} are supported (see
+ * {@link #isSupported(DownloadCombi, Set) }) since selecting entries with
+ * {@code tar} would require to translate glob patterns. Permissions and
+ * modification times are restored like {@link JavaExtractor} does and the
+ * manifest is created from the extracted tree.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- tar is started directly without a shell and runs the decompressor as its
+child with --use-compress-program so that destroying the tar process on
+cancelation terminates the decompressor through SIGPIPE
+- --delay-directory-restore is necessary because tar otherwise restores the
+modification time of a directory before links in it are created
+- zstd isn't supported since there's no extraction mode for it and no Java
+decoder in the dependencies to fall back to
+*/
+public class NativeExtractor implements Extractor {
+    private final static Logger LOGGER = LoggerFactory.getLogger(NativeExtractor.class);
+    public final static String TAR_DEFAULT = "tar";
+    public final static String PIGZ_DEFAULT = "pigz";
+    public final static String GZIP_DEFAULT = "gzip";
+    public final static String XZ_DEFAULT = "xz";
+    private final static long CANCEL_POLL_INTERVAL_MILLIS = 100;
+    private final static int BUFFER_SIZE = 1024*1024;
+    private final String tar;
+    private final String pigz;
+    private final String gzip;
+    private final String xz;
+    private final String path;
+    private final Map<String, Boolean> availableBinaries = new HashMap<>();
+
+    public NativeExtractor() {
+        this(TAR_DEFAULT,
+                PIGZ_DEFAULT,
+                GZIP_DEFAULT,
+                XZ_DEFAULT,
+                System.getenv("PATH"));
+    }
+
+    /**
+     * Creates a new native extractor.
+     *
+     * @param tar the {@code tar} binary
+     * @param pigz the {@code pigz} binary which is preferred over
+     *     {@code gzip}
+     * @param gzip the {@code gzip} binary
+     * @param xz the {@code xz} binary
+     * @param path the search path for the binaries
+     */
+    public NativeExtractor(String tar,
+            String pigz,
+            String gzip,
+            String xz,
+            String path) {
+        this.tar = tar;
+        this.pigz = pigz;
+        this.gzip = gzip;
+        this.xz = xz;
+        this.path = path;
+    }
+
+    private synchronized boolean isAvailable(String binary,
+            String name) {
+        return availableBinaries.computeIfAbsent(binary, key -> {
+            try {
+                BinaryUtils.validateBinary(binary,
+                        name,
+                        path);
+                return true;
+            }catch(BinaryValidationException | IllegalArgumentException ex) {
+                LOGGER.debug(String.format("%s not available for native extraction",
+                        name),
+                        ex);
+                return false;
+            }
+        });
+    }
+
+    /**
+     * The decompressor command used for {@code extractionMode}.
+     *
+     * @param extractionMode the extraction mode
+     * @return the command and its arguments or {@code null} if no
+     *     decompressor is available
+     */
+    public List<String> getDecompressor(ExtractionMode extractionMode) {
+        switch(extractionMode) {
+            case EXTRACTION_MODE_TAR_GZ:
+                if(isAvailable(pigz, PIGZ_DEFAULT)) {
+                    return Arrays.asList(pigz);
+                }
+                if(isAvailable(gzip, GZIP_DEFAULT)) {
+                    return Arrays.asList(gzip);
+                }
+                return null;
+            case EXTRACTION_MODE_TAR_XZ:
+                if(isAvailable(xz, XZ_DEFAULT)) {
+                    return Arrays.asList(xz, "-T0");
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Checks whether the extraction can be performed with this extractor.
+     *
+     * @param downloadCombi the download combi
+     * @param entries the entries to extract
+     * @return {@code true} if {@link #extract(DownloadCombi, File, Set, BooleanSupplier) }
+     *     can be used, {@code false} otherwise
+     */
+    public boolean isSupported(DownloadCombi downloadCombi,
+            Set<String> entries) {
+        return entries == null
+                && downloadCombi.getExtractionFilter() == null
+                && isAvailable(tar, TAR_DEFAULT)
+                && getDecompressor(downloadCombi.getExtractionMode()) != null;
+    }
+
+    /**
+     * Extracts the archive into {@code targetDir} which is expected to be
+     * empty since the manifest is created from its content.
+     *
+     * {@inheritDoc }
+     */
+    @Override
+    public ExtractionManifest extract(DownloadCombi downloadCombi,
+            File targetDir,
+            Set<String> entries,
+            BooleanSupplier canceled) throws IOException,
+            ExtractionException {
+        if(!isSupported(downloadCombi, entries)) {
+            throw new ExtractionException(String.format("native extraction "
+                    + "of %s isn't supported (check isSupported before "
+                    + "calling extract)",
+                    downloadCombi.getDownloadTarget()));
+        }
+        Files.createDirectories(targetDir.toPath());
+        List<String> commands = new LinkedList<>(Arrays.asList(tar,
+                "-x",
+                "--same-permissions",
+                "--no-same-owner",
+                "--delay-directory-restore",
+                String.format("--use-compress-program=%s",
+                        String.join(" ", getDecompressor(downloadCombi.getExtractionMode()))),
+                "-f", new File(downloadCombi.getDownloadTarget()).getAbsolutePath(),
+                "-C", targetDir.getAbsolutePath()));
+        LOGGER.debug(String.format("extracting %s archive into '%s' with '%s'",
+                downloadCombi.getExtractionMode().getLabel(),
+                targetDir.getAbsolutePath(),
+                String.join(" ", commands)));
+        File outputFile = File.createTempFile(NativeExtractor.class.getSimpleName(),
+                ".log");
+        try {
+            Process process = new ProcessBuilder(commands)
+                    .redirectErrorStream(true)
+                    .redirectOutput(outputFile)
+                    .start();
+            try {
+                while(!process.waitFor(CANCEL_POLL_INTERVAL_MILLIS,
+                        TimeUnit.MILLISECONDS)) {
+                    if(canceled.getAsBoolean()) {
+                        LOGGER.debug(String.format("extraction into '%s' canceled",
+                                targetDir.getAbsolutePath()));
+                        process.destroy();
+                        process.waitFor();
+                        return null;
+                    }
+                }
+            }catch(InterruptedException ex) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+                throw new ExtractionException("interrupted while waiting for tar",
+                        ex);
+            }
+            if(process.exitValue() != 0) {
+                throw new ExtractionException(String.format("%s returned %d "
+                        + "during extraction of '%s' (output was '%s')",
+                        tar,
+                        process.exitValue(),
+                        downloadCombi.getDownloadTarget(),
+                        new String(Files.readAllBytes(outputFile.toPath()),
+                                StandardCharsets.UTF_8).trim()));
+            }
+        }finally {
+            Files.deleteIfExists(outputFile.toPath());
+        }
+        return createManifest(targetDir);
+    }
+
+    /**
+     * Decompresses the archive without extracting it in order to measure the
+     * throughput of the native decompressor.
+     *
+     * @param downloadCombi the download combi
+     * @param maxBytes the number of decompressed bytes after which the
+     *     measurement is stopped
+     * @return the elapsed time in nanoseconds
+     * @throws IOException if an I/O exception occurs or the decompressor
+     *     fails
+     */
+    public long benchmarkDecompression(DownloadCombi downloadCombi,
+            long maxBytes) throws IOException {
+        List<String> commands = new LinkedList<>(getDecompressor(downloadCombi.getExtractionMode()));
+        commands.add("-dc");
+        commands.add(new File(downloadCombi.getDownloadTarget()).getAbsolutePath());
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(commands)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try (InputStream inputStream = process.getInputStream()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long read = 0;
+            int count;
+            while(read < maxBytes
+                    && (count = inputStream.read(buffer)) != -1) {
+                read += count;
+            }
+        }finally {
+            process.destroy();
+        }
+        return System.nanoTime()-start;
+    }
+
+    /**
+     * Creates a manifest of everything below {@code targetDir}.
+     */
+    private static ExtractionManifest createManifest(File targetDir) throws IOException {
+        ExtractionManifest retValue = new ExtractionManifest();
+        Path targetPath = targetDir.toPath();
+        Files.walkFileTree(targetPath,
+                new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir,
+                    BasicFileAttributes attrs) throws IOException {
+                if(!dir.equals(targetPath)) {
+                    retValue.add(createEntry(dir, attrs));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file,
+                    BasicFileAttributes attrs) throws IOException {
+                retValue.add(createEntry(file, attrs));
+                return FileVisitResult.CONTINUE;
+            }
+
+            private ExtractionManifest.Entry createEntry(Path file,
+                    BasicFileAttributes attrs) throws IOException {
+                String entryPath = targetPath.relativize(file).toString().replace(File.separatorChar, '/');
+                if(attrs.isSymbolicLink()) {
+                    return new ExtractionManifest.Entry(entryPath,
+                            ExtractionManifest.EntryType.SYMLINK,
+                            0,
+                            0,
+                            ExtractionManifest.MODE_UNKNOWN,
+                            Files.readSymbolicLink(file).toString());
+                }
+                return JavaExtractor.createManifestEntry(entryPath,
+                        file,
+                        ExtractionManifest.toMode(Files.getPosixFilePermissions(file,
+                                LinkOption.NOFOLLOW_LINKS)));
+            }
+        });
+        return retValue;
+    }
+}
@@ -0,0 +1,355 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper.download;
+
+import de.richtercloud.jhbuild.java.wrapper.ExtractionException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Extracts ZIP archives by reading the central directory and extracting the
+ * entries independently on multiple worker threads, each with its own
+ * {@link ZipFile}. Entries are distributed over the workers by size (largest
+ * first onto the least loaded worker) so that a few large files don't end up
+ * on the same worker.
+ *
+ * Directories are created upfront, files are written with their final length
+ * set before the content is written and modification times and UNIX
+ * permissions (if stored in the archive) are preserved. Directory modification
+ * times are set after all files have been written. Symbolic links stored with
+ * UNIX extra fields are created last.
+ *
+ * @author richter
+ */
+public class ParallelZipExtractor {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ParallelZipExtractor.class);
+    private final static int BUFFER_SIZE = 1024*1024;
+    /**
+     * Entries which are smaller than this are not worth an additional worker.
+     */
+    private final static long MIN_BYTES_PER_WORKER = 4*1024*1024;
+    private final int parallelism;
+
+    public ParallelZipExtractor(int parallelism) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException(String.format("parallelism value of less than 1 doesn't make sense (was %d)",
+                    parallelism));
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Extracts {@code zipFile} into {@code targetDir}.
+     *
+     * @param zipFile the ZIP archive
+     * @param targetDir the directory entry names are resolved against
+     * @param entries the entry paths to extract or {@code null} to extract all
+     * @return the manifest of extracted entries in central directory order
+     * @throws IOException if an I/O exception occurs
+     * @throws ExtractionException if an entry points outside
+     *     {@code targetDir}
+     */
+    public ExtractionManifest extract(File zipFile,
+            File targetDir,
+            Set<String> entries) throws IOException,
+            ExtractionException {
+        return extract(zipFile,
+                targetDir,
+                entries,
+                null //extractionFilter
+        );
+    }
+
+    /**
+     * Extracts the entries of {@code zipFile} accepted by
+     * {@code extractionFilter} into {@code targetDir}.
+     *
+     * @param zipFile the ZIP archive
+     * @param targetDir the directory entry names are resolved against
+     * @param entries the entry paths to extract or {@code null} to extract all
+     * @param extractionFilter the filter to apply or {@code null} to extract
+     *     all entries
+     * @return the manifest of extracted entries in central directory order
+     * @throws IOException if an I/O exception occurs
+     * @throws ExtractionException if an entry points outside
+     *     {@code targetDir}
+     */
+    public ExtractionManifest extract(File zipFile,
+            File targetDir,
+            Set<String> entries,
+            ExtractionFilter extractionFilter) throws IOException,
+            ExtractionException {
+        List<ZipArchiveEntry> directoryEntries = new LinkedList<>();
+        List<ZipArchiveEntry> fileEntries = new ArrayList<>();
+        List<String> entryOrder = new LinkedList<>();
+        List<JavaExtractor.DeferredLink> deferredLinks = new LinkedList<>();
+        long totalBytes = 0;
+        try (ZipFile centralDirectory = new ZipFile(zipFile)) {
+            Enumeration<ZipArchiveEntry> zipEntries = centralDirectory.getEntries();
+            while(zipEntries.hasMoreElements()) {
+                ZipArchiveEntry entry = zipEntries.nextElement();
+                String entryPath = JavaExtractor.normalizeEntryName(entry.getName());
+                if(entries != null && !entries.contains(entryPath)) {
+                    continue;
+                }
+                if(extractionFilter != null
+                        && !extractionFilter.accept(entryPath,
+                                entry.isDirectory())) {
+                    continue;
+                }
+                JavaExtractor.resolveEntry(targetDir,
+                        entryPath);
+                entryOrder.add(entryPath);
+                if(entry.isUnixSymlink()) {
+                    deferredLinks.add(new JavaExtractor.DeferredLink(entryPath,
+                            centralDirectory.getUnixSymlink(entry),
+                            true, //symbolic
+                            ExtractionManifest.MODE_UNKNOWN,
+                            entry.getTime()));
+                }else if(entry.isDirectory()) {
+                    directoryEntries.add(entry);
+                }else {
+                    fileEntries.add(entry);
+                    totalBytes += Math.max(entry.getSize(), 0);
+                }
+            }
+        }
+        //create all directories upfront so that workers don't compete in
+        //creating parents
+        for(ZipArchiveEntry entry : directoryEntries) {
+            Files.createDirectories(resolve(targetDir, entry).toPath());
+        }
+        for(ZipArchiveEntry entry : fileEntries) {
+            Files.createDirectories(resolve(targetDir, entry).getParentFile().toPath());
+        }
+        int workerCount = (int)Math.max(1,
+                Math.min(parallelism,
+                        Math.min(fileEntries.size(),
+                                totalBytes / MIN_BYTES_PER_WORKER)));
+        List<List<ZipArchiveEntry>> partitions = partition(fileEntries,
+                workerCount);
+        LOGGER.debug(String.format("extracting %d files (%d bytes) of ZIP archive '%s' into '%s' with %d workers",
+                fileEntries.size(),
+                totalBytes,
+                zipFile.getAbsolutePath(),
+                targetDir.getAbsolutePath(),
+                workerCount));
+        Map<String, ExtractionManifest.Entry> manifestEntries = new ConcurrentHashMap<>();
+        if(workerCount == 1) {
+            extractPartition(zipFile,
+                    targetDir,
+                    partitions.get(0),
+                    manifestEntries);
+        }else {
+            ExecutorService executorService = Executors.newFixedThreadPool(workerCount);
+            try {
+                List<Future<Void>> futures = new LinkedList<>();
+                for(List<ZipArchiveEntry> partition : partitions) {
+                    futures.add(executorService.submit(() -> {
+                        extractPartition(zipFile,
+                                targetDir,
+                                partition,
+                                manifestEntries);
+                        return null;
+                    }));
+                }
+                for(Future<Void> future : futures) {
+                    future.get();
+                }
+            }catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for ZIP extraction workers",
+                        ex);
+            }catch(ExecutionException ex) {
+                if(ex.getCause() instanceof IOException) {
+                    throw (IOException)ex.getCause();
+                }
+                if(ex.getCause() instanceof ExtractionException) {
+                    throw (ExtractionException)ex.getCause();
+                }
+                throw new ExtractionException("unexpected exception during ZIP extraction",
+                        ex.getCause());
+            }finally {
+                executorService.shutdownNow();
+            }
+        }
+        //set directory times deepest first after all files have been written
+        List<ZipArchiveEntry> directoryEntriesDeepestFirst = new ArrayList<>(directoryEntries);
+        Collections.sort(directoryEntriesDeepestFirst,
+                Comparator.comparing((ZipArchiveEntry entry) -> entry.getName().length()).reversed());
+        for(ZipArchiveEntry entry : directoryEntriesDeepestFirst) {
+            Path directory = resolve(targetDir, entry).toPath();
+            applyAttributes(directory,
+                    entry);
+            String entryPath = JavaExtractor.normalizeEntryName(entry.getName());
+            manifestEntries.put(entryPath,
+                    JavaExtractor.createManifestEntry(entryPath,
+                            directory,
+                            getMode(entry)));
+        }
+        ExtractionManifest linkManifest = new ExtractionManifest();
+        JavaExtractor.createLinks(targetDir,
+                deferredLinks,
+                extractionFilter,
+                linkManifest);
+        for(ExtractionManifest.Entry linkEntry : linkManifest.getEntries()) {
+            manifestEntries.put(linkEntry.getPath(),
+                    linkEntry);
+        }
+        ExtractionManifest retValue = new ExtractionManifest();
+        for(String entryPath : entryOrder) {
+            ExtractionManifest.Entry manifestEntry = manifestEntries.get(entryPath);
+            if(manifestEntry != null) {
+                retValue.add(manifestEntry);
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Distributes {@code fileEntries} over {@code workerCount} partitions
+     * assigning the largest remaining entry to the partition with the least
+     * bytes.
+     *
+     * @param fileEntries the entries to distribute
+     * @param workerCount the number of partitions
+     * @return the partitions
+     */
+    static List<List<ZipArchiveEntry>> partition(List<ZipArchiveEntry> fileEntries,
+            int workerCount) {
+        List<ZipArchiveEntry> sortedEntries = new ArrayList<>(fileEntries);
+        Collections.sort(sortedEntries,
+                Comparator.comparing(ZipArchiveEntry::getSize).reversed());
+        List<List<ZipArchiveEntry>> retValue = new ArrayList<>(workerCount);
+        long[] partitionBytes = new long[workerCount];
+        for(int i=0; i<workerCount; i++) {
+            retValue.add(new LinkedList<>());
+        }
+        for(ZipArchiveEntry entry : sortedEntries) {
+            int leastLoaded = 0;
+            for(int i=1; i<workerCount; i++) {
+                if(partitionBytes[i] < partitionBytes[leastLoaded]) {
+                    leastLoaded = i;
+                }
+            }
+            retValue.get(leastLoaded).add(entry);
+            partitionBytes[leastLoaded] += Math.max(entry.getSize(), 0);
+        }
+        return retValue;
+    }
+
+    private void extractPartition(File zipFile,
+            File targetDir,
+            List<ZipArchiveEntry> partition,
+            Map<String, ExtractionManifest.Entry> manifestEntries) throws IOException,
+            ExtractionException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (ZipFile workerZipFile = new ZipFile(zipFile)) {
+            for(ZipArchiveEntry partitionEntry : partition) {
+                ZipArchiveEntry entry = workerZipFile.getEntry(partitionEntry.getName());
+                String entryPath = JavaExtractor.normalizeEntryName(entry.getName());
+                File outputFile = resolve(targetDir, entry);
+                LOGGER.trace(String.format("Creating output file %s.",
+                        outputFile.getAbsolutePath()));
+                //a file which is repaired might be read-only
+                Files.deleteIfExists(outputFile.toPath());
+                try (RandomAccessFile randomAccessFile = new RandomAccessFile(outputFile, "rw");
+                        FileChannel outputChannel = randomAccessFile.getChannel();
+                        InputStream entryInputStream = workerZipFile.getInputStream(entry);
+                        ReadableByteChannel entryChannel = Channels.newChannel(entryInputStream)) {
+                    randomAccessFile.setLength(Math.max(entry.getSize(), 0));
+                    long position = 0;
+                    while(entryChannel.read(buffer) != -1) {
+                        buffer.flip();
+                        while(buffer.hasRemaining()) {
+                            position += outputChannel.write(buffer, position);
+                        }
+                        buffer.clear();
+                    }
+                    if(position != randomAccessFile.length()) {
+                        //size in central directory was wrong or unknown
+                        randomAccessFile.setLength(position);
+                    }
+                }
+                applyAttributes(outputFile.toPath(),
+                        entry);
+                manifestEntries.put(entryPath,
+                        JavaExtractor.createManifestEntry(entryPath,
+                                outputFile.toPath(),
+                                getMode(entry)));
+            }
+        }
+    }
+
+    private static File resolve(File targetDir,
+            ZipArchiveEntry entry) throws ExtractionException {
+        return JavaExtractor.resolveEntry(targetDir,
+                JavaExtractor.normalizeEntryName(entry.getName()));
+    }
+
+    /**
+     * The UNIX permissions stored in the entry's extra fields if the archive
+     * has been created on a UNIX platform.
+     *
+     * @param entry the entry
+     * @return the mode or {@link ExtractionManifest#MODE_UNKNOWN}
+     */
+    private static int getMode(ZipArchiveEntry entry) {
+        if(entry.getPlatform() != ZipArchiveEntry.PLATFORM_UNIX
+                || (entry.getUnixMode() & 0777) == 0) {
+            return ExtractionManifest.MODE_UNKNOWN;
+        }
+        return entry.getUnixMode() & 0777;
+    }
+
+    private static void applyAttributes(Path path,
+            ZipArchiveEntry entry) throws IOException {
+        int mode = getMode(entry);
+        if(mode != ExtractionManifest.MODE_UNKNOWN) {
+            JavaExtractor.setPermissions(path,
+                    mode);
+        }
+        if(entry.getTime() != -1) {
+            Files.setLastModifiedTime(path,
+                    FileTime.fromMillis(entry.getTime()));
+        }
+    }
+}
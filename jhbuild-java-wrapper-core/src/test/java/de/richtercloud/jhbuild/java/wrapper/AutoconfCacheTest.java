@@ -0,0 +1,179 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class AutoconfCacheTest {
+
+    /**
+     * Sources {@code config.site} in {@code workingDir} like a
+     * {@code configure} script without {@code --cache-file} does.
+     *
+     * @return the cache file selected by {@code config.site}
+     */
+    private static String sourceConfigSite(String configSite,
+            Map<String, String> env,
+            File workingDir) throws IOException,
+            InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder("sh",
+                "-c",
+                String.format("cache_file=/dev/null; . \"%s\"; echo \"$cache_file\"",
+                        configSite))
+                .directory(workingDir);
+        processBuilder.environment().remove(AutoconfCache.CONFIG_CACHE_ENV);
+        processBuilder.environment().remove(AutoconfCache.CONFIG_CACHE_LIST_ENV);
+        processBuilder.environment().putAll(env);
+        Process process = processBuilder.start();
+        String output = IOUtils.toString(process.getInputStream(),
+                StandardCharsets.UTF_8);
+        process.waitFor();
+        return output.trim();
+    }
+
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testMerge() throws IOException,
+            InterruptedException {
+        File tmpDir = Files.createTempDirectory(AutoconfCacheTest.class.getSimpleName()).toFile();
+        AutoconfCache instance = new AutoconfCache(new File(tmpDir, "cache"));
+        instance.init(Arrays.asList("gcc 7.3.0"));
+        File buildDir = new File(tmpDir,
+                "build");
+        buildDir.mkdir();
+        File privateCacheFile = new File(buildDir,
+                "config.cache");
+        Map<String, String> env = new HashMap<>();
+        instance.prepare(env,
+                null //cacheListFile
+        );
+        //config.site selects the private cache file unless --cache-file has
+        //been specified
+        assertEquals("/dev/null",
+                sourceConfigSite(env.get(AutoconfCache.CONFIG_SITE),
+                        new HashMap<>(),
+                        buildDir));
+        assertEquals(privateCacheFile.getAbsolutePath(),
+                sourceConfigSite(env.get(AutoconfCache.CONFIG_SITE),
+                        env,
+                        buildDir));
+        assertFalse(privateCacheFile.exists());
+        List<String> lines = Arrays.asList("# This file is a shell script that caches the results of configure",
+                "ac_cv_sizeof_long=${ac_cv_sizeof_long=8}",
+                "ac_cv_header_stdlib_h=${ac_cv_header_stdlib_h=yes}",
+                "ac_cv_header_zlib_h=${ac_cv_header_zlib_h=no}",
+                "ac_cv_prog_PYTHON=${ac_cv_prog_PYTHON=python}",
+                "ac_cv_lib_z_inflate=${ac_cv_lib_z_inflate=yes}",
+                "test \"${ac_cv_c_compiler_gnu+set}\" = set || ac_cv_c_compiler_gnu='yes'",
+                "ac_cv_header_zlib_h=${ac_cv_header_zlib_h=yes}",
+                "ac_cv_func_iconv=${ac_cv_func_iconv=yes}",
+                "gl_cv_func_working_mktime=${gl_cv_func_working_mktime=yes}");
+        Files.write(privateCacheFile.toPath(),
+                lines,
+                StandardCharsets.UTF_8);
+        assertEquals(3,
+                instance.merge(privateCacheFile));
+        //every run gets its own copy which is listed in the list file
+        File nextBuildDir = new File(tmpDir,
+                "next-build");
+        nextBuildDir.mkdir();
+        File cacheListFile = new File(tmpDir,
+                "config-caches");
+        Map<String, String> nextEnv = new HashMap<>();
+        instance.prepare(nextEnv,
+                cacheListFile);
+        File nextPrivateCacheFile = new File(nextBuildDir,
+                "config.cache");
+        assertEquals(nextPrivateCacheFile.getAbsolutePath(),
+                sourceConfigSite(nextEnv.get(AutoconfCache.CONFIG_SITE),
+                        nextEnv,
+                        nextBuildDir));
+        assertEquals(Arrays.asList(nextPrivateCacheFile.getAbsolutePath()),
+                Files.readAllLines(cacheListFile.toPath(),
+                        StandardCharsets.UTF_8));
+        List<String> seeded = Files.readAllLines(nextPrivateCacheFile.toPath(),
+                StandardCharsets.UTF_8);
+        //prefix and package dependent entries are filtered, the rest is sorted by name
+        assertEquals(Arrays.asList(lines.get(6),
+                lines.get(2),
+                lines.get(1)),
+                seeded);
+        Files.write(nextPrivateCacheFile.toPath(),
+                Arrays.asList("ac_cv_sizeof_int=${ac_cv_sizeof_int=4}"),
+                StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+        assertEquals(4,
+                instance.mergeListed(cacheListFile));
+    }
+
+    @Test
+    public void testInitKeepsOtherFingerprints() throws IOException {
+        File tmpDir = Files.createTempDirectory(AutoconfCacheTest.class.getSimpleName()).toFile();
+        File rootDir = new File(tmpDir, "cache");
+        AutoconfCache instance = new AutoconfCache(rootDir);
+        instance.init(Arrays.asList("gcc 7.3.0"));
+        File configSite = instance.getConfigSite();
+        assertTrue(configSite.exists());
+        AutoconfCache upgraded = new AutoconfCache(rootDir);
+        upgraded.init(Arrays.asList("gcc 8.1.0"));
+        assertTrue(configSite.exists());
+        assertEquals(2,
+                rootDir.list().length);
+    }
+
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testInitEvictsExpired() throws IOException {
+        File tmpDir = Files.createTempDirectory(AutoconfCacheTest.class.getSimpleName()).toFile();
+        File rootDir = new File(tmpDir, "cache");
+        AutoconfCache instance = new AutoconfCache(rootDir,
+                0 //maxAgeMillis
+        );
+        instance.init(Arrays.asList("gcc 7.3.0"));
+        File configSite = instance.getConfigSite();
+        File lockFile = new File(configSite.getParentFile(),
+                "lock");
+        lockFile.setLastModified(System.currentTimeMillis()-1000);
+        AutoconfCache upgraded = new AutoconfCache(rootDir,
+                0 //maxAgeMillis
+        );
+        upgraded.init(Arrays.asList("gcc 8.1.0"));
+        //held directories are never evicted
+        assertTrue(configSite.exists());
+        instance.release();
+        lockFile.setLastModified(System.currentTimeMillis()-1000);
+        upgraded.init(Arrays.asList("gcc 8.1.0"));
+        assertFalse(configSite.exists());
+        assertEquals(1,
+                rootDir.list().length);
+    }
+}
@@ -19,7 +19,13 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import org.junit.Test;
 
 /**
@@ -124,4 +130,62 @@ public class BinaryUtilsTest {
         String path = Paths.get("/", "bin").toString();
         BinaryUtils.validateBinary(binary, name, path);
     }
+
+    @Test
+    public void testResolveBinary() throws IOException {
+        Path binaryFoundInPath = Files.createTempFile(BinaryUtilsTest.class.getSimpleName(), // prefix
+                "foundInPath", //suffix
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("r-xr--r--")));
+        String path = String.join(File.pathSeparator,
+                Paths.get("/", "bin").toString(),
+                binaryFoundInPath.getParent().toString());
+        assertEquals(binaryFoundInPath.toFile().getAbsoluteFile(),
+                BinaryUtils.resolveBinary(binaryFoundInPath.getFileName().toString(),
+                        path));
+        assertNull(BinaryUtils.resolveBinary(binaryFoundInPath.getFileName().toString(),
+                Paths.get("/", "bin").toString()));
+    }
+
+    @Test
+    public void testResolveBinaries() throws IOException {
+        Path dir1 = Files.createTempDirectory(BinaryUtilsTest.class.getSimpleName());
+        Path dir2 = Files.createTempDirectory(BinaryUtilsTest.class.getSimpleName());
+        Path binary1 = Files.createFile(dir1.resolve("binary1"),
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("r-xr--r--")));
+        Path binary2 = Files.createFile(dir2.resolve("binary2"),
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("r-xr--r--")));
+        //not executable in the first directory, so that the second one is used
+        Files.createFile(dir1.resolve("binary2"),
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("r--r--r--")));
+        String path = String.join(File.pathSeparator,
+                dir1.toString(),
+                dir2.toString());
+        Map<String, File> result = BinaryUtils.resolveBinaries(Arrays.asList("binary2",
+                        "missing",
+                        "binary1"),
+                path);
+        assertEquals(Arrays.asList("binary2",
+                        "binary1"),
+                new LinkedList<>(result.keySet()));
+        assertEquals(binary2.toFile().getAbsoluteFile(),
+                result.get("binary2"));
+        assertEquals(binary1.toFile().getAbsoluteFile(),
+                result.get("binary1"));
+    }
+
+    @Test
+    public void testResolveBinaryDirectoryChanged() throws IOException {
+        Path dir = Files.createTempDirectory(BinaryUtilsTest.class.getSimpleName());
+        String path = dir.toString();
+        assertNull(BinaryUtils.resolveBinary("added",
+                path));
+        Path added = Files.createFile(dir.resolve("added"),
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("r-xr--r--")));
+        //the modification time might have a resolution of seconds
+        Files.setLastModifiedTime(dir,
+                FileTime.fromMillis(Files.getLastModifiedTime(dir).toMillis()+2000));
+        assertEquals(added.toFile().getAbsoluteFile(),
+                BinaryUtils.resolveBinary("added",
+                        path));
+    }
 }
@@ -0,0 +1,121 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class BuildOutputSubscriptionTest {
+    private static final int LINE_COUNT = 100;
+    private static final int BUFFER_SIZE = 10;
+
+    /**
+     * Tests that a blocked subscriber with {@link BackpressurePolicy#DROP}
+     * doesn't block publishing and that the buffer stays bounded.
+     *
+     * @throws InterruptedException if such an exception occurs
+     */
+    @Test
+    public void testDrop() throws InterruptedException {
+        BuildOutputPublisher publisher = new BuildOutputPublisher();
+        CountDownLatch blocker = new CountDownLatch(1);
+        BuildOutputSubscription instance = publisher.subscribe(line -> {
+                    try {
+                        blocker.await();
+                    }catch(InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                },
+                BUFFER_SIZE,
+                BackpressurePolicy.DROP);
+        try {
+            for(int i=0; i<LINE_COUNT; i++) {
+                publisher.publish(new BuildOutputLine("module",
+                        BuildStep.MAKE,
+                        BuildOutputLine.Stream.STDOUT,
+                        System.currentTimeMillis(),
+                        String.valueOf(i)));
+            }
+            assertTrue(instance.getBufferedCount() <= BUFFER_SIZE);
+            //one line might be held by the subscriber
+            assertTrue(instance.getDroppedCount() >= LINE_COUNT-BUFFER_SIZE-1);
+        }finally {
+            blocker.countDown();
+            instance.close();
+        }
+    }
+
+    /**
+     * Tests that a slow subscriber with {@link BackpressurePolicy#BLOCK}
+     * receives all lines framed from split writes in order and with their
+     * metadata.
+     *
+     * @throws InterruptedException if such an exception occurs
+     */
+    @Test
+    public void testBlock() throws InterruptedException {
+        BuildOutputPublisher publisher = new BuildOutputPublisher();
+        List<BuildOutputLine> lines = new CopyOnWriteArrayList<>();
+        CountDownLatch received = new CountDownLatch(LINE_COUNT);
+        BuildOutputSubscription instance = publisher.subscribe(line -> {
+                    lines.add(line);
+                    received.countDown();
+                },
+                BUFFER_SIZE,
+                BackpressurePolicy.BLOCK);
+        try {
+            LineFramer lineFramer = new LineFramer("module",
+                    BuildStep.CONFIGURE,
+                    BuildOutputLine.Stream.STDERR,
+                    publisher);
+            StringBuilder output = new StringBuilder();
+            for(int i=0; i<LINE_COUNT-1; i++) {
+                output.append(i).append("\r\n");
+            }
+            //unterminated last line
+            output.append(LINE_COUNT-1);
+            byte[] bytes = output.toString().getBytes(StandardCharsets.UTF_8);
+            for(int i=0; i<bytes.length; i+=3) {
+                lineFramer.write(bytes,
+                        i,
+                        Math.min(3, bytes.length-i));
+            }
+            lineFramer.flush();
+            received.await();
+            assertEquals(0,
+                    instance.getDroppedCount());
+            for(int i=0; i<LINE_COUNT; i++) {
+                BuildOutputLine line = lines.get(i);
+                assertEquals(String.valueOf(i),
+                        line.getText());
+                assertEquals(BuildStep.CONFIGURE,
+                        line.getBuildStep());
+                assertEquals(BuildOutputLine.Stream.STDERR,
+                        line.getStream());
+            }
+        }finally {
+            instance.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class BuildProgressDispatcherTest {
+
+    private static BuildProgress createProgress(long completedUnits) {
+        return new BuildProgress("module",
+                BuildStep.MAKE,
+                completedUnits,
+                BuildProgress.UNKNOWN, //expectedUnits
+                (int) BuildProgress.UNKNOWN, //percentDone
+                0, //elapsedMillis
+                BuildProgress.UNKNOWN //etaMillis
+        );
+    }
+
+    /**
+     * Tests that a blocked listener neither blocks the notifying thread nor
+     * makes notifications pile up.
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testOnProgress() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<BuildProgress> delivered = new LinkedBlockingQueue<>();
+        BlockingQueue<Thread> deliveryThreads = new LinkedBlockingQueue<>();
+        List<BuildProgressListener> listeners = Arrays.asList(progress -> {
+            deliveryThreads.add(Thread.currentThread());
+            delivered.add(progress);
+            blocked.countDown();
+            try {
+                release.await();
+            }catch(InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        BuildProgressDispatcher instance = new BuildProgressDispatcher(listeners);
+        instance.onProgress(createProgress(1));
+        blocked.await();
+        //the listener is blocked, but notifications return immediately
+        for(int i=2; i<=10; i++) {
+            instance.onProgress(createProgress(i));
+        }
+        release.countDown();
+        assertEquals(1,
+                delivered.poll(10, TimeUnit.SECONDS).getCompletedUnits());
+        assertEquals(10,
+                delivered.poll(10, TimeUnit.SECONDS).getCompletedUnits());
+        assertNull(delivered.poll(500, TimeUnit.MILLISECONDS));
+        assertNotEquals(Thread.currentThread(),
+                deliveryThreads.take());
+    }
+}
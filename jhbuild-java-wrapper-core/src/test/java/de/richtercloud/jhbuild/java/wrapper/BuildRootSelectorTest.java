@@ -0,0 +1,79 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class BuildRootSelectorTest {
+
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testSelect() throws IOException {
+        File tmpDir = Files.createTempDirectory(BuildRootSelectorTest.class.getSimpleName()).toFile();
+        File sourceDir = new File(tmpDir,
+                "source");
+        Files.createDirectories(sourceDir.toPath());
+        Files.write(new File(sourceDir, "main.c").toPath(),
+                new byte[1024]);
+        File diskBuildRootDir = new File(tmpDir,
+                "build");
+        File tmpfsDir = new File(tmpDir,
+                "tmpfs");
+        Files.createDirectories(tmpfsDir.toPath());
+        BuildRootSelector instance = new BuildRootSelector(diskBuildRootDir,
+                tmpfsDir,
+                BuildRootSelector.SIZE_FACTOR_DEFAULT);
+        try (BuildRootSelector.Reservation reservation = instance.select(sourceDir)) {
+            assertEquals(tmpfsDir,
+                    reservation.getBuildRootDir().getParentFile());
+            assertTrue(reservation.isTmpfs());
+            //every selector uses its own directory which only the user can
+            //access
+            BuildRootSelector other = new BuildRootSelector(diskBuildRootDir,
+                    tmpfsDir,
+                    BuildRootSelector.SIZE_FACTOR_DEFAULT);
+            assertNotEquals(reservation.getBuildRootDir(),
+                    other.getTmpfsBuildRootDir());
+            assertEquals(PosixFilePermissions.fromString("rwx------"),
+                    Files.getPosixFilePermissions(reservation.getBuildRootDir().toPath()));
+        }
+        //a tree which can't fit falls back to disk
+        BuildRootSelector tooSmall = new BuildRootSelector(diskBuildRootDir,
+                tmpfsDir,
+                (double) tmpfsDir.getUsableSpace());
+        try (BuildRootSelector.Reservation reservation = tooSmall.select(sourceDir)) {
+            assertEquals(diskBuildRootDir,
+                    reservation.getBuildRootDir());
+        }
+        BuildRootSelector diskOnly = new BuildRootSelector(diskBuildRootDir,
+                null, //tmpfsDir
+                BuildRootSelector.SIZE_FACTOR_DEFAULT);
+        try (BuildRootSelector.Reservation reservation = diskOnly.select(sourceDir)) {
+            assertEquals(diskBuildRootDir,
+                    reservation.getBuildRootDir());
+        }
+    }
+}
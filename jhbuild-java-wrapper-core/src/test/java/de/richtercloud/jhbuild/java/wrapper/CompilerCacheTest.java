@@ -0,0 +1,91 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class CompilerCacheTest {
+
+    @Test
+    public void testGetStatistics() throws IOException,
+            InterruptedException {
+        File tmpDir = Files.createTempDirectory(CompilerCacheTest.class.getSimpleName()).toFile();
+        File ccacheFile = new File(tmpDir,
+                "ccache");
+        //output format of ccache 4.x
+        Files.write(ccacheFile.toPath(),
+                ("#!/bin/sh\n"
+                + "printf 'stats_updated_timestamp\\t1700000000\\n"
+                + "direct_cache_hit\\t3\\n"
+                + "preprocessed_cache_hit\\t2\\n"
+                + "cache_miss\\t7\\n'\n").getBytes(StandardCharsets.UTF_8));
+        Files.setPosixFilePermissions(ccacheFile.toPath(),
+                PosixFilePermissions.fromString("rwxr-xr-x"));
+        CompilerCache instance = new CompilerCache("ccache",
+                new File(tmpDir, "cache"),
+                CompilerCache.MAX_SIZE_DEFAULT);
+        assertTrue(instance.isAvailable(tmpDir.getAbsolutePath()));
+        CompilerCache.Statistics statistics = instance.getStatistics(tmpDir.getAbsolutePath());
+        assertEquals(5,
+                statistics.getHits());
+        assertEquals(7,
+                statistics.getMisses());
+        CompilerCache.Statistics difference = statistics.since(new CompilerCache.Statistics(1, 2));
+        assertEquals(4,
+                difference.getHits());
+        assertEquals(5,
+                difference.getMisses());
+        assertNull(new CompilerCache("ccache",
+                new File(tmpDir, "cache"),
+                CompilerCache.MAX_SIZE_DEFAULT).getStatistics(new File(tmpDir, "inexisting").getAbsolutePath()));
+    }
+
+    @Test
+    public void testConfigureEnvironment() throws IOException {
+        File tmpDir = Files.createTempDirectory(CompilerCacheTest.class.getSimpleName()).toFile();
+        File cacheDir = new File(tmpDir,
+                "cache");
+        CompilerCache instance = new CompilerCache("ccache",
+                cacheDir,
+                1024L*1024*1024);
+        Map<String, String> env = new HashMap<>();
+        instance.configureEnvironment(env,
+                "gcc",
+                "inexisting-c++",
+                tmpDir.getAbsolutePath());
+        assertEquals("ccache gcc",
+                env.get("CC"));
+        assertFalse(env.containsKey("CXX"));
+        assertEquals(cacheDir.getAbsolutePath(),
+                env.get("CCACHE_DIR"));
+        assertEquals("1024M",
+                env.get("CCACHE_MAXSIZE"));
+    }
+}
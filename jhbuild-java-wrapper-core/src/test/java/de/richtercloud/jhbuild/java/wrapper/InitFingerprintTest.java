@@ -0,0 +1,56 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class InitFingerprintTest {
+    private static final String CONFIGURATION = "PATH=/bin git=git";
+
+    @Test
+    public void testStoreLoad() throws IOException {
+        File tmpDir = Files.createTempDirectory(InitFingerprintTest.class.getSimpleName()).toFile();
+        File binaryFile = new File(tmpDir,
+                "git");
+        Files.write(binaryFile.toPath(),
+                "#!/bin/sh".getBytes(StandardCharsets.UTF_8));
+        File fingerprintFile = new File(tmpDir,
+                InitFingerprint.FILE_NAME);
+        assertNull(InitFingerprint.load(fingerprintFile));
+        InitFingerprint instance = new InitFingerprint(CONFIGURATION);
+        instance.addFile("git",
+                binaryFile);
+        instance.store(fingerprintFile);
+        assertTrue(InitFingerprint.load(fingerprintFile).isValid(CONFIGURATION));
+        assertFalse(InitFingerprint.load(fingerprintFile).isValid("PATH=/usr/bin git=git"));
+        //a rebuilt binary has a different size
+        Files.write(binaryFile.toPath(),
+                "#!/bin/bash".getBytes(StandardCharsets.UTF_8));
+        assertFalse(InitFingerprint.load(fingerprintFile).isValid(CONFIGURATION));
+        Files.delete(binaryFile.toPath());
+        assertFalse(InitFingerprint.load(fingerprintFile).isValid(CONFIGURATION));
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class MakeJobserverTest {
+    private static final int TARGET_COUNT = 8;
+
+    /**
+     * Tests that a {@code make} client of the jobserver doesn't run more jobs
+     * than there're tokens.
+     *
+     * @throws IOException if such an exception occurs
+     * @throws InterruptedException if such an exception occurs
+     */
+    @Test
+    public void testMakeClient() throws IOException,
+            InterruptedException {
+        try (MakeJobserver instance = MakeJobserver.create(JHBuildJavaWrapper.MAKE_DEFAULT,
+                2)) {
+            Assume.assumeTrue("GNU make and mkfifo need to be installed",
+                    instance != null);
+            File dir = Files.createTempDirectory(MakeJobserverTest.class.getSimpleName()).toFile();
+            StringBuilder makefile = new StringBuilder("all:");
+            for(int i=0; i<TARGET_COUNT; i++) {
+                makefile.append(" target").append(i);
+            }
+            makefile.append('\n');
+            for(int i=0; i<TARGET_COUNT; i++) {
+                makefile.append("target").append(i).append(":\n")
+                        .append("\t@echo start >> log; sleep 0.2; echo end >> log\n");
+            }
+            Files.write(new File(dir, "Makefile").toPath(),
+                    makefile.toString().getBytes(StandardCharsets.UTF_8));
+            instance.acquire();
+            int exitValue;
+            try {
+                ProcessBuilder processBuilder = new ProcessBuilder("sh", "-c",
+                        String.format("%s %s",
+                                instance.getShellPrefix(),
+                                JHBuildJavaWrapper.MAKE_DEFAULT))
+                        .directory(dir)
+                        .inheritIO();
+                processBuilder.environment().put(MakeJobserver.MAKEFLAGS,
+                        instance.getMakeflags());
+                exitValue = processBuilder.start().waitFor();
+            }finally {
+                instance.release();
+            }
+            assertEquals(0,
+                    exitValue);
+            List<String> log = Files.readAllLines(new File(dir, "log").toPath());
+            assertEquals(2*TARGET_COUNT,
+                    log.size());
+            int running = 0;
+            int maxRunning = 0;
+            for(String line : log) {
+                running += "start".equals(line) ? 1 : -1;
+                maxRunning = Math.max(maxRunning, running);
+            }
+            assertEquals("the implicit job of make and the remaining token",
+                    2,
+                    maxRunning);
+        }
+    }
+}
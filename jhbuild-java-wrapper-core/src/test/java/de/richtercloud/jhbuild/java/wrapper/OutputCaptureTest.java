@@ -0,0 +1,54 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class OutputCaptureTest {
+
+    @Test
+    public void testGetTail() throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        OutputCapture instance = new OutputCapture(target,
+                log,
+                8);
+        instance.write("abc".getBytes(StandardCharsets.UTF_8));
+        assertEquals("abc",
+                instance.getTail());
+        instance.write("defghij".getBytes(StandardCharsets.UTF_8));
+        instance.write('k');
+        //a write larger than the tail only keeps its end
+        instance.write("0123456789lmnopqrs".getBytes(StandardCharsets.UTF_8),
+                10,
+                8);
+        assertEquals("[11 bytes omitted, see full log]lmnopqrs",
+                instance.getTail());
+        assertEquals(19,
+                instance.getCount());
+        assertEquals("abcdefghijklmnopqrs",
+                target.toString("UTF-8"));
+        assertEquals("abcdefghijklmnopqrs",
+                log.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class ParallelismGovernorTest {
+    private static final long GIB = 1024L*1024*1024;
+
+    @Test
+    public void testComputeTarget() {
+        //idle host with enough memory gets all tokens
+        assertEquals(8,
+                ParallelismGovernor.computeTarget(8, 0.0, 64*GIB, GIB, 8, 8));
+        //load of other processes takes processors away
+        assertEquals(5,
+                ParallelismGovernor.computeTarget(8, 11.0, 64*GIB, GIB, 8, 8));
+        //running jobs hold their memory, one job is kept as reserve
+        assertEquals(4,
+                ParallelismGovernor.computeTarget(8, 0.0, 2*GIB, GIB, 3, 8));
+        //low memory backs off, but never below one job
+        assertEquals(1,
+                ParallelismGovernor.computeTarget(8, 0.0, 0, GIB, 2, 8));
+    }
+
+    @Test
+    public void testLearnMemoryPerJob() throws IOException,
+            InterruptedException {
+        File statisticsFile = new File(Files.createTempDirectory(ParallelismGovernorTest.class.getSimpleName()).toFile(),
+                "parallelism.properties");
+        long learned;
+        try (MakeJobserver jobserver = MakeJobserver.create(JHBuildJavaWrapper.MAKE_DEFAULT,
+                2)) {
+            Assume.assumeTrue("GNU make and mkfifo need to be installed",
+                    jobserver != null);
+            try (ParallelismGovernor instance = new ParallelismGovernor(jobserver,
+                    statisticsFile,
+                    ParallelismGovernor.INTERVAL_MILLIS_DEFAULT)) {
+                assertEquals(ParallelismGovernor.MEMORY_PER_JOB_DEFAULT,
+                        instance.getMemoryPerJob());
+                instance.onBuildStepFinished(new BuildStepMetrics("module",
+                        BuildStep.MAKE,
+                        1000, //wallTimeMillis
+                        BuildStepMetrics.UNKNOWN, //userTimeMillis
+                        BuildStepMetrics.UNKNOWN, //systemTimeMillis
+                        8*GIB, //peakRssBytes
+                        BuildStepMetrics.UNKNOWN, //bytesRead
+                        BuildStepMetrics.UNKNOWN //bytesWritten
+                ));
+                learned = instance.getMemoryPerJob();
+                assertTrue(learned > ParallelismGovernor.MEMORY_PER_JOB_DEFAULT);
+            }
+        }
+        try (MakeJobserver jobserver = MakeJobserver.create(JHBuildJavaWrapper.MAKE_DEFAULT,
+                2);
+                ParallelismGovernor instance = new ParallelismGovernor(jobserver,
+                        statisticsFile,
+                        ParallelismGovernor.INTERVAL_MILLIS_DEFAULT)) {
+            assertEquals(learned,
+                    instance.getMemoryPerJob());
+        }
+    }
+}
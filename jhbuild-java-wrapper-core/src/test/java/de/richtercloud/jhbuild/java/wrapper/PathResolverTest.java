@@ -0,0 +1,90 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class PathResolverTest {
+
+    /**
+     * Tests that a binary which is made executable after a failed lookup is
+     * found although the modification time of its directory didn't change.
+     *
+     * @throws IOException if such an exception occurs
+     */
+    @Test
+    public void testResolveMadeExecutable() throws IOException {
+        Path dir = Files.createTempDirectory(PathResolverTest.class.getSimpleName());
+        Path binaryPath = dir.resolve("tool");
+        Files.write(binaryPath,
+                new byte[0]);
+        Files.setPosixFilePermissions(binaryPath,
+                PosixFilePermissions.fromString("rw-r--r--"));
+        FileTime dirLastModified = Files.getLastModifiedTime(dir);
+        PathResolver instance = new PathResolver();
+        assertNull(instance.resolve("tool",
+                dir.toString()));
+        Files.setPosixFilePermissions(binaryPath,
+                PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.setLastModifiedTime(dir,
+                dirLastModified);
+        assertEquals(binaryPath.toFile(),
+                instance.resolve("tool",
+                        dir.toString()));
+    }
+
+    /**
+     * Tests that a binary which has been added without changing the
+     * modification time of its directory (e.g. on a file system with coarse
+     * timestamps) is found.
+     *
+     * @throws IOException if such an exception occurs
+     */
+    @Test
+    public void testResolveAddedWithoutDirectoryChange() throws IOException {
+        Path dir = Files.createTempDirectory(PathResolverTest.class.getSimpleName());
+        FileTime dirLastModified = Files.getLastModifiedTime(dir);
+        PathResolver instance = new PathResolver();
+        assertNull(instance.resolve("tool",
+                dir.toString()));
+        Path binaryPath = dir.resolve("tool");
+        Files.write(binaryPath,
+                new byte[0]);
+        Files.setPosixFilePermissions(binaryPath,
+                PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.setLastModifiedTime(dir,
+                dirLastModified);
+        File expected = binaryPath.toFile();
+        assertEquals(expected,
+                instance.resolve("tool",
+                        dir.toString()));
+        //the outdated index has been discarded
+        assertEquals(expected,
+                instance.resolve("tool",
+                        dir.toString()));
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class PrerequisiteArtifactCacheTest {
+
+    private static File createStagedDir(File parentDir) throws IOException {
+        File stagedDir = new File(parentDir,
+                "staged");
+        Path stagedPath = stagedDir.toPath();
+        Files.createDirectories(stagedPath.resolve("bin"));
+        Files.createDirectories(stagedPath.resolve("libexec"));
+        Files.write(stagedPath.resolve("bin/tool"),
+                "#!/bin/sh".getBytes(StandardCharsets.UTF_8));
+        Files.setPosixFilePermissions(stagedPath.resolve("bin/tool"),
+                PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.createLink(stagedPath.resolve("libexec/tool-builtin"),
+                stagedPath.resolve("bin/tool"));
+        Files.createSymbolicLink(stagedPath.resolve("bin/tool-alias"),
+                Paths.get("tool"));
+        return stagedDir;
+    }
+
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testStoreRestore() throws IOException,
+            ExtractionException {
+        File tmpDir = Files.createTempDirectory(PrerequisiteArtifactCacheTest.class.getSimpleName()).toFile();
+        File stagedDir = createStagedDir(tmpDir);
+        PrerequisiteArtifactCache instance = new PrerequisiteArtifactCache(new File(tmpDir, "cache"),
+                PrerequisiteArtifactCache.MAX_SIZE_DEFAULT);
+        String key = PrerequisiteArtifactCache.createKey(Arrays.asList("tool", "source 1"));
+        assertNotEquals(key,
+                PrerequisiteArtifactCache.createKey(Arrays.asList("tool", "source 2")));
+        File prefixDir = new File(tmpDir,
+                "prefix");
+        assertFalse(instance.restore(key,
+                prefixDir));
+        instance.store(key,
+                stagedDir);
+        assertTrue(instance.restore(key,
+                prefixDir));
+        Path prefixPath = prefixDir.toPath();
+        assertArrayEquals("#!/bin/sh".getBytes(StandardCharsets.UTF_8),
+                Files.readAllBytes(prefixPath.resolve("bin/tool")));
+        assertTrue(Files.isExecutable(prefixPath.resolve("bin/tool")));
+        assertTrue(Files.isSameFile(prefixPath.resolve("bin/tool"),
+                prefixPath.resolve("libexec/tool-builtin")));
+        assertEquals(Paths.get("tool"),
+                Files.readSymbolicLink(prefixPath.resolve("bin/tool-alias")));
+    }
+
+    @Test
+    public void testRestoreCorrupt() throws IOException,
+            ExtractionException {
+        File tmpDir = Files.createTempDirectory(PrerequisiteArtifactCacheTest.class.getSimpleName()).toFile();
+        File stagedDir = createStagedDir(tmpDir);
+        File cacheDir = new File(tmpDir, "cache");
+        PrerequisiteArtifactCache instance = new PrerequisiteArtifactCache(cacheDir,
+                PrerequisiteArtifactCache.MAX_SIZE_DEFAULT);
+        String key = PrerequisiteArtifactCache.createKey(Arrays.asList("tool"));
+        instance.store(key,
+                stagedDir);
+        File artifactFile = new File(cacheDir,
+                key+".tar.gz");
+        Files.write(artifactFile.toPath(),
+                new byte[] {1, 2, 3});
+        File prefixDir = new File(tmpDir,
+                "prefix");
+        assertFalse(instance.restore(key,
+                prefixDir));
+        assertFalse(artifactFile.exists());
+        assertFalse(prefixDir.exists());
+    }
+
+    @Test
+    public void testEviction() throws IOException,
+            ExtractionException {
+        File tmpDir = Files.createTempDirectory(PrerequisiteArtifactCacheTest.class.getSimpleName()).toFile();
+        File stagedDir = createStagedDir(tmpDir);
+        //incompressible content so that the artifact size is predictable
+        byte[] content = new byte[64*1024];
+        new Random(1L).nextBytes(content);
+        Files.write(stagedDir.toPath().resolve("bin/data"),
+                content);
+        PrerequisiteArtifactCache instance = new PrerequisiteArtifactCache(new File(tmpDir, "cache"),
+                content.length*3/2);
+        String key1 = PrerequisiteArtifactCache.createKey(Arrays.asList("tool1"));
+        String key2 = PrerequisiteArtifactCache.createKey(Arrays.asList("tool2"));
+        instance.store(key1,
+                stagedDir);
+        //make the first artifact the least recently used one independently
+        //from file system time stamp granularity
+        new File(instance.getCacheDir(), key1+".tar.gz").setLastModified(System.currentTimeMillis()-10000);
+        instance.store(key2,
+                stagedDir);
+        File prefixDir = new File(tmpDir,
+                "prefix");
+        assertFalse(instance.restore(key1,
+                prefixDir));
+        assertTrue(instance.restore(key2,
+                prefixDir));
+    }
+
+    @Test
+    public void testStoreLargerThanMaxSize() throws IOException,
+            ExtractionException {
+        File tmpDir = Files.createTempDirectory(PrerequisiteArtifactCacheTest.class.getSimpleName()).toFile();
+        File stagedDir = createStagedDir(tmpDir);
+        PrerequisiteArtifactCache instance = new PrerequisiteArtifactCache(new File(tmpDir, "cache"),
+                0 //maxSize
+        );
+        String key1 = PrerequisiteArtifactCache.createKey(Arrays.asList("tool1"));
+        String key2 = PrerequisiteArtifactCache.createKey(Arrays.asList("tool2"));
+        File prefixDir = new File(tmpDir,
+                "prefix");
+        assertTrue(instance.storeAndRestore(key1,
+                stagedDir,
+                prefixDir));
+        assertTrue(new File(prefixDir, "bin/tool").exists());
+        //the artifact stored last is retained, all others are evicted
+        instance.store(key2,
+                stagedDir);
+        assertFalse(instance.restore(key1,
+                prefixDir));
+        assertTrue(instance.restore(key2,
+                prefixDir));
+    }
+
+    /**
+     * Tests that instances sharing a cache directory can store the same key
+     * concurrently without corrupting the artifact.
+     *
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testStoreConcurrently() throws Exception {
+        File tmpDir = Files.createTempDirectory(PrerequisiteArtifactCacheTest.class.getSimpleName()).toFile();
+        File stagedDir = createStagedDir(tmpDir);
+        byte[] content = new byte[1024*1024];
+        new Random(1L).nextBytes(content);
+        Files.write(stagedDir.toPath().resolve("bin/data"),
+                content);
+        File cacheDir = new File(tmpDir, "cache");
+        String key = PrerequisiteArtifactCache.createKey(Arrays.asList("tool"));
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> future1 = executorService.submit(() -> {
+                new PrerequisiteArtifactCache(cacheDir,
+                        PrerequisiteArtifactCache.MAX_SIZE_DEFAULT).store(key,
+                                stagedDir);
+                return null;
+            });
+            Future<?> future2 = executorService.submit(() -> {
+                new PrerequisiteArtifactCache(cacheDir,
+                        PrerequisiteArtifactCache.MAX_SIZE_DEFAULT).store(key,
+                                stagedDir);
+                return null;
+            });
+            future1.get();
+            future2.get();
+        }finally {
+            executorService.shutdown();
+        }
+        File prefixDir = new File(tmpDir,
+                "prefix");
+        assertTrue(new PrerequisiteArtifactCache(cacheDir,
+                PrerequisiteArtifactCache.MAX_SIZE_DEFAULT).restore(key,
+                        prefixDir));
+        assertArrayEquals(content,
+                Files.readAllBytes(prefixDir.toPath().resolve("bin/data")));
+    }
+
+    /**
+     * Tests that restoring an artifact doesn't change the modification time
+     * of directories which already exist in the installation prefix.
+     *
+     * @throws IOException if such an exception occurs
+     * @throws ExtractionException if such an exception occurs
+     */
+    @Test
+    public void testRestoreKeepsExistingDirectories() throws IOException,
+            ExtractionException {
+        File tmpDir = Files.createTempDirectory(PrerequisiteArtifactCacheTest.class.getSimpleName()).toFile();
+        File stagedDir = createStagedDir(tmpDir);
+        Files.setLastModifiedTime(stagedDir.toPath().resolve("bin"),
+                FileTime.fromMillis(1500000000000L));
+        Files.createDirectories(stagedDir.toPath().resolve("share/empty"));
+        PrerequisiteArtifactCache instance = new PrerequisiteArtifactCache(new File(tmpDir, "cache"),
+                PrerequisiteArtifactCache.MAX_SIZE_DEFAULT);
+        String key = PrerequisiteArtifactCache.createKey(Arrays.asList("tool"));
+        instance.store(key,
+                stagedDir);
+        Path prefixPath = new File(tmpDir,
+                "prefix").toPath();
+        Files.createDirectories(prefixPath.resolve("bin"));
+        Files.write(prefixPath.resolve("bin/other"),
+                new byte[0]);
+        assertTrue(instance.restore(key,
+                prefixPath.toFile()));
+        assertTrue(Files.exists(prefixPath.resolve("bin/tool")));
+        assertTrue(Files.isDirectory(prefixPath.resolve("share/empty")));
+        //adding bin/tool changes the modification time, but it mustn't be
+        //reset to the one of the staged directory
+        assertNotEquals(FileTime.fromMillis(1500000000000L),
+                Files.getLastModifiedTime(prefixPath.resolve("bin")));
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class PrerequisiteSchedulerTest {
+
+    @Test
+    public void testRunOrder() throws Exception {
+        List<String> order = Collections.synchronizedList(new LinkedList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch independentStarted = new CountDownLatch(3);
+        PrerequisiteScheduler instance = new PrerequisiteScheduler(4,
+                () -> {});
+        for(String name : new String[] {"perl", "gettext", "zlib"}) {
+            instance.add(name,
+                    () -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        independentStarted.countDown();
+                        //independent prerequisites run concurrently
+                        assertTrue(independentStarted.await(10, TimeUnit.SECONDS));
+                        order.add(name);
+                        running.decrementAndGet();
+                        return true;
+                    });
+        }
+        instance.add("git",
+                () -> {
+                    order.add("git");
+                    return true;
+                },
+                "perl", "gettext", "zlib", "openssl");
+        assertTrue(instance.run());
+        assertEquals(3,
+                maxRunning.get());
+        assertEquals(4,
+                order.size());
+        assertEquals("git",
+                order.get(3));
+    }
+
+    @Test(expected = BuildFailureException.class)
+    public void testRunFailureAbortsSiblings() throws Exception {
+        AtomicBoolean aborted = new AtomicBoolean();
+        AtomicBoolean dependentStarted = new AtomicBoolean();
+        PrerequisiteScheduler instance = new PrerequisiteScheduler(2,
+                () -> aborted.set(true));
+        instance.add("zlib",
+                () -> {
+                    throw new BuildFailureException("zlib",
+                            BuildStep.MAKE,
+                            "",
+                            "");
+                });
+        instance.add("perl",
+                () -> {
+                    long start = System.currentTimeMillis();
+                    while(!aborted.get()) {
+                        assertTrue(System.currentTimeMillis()-start < 10000);
+                        Thread.sleep(10);
+                    }
+                    return false;
+                });
+        instance.add("python",
+                () -> {
+                    dependentStarted.set(true);
+                    return true;
+                },
+                "zlib");
+        try {
+            instance.run();
+        }finally {
+            assertTrue(aborted.get());
+            assertFalse(dependentStarted.get());
+        }
+    }
+
+    /**
+     * Tests that dependents of a prerequisite are built while its check runs
+     * and that a failing check fails the run.
+     *
+     * @throws Exception if such an exception occurs
+     */
+    @Test(expected = BuildFailureException.class)
+    public void testRunCheckInBackground() throws Exception {
+        CountDownLatch dependentFinished = new CountDownLatch(1);
+        AtomicBoolean checkOverlapped = new AtomicBoolean();
+        PrerequisiteScheduler instance = new PrerequisiteScheduler(2,
+                () -> {});
+        instance.add("zlib",
+                () -> {
+                    instance.submitCheck("zlib check",
+                            () -> {
+                                checkOverlapped.set(dependentFinished.await(10, TimeUnit.SECONDS));
+                                throw new BuildFailureException("zlib",
+                                        BuildStep.MAKE_CHECK,
+                                        "",
+                                        "");
+                            });
+                    return true;
+                });
+        instance.add("python",
+                () -> {
+                    dependentFinished.countDown();
+                    return true;
+                },
+                "zlib");
+        try {
+            instance.run();
+        }finally {
+            assertTrue(checkOverlapped.get());
+        }
+    }
+
+    @Test
+    public void testRunCanceled() throws Exception {
+        AtomicBoolean dependentStarted = new AtomicBoolean();
+        PrerequisiteScheduler instance = new PrerequisiteScheduler(1,
+                () -> {});
+        instance.add("perl",
+                () -> false);
+        instance.add("git",
+                () -> {
+                    dependentStarted.set(true);
+                    return true;
+                },
+                "perl");
+        assertFalse(instance.run());
+        assertFalse(dependentStarted.get());
+    }
+}
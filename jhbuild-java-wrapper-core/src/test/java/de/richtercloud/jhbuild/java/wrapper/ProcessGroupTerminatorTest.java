@@ -0,0 +1,91 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class ProcessGroupTerminatorTest {
+    private static final int DESCENDANT_COUNT = 3;
+
+    /**
+     * Tests that no descendant of a terminated process survives including
+     * orphans which have been reparented to {@code init}.
+     *
+     * @throws Exception if such an exception occurs
+     */
+    @Test
+    public void testTerminate() throws Exception {
+        ProcessGroupTerminator instance = new ProcessGroupTerminator("sh",
+                System.getenv("PATH"));
+        Assume.assumeTrue("setsid needs to be installed",
+                instance.isGrouping());
+        Process process = new ProcessBuilder(instance.wrap("sh",
+                "-c",
+                "sleep 1000 & sleep 1000 & (sleep 1000 &); wait"))
+                .start();
+        long processGroupId = ProcessMeasurement.getPid(process);
+        awaitGroupMembers(processGroupId);
+        long timeToQuiescence = instance.terminate(Arrays.asList(process),
+                10000 //gracePeriodMillis
+        );
+        assertTrue(timeToQuiescence < 10000);
+        assertFalse(process.isAlive());
+        assertTrue(ProcessGroupTerminator.getGroupMembers(processGroupId).isEmpty());
+    }
+
+    /**
+     * Tests that processes which ignore {@code SIGTERM} are killed after the
+     * grace period.
+     *
+     * @throws Exception if such an exception occurs
+     */
+    @Test
+    public void testTerminateEscalation() throws Exception {
+        ProcessGroupTerminator instance = new ProcessGroupTerminator("sh",
+                System.getenv("PATH"));
+        Assume.assumeTrue("setsid needs to be installed",
+                instance.isGrouping());
+        //the ignored signal is inherited by the children
+        Process process = new ProcessBuilder(instance.wrap("sh",
+                "-c",
+                "trap '' TERM; sleep 1000 & sleep 1000 & (sleep 1000 &); wait"))
+                .start();
+        long processGroupId = ProcessMeasurement.getPid(process);
+        awaitGroupMembers(processGroupId);
+        long timeToQuiescence = instance.terminate(Arrays.asList(process),
+                500 //gracePeriodMillis
+        );
+        assertTrue(timeToQuiescence >= 500);
+        assertFalse(process.isAlive());
+        assertTrue(ProcessGroupTerminator.getGroupMembers(processGroupId).isEmpty());
+    }
+
+    private void awaitGroupMembers(long processGroupId) throws InterruptedException {
+        List<Long> members = ProcessGroupTerminator.getGroupMembers(processGroupId);
+        while(members.size() < DESCENDANT_COUNT+1) {
+            Thread.sleep(10);
+            members = ProcessGroupTerminator.getGroupMembers(processGroupId);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class ProcessMeasurementTest {
+    private static final int PROCESS_COUNT = 3;
+
+    @Test
+    public void testParseTimes() {
+        assertArrayEquals(new long[] {62345, 120},
+                ProcessMeasurement.parseTimes("1m2.345s 0m0.120s"));
+        assertNull(ProcessMeasurement.parseTimes("invalid"));
+    }
+
+    @Test
+    public void testMeasure() throws IOException,
+            InterruptedException {
+        ProcessMeasurement instance = new ProcessMeasurement(BuildStep.MAKE);
+        List<String> commands = new ArrayList<>(Arrays.asList("sh", "-c"));
+        commands.add(String.join(" ",
+                instance.wrap("sleep 1;", "false")));
+        Process process = new ProcessBuilder(commands)
+                .redirectOutput(new File("/dev/null"))
+                .start();
+        instance.start(process);
+        process.waitFor();
+        //the status of the measured commands is preserved
+        assertEquals(1,
+                process.exitValue());
+        BuildStepMetrics result = instance.finish("module");
+        assertEquals("module",
+                result.getModuleName());
+        assertEquals(BuildStep.MAKE,
+                result.getBuildStep());
+        assertTrue(result.getWallTimeMillis() >= 1000);
+        assertTrue(result.getUserTimeMillis() >= 0);
+        assertTrue(result.getSystemTimeMillis() >= 0);
+    }
+
+    /**
+     * Tests that concurrently measured processes are sampled by one shared
+     * thread.
+     *
+     * @throws IOException if such an exception occurs
+     * @throws InterruptedException if such an exception occurs
+     */
+    @Test
+    public void testMeasureConcurrently() throws IOException,
+            InterruptedException {
+        Assume.assumeTrue("/proc needs to be available",
+                new File("/proc").isDirectory());
+        List<ProcessMeasurement> measurements = new ArrayList<>();
+        List<Process> processes = new ArrayList<>();
+        for(int i=0; i<PROCESS_COUNT; i++) {
+            ProcessMeasurement measurement = new ProcessMeasurement(BuildStep.MAKE);
+            List<String> commands = new ArrayList<>(Arrays.asList("sh", "-c"));
+            commands.add(String.join(" ",
+                    measurement.wrap("sleep 1")));
+            Process process = new ProcessBuilder(commands)
+                    .redirectOutput(new File("/dev/null"))
+                    .start();
+            measurement.start(process);
+            measurements.add(measurement);
+            processes.add(process);
+        }
+        long samplerThreadCount = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("rss-sampler"))
+                .count();
+        assertEquals(1,
+                samplerThreadCount);
+        for(int i=0; i<PROCESS_COUNT; i++) {
+            processes.get(i).waitFor();
+            BuildStepMetrics result = measurements.get(i).finish("module");
+            assertTrue(result.getPeakRssBytes() > 0);
+        }
+    }
+}
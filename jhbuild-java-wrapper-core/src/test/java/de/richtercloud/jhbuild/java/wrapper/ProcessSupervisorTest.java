@@ -0,0 +1,132 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class ProcessSupervisorTest {
+    private static final int PROCESS_COUNT = 8;
+    private static final int LINE_COUNT = 20000;
+
+    /**
+     * Tests that the output of concurrent processes is read completely by
+     * one thread and that finished processes are only retained up to
+     * {@link ProcessSupervisor#FINISHED_RETAINED}.
+     *
+     * @throws IOException if such an exception occurs
+     * @throws InterruptedException if such an exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testSupervise() throws IOException,
+            InterruptedException {
+        ProcessSupervisor instance = new ProcessSupervisor();
+        List<Process> processes = new LinkedList<>();
+        List<ByteArrayOutputStream> logs = new LinkedList<>();
+        for(int i=0; i<PROCESS_COUNT; i++) {
+            Process process = new ProcessBuilder("sh",
+                    "-c",
+                    String.format("seq 1 %d; echo error >&2",
+                            LINE_COUNT))
+                    .start();
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            instance.supervise(process,
+                    new OutputCapture(null, log, 16),
+                    new OutputCapture(null, log, 16),
+                    log,
+                    null //logFile
+            );
+            processes.add(process);
+            logs.add(log);
+        }
+        int multiplexerThreads = 0;
+        for(Thread thread : Thread.getAllStackTraces().keySet()) {
+            if(thread.getName().equals("process-output-multiplexer")) {
+                multiplexerThreads++;
+            }
+        }
+        assertTrue(multiplexerThreads <= 1);
+        for(int i=0; i<PROCESS_COUNT; i++) {
+            Process process = processes.get(i);
+            process.waitFor();
+            ProcessOutput output = instance.getOutput(process);
+            output.awaitOutput();
+            assertTrue(output.getStdoutTail().endsWith(String.format("\n%d\n",
+                    LINE_COUNT)));
+            assertEquals("error\n",
+                    output.getStderrTail());
+            assertTrue(logs.get(i).toString("UTF-8").startsWith("1\n2\n"));
+        }
+        assertEquals(0,
+                instance.getRunningCount());
+        for(int i=0; i<ProcessSupervisor.FINISHED_RETAINED; i++) {
+            Process process = new ProcessBuilder("true").start();
+            instance.supervise(process,
+                    new OutputCapture(null, null, 16),
+                    null, //stderrCapture
+                    null, //logOutputStream
+                    null //logFile
+            );
+            process.waitFor();
+        }
+        long start = System.currentTimeMillis();
+        while(instance.getRunningCount() > 0) {
+            assertTrue(System.currentTimeMillis()-start < 10000);
+            Thread.sleep(10);
+        }
+        assertEquals(ProcessSupervisor.FINISHED_RETAINED,
+                instance.getFinishedCount());
+        //the first processes have been evicted
+        assertNull(instance.getOutput(processes.get(0)));
+    }
+
+    @Test
+    public void testSuperviseLogFile() throws IOException,
+            InterruptedException {
+        ProcessSupervisor instance = new ProcessSupervisor();
+        File logFile = Files.createTempFile(ProcessSupervisorTest.class.getSimpleName(),
+                ".log").toFile();
+        Process process = new ProcessBuilder("sh",
+                "-c",
+                "echo out; echo error >&2")
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile))
+                .redirectError(ProcessBuilder.Redirect.appendTo(logFile))
+                .start();
+        ProcessOutput output = instance.supervise(process,
+                null, //stdoutCapture
+                null, //stderrCapture
+                null, //logOutputStream
+                logFile);
+        process.waitFor();
+        output.awaitOutput();
+        //the tail of the log contains both streams
+        assertEquals("out\nerror\n",
+                output.getStdoutTail());
+        assertNull(output.getStderrTail());
+    }
+}
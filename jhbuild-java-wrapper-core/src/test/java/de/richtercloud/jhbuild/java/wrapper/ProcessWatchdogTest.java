@@ -0,0 +1,158 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class ProcessWatchdogTest {
+    private final ProcessGroupTerminator processGroupTerminator = new ProcessGroupTerminator("sh",
+            System.getenv("PATH"));
+    private final ProcessSupervisor processSupervisor = new ProcessSupervisor();
+    private final BuildOutputPublisher buildOutputPublisher = new BuildOutputPublisher();
+
+    /**
+     * Tests that a process and its descendants are terminated after the
+     * deadline.
+     *
+     * @throws IOException if such an exception occurs
+     * @throws InterruptedException if such an exception occurs
+     */
+    @Test
+    public void testAwaitDeadline() throws IOException,
+            InterruptedException {
+        Assume.assumeTrue("setsid needs to be installed",
+                processGroupTerminator.isGrouping());
+        Process process = start("while true; do echo output; sleep 0.01; done & wait");
+        long processGroupId = ProcessMeasurement.getPid(process);
+        ProcessWatchdog instance = new ProcessWatchdog(processGroupTerminator,
+                buildOutputPublisher);
+        BuildTimeoutException.Reason result = instance.await(process,
+                processSupervisor.getOutput(process),
+                300, //deadlineMillis
+                10000, //inactivityTimeoutMillis
+                1000 //gracePeriodMillis
+        );
+        assertEquals(BuildTimeoutException.Reason.DEADLINE,
+                result);
+        assertFalse(process.isAlive());
+        assertTrue(ProcessGroupTerminator.getGroupMembers(processGroupId).isEmpty());
+    }
+
+    /**
+     * Tests that a process which neither writes output nor uses CPU time is
+     * terminated after the inactivity timeout.
+     *
+     * @throws IOException if such an exception occurs
+     * @throws InterruptedException if such an exception occurs
+     */
+    @Test
+    public void testAwaitInactivity() throws IOException,
+            InterruptedException {
+        Assume.assumeTrue("setsid needs to be installed",
+                processGroupTerminator.isGrouping());
+        Process process = start("echo waiting for input; read line");
+        ProcessWatchdog instance = new ProcessWatchdog(processGroupTerminator,
+                buildOutputPublisher);
+        BuildTimeoutException.Reason result = instance.await(process,
+                processSupervisor.getOutput(process),
+                0, //deadlineMillis
+                300, //inactivityTimeoutMillis
+                1000 //gracePeriodMillis
+        );
+        assertEquals(BuildTimeoutException.Reason.INACTIVITY,
+                result);
+        assertFalse(process.isAlive());
+    }
+
+    /**
+     * Tests that a process which writes output regularly isn't terminated
+     * even though it runs longer than the inactivity timeout.
+     *
+     * @throws IOException if such an exception occurs
+     * @throws InterruptedException if such an exception occurs
+     */
+    @Test
+    public void testAwaitActive() throws IOException,
+            InterruptedException {
+        Process process = start("i=0; while [ $i -lt 20 ]; do echo $i; sleep 0.05; i=$((i+1)); done");
+        ProcessWatchdog instance = new ProcessWatchdog(processGroupTerminator,
+                buildOutputPublisher);
+        BuildTimeoutException.Reason result = instance.await(process,
+                processSupervisor.getOutput(process),
+                0, //deadlineMillis
+                300, //inactivityTimeoutMillis
+                1000 //gracePeriodMillis
+        );
+        assertNull(result);
+        assertEquals(0,
+                process.exitValue());
+    }
+
+    /**
+     * Tests that a process isn't considered stalled while publishing its
+     * output blocks on a subscriber.
+     *
+     * @throws IOException if such an exception occurs
+     * @throws InterruptedException if such an exception occurs
+     */
+    @Test
+    public void testAwaitInactivityWhilePublishingBlocks() throws IOException,
+            InterruptedException {
+        Assume.assumeTrue("setsid needs to be installed",
+                processGroupTerminator.isGrouping());
+        Process process = start("echo waiting for input; read line");
+        ProcessWatchdog instance = new ProcessWatchdog(processGroupTerminator,
+                buildOutputPublisher);
+        buildOutputPublisher.blockingStarted();
+        BuildTimeoutException.Reason result;
+        try {
+            result = instance.await(process,
+                    processSupervisor.getOutput(process),
+                    1000, //deadlineMillis
+                    300, //inactivityTimeoutMillis
+                    1000 //gracePeriodMillis
+            );
+        }finally {
+            buildOutputPublisher.blockingEnded();
+        }
+        assertEquals(BuildTimeoutException.Reason.DEADLINE,
+                result);
+        assertFalse(process.isAlive());
+    }
+
+    private Process start(String command) throws IOException {
+        Process process = new ProcessBuilder(processGroupTerminator.wrap("sh",
+                "-c",
+                command))
+                .start();
+        processSupervisor.supervise(process,
+                new OutputCapture(null, null, 1024),
+                new OutputCapture(null, null, 1024),
+                null, //logOutputStream
+                null //logFile
+        );
+        return process;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class ProgressParserTest {
+
+    /**
+     * Tests that compile and link lines of automake silent rules and verbose
+     * builds are counted even if lines are split across writes and that the
+     * percentage is estimated from the expected units.
+     */
+    @Test
+    public void testUnits() {
+        ProgressParser instance = new ProgressParser("module",
+                BuildStep.MAKE,
+                8, //expectedUnits
+                progress -> {}
+        );
+        StringBuilder longLine = new StringBuilder("gcc -c");
+        for(int i=0; i<1000; i++) {
+            longLine.append(" -DDEFINE").append(i);
+        }
+        byte[] output = String.join("\n",
+                "make  all-recursive",
+                "  CC       foo.lo",
+                "  CC       bar.lo",
+                "  CCLD     libfoo.la",
+                "Making all in doc",
+                "libtool: compile:  gcc -DHAVE_CONFIG_H -I. -c baz.c -o baz.o",
+                "/usr/bin/x86_64-linux-gnu-gcc-8 -o main main.o",
+                longLine.toString(),
+                "make[1]: Leaving directory '/tmp/foo'",
+                "").getBytes(StandardCharsets.UTF_8);
+        //split writes in the middle of lines
+        for(int i=0; i<output.length; i+=7) {
+            instance.write(output,
+                    i,
+                    Math.min(7, output.length-i));
+        }
+        BuildProgress progress = instance.getProgress();
+        assertEquals(6,
+                progress.getCompletedUnits());
+        assertEquals(75,
+                progress.getPercentDone());
+        assertTrue(progress.getEtaMillis() >= 0);
+    }
+
+    /**
+     * Tests that percentages of CMake generated Makefiles are used directly
+     * and that the percentage is unknown without expected units.
+     */
+    @Test
+    public void testCMakePercent() {
+        ProgressParser instance = new ProgressParser("module",
+                BuildStep.MAKE,
+                BuildProgress.UNKNOWN,
+                progress -> {}
+        );
+        byte[] output = "checking for gcc... gcc\n".getBytes(StandardCharsets.UTF_8);
+        instance.write(output,
+                0,
+                output.length);
+        assertEquals(BuildProgress.UNKNOWN,
+                instance.getProgress().getPercentDone());
+        output = ("[ 10%] Building C object CMakeFiles/foo.dir/foo.c.o\n"
+                + "[ 42%] Linking C shared library libfoo.so\n").getBytes(StandardCharsets.UTF_8);
+        instance.write(output,
+                0,
+                output.length);
+        BuildProgress progress = instance.getProgress();
+        assertEquals(3,
+                progress.getCompletedUnits());
+        assertEquals(42,
+                progress.getPercentDone());
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class SourceTreeClonerTest {
+
+    private static File createPristineTree() throws IOException {
+        File pristineDir = Files.createTempDirectory(SourceTreeClonerTest.class.getSimpleName()).toFile();
+        Path pristinePath = pristineDir.toPath();
+        Files.createDirectories(pristinePath.resolve("src/sub"));
+        Files.write(pristinePath.resolve("configure"),
+                "#!/bin/sh".getBytes(StandardCharsets.UTF_8));
+        Files.write(pristinePath.resolve("src/main.c"),
+                "int main() {}".getBytes(StandardCharsets.UTF_8));
+        Files.write(pristinePath.resolve("src/sub/patched.c"),
+                "original".getBytes(StandardCharsets.UTF_8));
+        Files.createSymbolicLink(pristinePath.resolve("src/link.c"),
+                Paths.get("main.c"));
+        return pristineDir;
+    }
+
+    @Test
+    public void testCloneCopy() throws IOException,
+            InterruptedException {
+        File pristineDir = createPristineTree();
+        File targetDir = new File(pristineDir.getParentFile(),
+                pristineDir.getName()+"-build");
+        SourceTreeCloner instance = new SourceTreeCloner(CloneMode.COPY,
+                4);
+        CloneMode result = instance.clone(pristineDir,
+                targetDir,
+                null);
+        assertEquals(CloneMode.COPY,
+                result);
+        Path targetPath = targetDir.toPath();
+        assertArrayEquals("int main() {}".getBytes(StandardCharsets.UTF_8),
+                Files.readAllBytes(targetPath.resolve("src/main.c")));
+        assertTrue(Files.isSymbolicLink(targetPath.resolve("src/link.c")));
+        //modifying the clone mustn't modify the pristine tree
+        Files.write(targetPath.resolve("src/main.c"),
+                "modified".getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals("int main() {}".getBytes(StandardCharsets.UTF_8),
+                Files.readAllBytes(pristineDir.toPath().resolve("src/main.c")));
+        //cloning again gives a clean tree
+        Files.write(targetPath.resolve("config.status"),
+                new byte[0]);
+        instance.clone(pristineDir,
+                targetDir,
+                null);
+        assertFalse(Files.exists(targetPath.resolve("config.status")));
+        assertArrayEquals("int main() {}".getBytes(StandardCharsets.UTF_8),
+                Files.readAllBytes(targetPath.resolve("src/main.c")));
+    }
+
+    @Test
+    public void testCloneHardLinkFarm() throws IOException,
+            InterruptedException {
+        File pristineDir = createPristineTree();
+        File targetDir = new File(pristineDir.getParentFile(),
+                pristineDir.getName()+"-build");
+        SourceTreeCloner instance = new SourceTreeCloner(CloneMode.HARD_LINK_FARM,
+                4);
+        CloneMode result = instance.clone(pristineDir,
+                targetDir,
+                new HashSet<>(Arrays.asList(String.join(File.separator, "src", "sub", "patched.c"))));
+        assertEquals(CloneMode.HARD_LINK_FARM,
+                result);
+        Path targetPath = targetDir.toPath();
+        assertTrue(Files.isSameFile(pristineDir.toPath().resolve("src/main.c"),
+                targetPath.resolve("src/main.c")));
+        assertFalse(Files.isSameFile(pristineDir.toPath().resolve("src/sub/patched.c"),
+                targetPath.resolve("src/sub/patched.c")));
+        Files.write(targetPath.resolve("src/sub/patched.c"),
+                "patched".getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals("original".getBytes(StandardCharsets.UTF_8),
+                Files.readAllBytes(pristineDir.toPath().resolve("src/sub/patched.c")));
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper.download;
+
+import de.richtercloud.jhbuild.java.wrapper.ExtractionException;
+import de.richtercloud.jhbuild.java.wrapper.ExtractionMode;
+import de.richtercloud.jhbuild.java.wrapper.MD5SumCheckUnequalsCallback;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class AutoDownloaderTest {
+    private static final String SOURCE_ROOT = "source-1.0";
+    private static final String FILE_CONTENT = "int main() { return 0; }\n";
+
+    @Test
+    public void testDownloadFileWritesManifest() throws IOException,
+            ExtractionException,
+            DownloadException {
+        File downloadDir = Files.createTempDirectory(AutoDownloaderTest.class.getSimpleName()).toFile();
+        DownloadCombi downloadCombi = createDownloadCombi(downloadDir);
+        boolean result = download(downloadCombi);
+        assertTrue(result);
+        File extractionDir = new File(downloadCombi.getExtractionLocation());
+        assertEquals(FILE_CONTENT,
+                new String(Files.readAllBytes(new File(extractionDir, "main.c").toPath()),
+                        StandardCharsets.UTF_8));
+        File manifestFile = ExtractionManifest.getManifestFile(extractionDir);
+        assertTrue(manifestFile.exists());
+        ExtractionManifest manifest = ExtractionManifest.read(manifestFile);
+        assertEquals(3,
+                manifest.size());
+        assertTrue(manifest.validate(downloadDir).isEmpty());
+        String[] stagingDirs = downloadDir.list((dir, name) -> name.contains(".staging"));
+        assertEquals(0,
+                stagingDirs.length);
+    }
+
+    @Test
+    public void testDownloadFileRepairsChangedEntries() throws IOException,
+            ExtractionException,
+            DownloadException {
+        File downloadDir = Files.createTempDirectory(AutoDownloaderTest.class.getSimpleName()).toFile();
+        DownloadCombi downloadCombi = createDownloadCombi(downloadDir);
+        download(downloadCombi);
+        File extractionDir = new File(downloadCombi.getExtractionLocation());
+        File mainFile = new File(extractionDir, "main.c");
+        Files.write(mainFile.toPath(),
+                "changed".getBytes(StandardCharsets.UTF_8));
+        //read-only entries are replaced instead of being overwritten
+        Files.setPosixFilePermissions(mainFile.toPath(),
+                PosixFilePermissions.fromString("r--r--r--"));
+        File missingFile = new File(extractionDir, "sub/README");
+        Files.delete(missingFile.toPath());
+        File buildOutput = new File(extractionDir, "main.o");
+        Files.write(buildOutput.toPath(),
+                new byte[] {1});
+        download(downloadCombi);
+        assertEquals(FILE_CONTENT,
+                new String(Files.readAllBytes(mainFile.toPath()),
+                        StandardCharsets.UTF_8));
+        assertTrue(missingFile.exists());
+        assertTrue("files which aren't part of the archive are left untouched",
+                buildOutput.exists());
+    }
+
+    @Test
+    public void testDownloadFileReplacesExtractionWithoutManifest() throws IOException,
+            ExtractionException,
+            DownloadException {
+        File downloadDir = Files.createTempDirectory(AutoDownloaderTest.class.getSimpleName()).toFile();
+        DownloadCombi downloadCombi = createDownloadCombi(downloadDir);
+        File extractionDir = new File(downloadCombi.getExtractionLocation());
+        //simulate an extraction which has been interrupted
+        Files.createDirectories(extractionDir.toPath());
+        File partialFile = new File(extractionDir, "main.c");
+        Files.write(partialFile.toPath(),
+                "int ma".getBytes(StandardCharsets.UTF_8));
+        download(downloadCombi);
+        assertEquals(FILE_CONTENT,
+                new String(Files.readAllBytes(partialFile.toPath()),
+                        StandardCharsets.UTF_8));
+        assertFalse(new File(extractionDir, "main.o").exists());
+    }
+
+    @Test
+    public void testDownloadFileReplacesExtractionWithCorruptManifest() throws IOException,
+            ExtractionException,
+            DownloadException {
+        File downloadDir = Files.createTempDirectory(AutoDownloaderTest.class.getSimpleName()).toFile();
+        DownloadCombi downloadCombi = createDownloadCombi(downloadDir);
+        download(downloadCombi);
+        File extractionDir = new File(downloadCombi.getExtractionLocation());
+        File manifestFile = ExtractionManifest.getManifestFile(extractionDir);
+        Files.write(manifestFile.toPath(),
+                "garbage".getBytes(StandardCharsets.UTF_8));
+        assertTrue(download(downloadCombi));
+        assertTrue(ExtractionManifest.read(manifestFile).validate(downloadDir).isEmpty());
+    }
+
+    private boolean download(DownloadCombi downloadCombi) throws IOException,
+            ExtractionException,
+            DownloadException {
+        return new AutoDownloader().downloadFile(downloadCombi,
+                true, //skipMD5SumCheck
+                DownloadFailureCallback.RETRY_5_TIMES,
+                MD5SumCheckUnequalsCallback.RETRY_5_TIMES,
+                DownloadEmptyCallback.RETRY_5_TIMES);
+    }
+
+    private DownloadCombi createDownloadCombi(File downloadDir) throws IOException {
+        File archiveFile = new File(downloadDir, SOURCE_ROOT + ".tar.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(archiveFile.toPath()));
+                TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(outputStream)) {
+            TarArchiveEntry dirEntry = new TarArchiveEntry(SOURCE_ROOT + "/");
+            tarOutputStream.putArchiveEntry(dirEntry);
+            tarOutputStream.closeArchiveEntry();
+            putFile(tarOutputStream,
+                    SOURCE_ROOT + "/main.c",
+                    FILE_CONTENT);
+            putFile(tarOutputStream,
+                    SOURCE_ROOT + "/sub/README",
+                    "readme");
+        }
+        return new DownloadCombi(archiveFile.toURI().toURL().toExternalForm(),
+                archiveFile.getAbsolutePath(),
+                ExtractionMode.EXTRACTION_MODE_TAR_GZ,
+                new File(downloadDir, SOURCE_ROOT).getAbsolutePath(),
+                "");
+    }
+
+    private void putFile(TarArchiveOutputStream tarOutputStream,
+            String name,
+            String content) throws IOException {
+        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(contentBytes.length);
+        entry.setMode(0100644);
+        tarOutputStream.putArchiveEntry(entry);
+        tarOutputStream.write(contentBytes);
+        tarOutputStream.closeArchiveEntry();
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper.download;
+
+import de.richtercloud.jhbuild.java.wrapper.ExtractionException;
+import de.richtercloud.jhbuild.java.wrapper.ExtractionMode;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class AutoSelectingExtractorTest {
+
+    /**
+     * Tests that the decompressor comparison for an archive which is too
+     * small for a representative benchmark isn't recorded.
+     *
+     * @throws IOException if such an exception occurs
+     * @throws ExtractionException if such an exception occurs
+     */
+    @Test
+    public void testExtractSmallArchive() throws IOException,
+            ExtractionException {
+        NativeExtractor nativeExtractor = new NativeExtractor();
+        File tmpDir = Files.createTempDirectory(AutoSelectingExtractorTest.class.getSimpleName()).toFile();
+        File archiveFile = new File(tmpDir, "pkg-1.0.tar.gz");
+        byte[] content = "int main() {}\n".getBytes(StandardCharsets.UTF_8);
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(archiveFile.toPath()));
+                TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(outputStream)) {
+            TarArchiveEntry mainEntry = new TarArchiveEntry("pkg-1.0/main.c");
+            mainEntry.setSize(content.length);
+            tarOutputStream.putArchiveEntry(mainEntry);
+            tarOutputStream.write(content);
+            tarOutputStream.closeArchiveEntry();
+        }
+        File targetDir = new File(tmpDir, "target");
+        DownloadCombi downloadCombi = new DownloadCombi(archiveFile.toURI().toURL().toExternalForm(),
+                archiveFile.getAbsolutePath(),
+                ExtractionMode.EXTRACTION_MODE_TAR_GZ,
+                new File(targetDir, "pkg-1.0").getAbsolutePath(),
+                "");
+        Assume.assumeTrue("tar and gzip or pigz need to be installed",
+                nativeExtractor.isSupported(downloadCombi,
+                        null //entries
+                ));
+        File cacheFile = new File(tmpDir, "extractors.properties");
+        AutoSelectingExtractor instance = new AutoSelectingExtractor(new JavaExtractor(),
+                nativeExtractor,
+                cacheFile);
+        instance.extract(downloadCombi,
+                targetDir,
+                null, //entries
+                () -> false //canceled
+        );
+        assertArrayEquals(content,
+                Files.readAllBytes(new File(targetDir, "pkg-1.0/main.c").toPath()));
+        assertFalse(cacheFile.exists());
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper.download;
+
+import java.util.Arrays;
+import java.util.Collections;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class ExtractionFilterTest {
+
+    @Test
+    public void testAcceptExclude() {
+        ExtractionFilter instance = ExtractionFilter.exclude("Lib/test/**",
+                "t/t[0-9]*");
+        assertTrue(instance.accept("Python-3.6.4", true));
+        assertTrue(instance.accept("Python-3.6.4/Lib/os.py", false));
+        assertTrue(instance.accept("Python-3.6.4/Lib/test", true));
+        assertFalse(instance.accept("Python-3.6.4/Lib/test/test_os.py", false));
+        assertFalse(instance.accept("Python-3.6.4/Lib/test/support/__init__.py", false));
+        assertFalse(instance.accept("git-2.13.3/t/t0000-basic.sh", false));
+        assertFalse(instance.accept("git-2.13.3/t/t4013/diff.log", false));
+        assertTrue(instance.accept("git-2.13.3/t/helper/test-chmtime.c", false));
+    }
+
+    @Test
+    public void testAcceptInclude() {
+        ExtractionFilter instance = new ExtractionFilter(Arrays.asList("src/**", "configure"),
+                Collections.singletonList("src/test"));
+        assertTrue(instance.accept("pkg-1.0/configure", false));
+        assertTrue(instance.accept("pkg-1.0/src/main.c", false));
+        assertTrue(instance.accept("pkg-1.0/doc", true));
+        assertFalse(instance.accept("pkg-1.0/doc/manual.txt", false));
+        assertFalse(instance.accept("pkg-1.0/src/test", true));
+        assertFalse(instance.accept("pkg-1.0/src/test/test.c", false));
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper.download;
+
+import de.richtercloud.jhbuild.java.wrapper.ExtractionException;
+import de.richtercloud.jhbuild.java.wrapper.ExtractionMode;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class JavaExtractorTest {
+    private static final int LINK_COUNT = 100;
+    private static final int FILE_SIZE = 1024*1024;
+    private static final long MTIME = 1500000000000L;
+
+    /**
+     * Tests extraction of an archive consisting mostly of hard and symbolic
+     * links to one large file, i.e. an archive where link handling dominates
+     * write volume.
+     *
+     * @throws IOException if such an exception occurs
+     * @throws ExtractionException if such an exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testExtractLinks() throws IOException,
+            ExtractionException {
+        File tmpDir = Files.createTempDirectory(JavaExtractorTest.class.getSimpleName()).toFile();
+        File archiveFile = new File(tmpDir, "links.tar.gz");
+        byte[] content = new byte[FILE_SIZE];
+        new Random(1L).nextBytes(content);
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(archiveFile.toPath()));
+                TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(outputStream)) {
+            TarArchiveEntry fileEntry = new TarArchiveEntry("links/data.bin");
+            fileEntry.setSize(content.length);
+            fileEntry.setMode(0100755);
+            fileEntry.setModTime(MTIME);
+            tarOutputStream.putArchiveEntry(fileEntry);
+            tarOutputStream.write(content);
+            tarOutputStream.closeArchiveEntry();
+            for(int i=0; i<LINK_COUNT; i++) {
+                TarArchiveEntry hardLinkEntry = new TarArchiveEntry(String.format("links/hard/data%d.bin", i),
+                        TarConstants.LF_LINK);
+                hardLinkEntry.setLinkName("links/data.bin");
+                hardLinkEntry.setMode(0100755);
+                //hard links share the modification time with their target
+                hardLinkEntry.setModTime(MTIME);
+                tarOutputStream.putArchiveEntry(hardLinkEntry);
+                tarOutputStream.closeArchiveEntry();
+                TarArchiveEntry symlinkEntry = new TarArchiveEntry(String.format("links/sym/data%d.bin", i),
+                        TarConstants.LF_SYMLINK);
+                symlinkEntry.setLinkName("../data.bin");
+                tarOutputStream.putArchiveEntry(symlinkEntry);
+                tarOutputStream.closeArchiveEntry();
+            }
+            //a symbolic link which precedes its target in the archive
+            TarArchiveEntry forwardSymlinkEntry = new TarArchiveEntry("links/forward",
+                    TarConstants.LF_SYMLINK);
+            forwardSymlinkEntry.setLinkName("late.txt");
+            tarOutputStream.putArchiveEntry(forwardSymlinkEntry);
+            tarOutputStream.closeArchiveEntry();
+            TarArchiveEntry lateEntry = new TarArchiveEntry("links/late.txt");
+            lateEntry.setSize(1);
+            tarOutputStream.putArchiveEntry(lateEntry);
+            tarOutputStream.write('x');
+            tarOutputStream.closeArchiveEntry();
+        }
+        File targetDir = new File(tmpDir, "target");
+        DownloadCombi downloadCombi = new DownloadCombi(archiveFile.toURI().toURL().toExternalForm(),
+                archiveFile.getAbsolutePath(),
+                ExtractionMode.EXTRACTION_MODE_TAR_GZ,
+                new File(targetDir, "links").getAbsolutePath(),
+                "");
+        ExtractionManifest manifest = new JavaExtractor().extract(downloadCombi,
+                targetDir,
+                null, //entries
+                () -> false //canceled
+        );
+        Path dataPath = new File(targetDir, "links/data.bin").toPath();
+        Object dataInode = Files.getAttribute(dataPath, "unix:ino", LinkOption.NOFOLLOW_LINKS);
+        for(int i=0; i<LINK_COUNT; i++) {
+            Path hardLinkPath = new File(targetDir, String.format("links/hard/data%d.bin", i)).toPath();
+            assertTrue(Files.isSameFile(dataPath,
+                    hardLinkPath));
+            assertEquals(dataInode,
+                    Files.getAttribute(hardLinkPath, "unix:ino", LinkOption.NOFOLLOW_LINKS));
+            Path symlinkPath = new File(targetDir, String.format("links/sym/data%d.bin", i)).toPath();
+            assertTrue(Files.isSymbolicLink(symlinkPath));
+            assertEquals("../data.bin",
+                    Files.readSymbolicLink(symlinkPath).toString());
+        }
+        assertEquals(LINK_COUNT+1,
+                ((Number)Files.getAttribute(dataPath, "unix:nlink", LinkOption.NOFOLLOW_LINKS)).intValue());
+        assertArrayEquals(content,
+                Files.readAllBytes(new File(targetDir, "links/sym/data0.bin").toPath()));
+        assertArrayEquals(new byte[] {'x'},
+                Files.readAllBytes(new File(targetDir, "links/forward").toPath()));
+        //links must not be materialized as copies, i.e. only data.bin and
+        //late.txt store content
+        Set<Object> inodes = new HashSet<>();
+        long storedBytes = 0;
+        int regularFileCount = 0;
+        try (Stream<Path> paths = Files.walk(targetDir.toPath())) {
+            for(Path path : (Iterable<Path>)paths::iterator) {
+                if(!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+                    continue;
+                }
+                regularFileCount++;
+                if(inodes.add(Files.getAttribute(path, "unix:ino", LinkOption.NOFOLLOW_LINKS))) {
+                    storedBytes += Files.size(path);
+                }
+            }
+        }
+        assertEquals(LINK_COUNT+2,
+                regularFileCount);
+        assertEquals(2,
+                inodes.size());
+        assertEquals(FILE_SIZE+1,
+                storedBytes);
+        assertEquals(2*LINK_COUNT+3,
+                manifest.size());
+        assertTrue(manifest.validate(targetDir).isEmpty());
+    }
+
+    /**
+     * Tests that hard links whose target is excluded by the extraction filter
+     * are skipped instead of failing the extraction.
+     *
+     * @throws IOException if such an exception occurs
+     * @throws ExtractionException if such an exception occurs
+     */
+    @Test
+    public void testExtractLinkToExcludedEntry() throws IOException,
+            ExtractionException {
+        File tmpDir = Files.createTempDirectory(JavaExtractorTest.class.getSimpleName()).toFile();
+        File archiveFile = new File(tmpDir, "pkg-1.0.tar.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(archiveFile.toPath()));
+                TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(outputStream)) {
+            TarArchiveEntry testEntry = new TarArchiveEntry("pkg-1.0/t/t0000-basic.sh");
+            testEntry.setSize(1);
+            tarOutputStream.putArchiveEntry(testEntry);
+            tarOutputStream.write('x');
+            tarOutputStream.closeArchiveEntry();
+            TarArchiveEntry hardLinkEntry = new TarArchiveEntry("pkg-1.0/t0000-basic.sh",
+                    TarConstants.LF_LINK);
+            hardLinkEntry.setLinkName("pkg-1.0/t/t0000-basic.sh");
+            tarOutputStream.putArchiveEntry(hardLinkEntry);
+            tarOutputStream.closeArchiveEntry();
+            TarArchiveEntry mainEntry = new TarArchiveEntry("pkg-1.0/main.c");
+            mainEntry.setSize(1);
+            tarOutputStream.putArchiveEntry(mainEntry);
+            tarOutputStream.write('y');
+            tarOutputStream.closeArchiveEntry();
+        }
+        File targetDir = new File(tmpDir, "target");
+        DownloadCombi downloadCombi = new DownloadCombi(archiveFile.toURI().toURL().toExternalForm(),
+                archiveFile.getAbsolutePath(),
+                ExtractionMode.EXTRACTION_MODE_TAR_GZ,
+                new File(targetDir, "pkg-1.0").getAbsolutePath(),
+                "",
+                ExtractionFilter.exclude("t"));
+        ExtractionManifest manifest = new JavaExtractor().extract(downloadCombi,
+                targetDir,
+                null, //entries
+                () -> false //canceled
+        );
+        assertTrue(new File(targetDir, "pkg-1.0/main.c").exists());
+        assertFalse(new File(targetDir, "pkg-1.0/t/t0000-basic.sh").exists());
+        assertFalse(new File(targetDir, "pkg-1.0/t0000-basic.sh").exists());
+        assertEquals(1,
+                manifest.size());
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper.download;
+
+import de.richtercloud.jhbuild.java.wrapper.ExtractionException;
+import de.richtercloud.jhbuild.java.wrapper.ExtractionMode;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class NativeExtractorTest {
+    private static final long MTIME = 1500000000000L;
+
+    private static void putEntry(TarArchiveOutputStream tarOutputStream,
+            TarArchiveEntry entry,
+            byte[] content) throws IOException {
+        entry.setModTime(new Date(MTIME+entry.getName().length()*1000L));
+        if(content != null) {
+            entry.setSize(content.length);
+        }
+        tarOutputStream.putArchiveEntry(entry);
+        if(content != null) {
+            tarOutputStream.write(content);
+        }
+        tarOutputStream.closeArchiveEntry();
+    }
+
+    private static File createArchive(File tmpDir) throws IOException {
+        File archiveFile = new File(tmpDir, "pkg-1.0.tar.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(archiveFile.toPath()));
+                TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(outputStream)) {
+            TarArchiveEntry rootEntry = new TarArchiveEntry("pkg-1.0/");
+            rootEntry.setMode(040755);
+            putEntry(tarOutputStream, rootEntry, null);
+            TarArchiveEntry srcEntry = new TarArchiveEntry("pkg-1.0/src/");
+            srcEntry.setMode(040750);
+            putEntry(tarOutputStream, srcEntry, null);
+            TarArchiveEntry configureEntry = new TarArchiveEntry("pkg-1.0/configure");
+            configureEntry.setMode(0100755);
+            putEntry(tarOutputStream, configureEntry, "#!/bin/sh\n".getBytes(StandardCharsets.UTF_8));
+            TarArchiveEntry mainEntry = new TarArchiveEntry("pkg-1.0/src/main.c");
+            mainEntry.setMode(0100644);
+            putEntry(tarOutputStream, mainEntry, "int main() {}\n".getBytes(StandardCharsets.UTF_8));
+            TarArchiveEntry privateEntry = new TarArchiveEntry("pkg-1.0/src/private.h");
+            privateEntry.setMode(0100600);
+            putEntry(tarOutputStream, privateEntry, new byte[0]);
+            TarArchiveEntry hardLinkEntry = new TarArchiveEntry("pkg-1.0/src/copy.c",
+                    TarConstants.LF_LINK);
+            hardLinkEntry.setLinkName("pkg-1.0/src/main.c");
+            hardLinkEntry.setMode(0100644);
+            putEntry(tarOutputStream, hardLinkEntry, null);
+            TarArchiveEntry symlinkEntry = new TarArchiveEntry("pkg-1.0/src/link.c",
+                    TarConstants.LF_SYMLINK);
+            symlinkEntry.setLinkName("main.c");
+            putEntry(tarOutputStream, symlinkEntry, null);
+        }
+        return archiveFile;
+    }
+
+    /**
+     * Describes every file, directory and symbolic link below {@code dir}
+     * with its type, permissions, modification time, link count and content
+     * or link target.
+     */
+    private static Map<String, String> describeTree(File dir) throws IOException {
+        Path dirPath = dir.toPath();
+        try (Stream<Path> stream = Files.walk(dirPath)) {
+            return stream.filter(path -> !path.equals(dirPath))
+                    .collect(Collectors.toMap(path -> dirPath.relativize(path).toString(),
+                            path -> {
+                                try {
+                                    if(Files.isSymbolicLink(path)) {
+                                        return "link "+Files.readSymbolicLink(path);
+                                    }
+                                    String description = String.format("%s %s %d %s",
+                                            Files.isDirectory(path) ? "dir" : "file",
+                                            Files.getPosixFilePermissions(path),
+                                            Files.getLastModifiedTime(path).toMillis(),
+                                            Files.getAttribute(path, "unix:nlink", LinkOption.NOFOLLOW_LINKS));
+                                    if(Files.isRegularFile(path)) {
+                                        description += " "+new String(Files.readAllBytes(path),
+                                                StandardCharsets.UTF_8);
+                                    }
+                                    return description;
+                                }catch(IOException ex) {
+                                    throw new IllegalStateException(ex);
+                                }
+                            },
+                            (description1, description2) -> description1,
+                            TreeMap::new));
+        }
+    }
+
+    /**
+     * Tests that the native extraction results in the same tree and manifest
+     * as the Java extraction.
+     *
+     * @throws IOException if such an exception occurs
+     * @throws ExtractionException if such an exception occurs
+     */
+    @Test
+    public void testExtractEqualsJavaExtraction() throws IOException,
+            ExtractionException {
+        File tmpDir = Files.createTempDirectory(NativeExtractorTest.class.getSimpleName()).toFile();
+        File archiveFile = createArchive(tmpDir);
+        DownloadCombi downloadCombi = new DownloadCombi(archiveFile.toURI().toURL().toExternalForm(),
+                archiveFile.getAbsolutePath(),
+                ExtractionMode.EXTRACTION_MODE_TAR_GZ,
+                new File(tmpDir, "pkg-1.0").getAbsolutePath(),
+                "");
+        NativeExtractor nativeExtractor = new NativeExtractor();
+        Assume.assumeTrue("tar and gzip or pigz need to be installed",
+                nativeExtractor.isSupported(downloadCombi, null));
+        File javaDir = new File(tmpDir, "java");
+        File nativeDir = new File(tmpDir, "native");
+        ExtractionManifest javaManifest = new JavaExtractor().extract(downloadCombi,
+                javaDir,
+                null, //entries
+                () -> false //canceled
+        );
+        ExtractionManifest nativeManifest = nativeExtractor.extract(downloadCombi,
+                nativeDir,
+                null, //entries
+                () -> false //canceled
+        );
+        assertEquals(describeTree(javaDir),
+                describeTree(nativeDir));
+        assertEquals(javaManifest.size(),
+                nativeManifest.size());
+        for(ExtractionManifest.Entry javaEntry : javaManifest.getEntries()) {
+            ExtractionManifest.Entry nativeEntry = nativeManifest.getEntry(javaEntry.getPath());
+            assertEquals(javaEntry.format(),
+                    nativeEntry.format());
+        }
+        assertTrue(nativeManifest.validate(javaDir).isEmpty());
+    }
+
+    @Test
+    public void testExtractCanceled() throws IOException,
+            ExtractionException {
+        File tmpDir = Files.createTempDirectory(NativeExtractorTest.class.getSimpleName()).toFile();
+        File archiveFile = createArchive(tmpDir);
+        DownloadCombi downloadCombi = new DownloadCombi(archiveFile.toURI().toURL().toExternalForm(),
+                archiveFile.getAbsolutePath(),
+                ExtractionMode.EXTRACTION_MODE_TAR_GZ,
+                new File(tmpDir, "pkg-1.0").getAbsolutePath(),
+                "");
+        //a tar which doesn't terminate on its own
+        File tarFile = new File(tmpDir, "tar");
+        Files.write(tarFile.toPath(),
+                "#!/bin/sh\nsleep 60\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(tarFile.setExecutable(true));
+        NativeExtractor nativeExtractor = new NativeExtractor(tarFile.getAbsolutePath(),
+                NativeExtractor.PIGZ_DEFAULT,
+                NativeExtractor.GZIP_DEFAULT,
+                NativeExtractor.XZ_DEFAULT,
+                System.getenv("PATH"));
+        Assume.assumeTrue(nativeExtractor.isSupported(downloadCombi, null));
+        long start = System.currentTimeMillis();
+        assertNull(nativeExtractor.extract(downloadCombi,
+                new File(tmpDir, "native"),
+                null, //entries
+                () -> true //canceled
+        ));
+        assertTrue(System.currentTimeMillis()-start < 30000);
+    }
+}
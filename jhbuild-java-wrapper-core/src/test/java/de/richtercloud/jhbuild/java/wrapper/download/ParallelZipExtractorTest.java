@@ -0,0 +1,112 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.jhbuild.java.wrapper.download;
+
+import de.richtercloud.jhbuild.java.wrapper.ExtractionException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class ParallelZipExtractorTest {
+    private static final long MTIME = 1262304000000L; //2010-01-01
+    private static final int FILE_COUNT = 64;
+
+    @Test
+    public void testPartition() {
+        List<ZipArchiveEntry> entries = Arrays.asList(createEntry("a", 10),
+                createEntry("b", 7),
+                createEntry("c", 5),
+                createEntry("d", 4),
+                createEntry("e", 2));
+        List<List<ZipArchiveEntry>> partitions = ParallelZipExtractor.partition(entries,
+                2);
+        assertEquals(2,
+                partitions.size());
+        long first = partitions.get(0).stream().mapToLong(ZipArchiveEntry::getSize).sum();
+        long second = partitions.get(1).stream().mapToLong(ZipArchiveEntry::getSize).sum();
+        assertEquals(28,
+                first + second);
+        assertTrue(Math.abs(first - second) <= 2);
+    }
+
+    @Test
+    public void testExtract() throws IOException,
+            ExtractionException {
+        File tmpDir = Files.createTempDirectory(ParallelZipExtractorTest.class.getSimpleName()).toFile();
+        File zipFile = new File(tmpDir, "archive.zip");
+        Random random = new Random(1L);
+        byte[][] contents = new byte[FILE_COUNT][];
+        try (ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(zipFile)) {
+            ZipArchiveEntry dirEntry = new ZipArchiveEntry("archive/");
+            dirEntry.setTime(MTIME);
+            zipOutputStream.putArchiveEntry(dirEntry);
+            zipOutputStream.closeArchiveEntry();
+            for(int i=0; i<FILE_COUNT; i++) {
+                contents[i] = new byte[random.nextInt(2*1024*1024)];
+                random.nextBytes(contents[i]);
+                ZipArchiveEntry entry = new ZipArchiveEntry(String.format("archive/dir%d/file%d",
+                        i % 4,
+                        i));
+                entry.setTime(MTIME);
+                entry.setUnixMode(i % 2 == 0 ? 0100755 : 0100640);
+                zipOutputStream.putArchiveEntry(entry);
+                zipOutputStream.write(contents[i]);
+                zipOutputStream.closeArchiveEntry();
+            }
+        }
+        File targetDir = new File(tmpDir, "target");
+        ExtractionManifest manifest = new ParallelZipExtractor(4).extract(zipFile,
+                targetDir,
+                null //entries
+        );
+        assertEquals(FILE_COUNT+1,
+                manifest.size());
+        assertEquals("archive",
+                manifest.getEntries().get(0).getPath());
+        for(int i=0; i<FILE_COUNT; i++) {
+            File file = new File(targetDir, String.format("archive/dir%d/file%d",
+                    i % 4,
+                    i));
+            assertArrayEquals(contents[i],
+                    Files.readAllBytes(file.toPath()));
+            assertEquals(MTIME,
+                    file.lastModified());
+            assertEquals(i % 2 == 0 ? "rwxr-xr-x" : "rw-r-----",
+                    PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath())));
+        }
+        assertTrue(manifest.validate(targetDir).isEmpty());
+    }
+
+    private ZipArchiveEntry createEntry(String name,
+            long size) {
+        ZipArchiveEntry retValue = new ZipArchiveEntry(name);
+        retValue.setSize(size);
+        return retValue;
+    }
+}